@@ -85,7 +85,8 @@ public class NetworkListener extends Thread {
 						Platform.runLater(() -> {
 							smController.outputMessage(msg);
 						});
-					} else {
+					} else if (msg instanceof StringMessage) {
+						// Other messages (such as conversion progress) are only of use to the screen that asked for them.
 						StringMessage sm = (StringMessage) msg;
 
 						if (sm.getMessageType() == Type.ERROR_MESSAGE)
@@ -23,6 +23,7 @@ import java.io.File;
 import java.nio.file.Files;
 
 import framework.AbstractNetworkedScreenController;
+import framework.IMessageReceivable;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
@@ -32,12 +33,14 @@ import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.stage.FileChooser.ExtensionFilter;
 import networking.AsciiFileMessage;
+import networking.ConversionMessage;
 import networking.DeleteMapMessage;
+import networking.StringMessage;
 import utils.MapCompoundType;
 import utils.MapProperties;
 import utils.MapRegionType;
 
-public class UploadAsciiScreenController extends AbstractNetworkedScreenController {
+public class UploadAsciiScreenController extends AbstractNetworkedScreenController implements IMessageReceivable {
 	@FXML
 	private Label message;
 	@FXML
@@ -55,6 +58,8 @@ public class UploadAsciiScreenController extends AbstractNetworkedScreenControll
 	@FXML
 	private Button sendToServerBtn;
 	@FXML
+	private Button cancelBtn;
+	@FXML
 	private Button goToBrowseLogsScreenBtn;
 	@FXML
 	private Button goToMultipleAsciiScreenBtn;
@@ -66,6 +71,8 @@ public class UploadAsciiScreenController extends AbstractNetworkedScreenControll
 	private CheckBox yearlyMapCheckBox;
 
 	private File selectedFile;
+	private MapProperties uploadedMap; // The map the server is creating, which cancelBtn cancels.
+	private int responsesAwaited; // The upload's response, plus one for each cancel request sent.
 
 	/**
 	 * Initializes the controller class. Automatically called after the FXML file has been loaded.
@@ -94,7 +101,7 @@ public class UploadAsciiScreenController extends AbstractNetworkedScreenControll
 		});
 
 		selectFilesBtn.setOnAction(event -> {
-			ExtensionFilter[] filter = { new ExtensionFilter("ASCII Text Document", "*.txt") };
+			ExtensionFilter[] filter = { new ExtensionFilter("ASCII Text Document", "*.txt", "*.txt.gz", "*.asc.gz") };
 			File asciiFile = promptUserForFile("Select ASCII File", selectFilesBtn, filter);
 
 			if (asciiFile != null) {
@@ -121,6 +128,10 @@ public class UploadAsciiScreenController extends AbstractNetworkedScreenControll
 						message.setText("Sending map to server: " + mp.toString());
 						sendMessageToServer(afm);
 						message.setText("Waiting for server response...");
+
+						uploadedMap = mp;
+						responsesAwaited = 1;
+						cancelBtn.setVisible(true);
 					} else // Delete map option unselected && selectedFile == null.
 						errorAlert("Unselected ASCII", "You must select an ASCII file.", "Please select an ASCII file to upload, and try again.");
 			} catch (Exception e) {
@@ -128,6 +139,18 @@ public class UploadAsciiScreenController extends AbstractNetworkedScreenControll
 			}
 		});
 
+		cancelBtn.setOnAction(event -> {
+			try {
+				if (uploadedMap != null) {
+					sendMessageToServer(new ConversionMessage(ConversionMessage.Type.CANCEL_REQUEST, uploadedMap));
+					responsesAwaited++;
+					message.setText("Asking server to cancel: " + uploadedMap.toString());
+				}
+			} catch (Exception e) {
+				errorAlert("Cannot Construct Server Message", "The cancel request couldn't be sent:", e.getMessage());
+			}
+		});
+
 		deleteMapCheckBox.setOnAction(event -> {
 			setVisibilityOnDeleteCheckBox(!deleteMapCheckBox.isSelected());
 		});
@@ -141,6 +164,38 @@ public class UploadAsciiScreenController extends AbstractNetworkedScreenControll
 		});
 	}
 
+	/**
+	 * Shows how far the server has got converting the uploaded map, and alerts the user to any StringMessage it sends, as NetworkListener would for a screen that doesn't receive messages itself.
+	 * 
+	 * @param msg
+	 *           A ConversionMessage or StringMessage from the server.
+	 */
+	@Override
+	public void outputMessage(Object msg) {
+		if (msg instanceof ConversionMessage) {
+			ConversionMessage cm = (ConversionMessage) msg;
+			if (cm.isProgressUpdate())
+				message.setText("Converting " + cm.getMapProperties().toString() + ": " + cm.getPercentDone() + "%");
+		} else if (msg instanceof StringMessage) {
+			StringMessage sm = (StringMessage) msg;
+
+			// The upload is over once it and every cancel request have been answered.
+			if (uploadedMap != null && --responsesAwaited <= 0) {
+				uploadedMap = null;
+				cancelBtn.setVisible(false);
+				message.setText(sm.getMsgHeader());
+			}
+
+			if (sm.getMessageType() == StringMessage.Type.ERROR_MESSAGE)
+				errorAlert("Server Error", sm.getMsgHeader(), sm.getMsgContent());
+			else if (sm.getMessageType() == StringMessage.Type.WARNING_MESSAGE)
+				warningAlert("Server Warning", sm.getMsgHeader(), sm.getMsgContent());
+			else
+				informationAlert("Server Message", sm.getMsgHeader(), sm.getMsgContent());
+		} else
+			errorAlert("Communication Error", "Server is sending a message of an unexpected type.", "Check the server logs for additional information.");
+	}
+
 	/**
 	 * Helper method to flip visibility of selectFilesBtn, overwriteCheckBox, and selectedFilesTextArea.
 	 * 
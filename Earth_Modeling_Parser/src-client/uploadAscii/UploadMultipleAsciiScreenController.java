@@ -32,6 +32,7 @@ import javafx.scene.control.TextArea;
 import javafx.scene.text.Text;
 import javafx.stage.FileChooser.ExtensionFilter;
 import networking.AsciiFileMessage;
+import networking.ConversionMessage;
 import networking.StringMessage;
 import utils.MapCompoundType;
 import utils.MapProperties;
@@ -61,7 +62,7 @@ public class UploadMultipleAsciiScreenController extends AbstractNetworkedScreen
 	@FXML
 	public void initialize() {
 		selectFilesBtn.setOnAction(event -> {
-			ExtensionFilter[] filter = { new ExtensionFilter("ASCII Text Document", "*.txt") };
+			ExtensionFilter[] filter = { new ExtensionFilter("ASCII Text Document", "*.txt", "*.txt.gz", "*.asc.gz") };
 			selectedFiles = promptUserForMultipleFiles("Select ASCII Files", selectFilesBtn, filter);
 
 			if (selectedFiles != null) {
@@ -117,6 +118,11 @@ public class UploadMultipleAsciiScreenController extends AbstractNetworkedScreen
 				backBtn.setVisible(true);
 				selectedFiles = null;
 			}
+		} else if (msg instanceof ConversionMessage) {
+			// Progress through the map being converted; the map is only done once its StringMessage arrives.
+			ConversionMessage cm = (ConversionMessage) msg;
+			if (selectedFiles != null && cm.isProgressUpdate())
+				progressBar.setProgress((numMapsProcessed + cm.getPercentDone() / 100.0) / selectedFiles.size());
 		} else
 			errorAlert("Communication Error", "Server is sending a message of an unexpected type.", "Check the server logs for additional information.");
 	}
@@ -166,10 +172,10 @@ public class UploadMultipleAsciiScreenController extends AbstractNetworkedScreen
 	private MapProperties parseMapProperties(File f) {
 		/*
 		 * Rules: MAP_REGION_TYPE+MAP_COMPOUND_TYPE+y+year+m+month.txt For example, a CH4 file of the Mississippi river basin, year 2000, and month of December would be formatted as: MISSISSIPPI_RIVER_BASINCH4y2000m11.txt If the map is just a yearly map, it would have -1 for the month parameter. For example, a N20 file with a global region and year 1980 would
-		 * be formatted: GLOBALN2Oy1980m-1.txt
+		 * be formatted: GLOBALN2Oy1980m-1.txt Gzip compressed files may also end in .txt.gz or .asc.gz.
 		 */
 
-		String filename = f.getName().replace(".txt", "");
+		String filename = f.getName().replace(".gz", "").replace(".txt", "").replace(".asc", "");
 
 		int indexOfM = filename.lastIndexOf('m');
 		int indexOfY = filename.lastIndexOf('y');
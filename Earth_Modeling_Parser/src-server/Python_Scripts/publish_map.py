@@ -12,6 +12,7 @@
 
 
 import arcpy
+import os
 
 
 
@@ -100,26 +101,38 @@ def main(argv):
   df_new = arcpy.mapping.ListDataFrames(mxd_new)[0]
   print successful + "Accessed Blank Map for Creating new Map"
 
-  # Create Table from Input file for creating Feature Layer
-  arcpy.TableToTable_conversion(parsed_csv_dir + input_csv_file + ".csv", tables_dir, input_csv_file + ".gdb")
-  print successful + "CSV to table completed. Table created is   " + input_csv_file + ".dbf"
-
-  # Create the name of the Feature Layer to be created
-  outLayer = input_csv_file + ".lyr"
-  # Create an XY Event Layer using the created table and the constant spatial reference
-  arcpy.MakeXYEventLayer_management(tables_dir + input_csv_file + ".dbf", x, y, outLayer, spref, None)
-  print successful + "Created XY Event Layer to be placed into gdb: " + outLayer
-
-  # Create empty GDB to house Feature Layer Data
-  arcpy.CreateFileGDB_management(auto_gdb_dir, input_csv_file + ".gdb", "10.0")
-  print successful + "Created empty GDB for XY Layer: " + input_csv_file + ".gdb"
-
-  # Create Feature Layer Data Source using XY Event Layer data and placing into gdb
-  arcpy.FeatureClassToFeatureClass_conversion(outLayer, auto_gdb_dir + input_csv_file + ".gdb", input_csv_file)
-  print successful + "Created Feature Class"
-  # Replace Data Source of the template layer
-  template_lyr.replaceDataSource(auto_gdb_dir + input_csv_file + ".gdb", "FILEGDB_WORKSPACE", input_csv_file, False)
-  print successful + "Data Source Successfully Replaced"
+  # The parser also saves each map as a GeoTIFF next to its CSV. A raster template layer can show it directly,
+  # which skips building the table, XY layer and feature class from the CSV's points
+  input_tif_file = input_csv_file + ".tif"
+  if os.path.isfile(parsed_csv_dir + input_tif_file) and template_lyr.isRasterLayer:
+    # Replace Data Source of the template layer
+    template_lyr.replaceDataSource(parsed_csv_dir, "RASTER_WORKSPACE", input_tif_file, False)
+    print successful + "Data Source Successfully Replaced with Raster: " + input_tif_file
+  else:
+    # The parser also writes the CSV's rows straight to a table, in which case it doesn't need converting
+    if os.path.isfile(tables_dir + input_csv_file + ".dbf"):
+      print successful + "Using the table written by the parser: " + input_csv_file + ".dbf"
+    else:
+      # Create Table from Input file for creating Feature Layer
+      arcpy.TableToTable_conversion(parsed_csv_dir + input_csv_file + ".csv", tables_dir, input_csv_file + ".gdb")
+      print successful + "CSV to table completed. Table created is   " + input_csv_file + ".dbf"
+
+    # Create the name of the Feature Layer to be created
+    outLayer = input_csv_file + ".lyr"
+    # Create an XY Event Layer using the created table and the constant spatial reference
+    arcpy.MakeXYEventLayer_management(tables_dir + input_csv_file + ".dbf", x, y, outLayer, spref, None)
+    print successful + "Created XY Event Layer to be placed into gdb: " + outLayer
+
+    # Create empty GDB to house Feature Layer Data
+    arcpy.CreateFileGDB_management(auto_gdb_dir, input_csv_file + ".gdb", "10.0")
+    print successful + "Created empty GDB for XY Layer: " + input_csv_file + ".gdb"
+
+    # Create Feature Layer Data Source using XY Event Layer data and placing into gdb
+    arcpy.FeatureClassToFeatureClass_conversion(outLayer, auto_gdb_dir + input_csv_file + ".gdb", input_csv_file)
+    print successful + "Created Feature Class"
+    # Replace Data Source of the template layer
+    template_lyr.replaceDataSource(auto_gdb_dir + input_csv_file + ".gdb", "FILEGDB_WORKSPACE", input_csv_file, False)
+    print successful + "Data Source Successfully Replaced"
   # Save a COPY of the template layer to be imported into the empty data frame of the blank map
   template_lyr.saveACopy(created_layers_dir + input_csv_file + ".lyr")
   print successful + "Creeated a copy of Layer"
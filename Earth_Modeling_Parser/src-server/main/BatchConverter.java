@@ -0,0 +1,511 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Converts many ASCII files (or ESRI binary float grids) to CSV at once, such as when backfilling years of monthly maps. Files are converted on a fixed size pool of worker threads, one file per worker, and the result of every file (success or failure, timing, and values parsed) is reported as one line of JSON.
+ * 
+ *         Can be run from the command line:
+ * 
+ *         BatchConverter [-o outputDirectory] [-j workers] [-summary summaryFile] [-index] [-downsample factor[:MEAN|SUM|MAX]] [-pyramid levels[:MEAN|SUM|MAX]] [-order ROW|Z_ORDER|HILBERT] [-binary] [-geotiff] [-dbf tableDirectory] (directory | file)...
+ * 
+ *         A directory is searched (not recursively) for .txt, .asc, .txt.gz, .asc.gz and .flt files (a .flt file is read with the .hdr file next to it), leaving out pyramid levels (name_L1.asc and so on). Of several files whose outputs would have the same name, only the first is converted. The JSON lines go to the summary file, or to standard out if none is given. The exit code is 0 if every file was converted, 1 if any failed, and 2 if the arguments were wrong. With -index, a row index is saved next to each ASCII file so later clipped reads of it can seek straight to the rows they need. With -downsample, every block of factor x factor cells is combined into one (by MEAN unless another method is given). With -pyramid, up to that many reduced resolution levels (1/2, 1/4, 1/8... of the output's resolution) are saved as ESRI ASCII grids next to each CSV. With -order, the cells of each CSV are written along a space filling curve (tile by tile) instead of row by row. With -binary, each file is written as a compact binary grid (.bgrid, see BinaryGridWriter) instead of a CSV. With -geotiff, a tiled GeoTIFF with overviews (see GeoTiffWriter) is also written next to each output, for GIS tools to display as a raster. With -dbf, the rows of each output are also written to a dBASE table (see DbaseTableWriter) in the table directory.
+ */
+
+package main;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.pmw.tinylog.Logger;
+
+import parser.BlockAggregator;
+import parser.CellOrder;
+import parser.ConversionResult;
+import parser.GridConverter;
+import parser.PyramidBuilder;
+
+public class BatchConverter {
+
+	/**
+	 * Heap set aside for each worker. Conversions stream to disk, so this mostly covers buffers and garbage collection headroom.
+	 */
+	public static final long MEMORY_PER_WORKER = 64L * 1024 * 1024;
+
+	/**
+	 * File name endings of the ASCII files picked up from a directory.
+	 */
+	private static final String[] ASCII_EXTENSIONS = { ".txt", ".asc", ".txt.gz", ".asc.gz" };
+
+	/**
+	 * File name ending of the binary float grids picked up from a directory.
+	 */
+	private static final String FLOAT_GRID_EXTENSION = ".flt";
+
+	/**
+	 * The settings every file is converted with. Shared by all of the workers, which is safe because a GridConverter never changes.
+	 */
+	private GridConverter converter;
+
+	/**
+	 * Number of files converted at the same time.
+	 */
+	private int workers;
+
+	/**
+	 * true to write binary grids instead of CSV files.
+	 */
+	private boolean binary;
+
+	/**
+	 * Creates a batch converter that writes to the default CSV output directory, with as many workers as the cores and heap allow.
+	 */
+	public BatchConverter() {
+		this.converter = new GridConverter();
+		this.workers = defaultWorkers();
+		this.binary = false;
+	}
+
+	/**
+	 * 
+	 * @return The number of workers to use: one per core, but no more than the heap can hold (MEMORY_PER_WORKER each).
+	 */
+	public static int defaultWorkers() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		long byMemory = Runtime.getRuntime().maxMemory() / MEMORY_PER_WORKER;
+		return (int) Math.max(1, Math.min(cores, byMemory));
+	}
+
+	/**
+	 * 
+	 * @return The directory the CSV files are written to, or null for the default CSV output directory.
+	 */
+	public File getOutputDirectory() {
+		return converter.getOutputDirectory();
+	}
+
+	/**
+	 * @param outputDirectory
+	 *           The directory to write the CSV files to, or null for the default CSV output directory.
+	 */
+	public void setOutputDirectory(File outputDirectory) {
+		this.converter = converter.withOutputDirectory(outputDirectory);
+	}
+
+	/**
+	 * 
+	 * @return The number of files converted at the same time.
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @param workers
+	 *           The number of files to convert at the same time.
+	 * @throws IllegalArgumentException
+	 *            If workers is less than 1.
+	 */
+	public void setWorkers(int workers) {
+		if (workers < 1)
+			throw new IllegalArgumentException("There must be at least one worker.");
+		this.workers = workers;
+	}
+
+	/**
+	 * 
+	 * @return true if a row index is built for each ASCII file.
+	 */
+	public boolean getUseRowIndex() {
+		return converter.getUseRowIndex();
+	}
+
+	/**
+	 * @param useRowIndex
+	 *           true to build a row index for each ASCII file, and save it next to the file.
+	 */
+	public void setUseRowIndex(boolean useRowIndex) {
+		this.converter = converter.withUseRowIndex(useRowIndex);
+	}
+
+	/**
+	 * @param factor
+	 *           The number of cells along each side of the blocks combined into one output cell; 1 to output every cell.
+	 * @param method
+	 *           How the cells of each block are combined.
+	 * @throws IllegalArgumentException
+	 *            If factor is less than 1.
+	 */
+	public void setDownsample(int factor, BlockAggregator.Method method) {
+		this.converter = converter.withDownsample(factor, method);
+	}
+
+	/**
+	 * @param levels
+	 *           The most reduced resolution levels to save next to each CSV; 0 for none.
+	 * @param method
+	 *           How the cells of each block are combined.
+	 * @throws IllegalArgumentException
+	 *            If levels is negative.
+	 */
+	public void setPyramid(int levels, BlockAggregator.Method method) {
+		this.converter = converter.withPyramid(levels, method);
+	}
+
+	/**
+	 * 
+	 * @return true if binary grids are written instead of CSV files.
+	 */
+	public boolean getBinary() {
+		return binary;
+	}
+
+	/**
+	 * @param binary
+	 *           true to write each file as a binary grid (see BinaryGridWriter) instead of a CSV.
+	 */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * @param geoTiff
+	 *           true to also write a GeoTIFF next to each output.
+	 */
+	public void setGeoTiff(boolean geoTiff) {
+		this.converter = converter.withGeoTiff(geoTiff);
+	}
+
+	/**
+	 * @param tableDirectory
+	 *           The directory to also write a dBASE table of each output to, or null for none.
+	 */
+	public void setTableDirectory(File tableDirectory) {
+		this.converter = converter.withTableDirectory(tableDirectory);
+	}
+
+	/**
+	 * @param cellOrder
+	 *           The order to write the cells of each CSV in.
+	 */
+	public void setCellOrder(CellOrder cellOrder) {
+		this.converter = converter.withCellOrder(cellOrder);
+	}
+
+	/**
+	 * 
+	 * @return The converter every file is converted with.
+	 */
+	public GridConverter getConverter() {
+		return converter;
+	}
+
+	/**
+	 * Lists the ASCII files and binary float grids in a directory, sorted by name. The levels of pyramids saved by an earlier run (map_L1.asc and so on) are left out, so converting into the directory that is read doesn't pick its own output up the next time.
+	 * 
+	 * @param directory
+	 *           The directory to search (not recursively).
+	 * @return The ASCII files and .flt files in the directory; empty if it couldn't be read.
+	 */
+	public static List<File> listAsciiFiles(File directory) {
+		File[] files = directory.listFiles(f -> f.isFile() && (isAsciiFile(f) || isFloatGrid(f)) && !PyramidBuilder.isLevelFile(f));
+		if (files == null)
+			return Collections.emptyList();
+
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+
+	/**
+	 * @param f
+	 *           A file.
+	 * @return true if the file name ends in one of the ASCII file extensions.
+	 */
+	private static boolean isAsciiFile(File f) {
+		String name = f.getName().toLowerCase();
+		for (String extension : ASCII_EXTENSIONS)
+			if (name.endsWith(extension))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @param f
+	 *           A file.
+	 * @return true if the file is the .flt file of a binary float grid.
+	 */
+	private static boolean isFloatGrid(File f) {
+		return f.getName().toLowerCase().endsWith(FLOAT_GRID_EXTENSION);
+	}
+
+	/**
+	 * Converts every file and waits for all of them to finish. A file that fails doesn't stop the others. Files whose outputs would have the same name (such as a.asc and a.txt.gz, or a-1.asc and a_1.asc) are checked for up front: only the first of them is
+	 * converted and the others fail, since workers writing the same output at the same time would leave it corrupt.
+	 * 
+	 * @param files
+	 *           The ASCII files to convert.
+	 * @return The result of every file, in the same order as files.
+	 * @throws InterruptedException
+	 *            The calling thread was interrupted while waiting; the conversions that hadn't started are cancelled.
+	 */
+	public List<Result> convert(List<File> files) throws InterruptedException {
+		Result[] results = new Result[files.size()];
+		List<Integer> converted = new ArrayList<Integer>();
+		List<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+
+		// Windows file names ignore case, so two outputs that differ only by case are the same file
+		Map<String, File> outputs = new HashMap<String, File>();
+		for (int i = 0; i < files.size(); i++) {
+			File f = files.get(i);
+			File first = outputs.putIfAbsent(converter.getOutputFile(f).getAbsolutePath().toLowerCase(), f);
+			if (first != null) {
+				Logger.error("{} would be written to the same output as {}, so it is skipped.", f, first);
+				results[i] = new Result(f, null, false, 0, 0, "Writes the same output as " + first + "; rename one of them.");
+			} else {
+				converted.add(i);
+				tasks.add(() -> convert(f));
+			}
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, tasks.size())));
+		try {
+			List<Future<Result>> futures = pool.invokeAll(tasks);
+			for (int i = 0; i < futures.size(); i++) {
+				int index = converted.get(i);
+				try {
+					results[index] = futures.get(i).get();
+				} catch (ExecutionException e) {
+					// convert(File) catches everything, so this is an Error (such as running out of memory).
+					results[index] = new Result(files.get(index), null, false, 0, 0, e.getCause().toString());
+				}
+			}
+			return Arrays.asList(results);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Converts a single file on the calling thread.
+	 * 
+	 * @param f
+	 *           The ASCII file (or .flt file) to convert.
+	 * @return The result of the conversion. Never null, even if the conversion failed.
+	 */
+	public Result convert(File f) {
+		long start = System.nanoTime();
+
+		ConversionResult result = null;
+		String error = null;
+		try {
+			result = binary ? converter.toBinary(f, null) : converter.toCsv(f);
+			if (!result.isSuccess())
+				error = "The file is not a valid grid (see the log for details).";
+		} catch (Exception e) {
+			Logger.error("Error converting {}", f, e);
+			error = e.toString();
+		}
+
+		long millis = (System.nanoTime() - start) / 1000000;
+		File csv = result != null ? result.getOutput() : null;
+		return new Result(f, csv, csv != null, millis, result != null ? result.getValuesParsed() : 0, error);
+	}
+
+	/**
+	 * Command line entry point. See the class description for the arguments.
+	 * 
+	 * @param args
+	 *           The command line arguments.
+	 */
+	public static void main(String[] args) {
+		BatchConverter converter = new BatchConverter();
+		List<File> files = new ArrayList<File>();
+		String summaryFile = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if ("-o".equals(args[i]))
+					converter.setOutputDirectory(new File(args[++i]));
+				else if ("-j".equals(args[i]))
+					converter.setWorkers(Integer.parseInt(args[++i]));
+				else if ("-summary".equals(args[i]))
+					summaryFile = args[++i];
+				else if ("-index".equals(args[i]))
+					converter.setUseRowIndex(true);
+				else if ("-downsample".equals(args[i])) {
+					String[] option = args[++i].split(":");
+					converter.setDownsample(Integer.parseInt(option[0]), option.length > 1 ? BlockAggregator.Method.valueOf(option[1].toUpperCase()) : BlockAggregator.Method.MEAN);
+				} else if ("-dbf".equals(args[i]))
+					converter.setTableDirectory(new File(args[++i]));
+				else if ("-geotiff".equals(args[i]))
+					converter.setGeoTiff(true);
+				else if ("-binary".equals(args[i]))
+					converter.setBinary(true);
+				else if ("-order".equals(args[i]))
+					converter.setCellOrder(CellOrder.valueOf(args[++i].toUpperCase()));
+				else if ("-pyramid".equals(args[i])) {
+					String[] option = args[++i].split(":");
+					converter.setPyramid(Integer.parseInt(option[0]), option.length > 1 ? BlockAggregator.Method.valueOf(option[1].toUpperCase()) : BlockAggregator.Method.MEAN);
+				} else {
+					File f = new File(args[i]);
+					if (f.isDirectory())
+						files.addAll(listAsciiFiles(f));
+					else
+						files.add(f);
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+			files.clear();
+		}
+
+		if (files.isEmpty()) {
+			System.err.println("Usage: BatchConverter [-o outputDirectory] [-j workers] [-summary summaryFile] [-index] [-downsample factor[:MEAN|SUM|MAX]] [-pyramid levels[:MEAN|SUM|MAX]] [-order ROW|Z_ORDER|HILBERT] [-binary] [-geotiff] [-dbf tableDirectory] (directory | file)...");
+			System.exit(2);
+		}
+
+		if (converter.getOutputDirectory() != null)
+			converter.getOutputDirectory().mkdirs();
+
+		try (PrintStream summary = summaryFile != null ? new PrintStream(summaryFile, "UTF-8") : new PrintStream(System.out, true, "UTF-8")) {
+			Logger.info("Converting {} files on {} workers.", files.size(), converter.getWorkers());
+			long start = System.nanoTime();
+			List<Result> results = converter.convert(files);
+
+			int failed = 0;
+			for (Result r : results) {
+				summary.println(r.toJson());
+				if (!r.isSuccess())
+					failed++;
+			}
+			summary.println("{\"files\":" + results.size() + ",\"succeeded\":" + (results.size() - failed) + ",\"failed\":" + failed + ",\"workers\":" + converter.getWorkers() + ",\"millis\":" + (System.nanoTime() - start) / 1000000 + "}");
+
+			System.exit(failed == 0 ? 0 : 1);
+		} catch (FileNotFoundException | UnsupportedEncodingException e) {
+			Logger.error("Couldn't write the summary to {}", summaryFile, e);
+			System.exit(2);
+		} catch (InterruptedException e) {
+			Logger.error("Batch conversion was interrupted.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * The outcome of converting one file.
+	 */
+	public static class Result {
+
+		private final File input;
+		private final File output;
+		private final boolean success;
+		private final long millis;
+		private final long valuesParsed;
+		private final String error;
+
+		private Result(File input, File output, boolean success, long millis, long valuesParsed, String error) {
+			this.input = input;
+			this.output = output;
+			this.success = success;
+			this.millis = millis;
+			this.valuesParsed = valuesParsed;
+			this.error = error;
+		}
+
+		/**
+		 * @return The ASCII file that was converted.
+		 */
+		public File getInput() {
+			return input;
+		}
+
+		/**
+		 * @return The CSV file that was created, or null if the conversion failed.
+		 */
+		public File getOutput() {
+			return output;
+		}
+
+		/**
+		 * @return true if the CSV file was created.
+		 */
+		public boolean isSuccess() {
+			return success;
+		}
+
+		/**
+		 * @return How long the conversion took, in milliseconds.
+		 */
+		public long getMillis() {
+			return millis;
+		}
+
+		/**
+		 * @return The number of values read from the table.
+		 */
+		public long getValuesParsed() {
+			return valuesParsed;
+		}
+
+		/**
+		 * @return Why the conversion failed, or null if it succeeded.
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * @return The result as a single line of JSON.
+		 */
+		public String toJson() {
+			StringBuilder json = new StringBuilder();
+			json.append("{\"file\":").append(quote(input.getPath()));
+			json.append(",\"status\":").append(success ? "\"ok\"" : "\"failed\"");
+			json.append(",\"output\":").append(output != null ? quote(output.getPath()) : "null");
+			json.append(",\"bytes\":").append(input.length());
+			json.append(",\"values\":").append(valuesParsed);
+			json.append(",\"millis\":").append(millis);
+			json.append(",\"error\":").append(error != null ? quote(error) : "null");
+			return json.append('}').toString();
+		}
+
+		/**
+		 * Quotes a string for JSON.
+		 */
+		private static String quote(String s) {
+			StringBuilder quoted = new StringBuilder("\"");
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\')
+					quoted.append('\\').append(c);
+				else if (c < 0x20)
+					quoted.append(String.format("\\u%04x", (int) c));
+				else
+					quoted.append(c);
+			}
+			return quoted.append('"').toString();
+		}
+	}
+}
@@ -23,7 +23,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
@@ -33,18 +33,36 @@ import org.pmw.tinylog.Logger;
 
 import networking.ClientServer;
 import networking.ServerInformation;
-import parser.AsciiToCsv;
+import parser.BlockAggregator;
+import parser.ConversionListener;
+import parser.ConversionResult;
+import parser.DbaseTableWriter;
+import parser.GeoTiffWriter;
+import parser.GridConverter;
+import parser.GridPrecision;
+import parser.GridRaster;
 import parser.JavaScriptGenerator;
+import parser.PyramidBuilder;
+import parser.TimeSeriesCube;
 import utils.CompoundDescriptions;
 import utils.FileLocations;
 import utils.MapProperties;
+import utils.MapRegionType;
 import utils.ReferenceScales;
 
 public class EarthModellingDaemon {
 
 	public static final long TIME_TO_SLEEP = 30000L; // 30 seconds before this daemon wakes up again.
 	public static final long MAX_EXECUTABLE_RUNTIME_IN_MINUTES = 10L; // Represented in minutes.
+	public static final long PARALLEL_PARSE_MIN_FILE_SIZE = 8L * 1024 * 1024; // ASCII files this large (in bytes) are parsed on every core.
+	public static final int GLOBAL_DOWNSAMPLE_FACTOR = 1; // GLOBAL maps are published with blocks of this many cells per side averaged into one cell (1 publishes every cell).
+	public static final int PYRAMID_LEVELS = 3; // Every map is also saved at 1/2, 1/4 and 1/8 of its resolution, next to its CSV, for zoomed out views.
+	public static final boolean WRITE_GEOTIFF = true; // Every map is also saved as a GeoTIFF next to its CSV, which publish_map.py publishes instead of the points when the map's template layer is a raster layer.
+	public static final boolean WRITE_TABLES = true; // Every map is also saved as a dBASE table in the tables directory, so publish_map.py doesn't have to convert its CSV into one.
+	public static final int MONTHS_PER_YEAR = 12; // Monthly maps of a region, compound and year are stacked into one time series cube with this many steps.
 	private static ConvertedSet convertedSet;
+	private static final GridConverter converter = new GridConverter().withPyramid(PYRAMID_LEVELS, BlockAggregator.Method.MEAN).withParallelMinSize(PARALLEL_PARSE_MIN_FILE_SIZE).withGeoTiff(WRITE_GEOTIFF).withTableDirectory(WRITE_TABLES ? new File(FileLocations.CSV_TABLES_OUTPUT_DIRECTORY_LOCATION) : null); // Settings every upload is converted with.
+	private static volatile ConversionProgressLogger currentConversion; // The conversion that is running right now, if any. A single field is enough because createMap() is synchronized, so only one map is ever converted at a time.
 	private static boolean run = false;
 	private static ClientServer clientServer;
 	private static ReferenceScales referenceScales;
@@ -92,8 +110,12 @@ public class EarthModellingDaemon {
 		// Create required temp directories if they don't exist.
 		File csvOutputDir = new File(FileLocations.CSV_OUTPUT_DIRECTORY_LOCATION);
 		File tempOutputDir = new File(FileLocations.TEMP_WORKING_DIRECTORY_LOCATION);
+		File cubesOutputDir = new File(FileLocations.TIME_SERIES_CUBES_DIRECTORY_LOCATION);
+		File tablesOutputDir = new File(FileLocations.CSV_TABLES_OUTPUT_DIRECTORY_LOCATION);
 		csvOutputDir.mkdir();
 		tempOutputDir.mkdir();
+		cubesOutputDir.mkdir();
+		tablesOutputDir.mkdir();
 
 		Logger.info("Starting VEMS ClientServer.");
 		clientServer = new ClientServer(ServerInformation.SERVER_PORT, FileLocations.KEYSTORE_FILE_LOCATION, keystorePassword);
@@ -115,6 +137,7 @@ public class EarthModellingDaemon {
 	 */
 	public static void stop() {
 		Logger.info("Shutting down server.");
+		cancelConversion();
 		clientServer.end();
 		run = true;
 	}
@@ -310,6 +333,18 @@ public class EarthModellingDaemon {
 		return false;
 	}
 
+	/**
+	 * Deletes the file at the specified location if it is there. Used for files that only some publish paths create, so a missing one is not an error.
+	 * 
+	 * @param fileLocation
+	 *           The absolute file path of the file on the disk.
+	 * @return true if the file was deleted or did not exist; false otherwise.
+	 */
+	private static boolean deleteFileIfExists(String fileLocation) {
+		File f = new File(fileLocation);
+		return !f.exists() || deleteFile(f);
+	}
+
 	/**
 	 * Deletes a folder and all its internal files and folders.
 	 * 
@@ -345,21 +380,95 @@ public class EarthModellingDaemon {
 	}
 
 	/**
-	 *
-	 * Converts an ASCII file to a CSV file via AsciiToCsv.java
+	 * Deletes a folder and all its internal files and folders if it is there. Used for folders that only some publish paths create, so a missing one is not an error.
+	 * 
+	 * @param fileLocation
+	 *           The absolute file path of the folder on the disk.
+	 * @return true if the folder was deleted or did not exist; false otherwise.
+	 */
+	private static boolean deleteFolderIfExists(String fileLocation) {
+		File f = new File(fileLocation);
+		return !f.exists() || deleteFolder(f);
+	}
+
+	/**
+	 * 
+	 * Converts an uploaded ASCII file to a CSV file via GridConverter.java. The file is parsed straight from memory, so it is never written to disk first. A monthly map is also read into a raster at the precision the time series cubes store, in the same pass, so it can be stacked into its cube
+	 * later without parsing it again.
 	 * 
 	 * @param asciiFile
-	 *           The absolute file path of the ascii.txt file on the disk.
-	 * @return A File reference to the newly created CSV file. Null is returned in the event the parser had an issue parsing the file.
+	 *           A byte array holding the whole ASCII file.
+	 * @param properties
+	 *           The map's properties, used to name the CSV file.
+	 * @param listener
+	 *           Told of the conversion's progress every 10%; may be null.
+	 * @return The result of the conversion, whose output is the newly created CSV file. Null is returned in the event the parser had an issue parsing the file.
 	 * @throws IOException
-	 *            Can't find the file at the specified location!
+	 *            The CSV file couldn't be written!
 	 */
-	private static File convertAsciiToCsv(File asciiFile) throws IOException {
-		Logger.info("Converting file: {} to CSV", asciiFile);
-		File f = new AsciiToCsv().parseToCsv(asciiFile); // Init new obj to save memory.
+	private static ConversionResult convertAsciiToCsv(byte[] asciiFile, MapProperties properties, ConversionListener listener) throws IOException {
+		Logger.info("Converting uploaded file: {} to CSV", properties.toString());
+		// Global maps are published at a lower resolution than they are modelled at
+		GridConverter mapConverter = converter;
+		if (properties.getMapRegion() == MapRegionType.GLOBAL && GLOBAL_DOWNSAMPLE_FACTOR > 1)
+			mapConverter = converter.withDownsample(GLOBAL_DOWNSAMPLE_FACTOR, BlockAggregator.Method.MEAN);
+		if (properties.getMonth() >= 0)
+			mapConverter = mapConverter.withRaster(GridPrecision.FLOAT);
+
+		File outFile = mapConverter.getOutputFile(properties.toString());
+		ConversionProgressLogger progress = new ConversionProgressLogger(properties.toString(), listener);
+
+		ConversionResult result;
+		currentConversion = progress;
+		try {
+			result = mapConverter.toCsv(ByteBuffer.wrap(asciiFile), outFile, progress);
+		} finally {
+			currentConversion = null;
+		}
+
+		if (result.isCancelled()) {
+			Logger.warn("Conversion of {} was cancelled.", properties.toString());
+			return null;
+		}
+		if (!result.isSuccess())
+			return null;
 		Logger.info("File converted to CSV!");
+		Logger.info("Values in {}: {}", properties.toString(), result.getStatistics());
+
+		return result;
+	}
+
+	/**
+	 * Asks the ASCII to CSV conversion that is running right now (if any) to stop. The conversion stops at the end of the row it is on, and its map fails to be created. There is at most one such conversion, since createMap() is synchronized; if maps are ever converted concurrently,
+	 * currentConversion has to become a collection of conversions keyed by their MapProperties.
+	 * 
+	 * @return true if a conversion was running; false otherwise.
+	 */
+	public static boolean cancelConversion() {
+		ConversionProgressLogger progress = currentConversion;
+		if (progress == null)
+			return false;
+
+		Logger.info("Cancelling the running conversion.");
+		progress.cancel();
+		return true;
+	}
+
+	/**
+	 * Asks the ASCII to CSV conversion of the given map to stop, if it is the one running right now. Lets a client cancel its own upload without stopping someone else's. An upload waiting for createMap() to finish another map isn't being converted yet, so it can't be cancelled this way.
+	 * 
+	 * @param properties
+	 *           The MapProperties of the map whose conversion should stop.
+	 * @return true if that map was being converted; false otherwise.
+	 */
+	public static boolean cancelConversion(MapProperties properties) {
+		ConversionProgressLogger progress = currentConversion;
+		if (progress == null || !progress.mapName.equals(properties.toString()))
+			return false;
 
-		return f;
+		Logger.info("Cancelling the conversion of {}.", properties.toString());
+		progress.cancel();
+		return true;
 	}
 
 	/**
@@ -435,25 +544,123 @@ public class EarthModellingDaemon {
 		if (!deleteFile(FileLocations.ABS_TEMP_PUBLISHING_FILES_DIRECTORY_LOCATION + properties.toString() + ".sd"))
 			ret = false;
 
-		// Delete table files from tables folder (.dbf, .dbf.xml, .cpg)
-		if (!deleteFile(FileLocations.ABS_CSV_TABLES_OUTPUT_DIRECTORY_LOCATION + nice + ".dbf"))
+		File csvFile = converter.getOutputFile(properties.toString());
+
+		// Delete table files from tables folder (.dbf, .dbf.xml, .cpg). A map published from its GeoTIFF has no table, and the .dbf.xml is only written by
+		// TableToTable, which publish_map.py skips when the parser already wrote the table, so any of these may be missing.
+		File table = DbaseTableWriter.getOutputFile(new File(FileLocations.ABS_CSV_TABLES_OUTPUT_DIRECTORY_LOCATION), csvFile);
+		if (!deleteFileIfExists(table.getPath()))
 			ret = false;
-		if (!deleteFile(FileLocations.ABS_CSV_TABLES_OUTPUT_DIRECTORY_LOCATION + nice + ".dbf.xml"))
+		if (!deleteFileIfExists(table.getPath() + ".xml"))
 			ret = false;
-		if (!deleteFile(FileLocations.ABS_CSV_TABLES_OUTPUT_DIRECTORY_LOCATION + nice + ".cpg"))
+		if (!deleteFileIfExists(DbaseTableWriter.getCodePageFile(table).getPath()))
 			ret = false;
 
+		// Delete the GeoTIFF next to the CSV, if one was written
+		if (!deleteFileIfExists(GeoTiffWriter.getOutputFile(csvFile).getPath()))
+			ret = false;
+
+		// Delete the pyramid levels next to the CSV
+		for (int level = 1; level <= PYRAMID_LEVELS; level++)
+			if (!deleteFileIfExists(PyramidBuilder.getLevelFile(csvFile, level).getPath()))
+				ret = false;
+
 		// Delete .lyr from created_layers
 		if (!deleteFile(FileLocations.ABS_CREATED_LAYERS_DIRECTORY_LOCATION + nice + ".lyr"))
 			ret = false;
 
-		// Delete gdb from auto_gdbs
-		if (!deleteFolder(FileLocations.ABS_AUTO_GDBS_OUTPUT_DIRECTORY_LOCATION + nice + ".gdb"))
+		// Delete gdb from auto_gdbs (only the points publish path creates one)
+		if (!deleteFolderIfExists(FileLocations.ABS_AUTO_GDBS_OUTPUT_DIRECTORY_LOCATION + nice + ".gdb"))
 			ret = false;
 
+		// Take the month out of its time series cube (not every map is in one, so this doesn't count towards ret)
+		removeFromTimeSeriesCube(properties);
+
 		return ret;
 	}
 
+	/**
+	 * @param properties
+	 *           The properties of a monthly map.
+	 * @return The time series cube that the map's region, compound and year are stacked in.
+	 */
+	private static File getTimeSeriesCubeFile(MapProperties properties) {
+		return new File(FileLocations.TIME_SERIES_CUBES_DIRECTORY_LOCATION + properties.getMapRegion().name() + properties.getMapCompoundType().name() + "y" + properties.getYear() + TimeSeriesCube.EXTENSION);
+	}
+
+	/**
+	 * Stacks a monthly map into the time series cube of its region, compound and year, so a cell's values for the whole year can be read at once. The cube is created by the first month that arrives and filled in as the others do. Failing to add the map is only logged, since the map itself has
+	 * already been published.
+	 * 
+	 * @param raster
+	 *           The map's grid, read while it was converted to CSV, or null if it wasn't.
+	 * @param properties
+	 *           The map's properties. Maps without a month aren't stacked.
+	 */
+	private static void addToTimeSeriesCube(GridRaster raster, MapProperties properties) {
+		if (properties.getMonth() < 0)
+			return;
+
+		File cubeFile = getTimeSeriesCubeFile(properties);
+		if (raster == null) {
+			Logger.error("Couldn't read {} to add it to {}.", properties.toString(), cubeFile.getName());
+			return;
+		}
+
+		try {
+			TimeSeriesCube cube = cubeFile.isFile() ? TimeSeriesCube.open(cubeFile) : null;
+			if (cube != null && !cube.getHeader().sameGeometry(raster.getHeader()) && cube.getStepsWritten() == 0) {
+				cube.close();
+				cube = null;
+			}
+			if (cube == null)
+				cube = TimeSeriesCube.create(cubeFile, raster.getHeader(), MONTHS_PER_YEAR);
+
+			try {
+				if (cube.writeStep(properties.getMonth(), raster))
+					Logger.info("Added {} to {} ({} of {} months).", properties.toString(), cubeFile.getName(), cube.getStepsWritten(), cube.getStepCount());
+			} finally {
+				cube.close();
+			}
+		} catch (IOException e) {
+			Logger.error("Couldn't add {} to {}.", properties.toString(), cubeFile.getName(), e);
+		}
+	}
+
+	/**
+	 * Clears a monthly map out of its time series cube, deleting the cube once no months are left in it.
+	 * 
+	 * @param properties
+	 *           The map's properties.
+	 */
+	private static void removeFromTimeSeriesCube(MapProperties properties) {
+		File cubeFile = getTimeSeriesCubeFile(properties);
+		if (properties.getMonth() < 0 || !cubeFile.isFile())
+			return;
+
+		try {
+			TimeSeriesCube cube = TimeSeriesCube.open(cubeFile);
+			if (cube == null) {
+				deleteFile(cubeFile);
+				return;
+			}
+
+			boolean empty;
+			try {
+				if (cube.hasStep(properties.getMonth()))
+					cube.clearStep(properties.getMonth());
+				empty = cube.getStepsWritten() == 0;
+			} finally {
+				cube.close();
+			}
+
+			if (empty)
+				deleteFile(cubeFile);
+		} catch (IOException e) {
+			Logger.error("Couldn't remove {} from {}.", properties.toString(), cubeFile.getName(), e);
+		}
+	}
+
 	/**
 	 * Creates a map by calling the correct parsers and Python script(s).
 	 * 
@@ -463,48 +670,45 @@ public class EarthModellingDaemon {
 	 *           The map's properties as defined in MapProperties.
 	 * @return The error if map wasn't successfully created; null if it was.
 	 * @throws IOException
-	 *            There was an error creating or reading from a temporary file/folder.
+	 *            There was an error writing the CSV file or running a Python script.
 	 * @throws InterruptedException
-	 *            Probably means one of the intermediary Python scipts were cut short before they could complete execution.
+	 *            Probably means one of the intermediary Python scripts were cut short before they could complete execution.
 	 * @throws TimeoutException
 	 *            Means an intermediary Python script was cut short because it took too long to process.
 	 */
-	public static synchronized String createMap(byte[] asciiFile, MapProperties properties) throws IOException, InterruptedException, TimeoutException {
-		File file = new File(FileLocations.TEMP_WORKING_DIRECTORY_LOCATION + properties.toString() + ".txt");
-		Files.write(file.toPath(), asciiFile);
-
-		return createMap(file, properties);
+	public static String createMap(byte[] asciiFile, MapProperties properties) throws IOException, InterruptedException, TimeoutException {
+		return createMap(asciiFile, properties, null);
 	}
 
 	/**
-	 * Creates a map by calling the correct parsers and Python script(s).
+	 * Creates a map by calling the correct parsers and Python script(s), telling a listener how far the ASCII to CSV conversion has got.
 	 * 
 	 * @param asciiFile
-	 *           A File (linked to something on the local disk) representing the ASCII file that you wish to generate a map from.
+	 *           A byte array representing the ASCII file that you wish to generate a map from.
 	 * @param properties
 	 *           The map's properties as defined in MapProperties.
+	 * @param progress
+	 *           Told of the conversion's progress every 10%, such as to pass it on to the client that uploaded the file; may be null.
 	 * @return The error if map wasn't successfully created; null if it was.
 	 * @throws IOException
-	 *            There was an error creating or reading from a temporary file/folder.
+	 *            There was an error writing the CSV file or running a Python script.
 	 * @throws InterruptedException
 	 *            Probably means one of the intermediary Python scripts were cut short before they could complete execution.
 	 * @throws TimeoutException
 	 *            Means an intermediary Python script was cut short because it took too long to process.
 	 */
-	private static synchronized String createMap(File asciiFile, MapProperties properties) throws IOException, InterruptedException, TimeoutException {
+	public static synchronized String createMap(byte[] asciiFile, MapProperties properties, ConversionListener progress) throws IOException, InterruptedException, TimeoutException {
 
 		// Check against converted set.
 		if (convertedSet.contains(properties)) {
 			Logger.warn("The file {} has already been converted!", properties.toString());
-			deleteFile(asciiFile);
 			return "The file " + properties.toString() + " has already been converted!";
 		}
 
-		File csvFile = convertAsciiToCsv(asciiFile);
-		if (csvFile == null) {
+		ConversionResult converted = convertAsciiToCsv(asciiFile, properties, progress);
+		if (converted == null) {
 			Logger.error("File generated became null");
 			removeLocalMapFiles(properties);
-			deleteFile(asciiFile);
 			return "There was an error converting " + properties.toString() + " to a CSV file.";
 		}
 
@@ -515,7 +719,6 @@ public class EarthModellingDaemon {
 		} catch (Exception e) {
 			Logger.error("Error when calling getReferenceScale. Check ReferenceScale Class.", e);
 			removeLocalMapFiles(properties);
-			deleteFile(asciiFile);
 			return "There was an error determining the proper reference scale for " + properties.toString() + ".";
 		}
 
@@ -526,7 +729,6 @@ public class EarthModellingDaemon {
 		String exceptions = logExceptions(al);
 		if (exceptions != null) {
 			removeLocalMapFiles(properties);
-			deleteFile(asciiFile);
 			return "Error running map generation script for " + properties.toString() + ".";
 		}
 
@@ -537,12 +739,11 @@ public class EarthModellingDaemon {
 		if (exceptions != null) {
 			removeLocalMapFiles(properties);
 			removeMapFromServerWithoutChecks(properties);
-			deleteFile(asciiFile);
 			return "Error running publish parameters script for " + properties.toString() + ".";
 		}
 
 		convertedSet.add(properties);
-		deleteFile(asciiFile);
+		addToTimeSeriesCube(converted.getRaster(), properties);
 
 		if (!generateAndTransferJavaScript())
 			return "Error transferring updated JS after creating map: " + properties.toString() + ".";
@@ -628,4 +829,44 @@ public class EarthModellingDaemon {
 
 		return true;
 	}
+
+	/**
+	 * Logs the progress of a conversion every 10%, and passes each of those steps on to another listener (if any).
+	 */
+	private static class ConversionProgressLogger implements ConversionListener {
+
+		private static final int PERCENT_STEP = 10;
+
+		private final String mapName;
+		private final ConversionListener listener;
+		private int lastPercent;
+		private volatile boolean cancelled;
+
+		public ConversionProgressLogger(String mapName, ConversionListener listener) {
+			this.mapName = mapName;
+			this.listener = listener;
+			this.lastPercent = 0;
+			this.cancelled = false;
+		}
+
+		@Override
+		public synchronized void progressUpdated(int rowsDone, int totalRows, long bytesRead) {
+			int percent = (int) (100L * rowsDone / totalRows);
+			if (percent >= lastPercent + PERCENT_STEP) {
+				lastPercent = percent - percent % PERCENT_STEP;
+				Logger.info("Converting {}: {}% ({} of {} rows, {} bytes read)", mapName, lastPercent, rowsDone, totalRows, bytesRead);
+				if (listener != null)
+					listener.progressUpdated(rowsDone, totalRows, bytesRead);
+			}
+		}
+
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
 }
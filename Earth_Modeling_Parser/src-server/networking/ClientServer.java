@@ -25,6 +25,7 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
@@ -51,6 +52,8 @@ import javax.net.ssl.TrustManagerFactory;
 import org.pmw.tinylog.Logger;
 
 import main.EarthModellingDaemon;
+import parser.AsciiGridValidator;
+import parser.ConversionListener;
 import utils.FileLocations;
 
 public class ClientServer extends Thread {
@@ -222,14 +225,42 @@ public class ClientServer extends Thread {
 		return null;
 	}
 
+	/**
+	 * Checks the structure of an uploaded ASCII file without parsing its values. Not synchronized, so a malformed file is rejected without waiting for (or holding up) the map currently being created.
+	 * 
+	 * @param afm
+	 *           The AsciiFileMessage that holds the uploaded file.
+	 * @return null if the file is well formed (or the message doesn't create a map); otherwise a StringMessage describing the problem.
+	 */
+	public StringMessage validateAsciiFileMessage(AsciiFileMessage afm) {
+		try {
+			if (afm.getOverwriteExisting())
+				return null;
+
+			AsciiGridValidator validator = new AsciiGridValidator();
+			if (validator.validate(ByteBuffer.wrap(afm.getFile())))
+				return null;
+
+			return new StringMessage(StringMessage.Type.ERROR_MESSAGE, "The ASCII file for map: " + afm.getMapProperties().toString() + " is invalid.", validator.getError());
+		} catch (IllegalAccessException iae) {
+			Logger.error("StringMessage message was defined with incorrect parameters: {}", iae);
+		} catch (Exception e) {
+			Logger.error(e);
+		}
+
+		return null;
+	}
+
 	/**
 	 * Creates a new map by calling the appropriate daemon methods.
 	 * 
 	 * @param afm
 	 *           The AsciiFileMessage that represents the instructions for this map's creation.
+	 * @param progress
+	 *           Told how far the map's ASCII to CSV conversion has got; may be null.
 	 * @return A StringMessage letting the user know if the process was successful or not (outputs the error).
 	 */
-	public synchronized StringMessage parseAsciiFileMessage(AsciiFileMessage afm) {
+	public synchronized StringMessage parseAsciiFileMessage(AsciiFileMessage afm, ConversionListener progress) {
 		try {
 			if (afm.getOverwriteExisting()) {
 				String exceptions = EarthModellingDaemon.removeMapFromServer(afm.getMapProperties());
@@ -237,7 +268,7 @@ public class ClientServer extends Thread {
 					return new StringMessage(StringMessage.Type.ERROR_MESSAGE, "There was an issue removing map: " + afm.getMapProperties().toString() + ".", exceptions);
 			} else
 				try {
-					String exceptions = EarthModellingDaemon.createMap(afm.getFile(), afm.getMapProperties());
+					String exceptions = EarthModellingDaemon.createMap(afm.getFile(), afm.getMapProperties(), progress);
 					if (exceptions != null)
 						return new StringMessage(StringMessage.Type.ERROR_MESSAGE, "There was an issue creating map: " + afm.getMapProperties().toString() + ".", exceptions);
 					else
@@ -255,6 +286,31 @@ public class ClientServer extends Thread {
 		return null;
 	}
 
+	/**
+	 * Cancels the conversion of a map that a client is uploading. Not synchronized, so that it can reach the map that parseAsciiFileMessage() is creating.
+	 * 
+	 * @param cm
+	 *           The ConversionMessage that names the map whose conversion should stop.
+	 * @return A StringMessage letting the user know if the conversion was cancelled.
+	 */
+	public StringMessage parseConversionMessage(ConversionMessage cm) {
+		try {
+			if (!cm.isCancelRequest())
+				return new StringMessage(StringMessage.Type.ERROR_MESSAGE, "ConversionMessage error", "The server was passed a conversion message that wasn't a cancel request.");
+
+			if (EarthModellingDaemon.cancelConversion(cm.getMapProperties()))
+				return new StringMessage(StringMessage.Type.INFORMATION_MESSAGE, "Cancelling...", "The conversion of " + cm.getMapProperties().toString() + " will stop at the end of the row it is on.");
+			else
+				return new StringMessage(StringMessage.Type.WARNING_MESSAGE, "Nothing to cancel.", "The map " + cm.getMapProperties().toString() + " isn't being converted right now.");
+		} catch (IllegalAccessException iae) {
+			Logger.error("StringMessage message was defined with incorrect parameters: {}", iae);
+		} catch (Exception e) {
+			Logger.error(e);
+		}
+
+		return null;
+	}
+
 	/**
 	 * Deletes a map by calling the appropriate daemon method.
 	 * 
@@ -22,11 +22,16 @@ package networking;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.net.ssl.SSLSocket;
 
 import org.pmw.tinylog.Logger;
 
+import parser.ConversionListener;
+import utils.MapProperties;
+
 public class ClientThread extends Thread {
 
 	private SSLSocket socket;
@@ -36,7 +41,10 @@ public class ClientThread extends Thread {
 	private ObjectInputStream input;
 	private ObjectOutputStream output;
 
-	private boolean run;
+	// Maps are created off the read loop, so the client can still cancel one (or do anything else) while it is converted.
+	private ExecutorService uploads;
+
+	private volatile boolean run;
 
 	/**
 	 * Constructor creates a new ClientThread to manage I/O streams with a client connection.
@@ -53,6 +61,7 @@ public class ClientThread extends Thread {
 		try {
 			input = new ObjectInputStream(socket.getInputStream());
 			output = new ObjectOutputStream(socket.getOutputStream());
+			uploads = Executors.newSingleThreadExecutor();
 		} catch (IOException ioe) {
 			Logger.error("Exception creating I/O streams: {}", ioe);
 		} catch (Exception e) {
@@ -100,7 +109,7 @@ public class ClientThread extends Thread {
 	}
 
 	/**
-	 * Starts the thread. Runs until the client passes a ConnectionMessage of ConnectionMessage.Type.DISCONNECT. The run flag will also be tripped by bufferMessage() if there is a timeout event on the socket that causes sending a message over output to fail. An error will be logged if this method is given an invalid object from the input stream.
+	 * Starts the thread. Runs until the client passes a ConnectionMessage of ConnectionMessage.Type.DISCONNECT. Maps are created on a separate executor, so a ConversionMessage that cancels one is read while it is converted. The run flag will also be tripped by bufferMessage() if there is a timeout event on the socket that causes sending a message over output to fail. An error will be logged if this method is given an invalid object from the input stream.
 	 */
 	@Override
 	public void run() {
@@ -127,9 +136,13 @@ public class ClientThread extends Thread {
 				if (obj == null)
 					bufferMessage(new StringMessage(StringMessage.Type.ERROR_MESSAGE, "Communication Error", "A null value was passed to the server."));
 				else if (obj instanceof AsciiFileMessage) {
-					StringMessage sm = server.parseAsciiFileMessage((AsciiFileMessage) obj);
+					AsciiFileMessage afm = (AsciiFileMessage) obj;
+					uploads.execute(() -> createMap(afm));
+				} else if (obj instanceof ConversionMessage) {
+					StringMessage sm = server.parseConversionMessage((ConversionMessage) obj);
+
 					if (sm == null)
-						bufferMessage(new StringMessage(StringMessage.Type.ERROR_MESSAGE, "An unknown error occured while parsing the ascii file message.", "This shouldn't happen."));
+						bufferMessage(new StringMessage(StringMessage.Type.ERROR_MESSAGE, "An unknown error occured while parsing the conversion message.", "This shouldn't happen."));
 					else
 						bufferMessage(sm);
 				} else if (obj instanceof ConnectionMessage) {
@@ -173,6 +186,38 @@ public class ClientThread extends Thread {
 		end();
 	}
 
+	/**
+	 * Creates the map an AsciiFileMessage holds and tells the client how it went, sending it a ConversionMessage every 10% of the conversion. Runs on the uploads executor, one map at a time.
+	 * 
+	 * @param afm
+	 *           The AsciiFileMessage the client sent.
+	 */
+	private void createMap(AsciiFileMessage afm) {
+		try {
+			MapProperties properties = afm.getMapProperties();
+			ConversionListener progress = (rowsDone, totalRows, bytesRead) -> {
+				try {
+					bufferMessage(new ConversionMessage(ConversionMessage.Type.PROGRESS_UPDATE, properties, (int) (100L * rowsDone / totalRows)));
+				} catch (IllegalAccessException iae) {
+					Logger.error("ConversionMessage message was defined with incorrect parameters: {}", iae);
+				}
+			};
+
+			// Reject malformed files before waiting on the map currently being created
+			StringMessage sm = server.validateAsciiFileMessage(afm);
+			if (sm == null)
+				sm = server.parseAsciiFileMessage(afm, progress);
+			if (sm == null)
+				bufferMessage(new StringMessage(StringMessage.Type.ERROR_MESSAGE, "An unknown error occured while parsing the ascii file message.", "This shouldn't happen."));
+			else
+				bufferMessage(sm);
+		} catch (IllegalAccessException iae) {
+			Logger.error("Error message was defined with incorrect parameters: {}", iae);
+		} catch (Exception e) {
+			Logger.error(e);
+		}
+	}
+
 	/**
 	 * Helper method to assist in the closing of a socket (and thereby its streams). Unexpected behavior may occur if called outside of this class.
 	 */
@@ -180,6 +225,7 @@ public class ClientThread extends Thread {
 		try {
 			socket.close();
 			run = false;
+			uploads.shutdown();
 			server.removeClient(this);
 		} catch (IOException ioe) {
 			Logger.error("There was a issue trying to close the socket or I/O streams: {}", ioe);
@@ -204,7 +250,10 @@ public class ClientThread extends Thread {
 		}
 
 		try {
-			output.writeObject(message);
+			// The read loop and the uploads executor both write to the client.
+			synchronized (output) {
+				output.writeObject(message);
+			}
 		} catch (IOException ioe) {
 			Logger.error("{} had an error when attempting to write to the output stream: {}", username, ioe);
 		} catch (Exception e) {
@@ -240,8 +289,10 @@ public class ClientThread extends Thread {
 
 		// Don't know if we disconnected. Test a write.
 		try {
-			output.write(1);
-			output.flush();
+			synchronized (output) {
+				output.write(1);
+				output.flush();
+			}
 		} catch (IOException ioe) {
 			// The connection was dropped.
 			end();
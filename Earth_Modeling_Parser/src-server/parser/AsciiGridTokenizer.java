@@ -0,0 +1,560 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Splits an ESRI ASCII grid into whitespace separated tokens by reading bytes straight from a channel. Doubles are parsed from the bytes in the buffer, so no String or Scanner is created per value. Line breaks are treated like any other whitespace, which means rows can be any length or wrapped across several lines.
+ * 
+ *         Read buffers of the default size are kept for reuse, one per thread: a closed tokenizer hands its buffer to the next one created on the same thread, so a thread that converts many grids doesn't allocate a new buffer for each of them.
+ */
+
+package parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class AsciiGridTokenizer implements Closeable {
+
+	/**
+	 * Default size of the read buffer. Tokens must be shorter than this.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Largest integer a double can hold exactly (2^53).
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/**
+	 * Powers of ten that are exactly representable as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * A read buffer of the default size that was handed back by a closed tokenizer on this thread, or null if there isn't one.
+	 */
+	private static final ThreadLocal<byte[]> SPARE_BUFFER = new ThreadLocal<byte[]>();
+
+	/**
+	 * True while bytes is a buffer taken from SPARE_BUFFER, to be handed back by close().
+	 */
+	private boolean pooled;
+
+	/**
+	 * Length of the token last read by nextDouble(), which ends at pos.
+	 */
+	private int lastTokenLength;
+
+	/**
+	 * The channel bytes are read from. Null if the tokenizer was created over a fixed buffer.
+	 */
+	private ReadableByteChannel channel;
+
+	/**
+	 * The buffer bytes are copied from when it isn't backed by an array (a memory mapped file, for example). Null otherwise.
+	 */
+	private ByteBuffer source;
+
+	/**
+	 * Wrapper around bytes used for reads from the channel.
+	 */
+	private ByteBuffer readBuffer;
+
+	/**
+	 * The bytes currently in memory.
+	 */
+	private byte[] bytes;
+
+	/**
+	 * Index of the next unread byte in bytes.
+	 */
+	private int pos;
+
+	/**
+	 * Index one past the last valid byte in bytes.
+	 */
+	private int limit;
+
+	/**
+	 * Number of bytes from the start of the input that came before bytes[0].
+	 */
+	private long bufferStart;
+
+	/**
+	 * True once the channel has no more bytes.
+	 */
+	private boolean endOfInput;
+
+	/**
+	 * Number of line breaks that have been read.
+	 */
+	private int lineNumber;
+
+	/**
+	 * Creates a tokenizer that reads from the given channel, starting at the channel's current position.
+	 * 
+	 * @param channel
+	 *           The channel to read the grid from.
+	 */
+	public AsciiGridTokenizer(ReadableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a tokenizer that reads from the given channel, starting at the channel's current position.
+	 * 
+	 * @param channel
+	 *           The channel to read the grid from.
+	 * @param bufferSize
+	 *           The size of the read buffer. Must be larger than the longest token.
+	 */
+	public AsciiGridTokenizer(ReadableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.pooled = bufferSize == DEFAULT_BUFFER_SIZE;
+		this.bytes = pooled ? takeBuffer() : new byte[bufferSize];
+		this.readBuffer = ByteBuffer.wrap(bytes);
+		this.pos = 0;
+		this.limit = 0;
+		this.bufferStart = 0;
+		this.endOfInput = false;
+		this.lineNumber = 0;
+	}
+
+	/**
+	 * Creates a tokenizer over the remaining bytes of a buffer. Array backed buffers are read in place; other buffers (such as a MappedByteBuffer) are copied through a small read buffer. The position of the given buffer is not changed.
+	 * 
+	 * @param buffer
+	 *           The bytes to read the grid from.
+	 */
+	public AsciiGridTokenizer(ByteBuffer buffer) {
+		this.channel = null;
+		this.pos = 0;
+		this.limit = 0;
+		this.bufferStart = 0;
+		this.lineNumber = 0;
+
+		if (buffer.hasArray()) {
+			// Nothing more to read, all of the bytes are already in memory.
+			this.bytes = buffer.array();
+			this.pos = buffer.arrayOffset() + buffer.position();
+			this.limit = buffer.arrayOffset() + buffer.limit();
+			this.bufferStart = -this.pos;
+			this.endOfInput = true;
+		} else {
+			this.source = buffer.duplicate();
+			this.pooled = true;
+			this.bytes = takeBuffer();
+			this.endOfInput = false;
+		}
+	}
+
+	/**
+	 * 
+	 * @return The number of bytes consumed from the input so far.
+	 */
+	public long getPosition() {
+		return bufferStart + pos;
+	}
+
+	/**
+	 * Sets the position count. Used when the channel was positioned part way into a file, so that positions still match the file.
+	 * 
+	 * @param position
+	 *           The offset in the input of the next byte.
+	 */
+	public void setPosition(long position) {
+		this.bufferStart = position - pos;
+	}
+
+	/**
+	 * 
+	 * @return The number of line breaks read so far (the zero based line of the next byte).
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Sets the line count. Used when the channel was positioned part way into a file, so that line numbers in error messages still match the file.
+	 * 
+	 * @param lineNumber
+	 *           The zero based line of the next byte.
+	 */
+	public void setLineNumber(int lineNumber) {
+		this.lineNumber = lineNumber;
+	}
+
+	/**
+	 * Skips whitespace and returns the first byte of the next token without consuming it.
+	 * 
+	 * @return The first byte of the next token, or -1 if there are no more tokens.
+	 * @throws IOException
+	 *            There was an issue reading from the channel.
+	 */
+	public int peek() throws IOException {
+		while (true) {
+			while (pos < limit) {
+				byte b = bytes[pos];
+				if (b == '\n')
+					lineNumber++;
+				else if (!isWhitespace(b))
+					return b;
+				pos++;
+			}
+
+			if (!fill())
+				return -1;
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if there is another token.
+	 * @throws IOException
+	 *            There was an issue reading from the channel.
+	 */
+	public boolean hasNext() throws IOException {
+		return peek() != -1;
+	}
+
+	/**
+	 * Reads the next token as a String. Meant for header labels, not for values in the table.
+	 * 
+	 * @return The next token, or null if there are no more tokens.
+	 * @throws IOException
+	 *            There was an issue reading from the channel.
+	 */
+	public String nextWord() throws IOException {
+		int length = nextTokenLength();
+		if (length < 0)
+			return null;
+
+		String word = new String(bytes, pos, length, StandardCharsets.US_ASCII);
+		pos += length;
+		return word;
+	}
+
+	/**
+	 * Reads the next token as a double without creating any objects in the common case.
+	 * 
+	 * @return The value of the next token.
+	 * @throws NumberFormatException
+	 *            The next token is not a number, or there are no more tokens.
+	 * @throws IOException
+	 *            There was an issue reading from the channel.
+	 */
+	public double nextDouble() throws NumberFormatException, IOException {
+		int length = nextTokenLength();
+		if (length < 0)
+			throw new NumberFormatException("Expected a number but reached the end of the input.");
+
+		double value = parseDouble(bytes, pos, pos + length);
+		pos += length;
+		lastTokenLength = length;
+		return value;
+	}
+
+	/**
+	 * 
+	 * @return A copy of the bytes of the token last read by nextDouble(), such as the spelling of NODATA used by the table.
+	 */
+	public byte[] lastToken() {
+		return Arrays.copyOfRange(bytes, pos - lastTokenLength, pos);
+	}
+
+	/**
+	 * Skips a run of tokens that are byte for byte the same as the given token, without converting them. Used to pass over runs of NODATA (often most of a row, for ocean cells) far faster than parsing each one.
+	 * 
+	 * @param token
+	 *           The bytes of the token to match, such as the spelling of NODATA used by the table.
+	 * @param max
+	 *           The most tokens to skip.
+	 * @return The number of tokens skipped; 0 if the next token doesn't match.
+	 * @throws IOException
+	 *            There was an issue reading from the channel.
+	 */
+	public int skipMatching(byte[] token, int max) throws IOException {
+		int skipped = 0;
+		while (skipped < max) {
+			int length = nextTokenLength();
+			if (length != token.length)
+				return skipped;
+			for (int i = 0; i < length; i++)
+				if (bytes[pos + i] != token[i])
+					return skipped;
+
+			pos += length;
+			skipped++;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Skips over the next token without converting it.
+	 * 
+	 * @return false if there were no more tokens to skip.
+	 * @throws IOException
+	 *            There was an issue reading from the channel.
+	 */
+	public boolean skipToken() throws IOException {
+		if (peek() == -1)
+			return false;
+
+		while (true) {
+			while (pos < limit) {
+				if (isWhitespace(bytes[pos]))
+					return true;
+				pos++;
+			}
+
+			if (!fill())
+				return true;
+		}
+	}
+
+	/**
+	 * Skips over several tokens without converting them, such as the rows of a table that are outside of a clipping box.
+	 * 
+	 * @param count
+	 *           The number of tokens to skip.
+	 * @return The number of tokens skipped; less than count if the input ran out.
+	 * @throws IOException
+	 *            There was an issue reading from the channel.
+	 */
+	public long skipTokens(long count) throws IOException {
+		long skipped = 0;
+		while (skipped < count && skipToken())
+			skipped++;
+		return skipped;
+	}
+
+	/**
+	 * Takes this thread's spare read buffer, or creates one if there isn't one.
+	 * 
+	 * @return A buffer of the default size that nothing else is using.
+	 */
+	private static byte[] takeBuffer() {
+		byte[] buffer = SPARE_BUFFER.get();
+		if (buffer == null)
+			return new byte[DEFAULT_BUFFER_SIZE];
+		SPARE_BUFFER.set(null);
+		return buffer;
+	}
+
+	/**
+	 * Closes the underlying channel, and hands the read buffer back for reuse. The tokenizer can't be used after it is closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (pooled) {
+			pooled = false;
+			SPARE_BUFFER.set(bytes);
+			bytes = null;
+			readBuffer = null;
+		}
+
+		if (channel != null)
+			channel.close();
+	}
+
+	/**
+	 * Moves to the start of the next token and makes sure the whole token is in the buffer.
+	 * 
+	 * @return The length of the token starting at pos, or -1 if there are no more tokens.
+	 * @throws IOException
+	 *            There was an issue reading from the channel, or a token is longer than the buffer.
+	 */
+	private int nextTokenLength() throws IOException {
+		if (peek() == -1)
+			return -1;
+
+		int end = pos;
+		while (true) {
+			while (end < limit) {
+				if (isWhitespace(bytes[end]))
+					return end - pos;
+				end++;
+			}
+
+			// The token runs past the end of the buffer. Shift it to the front and read more.
+			int scanned = end - pos;
+			if (!fill())
+				return limit - pos;
+			end = pos + scanned;
+		}
+	}
+
+	/**
+	 * Moves unread bytes to the front of the buffer and reads more from the channel or source buffer.
+	 * 
+	 * @return true if at least one new byte was read.
+	 * @throws IOException
+	 *            There was an issue reading from the channel, or a token is longer than the buffer.
+	 */
+	private boolean fill() throws IOException {
+		if (endOfInput)
+			return false;
+
+		// Keep the unread bytes.
+		int remaining = limit - pos;
+		System.arraycopy(bytes, pos, bytes, 0, remaining);
+		bufferStart += pos;
+		pos = 0;
+		limit = remaining;
+
+		if (limit == bytes.length)
+			throw new IOException("Token starting at byte " + getPosition() + " is longer than the " + bytes.length + " byte buffer.");
+
+		if (source != null) {
+			int read = Math.min(bytes.length - limit, source.remaining());
+			if (read == 0) {
+				endOfInput = true;
+				return false;
+			}
+			source.get(bytes, limit, read);
+			limit += read;
+			return true;
+		}
+
+		while (true) {
+			readBuffer.limit(bytes.length);
+			readBuffer.position(limit);
+			int read = channel.read(readBuffer);
+			if (read < 0) {
+				endOfInput = true;
+				return false;
+			}
+			if (read > 0) {
+				limit += read;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Parses a double from a range of ASCII bytes. Plain decimals with up to 15 significant digits (everything our models write) are converted exactly with a single multiply or divide. Anything else falls back to Double.parseDouble().
+	 * 
+	 * @param b
+	 *           The bytes to parse from.
+	 * @param start
+	 *           Index of the first byte of the number.
+	 * @param end
+	 *           Index one past the last byte of the number.
+	 * @return The parsed value.
+	 * @throws NumberFormatException
+	 *            The bytes do not represent a number.
+	 */
+	static double parseDouble(byte[] b, int start, int end) throws NumberFormatException {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (b[i] == '-' || b[i] == '+')) {
+			negative = b[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+
+		// Integer part
+		for (; i < end; i++) {
+			int d = b[i] - '0';
+			if (d < 0 || d > 9)
+				break;
+			anyDigits = true;
+			if (mantissa == 0 && d == 0)
+				continue;
+			if (significantDigits < 18) {
+				mantissa = mantissa * 10 + d;
+				significantDigits++;
+			} else
+				return fallbackParse(b, start, end);
+		}
+
+		// Fraction part
+		if (i < end && b[i] == '.')
+			for (i++; i < end; i++) {
+				int d = b[i] - '0';
+				if (d < 0 || d > 9)
+					break;
+				anyDigits = true;
+				if (significantDigits < 18) {
+					mantissa = mantissa * 10 + d;
+					if (mantissa != 0)
+						significantDigits++;
+					exponent--;
+				} else
+					return fallbackParse(b, start, end);
+			}
+
+		// Exponent part
+		if (anyDigits && i < end && (b[i] == 'e' || b[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (b[i] == '-' || b[i] == '+')) {
+				negativeExponent = b[i] == '-';
+				i++;
+			}
+
+			int exponentStart = i;
+			int e = 0;
+			for (; i < end; i++) {
+				int d = b[i] - '0';
+				if (d < 0 || d > 9)
+					break;
+				if (e < 1000)
+					e = e * 10 + d;
+			}
+			if (i == exponentStart)
+				return fallbackParse(b, start, end);
+			exponent += negativeExponent ? -e : e;
+		}
+
+		// Not a plain number (NaN, Infinity, garbage...). Let the JDK decide.
+		if (!anyDigits || i != end)
+			return fallbackParse(b, start, end);
+
+		double value;
+		if (mantissa == 0)
+			value = 0.0;
+		else if (mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22)
+			value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		else
+			return fallbackParse(b, start, end);
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Slow path for numbers that can't be converted exactly with the fast path.
+	 */
+	private static double fallbackParse(byte[] b, int start, int end) throws NumberFormatException {
+		return Double.parseDouble(new String(b, start, end - start, StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * 
+	 * @param b
+	 *           the byte to check.
+	 * @return true if b separates tokens.
+	 */
+	static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+	}
+}
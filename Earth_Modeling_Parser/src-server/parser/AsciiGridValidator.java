@@ -0,0 +1,173 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Quickly checks the structure of an ASCII grid before it is converted. The header is parsed as usual, but the table is only scanned for whitespace: values are counted, never converted, so a malformed file is rejected long before a full parse would notice.
+ * 
+ *         If the first line of the table holds exactly ncols values, the table is taken to have one row per line and every other line must hold ncols values too; the first line that doesn't is reported. Otherwise rows are taken to be wrapped across lines, and only the total is checked. Either way the
+ *         table must hold exactly ncols * nrows values.
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.pmw.tinylog.Logger;
+
+public class AsciiGridValidator {
+
+	/**
+	 * Why the last grid was rejected, or null if it was valid.
+	 */
+	private String error;
+
+	/**
+	 * Header of the last grid, or null if it couldn't be parsed.
+	 */
+	private GridHeader header;
+
+	/**
+	 * Default constructor
+	 */
+	public AsciiGridValidator() {
+		this.error = null;
+		this.header = null;
+	}
+
+	/**
+	 * 
+	 * @return why the last grid was rejected, or null if it was valid.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * 
+	 * @return the header of the last grid, or null if it couldn't be parsed.
+	 */
+	public GridHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * Checks the structure of an ASCII file.
+	 * 
+	 * @param ftp
+	 *           The file to check (plain text or gzip compressed).
+	 * @return true if the file is a well formed grid; false otherwise (see getError()).
+	 * @throws IOException
+	 *            The file couldn't be read.
+	 */
+	public boolean validate(File ftp) throws IOException {
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.open(ftp))) {
+			return validate(tokenizer);
+		}
+	}
+
+	/**
+	 * Checks the structure of an ASCII grid held in memory (such as an uploaded file).
+	 * 
+	 * @param input
+	 *           The whole grid (plain text or gzip compressed), from its position to its limit. Its position is not changed.
+	 * @return true if the grid is well formed; false otherwise (see getError()).
+	 * @throws IOException
+	 *            A compressed grid couldn't be read.
+	 */
+	public boolean validate(ByteBuffer input) throws IOException {
+		if (GridInput.isGzip(input)) {
+			try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.openGzip(input))) {
+				return validate(tokenizer);
+			}
+		}
+
+		return validate(new AsciiGridTokenizer(input));
+	}
+
+	/**
+	 * Checks the header and then counts the values in the table, line by line.
+	 * 
+	 * @param tokenizer
+	 *           The tokenizer positioned at the start of the header.
+	 * @return true if the grid is well formed; false otherwise (see getError()).
+	 * @throws IOException
+	 *            The input couldn't be read.
+	 */
+	protected boolean validate(AsciiGridTokenizer tokenizer) throws IOException {
+		this.error = null;
+		this.header = null;
+
+		AsciiToCsv headerParser = new AsciiToCsv();
+		if (!headerParser.parseHeaders(tokenizer))
+			return fail("The header is missing values, has an invalid value, or is longer than 30 lines.");
+		this.header = headerParser.getHeader();
+
+		int columnsInRow = header.getNcols();
+		long expectedValues = header.getCellCount();
+
+		long values = 0;
+		long valuesOnLine = 0;
+		int line = -1;
+		boolean rowPerLine = false;
+		boolean firstLine = true;
+
+		while (tokenizer.peek() != -1) {
+
+			// Check each line once the next one starts
+			if (tokenizer.getLineNumber() != line) {
+				if (valuesOnLine > 0) {
+					if (firstLine)
+						rowPerLine = valuesOnLine == columnsInRow;
+					else if (rowPerLine && valuesOnLine != columnsInRow)
+						return fail("Line " + (line + 1) + " has " + valuesOnLine + " values, but ncols is " + columnsInRow + ".");
+					firstLine = false;
+				}
+				line = tokenizer.getLineNumber();
+				valuesOnLine = 0;
+			}
+
+			tokenizer.skipToken();
+			values++;
+			valuesOnLine++;
+
+			if (values > expectedValues)
+				return fail("The table has more than ncols * nrows (" + expectedValues + ") values; the extra values start on line " + (line + 1) + ".");
+		}
+
+		// The last line
+		if (rowPerLine && valuesOnLine != columnsInRow)
+			return fail("Line " + (line + 1) + " has " + valuesOnLine + " values, but ncols is " + columnsInRow + ".");
+
+		if (values != expectedValues)
+			return fail("The table has " + values + " values, but ncols * nrows is " + expectedValues + ".");
+
+		return true;
+	}
+
+	/**
+	 * Records why the grid was rejected.
+	 * 
+	 * @param message
+	 *           What is wrong with the grid.
+	 * @return false, always.
+	 */
+	private boolean fail(String message) {
+		Logger.error("Invalid ASCII grid: {}", message);
+		this.error = message;
+		return false;
+	}
+}
@@ -19,16 +19,11 @@
 
 package parser;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.InputMismatchException;
-import java.util.Scanner;
 
 import org.pmw.tinylog.Logger;
 
@@ -36,6 +31,16 @@ import utils.FileLocations;
 
 public class AsciiToCsv {
 
+	/**
+	 * The most lines the header may take up before the file is rejected.
+	 */
+	private static final int MAX_LINES_IN_HEADER = 30;
+
+	/**
+	 * Bit mask of headerFieldsFound once all six header values have been read.
+	 */
+	private static final int ALL_HEADER_FIELDS = (1 << 6) - 1;
+
 	/*
 	 * Values explicitly given in the Input ASCII File
 	 */
@@ -85,14 +90,79 @@ public class AsciiToCsv {
 	private boolean headerParsed;
 
 	/**
-	 * The max value which shows up in the Ascii Table
+	 * One bit for each header value that has been read (ncols, nrows, xllcorner, yllcorner, cellsize, NODATA_value)
+	 */
+	private int headerFieldsFound;
+
+	/**
+	 * Byte offset of the first value in the table
+	 */
+	private long bodyOffset;
+
+	/**
+	 * Immutable copy of the header values, set once the header has been parsed
+	 */
+	private GridHeader header;
+
+	/**
+	 * Count, min, max, mean, variance and histogram of the values in the Ascii Table, gathered while it is parsed
+	 */
+	private GridStatistics statistics;
+
+	/**
+	 * Only cells inside this box are converted; null to convert the whole table
+	 */
+	private BoundingBox clip;
+
+	/**
+	 * Receives progress updates while the table is parsed; null if nobody is listening
+	 */
+	private ConversionListener listener;
+
+	/**
+	 * Set by cancel() to stop the parse at the end of the current row
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Directory the CSV files are written to; null to use FileLocations.CSV_OUTPUT_DIRECTORY_LOCATION
+	 */
+	private File outputDirectory;
+
+	/**
+	 * Whether grid files are read through a row index, which is built (and saved next to the file) the first time a file is parsed.
+	 */
+	private boolean useRowIndex;
+
+	/**
+	 * The row index of the grid being parsed, or null if there isn't one.
+	 */
+	private GridRowIndex rowIndex;
+
+	/**
+	 * True while rowIndex is being filled in by the parse, rather than having been loaded.
+	 */
+	private boolean buildingRowIndex;
+
+	/**
+	 * How the cells of parsed rasters are stored.
+	 */
+	private GridPrecision precision;
+
+	/**
+	 * Digits written after the point of each value in the CSV; -1 for as many as the value needs.
+	 */
+	private int fractionDigits;
+
+	/**
+	 * What is made from the cells besides the output: downsampling, the pyramid, GeoTIFF and table, and the order of the cells in the CSV.
 	 */
-	private double maxValue;
+	private OutputOptions outputOptions;
 
 	/**
-	 * The min value which shows up in the Ascii Table
+	 * The raster filled alongside the output of the last conversion to a file, or null if the output options didn't ask for one.
 	 */
-	private double minValue;
+	private GridRaster outputRaster;
 
 	/**
 	 * Longitude of the Upper Left Corner of the Map to be printed (the starting point when reading the table)
@@ -117,24 +187,71 @@ public class AsciiToCsv {
 		this.linesInHeader = 0;
 		this.values_parsed = 0;
 		this.headerParsed = false;
-		this.maxValue = Double.MAX_VALUE;
-		this.minValue = Double.MAX_VALUE;
+		this.headerFieldsFound = 0;
+		this.bodyOffset = 0;
+		this.header = null;
+		this.statistics = new GridStatistics();
+		this.clip = null;
+		this.listener = null;
+		this.cancelled = false;
+		this.outputDirectory = null;
+		this.useRowIndex = false;
+		this.rowIndex = null;
+		this.buildingRowIndex = false;
+		this.precision = GridPrecision.DOUBLE;
+		this.fractionDigits = -1;
+		this.outputOptions = new OutputOptions();
+		this.outputRaster = null;
+	}
+
+	/**
+	 * Creates a parser with a GridConverter's settings, which it keeps for every conversion.
+	 * 
+	 * @param outputDirectory
+	 *           The directory to write to, or null for the default CSV output directory.
+	 * @param clip
+	 *           The box to keep, or null to convert the whole table.
+	 * @param useRowIndex
+	 *           true to read grid files through a row index.
+	 * @param precision
+	 *           How the cells of parsed rasters are stored.
+	 * @param fractionDigits
+	 *           The number of digits to write after the point of each value in the CSV (0 to 18), or -1 for as many as the value needs.
+	 * @param outputOptions
+	 *           What is made from the cells besides the output.
+	 */
+	AsciiToCsv(File outputDirectory, BoundingBox clip, boolean useRowIndex, GridPrecision precision, int fractionDigits, OutputOptions outputOptions) {
+		this();
+		this.outputDirectory = outputDirectory;
+		this.clip = clip;
+		this.useRowIndex = useRowIndex;
+		this.precision = precision;
+		this.fractionDigits = fractionDigits;
+		this.outputOptions = outputOptions;
 	}
 
 	/**
 	 * 
-	 * @return the max value that has been parsed from the ascii table
+	 * @return the max value that has been parsed from the ascii table; NaN if no values (other than NODATA) have been parsed
 	 */
 	public double getMaxValue() {
-		return maxValue;
+		return statistics.getMax();
 	}
 
 	/**
 	 * 
-	 * @return the min value that has been parsed from the ascii table
+	 * @return the min value that has been parsed from the ascii table; NaN if no values (other than NODATA) have been parsed
 	 */
 	public double getMinValue() {
-		return minValue;
+		return statistics.getMin();
+	}
+
+	/**
+	 * 
+	 * @return the statistics (count, mean, variance, histogram, percentiles) of the values that have been parsed from the ascii table
+	 */
+	public GridStatistics getStatistics() {
+		return statistics;
 	}
 
 	/**
@@ -217,6 +334,201 @@ public class AsciiToCsv {
 		return this.headerParsed;
 	}
 	
+	/**
+	 * 
+	 * @return the byte offset of the first value in the table. Only valid once the header has been parsed.
+	 */
+	public long getBodyOffset() {
+		return this.bodyOffset;
+	}
+
+	/**
+	 * 
+	 * @return the values from the header, or null if the header hasn't been parsed.
+	 */
+	public GridHeader getHeader() {
+		return this.header;
+	}
+
+	/**
+	 * 
+	 * @return the box the table is clipped to, or null if the whole table is converted.
+	 */
+	public BoundingBox getClip() {
+		return this.clip;
+	}
+
+	/**
+	 * Clips the table to a latitude/longitude box. Cells outside of the box are skipped over without being converted, and are left out of the output and the statistics. The whole table is still checked against ncols * nrows.
+	 * 
+	 * @param clip
+	 *           the box to keep, or null to convert the whole table.
+	 * @deprecated Use GridConverter.withClip() instead; it gives each conversion its own parser with this setting.
+	 */
+	@Deprecated
+	public void setClip(BoundingBox clip) {
+		this.clip = clip;
+	}
+
+	/**
+	 * 
+	 * @return the listener that receives progress updates, or null if there isn't one.
+	 */
+	public ConversionListener getListener() {
+		return this.listener;
+	}
+
+	/**
+	 * Sets a listener which is told how far through the table the parse is, once per row.
+	 * 
+	 * @param listener
+	 *           the listener, or null to stop sending updates.
+	 */
+	public void setListener(ConversionListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Asks the parse to stop. May be called from any thread; the parse stops at the end of the row it is on, removes any partial output, and returns null (or false).
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * 
+	 * @return true if cancel() has been called, or the listener has cancelled the conversion.
+	 */
+	public boolean isCancelled() {
+		return this.cancelled || (this.listener != null && this.listener.isCancelled());
+	}
+
+	/**
+	 * 
+	 * @return the directory CSV files are written to, or null if they go to the default CSV output directory.
+	 */
+	public File getOutputDirectory() {
+		return this.outputDirectory;
+	}
+
+	/**
+	 * Changes where CSV files are written when no output file is given (such as by parseToCsv(File)).
+	 * 
+	 * @param outputDirectory
+	 *           the directory to write to, or null for the default CSV output directory.
+	 * @deprecated Use GridConverter.withOutputDirectory() instead; it gives each conversion its own parser with this setting.
+	 */
+	@Deprecated
+	public void setOutputDirectory(File outputDirectory) {
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * 
+	 * @return true if grid files are read through a row index.
+	 */
+	public boolean getUseRowIndex() {
+		return useRowIndex;
+	}
+
+	/**
+	 * Reading through a row index lets a clipped parse (or parseRowsToRaster()) seek straight to the rows it needs instead of scanning the file from the top. A file without an index is indexed the first time it is parsed, and the index is saved next to it.
+	 * 
+	 * @param useRowIndex
+	 *           true to read grid files through a row index.
+	 * @deprecated Use GridConverter.withUseRowIndex() instead; it gives each conversion its own parser with this setting.
+	 */
+	@Deprecated
+	public void setUseRowIndex(boolean useRowIndex) {
+		this.useRowIndex = useRowIndex;
+	}
+
+	/**
+	 * 
+	 * @return The row index of the last grid file parsed, or null if row indexes aren't in use.
+	 */
+	public GridRowIndex getRowIndex() {
+		return rowIndex;
+	}
+
+	/**
+	 * 
+	 * @return How the cells of parsed rasters are stored.
+	 */
+	public GridPrecision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Choosing FLOAT or SCALED_SHORT cuts the memory of parsed rasters by 2 or 4 times, at the cost of some precision. The largest error is logged for each grid parsed.
+	 * 
+	 * @param precision
+	 *           How the cells of parsed rasters are stored.
+	 * @deprecated Use GridConverter.withPrecision() instead; it gives each conversion its own parser with this setting.
+	 */
+	@Deprecated
+	public void setPrecision(GridPrecision precision) {
+		this.precision = precision;
+	}
+
+	/**
+	 * 
+	 * @return The number of digits written after the point of each value in the CSV; -1 for as many as the value needs.
+	 */
+	public int getFractionDigits() {
+		return fractionDigits;
+	}
+
+	/**
+	 * @param fractionDigits
+	 *           The number of digits to write after the point of each value in the CSV (0 to 18), or -1 for as many as the value needs to read back exactly.
+	 * @throws IllegalArgumentException
+	 *            If fractionDigits is out of range.
+	 * @deprecated Use GridConverter.withFractionDigits() instead; it gives each conversion its own parser with this setting.
+	 */
+	@Deprecated
+	public void setFractionDigits(int fractionDigits) {
+		if (fractionDigits < -1 || fractionDigits > 18)
+			throw new IllegalArgumentException("Fraction digits must be from 0 to 18, or -1.");
+		this.fractionDigits = fractionDigits;
+	}
+
+	/**
+	 * 
+	 * @return What is made from the cells besides the output.
+	 */
+	public OutputOptions getOutputOptions() {
+		return outputOptions;
+	}
+
+	/**
+	 * Sets what is made from the cells besides the output (see OutputOptions). Downsampling applies to every conversion; the pyramid, GeoTIFF, table and raster are only made by conversions to a file, and only a CSV is re-ordered.
+	 * 
+	 * @param outputOptions
+	 *           The options.
+	 * @deprecated Set up a GridConverter with withPyramid(), withDownsample(), withGeoTiff() and the rest of GridConverter's with...() methods instead; it gives each conversion its own parser with these settings.
+	 */
+	@Deprecated
+	public void setOutputOptions(OutputOptions outputOptions) {
+		this.outputOptions = outputOptions;
+	}
+
+	/**
+	 * 
+	 * @return The raster filled alongside the output of the last conversion to a file, if the output options asked for one (see OutputOptions.withRaster()); null otherwise. It is only complete if that conversion succeeded.
+	 */
+	public GridRaster getOutputRaster() {
+		return outputRaster;
+	}
+
+	/**
+	 * 
+	 * @return The header of the grid that is output: the parsed grid's header, or the coarser header if it is being downsampled.
+	 */
+	public GridHeader getOutputHeader() {
+		return outputOptions.getOutputHeader(header);
+	}
+
 	public long getvalues_parsed(){
 		return this.values_parsed;
 	}
@@ -228,304 +540,1274 @@ public class AsciiToCsv {
 	/**
 	 * 
 	 * @param ftp
-	 *           - The file to parse headers from.
+	 *           - The file to parse headers from (plain text or gzip compressed).
 	 * @return True if the header is successfully parsed (all values extracted in less than 30 lines). False otherwise.
 	 * @throws IOException
 	 *            the File cannot be found, or the program was stopped.
 	 */
 	protected boolean parseHeaders(File ftp) throws IOException {
 
-		// Open the file to Scan headers from
-		BufferedReader f = new BufferedReader(new FileReader(ftp));
-		// Open the scanner which will read line by line from ASCII file
-		Scanner scanner = new Scanner(f);
-		// The number of lines that have been scanned
-		char count = 0;
+		// Open the file to read headers from, avoid resource leak by closing when done
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.open(ftp))) {
+			return parseHeaders(tokenizer);
+		}
+	}
+
+	/**
+	 * Reads header labels and values from the tokenizer until all values are found. The tokenizer is left at the first value of the table.
+	 * 
+	 * @param tokenizer
+	 *           - The tokenizer positioned at the start of the file.
+	 * @return True if the header is successfully parsed (all values extracted in less than 30 lines). False otherwise.
+	 * @throws IOException
+	 *            the File cannot be read, or the program was stopped.
+	 */
+	protected boolean parseHeaders(AsciiGridTokenizer tokenizer) throws IOException {
 
 		// Repeat until header is completely parsed or the function returns false
-		while (scanner.hasNextLine() && !this.getHeaderParsed()) {
-
-			// Skip lines for reading until a line with values other than whitespace is found
-			String headers = "";
-			while (scanner.hasNextLine() && headers.replace(" ", "").equals("")) {
-				headers = scanner.nextLine();
-				count++;
-
-				// Avoids infinite loop by limiting lines in header to 30
-				if (count > 30) {
-					Logger.error("Over 30 lines found in header. Check input file and try again.");
-					scanner.close();
-					return false;
-				}
+		while (!this.getHeaderParsed()) {
+
+			// Blank lines are skipped by the tokenizer. A label must start with a letter, anything else is the start of the table.
+			int next = tokenizer.peek();
+			if (next == -1 || !Character.isLetter(next)) {
+				Logger.error("The file header is missing values. Please check the input file.");
+				return false;
+			}
+
+			// Avoids reading a whole file as a header by limiting lines in header to 30
+			if (tokenizer.getLineNumber() >= MAX_LINES_IN_HEADER) {
+				Logger.error("Over 30 lines found in header. Check input file and try again.");
+				return false;
+			}
+
+			String head = tokenizer.nextWord();
+			double value;
+			try {
+				value = tokenizer.nextDouble();
+			} catch (NumberFormatException e) {
+				Logger.error("Non double attempted to be parsed from the header. Please re-check your input file");
+				return false;
 			}
 
 			// Decide which value is given in this line, set the corresponding value
-			this.setHeaderValue(headers);
+			this.setHeaderValue(head, value);
 
 			// Set linesInHeader to corresponding count
-			this.linesInHeader = count;
+			this.linesInHeader = tokenizer.getLineNumber() + 1;
 
-			// If all values have been set to something other than default constructor values, header has been successfully parsed
-			if (this.ncols != 0 && this.nrows != 0 && this.xllcorner != 0 && this.yllcorner != 0 && this.cellSize != 0 && this.NODATA_value != 0)
+			// If all values have been found, header has been successfully parsed
+			if (this.headerFieldsFound == ALL_HEADER_FIELDS)
 				this.headerParsed = true;
-			else if (count > 30) {
-				System.out.println("The file header is having trouble being parsed. Please check the input file.");
-				Logger.error("The file header is having trouble being parsed. Please check the input file.");
-				// Close scanners to avoid resource leak
-				scanner.close();
-				return false;
-			}
 		}
-		// Close scanner to avoid resource leak
-		scanner.close();
+
+		// Remember where the table starts so that it can be read without scanning the header again
+		this.bodyOffset = tokenizer.getPosition();
+
+		// The table can only be read if the size of the grid makes sense
+		if (this.ncols <= 0 || this.nrows <= 0 || this.ncols != Math.rint(this.ncols) || this.nrows != Math.rint(this.nrows) || this.ncols * this.nrows > Integer.MAX_VALUE) {
+			Logger.error("The header has an invalid number of rows or columns. Please check the input file.");
+			return false;
+		}
+		setHeader(new GridHeader((int) this.ncols, (int) this.nrows, this.xllcorner, this.yllcorner, this.cellSize, this.NODATA_value));
 
 		return true;
 	}
 
 	/**
+	 * Sets the header values from a header that was read some other way (such as from the .hdr file of a binary grid).
 	 * 
-	 * Reads a single line from the header, and attempts to set the value associated with the defined label given in the line.
-	 * 
-	 * @param line
-	 *           The line to parse from. Includes the header value and the associated value.
-	 * @return true if a value was sucessfully parsed. False otherwise.
-	 * @throws InputMismatchException
-	 *            If a non-double value is attempted to be ripped from the file
+	 * @param header
+	 *           The header of the grid about to be parsed.
 	 */
-	protected boolean setHeaderValue(String line) throws InputMismatchException {
-		// Open scanner for reading line
-		Scanner scanheaders = new Scanner(line);
+	protected void setHeader(GridHeader header) {
+		this.ncols = header.getNcols();
+		this.nrows = header.getNrows();
+		this.xllcorner = header.getXllCorner();
+		this.yllcorner = header.getYllCorner();
+		this.cellSize = header.getCellSize();
+		this.NODATA_value = header.getNODATA();
+		this.headerFieldsFound = ALL_HEADER_FIELDS;
+		this.headerParsed = true;
+		this.header = header;
 
-		try {
-			// Read first value in the line
-			String head = scanheaders.next();
-
-			// Decide which value is given in this line, set the corresponding value
-			switch (head) {
-				case "":
-					// empty line, do nothing, shouldn't happen
-					scanheaders.close();
-					return false;
-				case "ncols":
-					this.ncols = scanheaders.nextDouble();
-					break;
-				case "nrows":
-					this.nrows = scanheaders.nextDouble();
-					break;
-				case "xllcorner":
-					this.xllcorner = scanheaders.nextDouble();
-					break;
-				case "yllcorner":
-					this.yllcorner = scanheaders.nextDouble();
-					break;
-				case "cellsize":
-					this.cellSize = scanheaders.nextDouble();
-					break;
-				case "NODATA_value":
-					this.NODATA_value = scanheaders.nextDouble();
-					break;
-			}
-		} catch (Exception e) {
-			Logger.error("Non double attempted to be parsed from the header. Please re-check your input file");
-			return false;
-		}
 		// Compute Longitude of Upper Left Corner
 		this.longitude = this.getXllCorner();
 		// Compute Latitude of Upper Left Corner
 		this.latitude = this.getYllCorner() + (this.getCellSize() * (this.getNrows() - 1));
+	}
 
-		// avoid resource leak
-		scanheaders.close();
+	/**
+	 * 
+	 * Sets the header value associated with the given label.
+	 * 
+	 * @param head
+	 *           The label read from the header line.
+	 * @param value
+	 *           The value that follows the label.
+	 * @return true if the label is known and the value was set. False otherwise.
+	 */
+	protected boolean setHeaderValue(String head, double value) {
+		// Decide which value is given in this line, set the corresponding value. Labels are not case sensitive in ESRI grids.
+		switch (head.toLowerCase()) {
+			case "ncols":
+				this.ncols = value;
+				this.headerFieldsFound |= 1;
+				break;
+			case "nrows":
+				this.nrows = value;
+				this.headerFieldsFound |= 1 << 1;
+				break;
+			case "xllcorner":
+				this.xllcorner = value;
+				this.headerFieldsFound |= 1 << 2;
+				break;
+			case "yllcorner":
+				this.yllcorner = value;
+				this.headerFieldsFound |= 1 << 3;
+				break;
+			case "cellsize":
+				this.cellSize = value;
+				this.headerFieldsFound |= 1 << 4;
+				break;
+			case "nodata_value":
+				this.NODATA_value = value;
+				this.headerFieldsFound |= 1 << 5;
+				break;
+			default:
+				Logger.warn("Unknown header label {} was ignored.", head);
+				return false;
+		}
 		return true;
-
 	}
 
 	/**
-	 * Parse an ASCII file to CSV and output a reference to the parsed file.
+	 * Parse an ASCII file to CSV and output a reference to the parsed file. The file is opened once and read in a single pass: the header is parsed and the tokenizer carries straight on into the table. Rows are streamed to disk as they are parsed, so memory use does not grow with the size of the table. Gzip compressed files are decompressed as they are read.
 	 * 
 	 * @param ftp
-	 *           The file that you wish to parse.
+	 *           The file that you wish to parse (plain text or gzip compressed).
 	 * @return The File reference where the parsed file is stored.
 	 * @throws IOException
 	 *            Likely means that a file wasn't found.
 	 */
 	public File parseToCsv(File ftp) throws IOException {
 
-		if (parseHeaders(ftp)) {
-			ArrayList<String> printing = parseBody(ftp);
-			if (printing == null)
-				return null;
-			else {
-
-				String fileName = ftp.getName();
-				// Avoid ESRI filename error in output file by changing dashes to underscores. Unknown reasoning.
-				if (fileName.contains("-"))
-					fileName = fileName.replace("-", "_");
-
-				// Remove extension from file name
-				fileName = fileName.substring(0, fileName.length() - 4);
-				// Create the output file
-				File outFile = new File(FileLocations.CSV_OUTPUT_DIRECTORY_LOCATION + fileName + ".csv");
-
-				// PrintWriter for Writing to Output file
-				PrintWriter output = new PrintWriter(new BufferedWriter(new FileWriter(outFile)));
-				// Write header to output CSV file
-				output.println("latitude,longitude,value");
-
-				while (!printing.isEmpty())
-					// Print lines to output, with the first two lines being the min and max values
-					output.println(printing.remove(0));
-				// Avoid resource leak
-				output.close();
-				return outFile;
-			}
-		} else
-			return null;
+		if (this.useRowIndex)
+			return parseToCsvWithIndex(ftp);
+
+		// Open the file once for both the header and the table. Avoid resource leak by closing when done.
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.open(ftp))) {
+			return parseToCsv(tokenizer, getOutputFile(ftp));
+		}
 	}
 
 	/**
-	 * Attempts to parse the body of the given ASCII file. This is the "table" of values to be parsed.
-	 * 
+	 * Parse an ASCII grid to CSV in a single pass over the given channel.
 	 * 
-	 * 
-	 * @param ftp
-	 *           the file to parse
-	 * @return the arraylist of values parsed. Index 0 is the min and Index 1 is the max.
+	 * @param input
+	 *           The channel to read the ASCII grid from, positioned at the start of the header. It is not closed by this method.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The File reference where the parsed file is stored, or null if the grid was invalid.
 	 * @throws IOException
-	 *            File Not Found
-	 * @throws InputMismatchException
-	 *            a non double value was found in the Table
+	 *            The channel couldn't be read, or the output couldn't be written.
 	 */
-	protected ArrayList<String> parseBody(File ftp) throws IOException, InputMismatchException {
-
-		// Should never happen
-		if (!this.getHeaderParsed()) {
-			Logger.error("Header was not successfully parsed. Check the input file. Failing in ParseBody method of AsciiToCsv.");
-			return null;
-		} else {
-
-			// Create Buffered Reader for Reading lines from input file
-			BufferedReader f = new BufferedReader(new FileReader(ftp));
-			// Create ArrayList to hold Strings for output
-			ArrayList<String> lines = new ArrayList<String>();
-
-			// Scanner for reading lines
-			Scanner scanner;
-			// Current line
-			String scanning = "";
+	public File parseToCsv(ReadableByteChannel input, File outFile) throws IOException {
+		return parseToCsv(new AsciiGridTokenizer(input), outFile);
+	}
 
-			// Set the Scanner to the input file
-			scanner = new Scanner(f);
+	/**
+	 * Parses the header and then the table from the same tokenizer, streaming the rows to outFile.
+	 * 
+	 * @param tokenizer
+	 *           The tokenizer positioned at the start of the header.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The File reference where the parsed file is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            The input couldn't be read, or the output couldn't be written.
+	 */
+	protected File parseToCsv(AsciiGridTokenizer tokenizer, File outFile) throws IOException {
 
-			// Skip all lines in header to access table.
-			char skip = 0;
-			while (scanner.hasNextLine() && skip != this.getLinesInHeader()) {
-				scanner.nextLine();
-				skip++;
-			}
+		if (parseHeaders(tokenizer)) {
 
-			// The current row
-			int rows = 0;
-			// The current column
-			int columns = 0;
-
-			// While there are lines in the input document
-			while (scanner.hasNextLine()) {
-				// Read until line has something besides whitespace
-				scanning = "";
-				while (scanning.replace(" ", "").equals(""))
-					scanning = scanner.nextLine();
-
-				// Scanner for the current line
-				Scanner linescan = new Scanner(scanning);
-
-				// While we continue to find doubles in the line
-				while (linescan.hasNextDouble()) {
-					try {
-
-						// Get the next value in the line
-						double value = linescan.nextDouble();
-						increment_values_parsed();
-
-						// If we want to print the value
-						if (value != NODATA_value)
-							// add to array list
-							this.addValueToList(value, lines, rows, columns);
-					} catch (Exception e) {
-						Logger.error("1: Non double value found in the body of the Table. Please check your input file.");
-						linescan.close();
-						return null;
-					}
-					columns++;
-					// If the current number of columns equals NCols, go to next row
-					if (columns % this.getNcols() == 0) {
-						// Only reset columns if we are still within the valid table
-						if (rows < this.getNrows() - 1)
-							columns = 0;
-						rows++;
-					}
-				}
-				// Check if failed on non-double.
-				if ((linescan.hasNext() && !(linescan.next().trim().equals("")))) {
-					Logger.error("2: Non double value found in the body of the Table. Please check your input file.");
-					linescan.close();
-					return null;
-				}
+			// Writer that streams rows to the output file, with the first two lines being the min and max values
+			CsvGridWriter output = createWriter(outFile);
 
+			OutputChain chain = null;
+			boolean parsed = false;
+			try {
+				chain = createChain(outFile, csvHandler(output), true, false);
+				parsed = parseBody(tokenizer, chain.getHandler());
+			} finally {
 				// Avoid resource leak
-				linescan.close();
+				if (!parsed)
+					abort(output, chain);
 			}
 
-			// Print out Max and Min (TESTING PURPOSES)
-			Logger.debug("Max: {}, Min: {}", this.getMaxValue(), this.getMinValue());
-			// Avoid resource leak
-			scanner.close();
-			
-			if((long) (this.getNcols() * this.getNrows()) != this.getvalues_parsed()){
-				Logger.error("Number of rows and columns in the header do not match the number of values in the document. Please check your input file.");
+			if (parsed)
+				return finish(output, chain);
+			else
 				return null;
-			}
-			
-			// Return the arrayList containing all of the read lines
-			return lines;
+		} else
+			return null;
+	}
+
+	/**
+	 * Parse an ASCII file to a binary grid (see BinaryGridWriter) instead of a CSV file, next to where its CSV would go. The file is read in a single pass and the values are streamed to disk as they are parsed. The cells are always stored in table order, whatever the cell order.
+	 * 
+	 * @param ftp
+	 *           The file that you wish to parse (plain text or gzip compressed).
+	 * @return The File reference where the binary grid is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public File parseToBinary(File ftp) throws IOException {
+
+		// Avoid resource leak by closing when done.
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.open(ftp))) {
+			return parseToBinary(tokenizer, BinaryGridWriter.getOutputFile(getOutputFile(ftp)));
 		}
 	}
 
 	/**
-	 * Helper method for adding values to the ArrayList to be printed Format's strings for output and places in the appropriate spot in ArrayList. Index 0 should always be min and Index 1 should always be Max.
+	 * Parse an ASCII grid held in memory (such as an uploaded file) to a binary grid in a single pass. A gzip compressed grid is decompressed as it is parsed.
 	 * 
-	 * @param value
-	 *           the value to insert into the arraylist.
-	 * @param lines
-	 *           the arraylist of values being effected.
-	 * @param rows
-	 *           the current number of rows navigated through the body.
-	 * @param columns
-	 *           the current number of columns navigated through the body.
+	 * @param input
+	 *           The whole ASCII grid (plain text or gzip compressed), from its position to its limit. Its position is not changed.
+	 * @param outFile
+	 *           The binary grid file to create.
+	 * @return The File reference where the binary grid is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            The output couldn't be written.
 	 */
-	protected void addValueToList(Double value, ArrayList<String> lines, int rows, int columns) {
-		// No values have been added to array list
-		// Set min and max. Set to value 0
-		if (this.getMaxValue() == Double.MAX_VALUE && this.getMinValue() == Double.MAX_VALUE) {
-			this.maxValue = value;
-			this.minValue = value;
-			lines.add((latitude - rows * this.getCellSize()) + "," + (longitude + columns * this.getCellSize()) + "," + value);
-		} else if (value > this.getMaxValue()) {
-			// Set the new max value, add at the 1 index
-			this.maxValue = value;
-			lines.add(1, (latitude - rows * this.getCellSize()) + "," + (longitude + columns * this.getCellSize()) + "," + value);
-		} else if (value < this.getMinValue()) {
-			// Set the new min value, add at the 0 index
-			this.minValue = value;
-			lines.add(0, (latitude - rows * this.getCellSize()) + "," + (longitude + columns * this.getCellSize()) + "," + value);
-			// If there are more than two items, the current max has been pushed to the two index as a result of the push to 0 by min
-			// Remove index at 2 and add at index 1
-			if (lines.size() > 2) {
-				String temp = lines.remove(2);
-				lines.add(1, temp);
+	public File parseToBinary(ByteBuffer input, File outFile) throws IOException {
+		if (GridInput.isGzip(input)) {
+			try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.openGzip(input))) {
+				return parseToBinary(tokenizer, outFile);
 			}
-		} else
-			// Not Min or Max, add at end of list.
-			lines.add((latitude - rows * this.getCellSize()) + "," + (longitude + columns * this.getCellSize()) + "," + value);
+		}
+
+		return parseToBinary(new AsciiGridTokenizer(input), outFile);
+	}
+
+	/**
+	 * Parses the header and then the table from the same tokenizer, streaming the values to outFile.
+	 * 
+	 * @param tokenizer
+	 *           The tokenizer positioned at the start of the header.
+	 * @param outFile
+	 *           The binary grid file to create.
+	 * @return The File reference where the binary grid is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            The input couldn't be read, or the output couldn't be written.
+	 */
+	protected File parseToBinary(AsciiGridTokenizer tokenizer, File outFile) throws IOException {
+
+		if (!parseHeaders(tokenizer))
+			return null;
+
+		BinaryGridWriter output = new BinaryGridWriter(this.getOutputHeader(), this.precision, outFile);
+
+		OutputChain chain = null;
+		boolean parsed = false;
+		try {
+			chain = createChain(outFile, output, false, false);
+			parsed = parseBody(tokenizer, chain.getHandler());
+		} finally {
+			// Avoid resource leak
+			if (!parsed)
+				abort(output, chain);
+		}
+
+		return parsed ? outFile : null;
+	}
+
+	/**
+	 * Parse an ASCII file into an in-memory GridRaster instead of a CSV file. The table is read once, or twice for a SCALED_SHORT raster (see parseRaster()).
+	 * 
+	 * @param ftp
+	 *           The file that you wish to parse (plain text or gzip compressed).
+	 * @return The parsed grid, or null if the file was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public GridRaster parseToRaster(File ftp) throws IOException {
+
+		if (this.useRowIndex)
+			return parseRowsToRaster(ftp, 0, Integer.MAX_VALUE);
+
+		if (!parseHeaders(ftp))
+			return null;
+
+		return parseRaster(handler -> {
+			// Open the input file and skip straight past the header to access table. Avoid resource leak by closing when done.
+			try (ReadableByteChannel channel = GridInput.open(ftp, this.bodyOffset)) {
+				return parseBody(bodyTokenizer(channel), handler);
+			}
+		}, ftp.getName());
+	}
+
+	/**
+	 * Parse an ASCII grid into an in-memory GridRaster in a single pass over the given channel. A channel can only be read once, so a SCALED_SHORT raster is parsed into floats and scaled once the range of its values is known, which takes 3 times the memory of the raster while it is copied.
+	 * 
+	 * @param input
+	 *           The channel to read the ASCII grid from, positioned at the start of the header. It is not closed by this method.
+	 * @return The parsed grid, or null if the grid was invalid.
+	 * @throws IOException
+	 *            The channel couldn't be read.
+	 */
+	public GridRaster parseToRaster(ReadableByteChannel input) throws IOException {
+		AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(input);
+		if (!parseHeaders(tokenizer))
+			return null;
+
+		if (this.precision != GridPrecision.SCALED_SHORT)
+			return parseRaster(handler -> parseBody(tokenizer, handler), "grid");
+
+		GridRaster raster = new GridRaster(this.getOutputHeader(), GridPrecision.FLOAT);
+		if (!parseBody(tokenizer, outputOptions.downsample(this.getHeader(), raster)))
+			return null;
+
+		return logRaster(raster.toScaledShort(), "grid");
+	}
+
+	/**
+	 * Parse an ASCII grid held in memory (such as an uploaded file) into an in-memory GridRaster. A gzip compressed grid is decompressed as it is parsed. The table is read once, or twice for a SCALED_SHORT raster (see parseRaster()).
+	 * 
+	 * @param input
+	 *           The whole ASCII grid (plain text or gzip compressed), from its position to its limit. Its position is not changed.
+	 * @return The parsed grid, or null if the grid was invalid.
+	 * @throws IOException
+	 *            A compressed grid couldn't be read.
+	 */
+	public GridRaster parseToRaster(ByteBuffer input) throws IOException {
+		if (GridInput.isGzip(input)) {
+			try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.openGzip(input))) {
+				if (!parseHeaders(tokenizer))
+					return null;
+			}
+
+			return parseRaster(handler -> {
+				try (ReadableByteChannel channel = GridInput.openGzip(input, this.bodyOffset)) {
+					return parseBody(bodyTokenizer(channel), handler);
+				}
+			}, "grid");
+		}
+
+		if (!parseHeaders(new AsciiGridTokenizer(input)))
+			return null;
+
+		return parseRaster(handler -> {
+			ByteBuffer body = input.duplicate();
+			body.position(input.position() + (int) this.bodyOffset);
+			return parseBody(bodyTokenizer(body), handler);
+		}, "grid");
+	}
+
+	/**
+	 * Parse an ASCII file into an in-memory SparseGrid, which stores only the cells with data. For grids that are mostly NODATA (such as GLOBAL maps, which are mostly ocean) this takes a fraction of the memory of parseToRaster(File). The file is read in a single pass.
+	 * 
+	 * @param ftp
+	 *           The file that you wish to parse (plain text or gzip compressed).
+	 * @return The parsed grid, or null if the file was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public SparseGrid parseToSparse(File ftp) throws IOException {
+
+		// Avoid resource leak by closing when done.
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.open(ftp))) {
+			if (!parseHeaders(tokenizer))
+				return null;
+
+			// A sparse grid can't hold scaled shorts, so a SCALED_SHORT grid is stored as floats
+			SparseGrid grid = new SparseGrid(this.getOutputHeader(), this.precision == GridPrecision.DOUBLE ? GridPrecision.DOUBLE : GridPrecision.FLOAT);
+			if (!parseBody(tokenizer, outputOptions.downsample(this.getHeader(), grid)))
+				return null;
+
+			Logger.info("Stored {} of {} cells of {} as {} runs ({} bytes), largest error {}", grid.getValidCount(), grid.getHeader().getCellCount(), ftp.getName(), grid.getRunCount(), grid.getSizeInBytes(), grid.getMaxError());
+			return grid;
+		}
+	}
+
+	/**
+	 * Parse an ASCII file to CSV using every core. The table is memory mapped and split into chunks that are parsed at the same time. Produces the same output as parseToCsv(File), and is faster for large files. If a pyramid, GeoTIFF or table is wanted as well, the cells with data of the chunks parsed ahead of them are held in memory until they can be sent on in table order. A gzip compressed file can't be mapped, and a downsampled or re-ordered grid can't be
+	 * split, so those are parsed by parseToCsv(File) instead.
+	 * 
+	 * @param ftp
+	 *           The file that you wish to parse.
+	 * @return The File reference where the parsed file is stored.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public File parseToCsvParallel(File ftp) throws IOException {
+
+		if (GridInput.isGzip(ftp)) {
+			Logger.info("{} is compressed, parsing it on one core.", ftp.getName());
+			return parseToCsv(ftp);
+		}
+
+		// Blocks and tiles would straddle the chunks, so downsample and re-order on one core
+		if (!isParallelSafe())
+			return parseToCsv(ftp);
+
+		if (parseHeaders(ftp)) {
+
+			// Create the output file
+			File outFile = getOutputFile(ftp);
+
+			ParallelBodyParser body = createParallelParser();
+			OutputChain extras = createExtras(outFile);
+			boolean parsed = false;
+			try {
+				parsed = finishParallel(body, body.parseToCsv(ftp, outFile, extras != null ? extras.getHandler() : null), outFile) != null;
+			} finally {
+				if (!parsed && extras != null)
+					extras.abort();
+			}
+			return parsed ? outFile : null;
+		} else
+			return null;
+	}
+
+	/**
+	 * Parse an ASCII grid held in memory (such as an uploaded file) to CSV using every core. Nothing is written to disk except the CSV. A gzip compressed grid is parsed by parseToCsv(ByteBuffer, File) instead.
+	 * 
+	 * @param input
+	 *           The whole ASCII grid, from its position to its limit. Its position is not changed.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The File reference where the parsed file is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            The output couldn't be written.
+	 */
+	public File parseToCsvParallel(ByteBuffer input, File outFile) throws IOException {
+
+		// Blocks and tiles would straddle the chunks, so downsample and re-order on one core
+		if (GridInput.isGzip(input) || !isParallelSafe())
+			return parseToCsv(input, outFile);
+
+		if (parseHeaders(new AsciiGridTokenizer(input))) {
+			ParallelBodyParser body = createParallelParser();
+			OutputChain extras = createExtras(outFile);
+			boolean parsed = false;
+			try {
+				parsed = finishParallel(body, body.parseToCsv(input, outFile, extras != null ? extras.getHandler() : null), outFile) != null;
+			} finally {
+				if (!parsed && extras != null)
+					extras.abort();
+			}
+			return parsed ? outFile : null;
+		} else
+			return null;
+	}
+
+	/**
+	 * Copies the results of a parallel parse into this object.
+	 * 
+	 * @param body
+	 *           The parser that parsed the table.
+	 * @param statistics
+	 *           The statistics of the table, or null if the table was invalid.
+	 * @param outFile
+	 *           The CSV file that was created.
+	 * @return outFile, or null if the table was invalid.
+	 */
+	private File finishParallel(ParallelBodyParser body, GridStatistics statistics, File outFile) {
+		this.values_parsed = body.getValuesParsed();
+
+		if (statistics == null)
+			return null;
+
+		this.statistics = statistics;
+		// Print out the statistics (TESTING PURPOSES)
+		Logger.debug("Statistics: {}", this.statistics);
+
+		return outFile;
+	}
+
+	/**
+	 * Parse an ASCII grid held in memory (such as an uploaded file) to CSV in a single pass. Nothing is written to disk except the CSV. A gzip compressed grid is decompressed as it is parsed.
+	 * 
+	 * @param input
+	 *           The whole ASCII grid (plain text or gzip compressed), from its position to its limit. Its position is not changed.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The File reference where the parsed file is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            The output couldn't be written.
+	 */
+	public File parseToCsv(ByteBuffer input, File outFile) throws IOException {
+		if (GridInput.isGzip(input)) {
+			try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(GridInput.openGzip(input))) {
+				return parseToCsv(tokenizer, outFile);
+			}
+		}
+
+		return parseToCsv(new AsciiGridTokenizer(input), outFile);
+	}
+
+	/**
+	 * Creates the parser that parses the table in chunks, once the header has been parsed.
+	 * 
+	 * @return A parser splitting the table into one chunk per core.
+	 */
+	protected ParallelBodyParser createParallelParser() {
+		return new ParallelBodyParser(this);
+	}
+
+	/**
+	 * Parse an ASCII file to CSV through its row index. If there is a clipping box and the file has already been indexed, only the rows inside the box are read; otherwise the whole file is read and indexed on the way.
+	 * 
+	 * @param ftp
+	 *           The file that you wish to parse (plain text or gzip compressed).
+	 * @return The File reference where the parsed file is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	private File parseToCsvWithIndex(File ftp) throws IOException {
+
+		if (parseHeaders(ftp)) {
+
+			// Writer that streams rows to the output file, with the first two lines being the min and max values
+			File outFile = getOutputFile(ftp);
+			CsvGridWriter output = createWriter(outFile);
+
+			OutputChain chain = null;
+			boolean parsed = false;
+			try {
+				GridHeader grid = this.getHeader();
+				chain = createChain(outFile, csvHandler(output), true, false);
+				if (clip != null)
+					parsed = parseRows(ftp, clip.firstRow(grid), clip.lastRow(grid), chain.getHandler());
+				else
+					parsed = parseRows(ftp, 0, grid.getNrows() - 1, chain.getHandler());
+			} finally {
+				// Avoid resource leak
+				if (!parsed)
+					abort(output, chain);
+			}
+
+			if (parsed)
+				return finish(output, chain);
+			else
+				return null;
+		} else
+			return null;
+	}
+
+	/**
+	 * Parse a range of rows of an ASCII file into an in-memory GridRaster, seeking straight to the first row if the file has a row index (and indexing it otherwise). The rest of the raster is left as NODATA.
+	 * 
+	 * @param ftp
+	 *           The file that you wish to parse (plain text or gzip compressed).
+	 * @param firstRow
+	 *           The first row to parse, 0 being the top.
+	 * @param lastRow
+	 *           The last row to parse; rows past the end of the grid are ignored.
+	 * @return The parsed grid, or null if the file was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public GridRaster parseRowsToRaster(File ftp, int firstRow, int lastRow) throws IOException {
+
+		if (!parseHeaders(ftp))
+			return null;
+
+		int toRow = Math.min(lastRow, this.getHeader().getNrows() - 1);
+		return parseRaster(handler -> parseRows(ftp, firstRow, toRow, handler), ftp.getName());
+	}
+
+	/**
+	 * Parses a range of rows of the table, after the header has been parsed. If the file has an up to date row index the rows are read by seeking straight to the first of them. If it doesn't, the table is read from the top and, when row indexes are in use, indexed on the way.
+	 * 
+	 * @param ftp
+	 *           The file being parsed (plain text or gzip compressed).
+	 * @param firstRow
+	 *           The first row to parse.
+	 * @param lastRow
+	 *           The last row to parse. Less than firstRow if no rows are wanted.
+	 * @param handler
+	 *           the handler which every parsed cell is sent to.
+	 * @return true if the rows were parsed; false if the table was invalid.
+	 * @throws IOException
+	 *            the input could not be read, or the output could not be written to.
+	 */
+	protected boolean parseRows(File ftp, int firstRow, int lastRow, GridCellHandler handler) throws IOException {
+		GridHeader grid = this.getHeader();
+
+		this.rowIndex = this.useRowIndex ? GridRowIndex.load(ftp, grid.getNrows()) : null;
+
+		// No rows wanted, so there is nothing to read
+		if (this.rowIndex != null && firstRow > lastRow) {
+			this.values_parsed = grid.getCellCount();
+			return this.rowStarted(grid.getNrows(), 0);
+		}
+		firstRow = Math.max(0, firstRow);
+
+		// Without an index the table has to be read from the top, so index it on the way
+		boolean seek = this.rowIndex != null;
+		if (!seek && this.useRowIndex) {
+			this.rowIndex = new GridRowIndex(ftp, grid.getNrows());
+			this.buildingRowIndex = true;
+		}
+
+		int startRow = seek ? firstRow : 0;
+		long position = seek ? this.rowIndex.getOffset(startRow) : this.bodyOffset;
+
+		boolean parsed;
+		// Open the input file and skip straight to the first row needed. Avoid resource leak by closing when done.
+		try (ReadableByteChannel channel = GridInput.open(ftp, position)) {
+			AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(channel);
+			tokenizer.setPosition(position);
+			tokenizer.setLineNumber(seek ? this.rowIndex.getLine(startRow) : this.getLinesInHeader() - 1);
+			parsed = parseBody(tokenizer, handler, startRow, firstRow, lastRow);
+		} finally {
+			this.buildingRowIndex = false;
+		}
+
+		if (parsed && !seek && this.rowIndex != null)
+			this.rowIndex.save(ftp);
+
+		return parsed;
+	}
+
+	/**
+	 * Parse an ESRI binary float grid (a .flt file and its .hdr file) to CSV. The values are read straight from the .flt file a row at a time, so nothing is converted from text; if a clipping box is set, only the rows and columns inside it are read at all. The CSV has the same layout as one made from
+	 * an ASCII grid.
+	 * 
+	 * @param ftp
+	 *           Either the .flt or the .hdr file of the grid.
+	 * @return The File reference where the parsed file is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public File parseFloatGridToCsv(File ftp) throws IOException {
+
+		// Avoid resource leak by closing when done.
+		try (FloatGridReader reader = new FloatGridReader(ftp)) {
+			if (!reader.readHeader())
+				return null;
+			setHeader(reader.getHeader());
+
+			File outFile = getOutputFile(reader.getFltFile());
+			CsvGridWriter output = createWriter(outFile);
+
+			OutputChain chain = null;
+			boolean parsed = false;
+			try {
+				// Combined values aren't floats any more
+				chain = createChain(outFile, outputOptions.getDownsampleFactor() > 1 ? csvHandler(output) : floatCsvHandler(output), true, true);
+				parsed = parseBody(reader, chain.getHandler());
+			} finally {
+				// Avoid resource leak
+				if (!parsed)
+					abort(output, chain);
+			}
+
+			if (parsed)
+				return finish(output, chain);
+			else
+				return null;
+		}
+	}
+
+	/**
+	 * Parse an ESRI binary float grid to a binary grid (see BinaryGridWriter), next to where its CSV would go. Values are stored as floats unless they are combined by downsampling and the precision is DOUBLE.
+	 * 
+	 * @param ftp
+	 *           Either the .flt or the .hdr file of the grid.
+	 * @return The File reference where the binary grid is stored, or null if the grid was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public File parseFloatGridToBinary(File ftp) throws IOException {
+
+		// Avoid resource leak by closing when done.
+		try (FloatGridReader reader = new FloatGridReader(ftp)) {
+			if (!reader.readHeader())
+				return null;
+			setHeader(reader.getHeader());
+
+			File outFile = BinaryGridWriter.getOutputFile(getOutputFile(reader.getFltFile()));
+			BinaryGridWriter output = new BinaryGridWriter(this.getOutputHeader(), outputOptions.getDownsampleFactor() > 1 ? this.precision : GridPrecision.FLOAT, outFile);
+
+			OutputChain chain = null;
+			boolean parsed = false;
+			try {
+				chain = createChain(outFile, output, false, true);
+				parsed = parseBody(reader, chain.getHandler());
+			} finally {
+				// Avoid resource leak
+				if (!parsed)
+					abort(output, chain);
+			}
+
+			return parsed ? outFile : null;
+		}
+	}
+
+	/**
+	 * Parse an ESRI binary float grid into an in-memory GridRaster.
+	 * 
+	 * @param ftp
+	 *           Either the .flt or the .hdr file of the grid.
+	 * @return The parsed grid, or null if the grid was invalid.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public GridRaster parseFloatGridToRaster(File ftp) throws IOException {
+
+		// Avoid resource leak by closing when done.
+		try (FloatGridReader reader = new FloatGridReader(ftp)) {
+			if (!reader.readHeader())
+				return null;
+			setHeader(reader.getHeader());
+
+			return parseRaster(handler -> parseBody(reader, handler), reader.getFltFile().getName());
+		}
+	}
+
+	/**
+	 * One pass over the table of a grid whose header has been parsed.
+	 */
+	private interface TablePass {
+
+		/**
+		 * @param handler
+		 *           The handler which every parsed cell is sent to.
+		 * @return true if the table was parsed; false if it was invalid or the parse was cancelled.
+		 * @throws IOException
+		 *            The input could not be read.
+		 */
+		boolean parse(GridCellHandler handler) throws IOException;
+	}
+
+	/**
+	 * Parses the table of a grid whose header has been parsed into a raster of the chosen precision. A SCALED_SHORT raster needs the range of its values before the first one is stored, so for one the table is parsed twice: first to find the range of the output cells without storing any of
+	 * them, then to fill the raster. That costs a second read of the input instead of a float copy of the whole grid. The statistics are those of the second pass, and progress is reported for both.
+	 * 
+	 * @param pass
+	 *           Parses the table; it is called once, or twice for a SCALED_SHORT raster.
+	 * @param name
+	 *           The name of the grid, for the log.
+	 * @return The parsed grid, or null if the table was invalid.
+	 * @throws IOException
+	 *            The input could not be read.
+	 */
+	private GridRaster parseRaster(TablePass pass, String name) throws IOException {
+		GridRaster raster;
+		if (this.precision == GridPrecision.SCALED_SHORT) {
+			ValueRange range = new ValueRange(this.getOutputHeader());
+			if (!pass.parse(outputOptions.downsample(this.getHeader(), range)))
+				return null;
+			this.statistics = new GridStatistics();
+			raster = new GridRaster(this.getOutputHeader(), range.getMin(), range.getMax());
+		} else
+			raster = new GridRaster(this.getOutputHeader(), this.precision);
+
+		if (!pass.parse(outputOptions.downsample(this.getHeader(), raster)))
+			return null;
+
+		return logRaster(raster, name);
+	}
+
+	/**
+	 * Creates a tokenizer for the table of a grid whose header has been parsed.
+	 * 
+	 * @param channel
+	 *           The input, positioned straight past the header.
+	 * @return A tokenizer whose positions and line numbers match the whole input.
+	 */
+	private AsciiGridTokenizer bodyTokenizer(ReadableByteChannel channel) {
+		AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(channel);
+		tokenizer.setPosition(this.bodyOffset);
+		tokenizer.setLineNumber(this.getLinesInHeader() - 1);
+		return tokenizer;
+	}
+
+	/**
+	 * Creates a tokenizer for the table of a grid held in memory whose header has been parsed.
+	 * 
+	 * @param body
+	 *           The input, from straight past the header to its end.
+	 * @return A tokenizer whose positions and line numbers match the whole input.
+	 */
+	private AsciiGridTokenizer bodyTokenizer(ByteBuffer body) {
+		AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(body);
+		tokenizer.setPosition(this.bodyOffset);
+		tokenizer.setLineNumber(this.getLinesInHeader() - 1);
+		return tokenizer;
+	}
+
+	/**
+	 * Logs how much memory a parsed raster uses and the largest error in its values.
+	 * 
+	 * @param raster
+	 *           The raster, with the grid parsed into it.
+	 * @param name
+	 *           The name of the grid, for the log.
+	 * @return The raster.
+	 */
+	private GridRaster logRaster(GridRaster raster, String name) {
+		Logger.info("Stored {} cells of {} as {} ({} bytes), largest error {}", raster.getHeader().getCellCount(), name, raster.getPrecision(), raster.getSizeInBytes(), raster.getMaxError());
+		return raster;
+	}
+
+	/**
+	 * 
+	 * @return true if the table can be parsed in chunks at the same time with these output options. Blocks and curve tiles would straddle the chunks, so a downsampled or re-ordered grid can't be; the pyramid, GeoTIFF and table are written once the chunks are done (see ParallelBodyParser).
+	 */
+	private boolean isParallelSafe() {
+		return outputOptions.getDownsampleFactor() == 1 && outputOptions.getCellOrder() == CellOrder.ROW;
+	}
+
+	/**
+	 * Builds the chain that the cells of the grid whose header has just been parsed go through on their way to the output (see OutputChain.create()), and keeps its raster, if any, for getOutputRaster().
+	 * 
+	 * @param outFile
+	 *           The output being created.
+	 * @param output
+	 *           The handler that writes the output, or null if only the rest of the chain is wanted.
+	 * @param csv
+	 *           true if output writes a CSV.
+	 * @param floats
+	 *           true if the parsed values are floats.
+	 * @return The chain.
+	 * @throws IOException
+	 *            The temporary file of the pyramid, GeoTIFF or table could not be created.
+	 */
+	private OutputChain createChain(File outFile, GridCellHandler output, boolean csv, boolean floats) throws IOException {
+		outputRaster = null;
+		OutputChain chain = OutputChain.create(outputOptions, this.getHeader(), outFile, output, csv, floats, fractionDigits);
+		outputRaster = chain.getRaster();
+		return chain;
+	}
+
+	/**
+	 * Builds the chain that writes the pyramid, GeoTIFF, table and raster of a grid parsed in parallel, whose CSV is written by the chunks themselves.
+	 * 
+	 * @param outFile
+	 *           The CSV file being created.
+	 * @return The chain, or null if none of them were asked for.
+	 * @throws IOException
+	 *            The temporary file of the pyramid, GeoTIFF or table could not be created.
+	 */
+	private OutputChain createExtras(File outFile) throws IOException {
+		if (outputOptions.getPyramidLevels() == 0 && !outputOptions.getGeoTiff() && outputOptions.getTableDirectory() == null && outputOptions.getRasterPrecision() == null)
+			return null;
+		return createChain(outFile, null, true, false);
+	}
+
+	/**
+	 * Moves the CSV of a conversion whose cells have all been parsed into place. If it can't be, the pyramid, GeoTIFF and table already saved next to it are thrown away as well.
+	 * 
+	 * @param output
+	 *           The writer of the CSV.
+	 * @param chain
+	 *           The chain the cells went through, which has been finished.
+	 * @return The CSV file.
+	 * @throws IOException
+	 *            The CSV file couldn't be written.
+	 */
+	private static File finish(CsvGridWriter output, OutputChain chain) throws IOException {
+		try {
+			return output.finish();
+		} catch (IOException e) {
+			chain.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Throws away the temporary files of a CSV conversion that failed, including those of its pyramid, GeoTIFF and table.
+	 * 
+	 * @param output
+	 *           The writer of the CSV.
+	 * @param chain
+	 *           The chain the cells went through, or null if it wasn't built.
+	 */
+	private static void abort(CsvGridWriter output, OutputChain chain) {
+		output.abort();
+		if (chain != null)
+			chain.abort();
+	}
+
+	/**
+	 * Throws away the temporary files of a binary grid conversion that failed, including those of its pyramid, GeoTIFF and table.
+	 * 
+	 * @param output
+	 *           The writer of the binary grid.
+	 * @param chain
+	 *           The chain the cells went through, or null if it wasn't built.
+	 */
+	private static void abort(BinaryGridWriter output, OutputChain chain) {
+		output.abort();
+		if (chain != null)
+			chain.abort();
+	}
+
+	/**
+	 * Creates the writer that the rows of the grid that has just been parsed are streamed to.
+	 * 
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return A writer that can write the output grid's cells by row and column.
+	 * @throws IOException
+	 *            The temporary file next to outFile could not be created.
+	 */
+	protected CsvGridWriter createWriter(File outFile) throws IOException {
+		CsvGridWriter output = new CsvGridWriter(outFile, this.getOutputHeader());
+		output.setFractionDigits(this.fractionDigits);
+		return output;
+	}
+
+	/**
+	 * Works out where the CSV for an ASCII file is written.
+	 * 
+	 * @param ftp
+	 *           The ASCII file being parsed.
+	 * @return The CSV file in the CSV output directory.
+	 */
+	protected File getOutputFile(File ftp) {
+		String fileName = ftp.getName();
+
+		// Remove the .gz of a compressed file, then the extension from file name
+		if (fileName.toLowerCase().endsWith(".gz"))
+			fileName = fileName.substring(0, fileName.length() - 3);
+		return getOutputFile(fileName.substring(0, fileName.length() - 4));
+	}
+
+	/**
+	 * Works out where the CSV for a map is written.
+	 * 
+	 * @param mapName
+	 *           The name of the map, without any extension (such as MapProperties.toString()).
+	 * @return The CSV file in the CSV output directory.
+	 */
+	public File getOutputFile(String mapName) {
+		// Avoid ESRI filename error in output file by changing dashes to underscores. Unknown reasoning.
+		if (mapName.contains("-"))
+			mapName = mapName.replace("-", "_");
+
+		if (this.outputDirectory != null)
+			return new File(this.outputDirectory, mapName + ".csv");
+		return new File(FileLocations.CSV_OUTPUT_DIRECTORY_LOCATION + mapName + ".csv");
+	}
+
+	/**
+	 * Attempts to parse the body of the given ASCII file. This is the "table" of values to be parsed. Every value that isn't NODATA is written to output as soon as it is read.
+	 * 
+	 * 
+	 * 
+	 * @param ftp
+	 *           the file to parse
+	 * @param output
+	 *           the writer which the parsed rows are sent to.
+	 * @return true if the whole table was parsed; false if the table was invalid.
+	 * @throws IOException
+	 *            File Not Found, or the output could not be written to.
+	 * @throws InputMismatchException
+	 *            a non double value was found in the Table
+	 */
+	protected boolean parseBody(File ftp, CsvGridWriter output) throws IOException, InputMismatchException {
+
+		// Should never happen
+		if (!this.getHeaderParsed()) {
+			Logger.error("Header was not successfully parsed. Check the input file. Failing in ParseBody method of AsciiToCsv.");
+			return false;
+		} else {
+
+			// Open the input file and skip straight past the header to access table. Avoid resource leak by closing when done.
+			try (ReadableByteChannel channel = GridInput.open(ftp, this.bodyOffset)) {
+				AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(channel);
+				tokenizer.setLineNumber(this.getLinesInHeader() - 1);
+				return parseBody(tokenizer, outputOptions.downsample(this.getHeader(), csvHandler(output)));
+			}
+		}
+	}
+
+	/**
+	 * Parses the table from the tokenizer. Rows may be wrapped across lines; the row and column are tracked by counting values. If a clipping box is set, only the cells inside it are converted and sent to the handler.
+	 * 
+	 * @param tokenizer
+	 *           the tokenizer positioned at the first value of the table.
+	 * @param handler
+	 *           the handler which every parsed cell is sent to.
+	 * @return true if the whole table was parsed; false if the table was invalid.
+	 * @throws IOException
+	 *            the input could not be read, or the output could not be written to.
+	 */
+	protected boolean parseBody(AsciiGridTokenizer tokenizer, GridCellHandler handler) throws IOException {
+		return parseBody(tokenizer, handler, 0, 0, (int) this.getNrows() - 1);
+	}
+
+	/**
+	 * Parses a range of rows of the table from the tokenizer. Rows may be wrapped across lines; the row and column are tracked by counting values (see TableCursor). Only the cells in the range (and inside the clipping box, if one is set) are converted and sent to the handler; the rest are skipped without being converted, but
+	 * still count as parsed. Parsing stops after the last row in the range, unless it is the last row of the table or a row index is being built.
+	 * 
+	 * @param tokenizer
+	 *           the tokenizer positioned at the first value of startRow.
+	 * @param handler
+	 *           the handler which every parsed cell is sent to.
+	 * @param startRow
+	 *           the row the tokenizer is positioned at.
+	 * @param fromRow
+	 *           the first row to send to the handler.
+	 * @param toRow
+	 *           the last row to send to the handler.
+	 * @return true if the table was parsed; false if the table was invalid.
+	 * @throws IOException
+	 *            the input could not be read, or the output could not be written to.
+	 */
+	protected boolean parseBody(AsciiGridTokenizer tokenizer, GridCellHandler handler, int startRow, int fromRow, int toRow) throws IOException {
+
+		int columnsInRow = (int) this.getNcols();
+		long expectedValues = (long) this.getNcols() * (long) this.getNrows();
+
+		// Values before the start row were never read, but count as parsed
+		this.values_parsed = (long) startRow * columnsInRow;
+
+		// The rows and columns to send to the handler: the range, inside the clipping box if there is one
+		GridHeader grid = this.getHeader();
+		int firstRow = Math.max(fromRow, clip != null ? clip.firstRow(grid) : 0);
+		int lastRow = Math.min(toRow, clip != null ? clip.lastRow(grid) : grid.getNrows() - 1);
+		int firstColumn = clip != null ? clip.firstColumn(grid) : 0;
+		int lastColumn = clip != null ? clip.lastColumn(grid) : columnsInRow - 1;
+		TableCursor cursor = new TableCursor(grid, firstRow, lastRow, firstColumn, lastColumn, this.values_parsed);
+
+		// Stop once the range is done, unless the rest of the table has to be read anyway
+		int stopRow = toRow >= grid.getNrows() - 1 || this.buildingRowIndex ? Integer.MAX_VALUE : toRow + 1;
+
+		// The row that progress was last reported for
+		int reportedRow = -1;
+
+		// While there are values in the input document
+		while (cursor.getRow() < stopRow && tokenizer.hasNext()) {
+			int rows = cursor.getRow();
+
+			// Report progress, index the row and check for cancellation once per row
+			if (rows != reportedRow) {
+				reportedRow = rows;
+				if (this.buildingRowIndex && cursor.getColumn() == 0 && rows < grid.getNrows())
+					this.rowIndex.setRow(rows, tokenizer.getPosition(), tokenizer.getLineNumber());
+				if (!this.rowStarted(rows, tokenizer.getPosition()))
+					return false;
+			}
+
+			// Never skip past the start of a row that still has to be indexed
+			long limit = this.buildingRowIndex ? (rows + 1L) * columnsInRow : (long) stopRow * columnsInRow;
+			long read = cursor.next(tokenizer, limit, handler, this.statistics);
+			if (read < 0)
+				return false;
+			this.values_parsed += read;
+		}
+
+		// Rows after the range were never read, but count as parsed
+		if (cursor.getRow() >= stopRow)
+			this.values_parsed = expectedValues;
+
+		// Print out the statistics (TESTING PURPOSES)
+		Logger.debug("Statistics: {}", this.statistics);
+
+		if (!this.rowStarted((int) (this.getvalues_parsed() / columnsInRow), tokenizer.getPosition()))
+			return false;
+
+		if (expectedValues != this.getvalues_parsed()) {
+			Logger.error("Number of rows and columns in the header do not match the number of values in the document. Please check your input file.");
+			return false;
+		}
+
+		handler.finish();
+		return true;
+	}
+
+	/**
+	 * Reads the table of a binary float grid. Only the rows and columns inside the clipping box (the whole table if there isn't one) are read from the file; the rest are skipped over, but still counted as parsed.
+	 * 
+	 * @param reader
+	 *           the reader of the grid, with its header already read.
+	 * @param handler
+	 *           the handler which every cell is sent to.
+	 * @return true if the whole table was read; false if the parse was cancelled.
+	 * @throws IOException
+	 *            the input could not be read, or the output could not be written to.
+	 */
+	protected boolean parseBody(FloatGridReader reader, GridCellHandler handler) throws IOException {
+
+		// The rows and columns inside the clipping box (the whole table if there isn't one)
+		GridHeader grid = this.getHeader();
+		int firstRow = clip != null ? clip.firstRow(grid) : 0;
+		int lastRow = clip != null ? clip.lastRow(grid) : grid.getNrows() - 1;
+		int firstColumn = clip != null ? clip.firstColumn(grid) : 0;
+		int lastColumn = clip != null ? clip.lastColumn(grid) : grid.getNcols() - 1;
+
+		// NODATA is stored as a float too, so compare it as one
+		float noData = (float) NODATA_value;
+		float[] values = new float[Math.max(0, lastColumn - firstColumn + 1)];
+
+		for (int rows = firstRow; rows <= lastRow && values.length > 0; rows++) {
+
+			// Report progress and check for cancellation once per row
+			if (!this.rowStarted(rows, reader.getBytesRead()))
+				return false;
+
+			reader.readRow(rows, firstColumn, values, values.length);
+
+			for (int i = 0; i < values.length; i++) {
+				float value = values[i];
+
+				// Keep track of the min, max and the rest of the statistics, and send to the output
+				if (value != noData) {
+					this.updateStatistics(value);
+					handler.handleCell(rows, firstColumn + i, value);
+				} else {
+					statistics.addNoData();
+					handler.handleCell(rows, firstColumn + i, NODATA_value);
+				}
+			}
+		}
+
+		// Every value is accounted for, whether it was read or skipped by the clip
+		this.values_parsed = grid.getCellCount();
+
+		// Print out the statistics (TESTING PURPOSES)
+		Logger.debug("Statistics: {}", this.statistics);
+
+		if (!this.rowStarted(grid.getNrows(), reader.getBytesRead()))
+			return false;
+
+		handler.finish();
+		return true;
+	}
+
+	/**
+	 * Helper method for reporting progress to the listener and checking whether the parse has been cancelled.
+	 * 
+	 * @param rowsDone
+	 *           the number of rows that have been finished.
+	 * @param bytesRead
+	 *           the number of bytes that have been read.
+	 * @return true to keep parsing; false if the parse has been cancelled.
+	 */
+	protected boolean rowStarted(int rowsDone, long bytesRead) {
+		if (this.listener != null)
+			this.listener.progressUpdated(Math.min(rowsDone, this.getHeader().getNrows()), this.getHeader().getNrows(), bytesRead);
+
+		if (this.isCancelled()) {
+			Logger.warn("Conversion was cancelled after {} rows.", rowsDone);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method for updating the min, max and the rest of the statistics with a value from the table.
+	 * 
+	 * @param value
+	 *           a value from the table that isn't NODATA.
+	 */
+	protected void updateStatistics(double value) {
+		statistics.add(value);
+	}
+
+	/**
+	 * Creates the handler used to send parsed cells to a CSV file. NODATA cells are left out.
+	 * 
+	 * @param output
+	 *           the writer the rows are sent to.
+	 * @return a handler that writes every cell with data to output.
+	 */
+	protected GridCellHandler csvHandler(CsvGridWriter output) {
+		return new GridCellHandler() {
+			@Override
+			public void handleCell(int rows, int columns, double value) throws IOException {
+				// If we want to print the value
+				if (value != NODATA_value)
+					writeValue(value, output, rows, columns);
+			}
+
+			@Override
+			public void handleNoData(int row, int column, int count, double noData) {
+				// Nothing is written for NODATA
+			}
+		};
+	}
+
+	/**
+	 * Creates the handler used to send the cells of a binary float grid to a CSV file. The values are written as floats, so they appear in the CSV as they were stored rather than with the extra digits of a double. NODATA cells are left out.
+	 * 
+	 * @param output
+	 *           the writer the rows are sent to.
+	 * @return a handler that writes every cell with data to output.
+	 */
+	protected GridCellHandler floatCsvHandler(CsvGridWriter output) {
+		return (rows, columns, value) -> {
+			// If we want to print the value
+			if (value != NODATA_value)
+				output.writeCell(rows, columns, (float) value);
+		};
+	}
+
+	/**
+	 * Helper method for sending values to the output. The writer keeps track of where the min and max rows are, so they can be placed at the top of the output once the table is done.
+	 * 
+	 * @param value
+	 *           the value to write.
+	 * @param output
+	 *           the writer the row is sent to.
+	 * @param rows
+	 *           the current number of rows navigated through the body.
+	 * @param columns
+	 *           the current number of columns navigated through the body.
+	 * @throws IOException
+	 *            the row could not be written.
+	 */
+	protected void writeValue(double value, CsvGridWriter output, int rows, int columns) throws IOException {
+		output.writeCell(rows, columns, value);
+	}
+
+	/**
+	 * Finds the smallest and largest values of the cells sent to it, for sizing the steps of a SCALED_SHORT raster before it is filled. NODATA, NaN and infinite values are left out, as they are by GridRaster.toScaledShort().
+	 */
+	private static final class ValueRange implements GridCellHandler {
+
+		private final GridHeader header;
+		private double min;
+		private double max;
+
+		ValueRange(GridHeader header) {
+			this.header = header;
+			this.min = Double.POSITIVE_INFINITY;
+			this.max = Double.NEGATIVE_INFINITY;
+		}
+
+		@Override
+		public void handleCell(int row, int column, double value) {
+			if (!header.isNoData(value) && !Double.isNaN(value) && !Double.isInfinite(value)) {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+		}
+
+		@Override
+		public void handleNoData(int row, int column, int count, double noData) {
+		}
+
+		/**
+		 * 
+		 * @return The smallest value, or 0 if every cell was NODATA.
+		 */
+		double getMin() {
+			return min <= max ? min : 0;
+		}
+
+		/**
+		 * 
+		 * @return The largest value, or 0 if every cell was NODATA.
+		 */
+		double getMax() {
+			return min <= max ? max : 0;
+		}
 	}
 }
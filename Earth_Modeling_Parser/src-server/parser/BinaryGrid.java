@@ -0,0 +1,256 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         A binary grid written by BinaryGridWriter, memory mapped so that cells are read straight from the file (through the operating system's page cache) rather than parsed or copied onto the heap. Opening a grid only reads its header; the statistics saved in the header are available
+ *         without touching the values at all.
+ * 
+ *         The value of a cell is found through the bitmap: cells without their bit set are NODATA, and the position of a cell's value is the number of cells with data before it (the row's start plus the bits set earlier in the row).
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.pmw.tinylog.Logger;
+
+public class BinaryGrid {
+
+	private final GridHeader header;
+
+	/**
+	 * Size of each value: Float.BYTES or Double.BYTES.
+	 */
+	private final int valueBytes;
+
+	/**
+	 * Statistics saved in the header.
+	 */
+	private final long validCount;
+	private final double min;
+	private final double max;
+	private final double mean;
+	private final double standardDeviation;
+
+	/**
+	 * Mapped sections of the file.
+	 */
+	private final LongBuffer rowStarts;
+	private final LongBuffer bitmap;
+	private final ByteBuffer values;
+
+	private BinaryGrid(GridHeader header, int valueBytes, ByteBuffer head, LongBuffer rowStarts, LongBuffer bitmap, ByteBuffer values) {
+		this.header = header;
+		this.valueBytes = valueBytes;
+		this.validCount = head.getLong();
+		this.min = head.getDouble();
+		this.max = head.getDouble();
+		this.mean = head.getDouble();
+		this.standardDeviation = head.getDouble();
+		this.rowStarts = rowStarts;
+		this.bitmap = bitmap;
+		this.values = values;
+	}
+
+	/**
+	 * Opens a binary grid and maps it into memory.
+	 * 
+	 * @param file
+	 *           The binary grid file.
+	 * @return The grid; null if the file isn't a binary grid, or is the wrong size for its header.
+	 * @throws IOException
+	 *            The file couldn't be opened or read.
+	 */
+	public static BinaryGrid open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < BinaryGridWriter.HEADER_SIZE) {
+				Logger.warn("{} is not a binary grid.", file.getName());
+				return null;
+			}
+
+			ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryGridWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (head.getInt() != BinaryGridWriter.MAGIC || head.getInt() != BinaryGridWriter.VERSION) {
+				Logger.warn("{} is not a binary grid.", file.getName());
+				return null;
+			}
+
+			int ncols = head.getInt();
+			int nrows = head.getInt();
+			GridHeader header = new GridHeader(ncols, nrows, head.getDouble(), head.getDouble(), head.getDouble(), head.getDouble());
+			int valueBytes = head.getInt();
+			head.getInt();
+			long validCount = head.getLong(head.position());
+
+			long bitmapOffset = BinaryGridWriter.getBitmapOffset(header);
+			long valuesOffset = BinaryGridWriter.getValuesOffset(header);
+			long valuesLength = validCount * valueBytes;
+			if ((valueBytes != Float.BYTES && valueBytes != Double.BYTES) || channel.size() != valuesOffset + valuesLength) {
+				Logger.warn("{} is {} bytes, which doesn't match its header.", file.getName(), channel.size());
+				return null;
+			}
+			if (valuesLength > Integer.MAX_VALUE) {
+				Logger.error("{} has too many values to be mapped.", file.getName());
+				return null;
+			}
+
+			// Mappings stay valid after the channel is closed
+			LongBuffer rowStarts = channel.map(FileChannel.MapMode.READ_ONLY, BinaryGridWriter.HEADER_SIZE, bitmapOffset - BinaryGridWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			LongBuffer bitmap = channel.map(FileChannel.MapMode.READ_ONLY, bitmapOffset, valuesOffset - bitmapOffset).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			ByteBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, valuesOffset, valuesLength).order(ByteOrder.LITTLE_ENDIAN);
+			return new BinaryGrid(header, valueBytes, head, rowStarts, bitmap, values);
+		}
+	}
+
+	/**
+	 * 
+	 * @return The header of the grid.
+	 */
+	public GridHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * 
+	 * @return FLOAT or DOUBLE, depending on how the values are stored.
+	 */
+	public GridPrecision getPrecision() {
+		return valueBytes == Double.BYTES ? GridPrecision.DOUBLE : GridPrecision.FLOAT;
+	}
+
+	/**
+	 * 
+	 * @return The number of cells with data.
+	 */
+	public long getValidCount() {
+		return validCount;
+	}
+
+	/**
+	 * 
+	 * @return The smallest value in the grid.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * 
+	 * @return The largest value in the grid.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * 
+	 * @return The mean of the values in the grid.
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * 
+	 * @return The standard deviation of the values in the grid.
+	 */
+	public double getStandardDeviation() {
+		return standardDeviation;
+	}
+
+	/**
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell.
+	 * @return true if the cell is NODATA.
+	 */
+	public boolean isNoData(int row, int column) {
+		long index = (long) row * header.getNcols() + column;
+		return (bitmap.get((int) (index >>> 6)) & (1L << index)) == 0;
+	}
+
+	/**
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell.
+	 * @return The value of the cell; the header's NODATA value if the cell has no data.
+	 */
+	public double get(int row, int column) {
+		if (row < 0 || row >= header.getNrows() || column < 0 || column >= header.getNcols())
+			throw new IndexOutOfBoundsException("Cell " + row + ", " + column + " is outside the grid.");
+		if (isNoData(row, column))
+			return header.getNODATA();
+
+		// Count the cells with data from the start of the row up to this one
+		long start = (long) row * header.getNcols();
+		long index = start + column;
+		long position = rowStarts.get(row);
+		for (long word = start >>> 6; word <= index >>> 6; word++) {
+			long bits = bitmap.get((int) word);
+			if (word == start >>> 6)
+				bits &= -1L << start;
+			if (word == index >>> 6)
+				bits &= (1L << index) - 1;
+			position += Long.bitCount(bits);
+		}
+
+		return value((int) position);
+	}
+
+	/**
+	 * Visits every cell with data in table order. The values are read one after another and the bitmap a long (64 cells) at a time, so NODATA spans cost almost nothing.
+	 * 
+	 * @param handler
+	 *           The handler each cell with data is passed to. Its finish() is called at the end.
+	 * @throws IOException
+	 *            The handler couldn't handle a cell.
+	 */
+	public void forEachValidCell(GridCellHandler handler) throws IOException {
+		int ncols = header.getNcols();
+		long cells = header.getCellCount();
+		int position = 0;
+
+		for (int word = 0; word < bitmap.limit(); word++) {
+			long bits = bitmap.get(word);
+			while (bits != 0) {
+				long index = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+				if (index >= cells)
+					break;
+				handler.handleCell((int) (index / ncols), (int) (index % ncols), value(position++));
+				bits &= bits - 1;
+			}
+		}
+		handler.finish();
+	}
+
+	/**
+	 * @param position
+	 *           The position of a value in the values section.
+	 * @return The value.
+	 */
+	private double value(int position) {
+		if (valueBytes == Double.BYTES)
+			return values.getDouble(position * Double.BYTES);
+		return values.getFloat(position * Float.BYTES);
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         Streams the cells of a grid to a compact binary file, as an alternative to the CSV. The CSV spells out the latitude and longitude of every cell as text, but both follow from the header and the cell's position, so this format stores only the values of the cells with data, packed one after
+ *         another in table order, plus a bitmap saying which cells have data. It is several times smaller than the CSV and can be memory mapped (see BinaryGrid).
+ * 
+ *         Everything is little endian. The file is laid out as:
+ * 
+ *         <pre>
+ *         header      HEADER_SIZE bytes: geometry, value size, and the statistics of the values
+ *         row starts  nrows + 1 longs: the number of cells with data before each row
+ *         bitmap      (ncols * nrows + 63) / 64 longs: bit (i % 64) of long (i / 64) is set if cell i has data
+ *         values      the cells with data, as floats (or doubles for GridPrecision.DOUBLE)
+ *         </pre>
+ * 
+ *         The header, row starts and bitmap have sizes that only depend on the grid's size, so values are streamed to their place in the file as they arrive while the bitmap is kept in memory (one bit per cell) and written with the header once the grid is finished. Cells must arrive in table
+ *         order. Like the CSV, the file is written to a ".part" file that only replaces outFile once it is complete.
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.pmw.tinylog.Logger;
+
+public class BinaryGridWriter implements GridCellHandler {
+
+	/**
+	 * Extension of a binary grid file.
+	 */
+	public static final String EXTENSION = ".bgrid";
+
+	/**
+	 * First bytes of a binary grid ("VGRB"), followed by the format version.
+	 */
+	static final int MAGIC = 0x56475242;
+	static final int VERSION = 1;
+
+	/**
+	 * Size of the header. The row starts follow it.
+	 */
+	static final int HEADER_SIZE = 128;
+
+	/**
+	 * Size of the buffer values are written through.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final GridHeader header;
+	private final File outFile;
+	private final File partFile;
+	private final FileChannel channel;
+
+	/**
+	 * Size of each value: Float.BYTES or Double.BYTES.
+	 */
+	private final int valueBytes;
+
+	/**
+	 * Statistics of the values written.
+	 */
+	private final GridStatistics statistics;
+
+	/**
+	 * The largest difference between a value and the float it is stored as; 0 for doubles.
+	 */
+	private double maxError;
+
+	/**
+	 * The number of cells with data before each row, and which cells have data.
+	 */
+	private final long[] rowStarts;
+	private final long[] bitmap;
+
+	/**
+	 * Values waiting to be written, and where in the file the next value goes.
+	 */
+	private final ByteBuffer values;
+	private long valuesPosition;
+
+	/**
+	 * Creates a writer for a grid. Nothing is complete until finish() is called.
+	 * 
+	 * @param header
+	 *           The header of the grid being written.
+	 * @param precision
+	 *           DOUBLE to store each value in 8 bytes; any other precision stores floats.
+	 * @param outFile
+	 *           The file to create.
+	 * @throws IOException
+	 *            The temporary file next to outFile couldn't be created.
+	 */
+	public BinaryGridWriter(GridHeader header, GridPrecision precision, File outFile) throws IOException {
+		this.header = header;
+		this.outFile = outFile;
+		this.partFile = new File(outFile.getPath() + ".part");
+		this.valueBytes = precision == GridPrecision.DOUBLE ? Double.BYTES : Float.BYTES;
+		this.statistics = new GridStatistics();
+		this.maxError = 0;
+		this.rowStarts = new long[header.getNrows() + 1];
+		this.bitmap = new long[getBitmapLength(header)];
+		this.values = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.valuesPosition = getValuesOffset(header);
+		this.channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Works out where the binary grid for a map is written: next to its CSV, with EXTENSION instead of .csv.
+	 * 
+	 * @param csvFile
+	 *           The CSV file the map would be written to.
+	 * @return The binary grid file.
+	 */
+	public static File getOutputFile(File csvFile) {
+		String name = csvFile.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(csvFile.getParentFile(), name + EXTENSION);
+	}
+
+	/**
+	 * @param header
+	 *           The header of a grid.
+	 * @return The number of longs in the grid's bitmap.
+	 */
+	static int getBitmapLength(GridHeader header) {
+		long words = (header.getCellCount() + Long.SIZE - 1) / Long.SIZE;
+		if (words > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The grid has too many cells for a binary grid.");
+		return (int) words;
+	}
+
+	/**
+	 * @param header
+	 *           The header of a grid.
+	 * @return Where the bitmap of the grid starts in the file.
+	 */
+	static long getBitmapOffset(GridHeader header) {
+		return HEADER_SIZE + (header.getNrows() + 1L) * Long.BYTES;
+	}
+
+	/**
+	 * @param header
+	 *           The header of a grid.
+	 * @return Where the values of the grid start in the file.
+	 */
+	static long getValuesOffset(GridHeader header) {
+		return getBitmapOffset(header) + (long) getBitmapLength(header) * Long.BYTES;
+	}
+
+	/**
+	 * 
+	 * @return The file being written.
+	 */
+	public File getOutFile() {
+		return outFile;
+	}
+
+	/**
+	 * 
+	 * @return The statistics of the values written so far.
+	 */
+	public GridStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return The largest difference between a value written and the value stored; 0 if the values are stored as doubles.
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Packs the value of a cell with data. NODATA cells are only left out of the bitmap.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) throws IOException {
+		if (header.isNoData(value))
+			return;
+
+		long index = (long) row * header.getNcols() + column;
+		bitmap[(int) (index >>> 6)] |= 1L << index;
+		rowStarts[row + 1]++;
+		statistics.add(value);
+
+		if (values.remaining() < valueBytes)
+			flushValues();
+		if (valueBytes == Double.BYTES)
+			values.putDouble(value);
+		else {
+			float f = (float) value;
+			values.putFloat(f);
+			maxError = GridRaster.largerError(maxError, value, f);
+		}
+	}
+
+	/**
+	 * NODATA cells take no space, so there is nothing to do for a run of them.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) {
+	}
+
+	/**
+	 * Writes the header, row starts and bitmap in front of the values, and moves the finished file to outFile.
+	 */
+	@Override
+	public void finish() throws IOException {
+		try {
+			flushValues();
+
+			// Counts per row become the number of cells before each row
+			for (int row = 1; row < rowStarts.length; row++)
+				rowStarts[row] += rowStarts[row - 1];
+
+			ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			head.putInt(MAGIC).putInt(VERSION);
+			head.putInt(header.getNcols()).putInt(header.getNrows());
+			head.putDouble(header.getXllCorner()).putDouble(header.getYllCorner()).putDouble(header.getCellSize()).putDouble(header.getNODATA());
+			head.putInt(valueBytes).putInt(0);
+			head.putLong(statistics.getCount());
+			head.putDouble(statistics.getMin()).putDouble(statistics.getMax()).putDouble(statistics.getMean()).putDouble(statistics.getStandardDeviation());
+			head.clear();
+			write(head, 0);
+
+			ByteBuffer longs = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			writeLongs(longs, rowStarts, HEADER_SIZE);
+			writeLongs(longs, bitmap, getBitmapOffset(header));
+
+			channel.close();
+			Files.move(partFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+		Logger.info("Wrote {} values of {} cells to {} ({} bytes), largest error {}", statistics.getCount(), header.getCellCount(), outFile.getName(), outFile.length(), maxError);
+	}
+
+	/**
+	 * Throws away the partly written file, such as when the grid turns out to be invalid.
+	 */
+	public void abort() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Logger.warn("Couldn't close {}", partFile.getName(), e);
+		}
+		partFile.delete();
+	}
+
+	private void flushValues() throws IOException {
+		values.flip();
+		valuesPosition += write(values, valuesPosition);
+		values.clear();
+	}
+
+	private void writeLongs(ByteBuffer buffer, long[] longs, long position) throws IOException {
+		buffer.clear();
+		for (long l : longs) {
+			if (!buffer.hasRemaining()) {
+				buffer.flip();
+				position += write(buffer, position);
+				buffer.clear();
+			}
+			buffer.putLong(l);
+		}
+		buffer.flip();
+		write(buffer, position);
+	}
+
+	private int write(ByteBuffer buffer, long position) throws IOException {
+		int length = buffer.remaining();
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + length - buffer.remaining());
+		return length;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         Combines blocks of factor x factor cells into single cells while the table is parsed, so a grid can be published at a coarser resolution than it was modelled at. Cells are handed on to another handler in table order, with the coarser grid's rows and columns (see GridHeader.downsample()).
+ * 
+ *         NODATA cells are left out of every block; a block with no data at all becomes NODATA. Only one band of blocks (factor rows of the table) is held at a time, so memory grows with the width of the grid but not its height.
+ */
+
+package parser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class BlockAggregator implements GridCellHandler {
+
+	/**
+	 * How the values in a block are combined.
+	 */
+	public enum Method {
+		MEAN, SUM, MAX
+	}
+
+	/**
+	 * The header of the grid being parsed, and of the coarser grid.
+	 */
+	private final GridHeader fine;
+	private final GridHeader coarse;
+
+	private final int factor;
+	private final Method method;
+
+	/**
+	 * The handler the combined cells are sent to.
+	 */
+	private final GridCellHandler output;
+
+	/**
+	 * The band of blocks being filled, or -1 before the first cell.
+	 */
+	private int band;
+
+	/**
+	 * Sum (or max) and count of the values in each block of the band.
+	 */
+	private final double[] totals;
+	private final int[] counts;
+
+	/**
+	 * Creates an aggregator for a grid.
+	 * 
+	 * @param fine
+	 *           The header of the grid being parsed.
+	 * @param factor
+	 *           The number of cells along each side of a block.
+	 * @param method
+	 *           How the values in a block are combined.
+	 * @param output
+	 *           The handler the combined cells are sent to, with rows and columns of the grid described by getCoarseHeader().
+	 * @throws IllegalArgumentException
+	 *            If factor is less than 1.
+	 */
+	public BlockAggregator(GridHeader fine, int factor, Method method, GridCellHandler output) {
+		this.fine = fine;
+		this.coarse = fine.downsample(factor);
+		this.factor = factor;
+		this.method = method;
+		this.output = output;
+		this.band = -1;
+		this.totals = new double[coarse.getNcols()];
+		this.counts = new int[coarse.getNcols()];
+	}
+
+	/**
+	 * 
+	 * @return The header of the coarser grid.
+	 */
+	public GridHeader getCoarseHeader() {
+		return coarse;
+	}
+
+	/**
+	 * Adds a cell to its block. The previous band of blocks is sent on once a cell from a later band arrives.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) throws IOException {
+		int cellBand = row / factor;
+		if (cellBand != band) {
+			flush();
+			band = cellBand;
+		}
+
+		if (fine.isNoData(value))
+			return;
+
+		int block = column / factor;
+		if (method == Method.MAX)
+			totals[block] = counts[block] == 0 ? value : Math.max(totals[block], value);
+		else
+			totals[block] += value;
+		counts[block]++;
+	}
+
+	/**
+	 * NODATA is left out of every block, so a run only matters if it starts a new band.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) throws IOException {
+		int cellBand = row / factor;
+		if (cellBand != band) {
+			flush();
+			band = cellBand;
+		}
+	}
+
+	/**
+	 * Sends on the last band of blocks, then finishes the output handler.
+	 */
+	@Override
+	public void finish() throws IOException {
+		flush();
+		band = -1;
+		output.finish();
+	}
+
+	/**
+	 * Sends every block of the current band to the output handler and empties the band. Blocks with no data are sent as runs of NODATA, so writers that leave NODATA out (most of them) only visit the blocks with data.
+	 */
+	private void flush() throws IOException {
+		if (band < 0)
+			return;
+
+		int emptyFrom = -1;
+		for (int block = 0; block < totals.length; block++) {
+			if (counts[block] == 0) {
+				if (emptyFrom < 0)
+					emptyFrom = block;
+				continue;
+			}
+			if (emptyFrom >= 0) {
+				output.handleNoData(band, emptyFrom, block - emptyFrom, coarse.getNODATA());
+				emptyFrom = -1;
+			}
+
+			output.handleCell(band, block, method == Method.MEAN ? totals[block] / counts[block] : totals[block]);
+		}
+		if (emptyFrom >= 0)
+			output.handleNoData(band, emptyFrom, totals.length - emptyFrom, coarse.getNODATA());
+
+		Arrays.fill(totals, 0);
+		Arrays.fill(counts, 0);
+	}
+}
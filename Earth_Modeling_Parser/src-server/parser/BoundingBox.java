@@ -0,0 +1,166 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         An immutable latitude/longitude box used to clip a grid while it is parsed. Works out which rows and columns of a grid fall inside the box, using the same coordinates that are written to the CSV (so a cell is kept if its CSV point is inside the box, edges included).
+ */
+
+package parser;
+
+import java.io.Serializable;
+
+public class BoundingBox implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Fraction of a cell that coordinates may be off by (from floating point error) and still count as being on the edge of the box.
+	 */
+	private static final double EDGE_TOLERANCE = 1e-9;
+
+	private final double south;
+	private final double west;
+	private final double north;
+	private final double east;
+
+	/**
+	 * Creates a box from its edges, in degrees.
+	 * 
+	 * @param south
+	 *           The smallest latitude in the box.
+	 * @param west
+	 *           The smallest longitude in the box.
+	 * @param north
+	 *           The largest latitude in the box.
+	 * @param east
+	 *           The largest longitude in the box.
+	 * @throws IllegalArgumentException
+	 *            If south is above north or west is past east.
+	 */
+	public BoundingBox(double south, double west, double north, double east) {
+		if (!(south <= north) || !(west <= east))
+			throw new IllegalArgumentException("A bounding box must have south <= north and west <= east.");
+
+		this.south = south;
+		this.west = west;
+		this.north = north;
+		this.east = east;
+	}
+
+	/**
+	 * @return The smallest latitude in the box.
+	 */
+	public double getSouth() {
+		return south;
+	}
+
+	/**
+	 * @return The smallest longitude in the box.
+	 */
+	public double getWest() {
+		return west;
+	}
+
+	/**
+	 * @return The largest latitude in the box.
+	 */
+	public double getNorth() {
+		return north;
+	}
+
+	/**
+	 * @return The largest longitude in the box.
+	 */
+	public double getEast() {
+		return east;
+	}
+
+	/**
+	 * @param header
+	 *           The header of the grid being clipped.
+	 * @return The first (top) row inside the box. Greater than lastRow() if no rows are inside the box.
+	 */
+	public int firstRow(GridHeader header) {
+		double row = Math.ceil((header.getLatitude() - north) / header.getCellSize() - EDGE_TOLERANCE);
+		return (int) Math.max(0, Math.min(header.getNrows(), row));
+	}
+
+	/**
+	 * @param header
+	 *           The header of the grid being clipped.
+	 * @return The last (bottom) row inside the box. Less than firstRow() if no rows are inside the box.
+	 */
+	public int lastRow(GridHeader header) {
+		double row = Math.floor((header.getLatitude() - south) / header.getCellSize() + EDGE_TOLERANCE);
+		return (int) Math.max(-1, Math.min(header.getNrows() - 1, row));
+	}
+
+	/**
+	 * @param header
+	 *           The header of the grid being clipped.
+	 * @return The first (left) column inside the box. Greater than lastColumn() if no columns are inside the box.
+	 */
+	public int firstColumn(GridHeader header) {
+		double column = Math.ceil((west - header.getLongitude()) / header.getCellSize() - EDGE_TOLERANCE);
+		return (int) Math.max(0, Math.min(header.getNcols(), column));
+	}
+
+	/**
+	 * @param header
+	 *           The header of the grid being clipped.
+	 * @return The last (right) column inside the box. Less than firstColumn() if no columns are inside the box.
+	 */
+	public int lastColumn(GridHeader header) {
+		double column = Math.floor((east - header.getLongitude()) / header.getCellSize() + EDGE_TOLERANCE);
+		return (int) Math.max(-1, Math.min(header.getNcols() - 1, column));
+	}
+
+	/**
+	 * Finds the next cell inside the box, counting cells in table order (left to right, then top to bottom).
+	 * 
+	 * @param header
+	 *           The header of the grid being clipped.
+	 * @param index
+	 *           Index of a cell in the table.
+	 * @return The index of the first cell at or after index that is inside the box; header.getCellCount() if there are none.
+	 */
+	public long nextCellInside(GridHeader header, long index) {
+		int ncols = header.getNcols();
+		int firstRow = firstRow(header);
+		int lastRow = lastRow(header);
+		int firstColumn = firstColumn(header);
+		int lastColumn = lastColumn(header);
+
+		if (firstRow > lastRow || firstColumn > lastColumn)
+			return header.getCellCount();
+
+		long row = index / ncols;
+		long column = index % ncols;
+		if (row < firstRow)
+			return (long) firstRow * ncols + firstColumn;
+		if (column > lastColumn) {
+			row++;
+			column = firstColumn;
+		} else if (column < firstColumn)
+			column = firstColumn;
+
+		return row > lastRow ? header.getCellCount() : row * ncols + column;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + south + ", " + west + "] to [" + north + ", " + east + "]";
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         The order the cells of a grid are written out in. ROW is the order of the table (left to right, top to bottom). Z_ORDER and HILBERT follow a space filling curve inside square tiles, so points that are written close together are also close together on the map, which gives spatial
+ *         indexes and tile builders downstream better locality. Hilbert keeps every step between neighbouring cells; Z-order is cheaper to work out but jumps at the edges of each quadrant.
+ */
+
+package parser;
+
+public enum CellOrder {
+	ROW, Z_ORDER, HILBERT;
+
+	/**
+	 * Works out the order the cells of a square tile are visited in.
+	 * 
+	 * @param tileSize
+	 *           The number of cells along each side of the tile; a power of two.
+	 * @return The cells of the tile in the order they are visited, each as row * tileSize + column.
+	 * @throws IllegalArgumentException
+	 *            If tileSize isn't a power of two.
+	 */
+	public int[] tileOrder(int tileSize) {
+		if (tileSize < 1 || Integer.bitCount(tileSize) != 1)
+			throw new IllegalArgumentException("The tile size must be a power of two.");
+
+		int[] order = new int[tileSize * tileSize];
+		for (int d = 0; d < order.length; d++) {
+			switch (this) {
+				case Z_ORDER:
+					// Even bits of d are the column, odd bits the row
+					order[d] = compactBits(d >>> 1) * tileSize + compactBits(d);
+					break;
+				case HILBERT:
+					order[d] = hilbert(d, tileSize);
+					break;
+				default:
+					order[d] = d;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Keeps every other bit of a number (bits 0, 2, 4...), packed together.
+	 */
+	private static int compactBits(int x) {
+		x &= 0x55555555;
+		x = (x | (x >>> 1)) & 0x33333333;
+		x = (x | (x >>> 2)) & 0x0F0F0F0F;
+		x = (x | (x >>> 4)) & 0x00FF00FF;
+		x = (x | (x >>> 8)) & 0x0000FFFF;
+		return x;
+	}
+
+	/**
+	 * Finds the cell at a distance along the Hilbert curve through a tile.
+	 * 
+	 * @param d
+	 *           The distance along the curve.
+	 * @param tileSize
+	 *           The number of cells along each side of the tile.
+	 * @return The cell as row * tileSize + column.
+	 */
+	private static int hilbert(int d, int tileSize) {
+		int x = 0;
+		int y = 0;
+		for (int s = 1; s < tileSize; s <<= 1) {
+			int rx = 1 & (d >>> 1);
+			int ry = 1 & (d ^ rx);
+
+			// Rotate the quadrant
+			if (ry == 0) {
+				if (rx == 1) {
+					x = s - 1 - x;
+					y = s - 1 - y;
+				}
+				int t = x;
+				x = y;
+				y = t;
+			}
+
+			x += s * rx;
+			y += s * ry;
+			d >>>= 2;
+		}
+		return y * tileSize + x;
+	}
+}
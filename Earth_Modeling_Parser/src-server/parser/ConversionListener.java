@@ -0,0 +1,47 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Receives progress updates while a grid is converted. Updates are sent each time a row of the table is finished, so a listener should be quick; one that updates a UI or sends messages should only act on every so many rows.
+ */
+
+package parser;
+
+@FunctionalInterface
+public interface ConversionListener {
+
+	/**
+	 * Called as the table is converted. When the table is parsed in parallel the updates come from the pool's threads, but never at the same time: ParallelBodyParser
+	 * makes them one at a time, so an implementation only has to publish what it is given (e.g. through a volatile field) to whoever reads it.
+	 * 
+	 * @param rowsDone
+	 *           The number of rows of the table that have been converted (or skipped, when clipping).
+	 * @param totalRows
+	 *           The number of rows in the table (nrows).
+	 * @param bytesRead
+	 *           The number of bytes of (uncompressed) ASCII text that have been read.
+	 */
+	void progressUpdated(int rowsDone, int totalRows, long bytesRead);
+
+	/**
+	 * Checked along with each progress update. Lets whoever started a conversion stop it without holding on to the parser, such as when one GridConverter is shared by many conversions.
+	 * Unlike progressUpdated() this may be called from several threads at once, and is usually called from a different thread than the one that cancels.
+	 * 
+	 * @return true to stop the conversion at the end of the current row; its output is then discarded.
+	 */
+	default boolean isCancelled() {
+		return false;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         The outcome of one conversion by a GridConverter: the header of the grid, the statistics of its values, and the CSV file or raster it was converted to. Results are immutable (the statistics are copied on the way out, and the raster is a read-only view), so they can be handed between threads freely.
+ */
+
+package parser;
+
+import java.io.File;
+
+public final class ConversionResult {
+
+	/**
+	 * The file that was converted, or null if the grid came from memory.
+	 */
+	private final File source;
+
+	/**
+	 * The CSV file, or null if the conversion failed or was to a raster.
+	 */
+	private final File output;
+
+	/**
+	 * The raster the grid was converted to, or filled alongside its CSV or binary grid (see OutputOptions.withRaster()); null if there was none or the conversion failed.
+	 */
+	private final GridRaster raster;
+
+	/**
+	 * The header of the grid that was parsed, and of the grid that was output (different if it was downsampled). Null if the header was invalid.
+	 */
+	private final GridHeader header;
+	private final GridHeader outputHeader;
+
+	private final GridStatistics statistics;
+	private final long valuesParsed;
+	private final boolean cancelled;
+
+	ConversionResult(File source, File output, GridRaster raster, GridHeader header, GridHeader outputHeader, GridStatistics statistics, long valuesParsed, boolean cancelled) {
+		this.source = source;
+		this.output = output;
+		this.raster = raster != null ? raster.readOnly() : null;
+		this.header = header;
+		this.outputHeader = outputHeader;
+		this.statistics = new GridStatistics(statistics);
+		this.valuesParsed = valuesParsed;
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * 
+	 * @return true if the grid was converted.
+	 */
+	public boolean isSuccess() {
+		return (output != null || raster != null) && !cancelled;
+	}
+
+	/**
+	 * 
+	 * @return true if the conversion was cancelled by its listener.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * 
+	 * @return The file that was converted, or null if the grid came from memory.
+	 */
+	public File getSource() {
+		return source;
+	}
+
+	/**
+	 * 
+	 * @return The CSV file, or null if the conversion failed or was to a raster.
+	 */
+	public File getOutput() {
+		return output;
+	}
+
+	/**
+	 * 
+	 * @return A read-only view of the raster (see GridRaster.readOnly()) the grid was converted to, or filled alongside its CSV or binary grid; null if there was none or the conversion failed.
+	 */
+	public GridRaster getRaster() {
+		return raster;
+	}
+
+	/**
+	 * 
+	 * @return The header of the grid that was parsed, or null if it was invalid.
+	 */
+	public GridHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * 
+	 * @return The header of the grid that was output (the coarser grid if it was downsampled), or null if the header was invalid.
+	 */
+	public GridHeader getOutputHeader() {
+		return outputHeader;
+	}
+
+	/**
+	 * 
+	 * @return A copy of the statistics of the values that were parsed.
+	 */
+	public GridStatistics getStatistics() {
+		return new GridStatistics(statistics);
+	}
+
+	/**
+	 * 
+	 * @return The number of values read from the table.
+	 */
+	public long getValuesParsed() {
+		return valuesParsed;
+	}
+
+	@Override
+	public String toString() {
+		return (source != null ? source.getName() : "grid") + ": " + (isSuccess() ? "converted" : cancelled ? "cancelled" : "failed") + ", " + valuesParsed + " values, " + statistics;
+	}
+}
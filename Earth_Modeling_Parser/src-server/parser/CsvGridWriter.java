@@ -0,0 +1,732 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Streams CSV rows to disk as they are parsed. Rows are written in table order to a ".part" file next to the output file, after the CSV header, and the min and max rows are tracked in a small ExtremaRecord instead of being kept in memory. The output is laid out as: the CSV header,
+ *         the min row, the max row, and then the remaining rows (with the min and max rows cut out of their original position). On finish(), the rows up to the last of the min and max rows are moved down in the ".part" file to make room for those two after the header, and the ".part" file then
+ *         replaces the output file. Rows after the min and max are never copied, so only part of the CSV is written twice, and no second copy of it is needed on disk. Heap use does not grow with the size of the grid.
+ * 
+ *         Rows are formatted by CsvNumberFormat straight into a reusable byte array. When the writer knows the grid's header, cells can be written by row and column (writeCell()): the text of each longitude is formatted once and reused for every row, and the text of the latitude once per row, so only
+ *         the value is formatted for each cell.
+ */
+
+package parser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.pmw.tinylog.Logger;
+
+public class CsvGridWriter {
+
+	/**
+	 * The header written at the top of every CSV file.
+	 */
+	public static final String CSV_HEADER = "latitude,longitude,value";
+
+	/**
+	 * Line separator used between rows (matches what PrintWriter.println() used to write).
+	 */
+	private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The CSV header and its line separator, which every temporary file starts with.
+	 */
+	private static final byte[] HEADER_LINE = (CSV_HEADER + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Size of the output buffer used when writing rows.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The final CSV file.
+	 */
+	private File outFile;
+
+	/**
+	 * Temporary file that holds the CSV header and the rows in table order until finish() is called.
+	 */
+	private File bodyFile;
+
+	/**
+	 * Stream writing to bodyFile.
+	 */
+	private OutputStream body;
+
+	/**
+	 * Number of bytes written to bodyFile so far, including the CSV header.
+	 */
+	private long bodyLength;
+
+	/**
+	 * Position and value of the min and max rows.
+	 */
+	private ExtremaRecord extrema;
+
+	/**
+	 * The row being written, reused for every row.
+	 */
+	private byte[] row;
+
+	/**
+	 * Digits written after the point of each value; -1 for as many as the value needs.
+	 */
+	private int fractionDigits;
+
+	/**
+	 * Header of the grid being written, or null if writeCell() can't be used.
+	 */
+	private GridHeader grid;
+
+	/**
+	 * Text of the longitude of each column followed by a comma, formatted the first time the column is written.
+	 */
+	private byte[][] longitudes;
+
+	/**
+	 * Text of the latitude of the row last written followed by a comma, and which row that was.
+	 */
+	private byte[] latitude;
+	private int latitudeLength;
+	private int latitudeRow;
+
+	/**
+	 * Creates a new writer for the given output file. Rows are buffered on disk (not in memory) until finish() is called.
+	 * 
+	 * @param outFile
+	 *           The CSV file that should be created.
+	 * @throws IOException
+	 *            The temporary file next to outFile could not be created.
+	 */
+	public CsvGridWriter(File outFile) throws IOException {
+		this(outFile, null);
+	}
+
+	/**
+	 * Creates a new writer for the given output file that can also write cells by row and column. Rows are buffered on disk (not in memory) until finish() is called.
+	 * 
+	 * @param outFile
+	 *           The CSV file that should be created.
+	 * @param grid
+	 *           The header of the grid being written, used to work out the coordinates of each cell.
+	 * @throws IOException
+	 *            The temporary file next to outFile could not be created.
+	 */
+	public CsvGridWriter(File outFile, GridHeader grid) throws IOException {
+		this.outFile = outFile;
+		this.bodyFile = new File(outFile.getPath() + ".part");
+		this.body = new BufferedOutputStream(new FileOutputStream(bodyFile), BUFFER_SIZE);
+		this.body.write(HEADER_LINE);
+		this.bodyLength = HEADER_LINE.length;
+		this.extrema = new ExtremaRecord();
+		this.row = new byte[3 * (CsvNumberFormat.MAX_LENGTH + 1) + NEW_LINE.length];
+		this.fractionDigits = -1;
+		this.grid = grid;
+		this.longitudes = grid != null ? new byte[grid.getNcols()][] : null;
+		this.latitude = new byte[CsvNumberFormat.MAX_LENGTH + 1];
+		this.latitudeLength = 0;
+		this.latitudeRow = -1;
+	}
+
+	/**
+	 * 
+	 * @return The CSV file that is created when finish() is called.
+	 */
+	public File getOutFile() {
+		return outFile;
+	}
+
+	/**
+	 * 
+	 * @return The number of digits written after the point of each value; -1 for as many as the value needs.
+	 */
+	public int getFractionDigits() {
+		return fractionDigits;
+	}
+
+	/**
+	 * By default each value is written with as many digits as it needs to read back exactly. A fixed number of digits makes the CSV smaller for values that don't need that precision. Coordinates are always written exactly.
+	 * 
+	 * @param fractionDigits
+	 *           The number of digits to write after the point of each value (0 to 18), or -1 for as many as the value needs.
+	 * @throws IllegalArgumentException
+	 *            If fractionDigits is out of range.
+	 */
+	public void setFractionDigits(int fractionDigits) {
+		if (fractionDigits < -1 || fractionDigits > 18)
+			throw new IllegalArgumentException("Fraction digits must be from 0 to 18, or -1.");
+		this.fractionDigits = fractionDigits;
+	}
+
+	/**
+	 * 
+	 * @return The min and max rows seen so far.
+	 */
+	public ExtremaRecord getExtrema() {
+		return extrema;
+	}
+
+	/**
+	 * Writes a single point to the CSV.
+	 * 
+	 * @param latitude
+	 *           The latitude of the point.
+	 * @param longitude
+	 *           The longitude of the point.
+	 * @param value
+	 *           The value of the point.
+	 * @throws IOException
+	 *            There was an issue writing to the temporary file.
+	 */
+	public void writeRow(double latitude, double longitude, double value) throws IOException {
+		int length = coordinates(latitude, longitude);
+		length = formatValue(value, length);
+		finishRow(value, length);
+	}
+
+	/**
+	 * Writes a single point with a float value to the CSV (such as one read from a binary float grid). The value is written with as few digits as a float needs.
+	 * 
+	 * @param latitude
+	 *           The latitude of the point.
+	 * @param longitude
+	 *           The longitude of the point.
+	 * @param value
+	 *           The value of the point.
+	 * @throws IOException
+	 *            There was an issue writing to the temporary file.
+	 */
+	public void writeRow(double latitude, double longitude, float value) throws IOException {
+		int length = coordinates(latitude, longitude);
+		length = formatValue(value, length);
+		finishRow(value, length);
+	}
+
+	/**
+	 * Writes a cell of the grid to the CSV, at the same coordinates as writeRow(header.getLatitude(row), header.getLongitude(column), value).
+	 * 
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell, 0 being the left.
+	 * @param value
+	 *           The value of the cell.
+	 * @throws IOException
+	 *            There was an issue writing to the temporary file.
+	 * @throws IllegalStateException
+	 *            If the writer wasn't given the grid's header.
+	 */
+	public void writeCell(int row, int column, double value) throws IOException {
+		int length = coordinates(row, column);
+		length = formatValue(value, length);
+		finishRow(value, length);
+	}
+
+	/**
+	 * Writes a cell of the grid with a float value to the CSV. The value is written with as few digits as a float needs.
+	 * 
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell, 0 being the left.
+	 * @param value
+	 *           The value of the cell.
+	 * @throws IOException
+	 *            There was an issue writing to the temporary file.
+	 * @throws IllegalStateException
+	 *            If the writer wasn't given the grid's header.
+	 */
+	public void writeCell(int row, int column, float value) throws IOException {
+		int length = coordinates(row, column);
+		length = formatValue(value, length);
+		finishRow(value, length);
+	}
+
+	/**
+	 * Formats the latitude and longitude into the start of the row.
+	 * 
+	 * @return The length of the row so far.
+	 */
+	private int coordinates(double latitude, double longitude) {
+		int length = CsvNumberFormat.format(latitude, row, 0);
+		row[length++] = ',';
+		length = CsvNumberFormat.format(longitude, row, length);
+		row[length++] = ',';
+		return length;
+	}
+
+	/**
+	 * Copies the text of a cell's latitude and longitude into the start of the row, formatting each the first time it is needed.
+	 * 
+	 * @return The length of the row so far.
+	 */
+	private int coordinates(int rowIndex, int column) {
+		if (grid == null)
+			throw new IllegalStateException("Cells can only be written by a writer that was given the grid's header.");
+
+		if (rowIndex != latitudeRow) {
+			latitudeLength = CsvNumberFormat.format(grid.getLatitude(rowIndex), latitude, 0);
+			latitude[latitudeLength++] = ',';
+			latitudeRow = rowIndex;
+		}
+
+		byte[] longitude = longitudes[column];
+		if (longitude == null) {
+			byte[] text = new byte[CsvNumberFormat.MAX_LENGTH + 1];
+			int length = CsvNumberFormat.format(grid.getLongitude(column), text, 0);
+			text[length++] = ',';
+			longitude = longitudes[column] = Arrays.copyOf(text, length);
+		}
+
+		System.arraycopy(latitude, 0, row, 0, latitudeLength);
+		System.arraycopy(longitude, 0, row, latitudeLength, longitude.length);
+		return latitudeLength + longitude.length;
+	}
+
+	/**
+	 * Formats a value into the row.
+	 * 
+	 * @return The length of the row so far.
+	 */
+	private int formatValue(double value, int length) {
+		if (fractionDigits < 0)
+			return CsvNumberFormat.format(value, row, length);
+		return CsvNumberFormat.format(value, fractionDigits, row, length);
+	}
+
+	/**
+	 * Formats a float value into the row.
+	 * 
+	 * @return The length of the row so far.
+	 */
+	private int formatValue(float value, int length) {
+		if (fractionDigits < 0)
+			return CsvNumberFormat.format(value, row, length);
+		return CsvNumberFormat.format(value, fractionDigits, row, length);
+	}
+
+	/**
+	 * Ends the row with a line separator, records it if it holds a new min or max, and sends it to the temporary file.
+	 */
+	private void finishRow(double value, int length) throws IOException {
+		System.arraycopy(NEW_LINE, 0, row, length, NEW_LINE.length);
+		length += NEW_LINE.length;
+
+		extrema.offer(value, bodyLength, length);
+
+		body.write(row, 0, length);
+		bodyLength += length;
+	}
+
+	/**
+	 * Writes a parsed grid to a CSV file, in the same layout parseToCsv() creates. NODATA cells are left out.
+	 * 
+	 * @param raster
+	 *           The grid to write.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The finished CSV file.
+	 * @throws IOException
+	 *            There was an issue writing the output file.
+	 */
+	public static File write(GridRaster raster, File outFile) throws IOException {
+		GridHeader header = raster.getHeader();
+		CsvGridWriter output = new CsvGridWriter(outFile, header);
+
+		// Floats are written with as few digits as a float needs
+		boolean floats = raster.getPrecision() == GridPrecision.FLOAT;
+
+		try {
+			raster.forEachCell((row, column, value) -> {
+				if (header.isNoData(value))
+					return;
+				if (floats)
+					output.writeCell(row, column, (float) value);
+				else
+					output.writeCell(row, column, value);
+			});
+		} catch (IOException | RuntimeException e) {
+			output.abort();
+			throw e;
+		}
+
+		return output.finish();
+	}
+
+	/**
+	 * Writes a sparse grid to a CSV file with the usual layout. Only the cells with data are visited; the NODATA spans are never touched.
+	 * 
+	 * @param grid
+	 *           The grid to write.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The finished CSV file.
+	 * @throws IOException
+	 *            There was an issue writing the output file.
+	 */
+	public static File write(SparseGrid grid, File outFile) throws IOException {
+		CsvGridWriter output = new CsvGridWriter(outFile, grid.getHeader());
+
+		// Floats are written with as few digits as a float needs
+		boolean floats = grid.getPrecision() == GridPrecision.FLOAT;
+
+		try {
+			grid.forEachValidCell((row, column, value) -> {
+				if (floats)
+					output.writeCell(row, column, (float) value);
+				else
+					output.writeCell(row, column, value);
+			});
+		} catch (IOException | RuntimeException e) {
+			output.abort();
+			throw e;
+		}
+
+		return output.finish();
+	}
+
+	/**
+	 * Assembles the output file from the temporary file, which then replaces the output file.
+	 * 
+	 * @return The finished CSV file.
+	 * @throws IOException
+	 *            There was an issue writing the output file.
+	 */
+	public File finish() throws IOException {
+		return merge(outFile, Collections.singletonList(this));
+	}
+
+	/**
+	 * Assembles one CSV file from several writers that each hold a consecutive piece of the table (such as when the table was parsed in parallel chunks). The min and max rows over all of the pieces are written first, then every piece in order with those two rows cut out. The output is assembled in
+	 * the temporary file of the first piece: its rows are moved down to make room for the min and max rows (only as far as the last of the rows cut out of it, if the rows written in front take the same space), and the other pieces are appended to it. The temporary files of all pieces are
+	 * removed.
+	 * 
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @param parts
+	 *           The writers holding the pieces of the table, in table order.
+	 * @return The finished CSV file.
+	 * @throws IOException
+	 *            There was an issue writing the output file.
+	 */
+	public static File merge(File outFile, List<CsvGridWriter> parts) throws IOException {
+		for (CsvGridWriter part : parts)
+			part.body.close();
+
+		// The first occurrence of the min and max wins, so later parts only replace them if they are strictly smaller or larger.
+		CsvGridWriter minPart = null;
+		CsvGridWriter maxPart = null;
+		for (CsvGridWriter part : parts) {
+			ExtremaRecord e = part.extrema;
+			if (e.isEmpty())
+				continue;
+			if (minPart == null || e.getMinValue() < minPart.extrema.getMinValue())
+				minPart = part;
+			if (maxPart == null || e.getMaxValue() > maxPart.extrema.getMaxValue())
+				maxPart = part;
+		}
+
+		// The first two lines after the header are the min and max values (only once if they are the same row).
+		boolean sameRow = minPart == maxPart && minPart != null && minPart.extrema.getMinOffset() == minPart.extrema.getMaxOffset();
+		int extremesLength = (minPart != null ? minPart.extrema.getMinLength() : 0) + (maxPart != null && !sameRow ? maxPart.extrema.getMaxLength() : 0);
+		ByteBuffer extremes = ByteBuffer.allocate(extremesLength);
+		if (minPart != null)
+			minPart.read(minPart.extrema.getMinOffset(), minPart.extrema.getMinLength(), extremes);
+		if (maxPart != null && !sameRow)
+			maxPart.read(maxPart.extrema.getMaxOffset(), maxPart.extrema.getMaxLength(), extremes);
+		extremes.flip();
+
+		CsvGridWriter first = parts.get(0);
+		try {
+			try (RandomAccessFile file = new RandomAccessFile(first.bodyFile, "rw")) {
+				FileChannel channel = file.getChannel();
+
+				// The rows that stay in the first piece move down by the length of the rows written in front of them, less the length of those cut out before them. Once past the last row cut out, they only move if the two lengths differ.
+				long[][] cut = first.rowsToCut(minPart, maxPart, sameRow);
+				long shift = extremesLength;
+				for (long[] row : cut)
+					shift -= row[1];
+				long end = shift == 0 && cut.length > 0 ? cut[cut.length - 1][0] + cut[cut.length - 1][1] : first.bodyLength;
+
+				// Move the last rows first, so no row is overwritten before it has been moved
+				long cutBefore = 0;
+				for (long[] row : cut)
+					cutBefore += row[1];
+				long segmentEnd = end;
+				for (int i = cut.length - 1; i >= -1; i--) {
+					long segmentStart = i >= 0 ? cut[i][0] + cut[i][1] : HEADER_LINE.length;
+					move(channel, segmentStart, segmentEnd - segmentStart, extremesLength - cutBefore);
+					if (i >= 0) {
+						cutBefore -= cut[i][1];
+						segmentEnd = cut[i][0];
+					}
+				}
+				writeFully(channel, extremes, HEADER_LINE.length);
+
+				// Copy everything else, skipping the rows that were already written.
+				channel.position(first.bodyLength + shift);
+				for (CsvGridWriter part : parts.subList(1, parts.size())) {
+					long position = HEADER_LINE.length;
+					for (long[] row : part.rowsToCut(minPart, maxPart, sameRow)) {
+						part.copy(position, row[0] - position, channel);
+						position = row[0] + row[1];
+					}
+					part.copy(position, part.bodyLength - position, channel);
+				}
+			}
+
+			Files.move(first.bodyFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			for (CsvGridWriter part : parts)
+				if (part.bodyFile.exists() && !part.bodyFile.delete())
+					Logger.warn("Could not delete temporary CSV file {}", part.bodyFile.getName());
+		}
+
+		return outFile;
+	}
+
+	/**
+	 * Finds the min and max rows that have to be cut out of this piece of the table.
+	 * 
+	 * @param minPart
+	 *           The piece holding the min row, or null if there are no rows.
+	 * @param maxPart
+	 *           The piece holding the max row, or null if there are no rows.
+	 * @param sameRow
+	 *           true if the min and max are the same row, which is only cut out once.
+	 * @return The offset and length of each row to cut out, in the order they are in the temporary file.
+	 */
+	private long[][] rowsToCut(CsvGridWriter minPart, CsvGridWriter maxPart, boolean sameRow) {
+		List<long[]> rows = new ArrayList<>(2);
+		if (this == minPart)
+			rows.add(new long[] { extrema.getMinOffset(), extrema.getMinLength() });
+		if (this == maxPart && !sameRow)
+			rows.add(new long[] { extrema.getMaxOffset(), extrema.getMaxLength() });
+		rows.sort(Comparator.comparingLong(row -> row[0]));
+		return rows.toArray(new long[rows.size()][]);
+	}
+
+	/**
+	 * Closes the temporary file once every row has been written, such as for a piece of a table parsed in chunks, so it isn't held open until the pieces are merged. merge() and abort() can still be called afterwards.
+	 * 
+	 * @throws IOException
+	 *            The last rows couldn't be written.
+	 */
+	public void close() throws IOException {
+		body.close();
+	}
+
+	/**
+	 * Closes and removes the temporary file without creating the output file. Used when parsing fails part way through.
+	 */
+	public void abort() {
+		try {
+			body.close();
+		} catch (IOException e) {
+			Logger.error("Error closing temporary CSV file {}", bodyFile.getName(), e);
+		}
+
+		if (!bodyFile.delete())
+			Logger.warn("Could not delete temporary CSV file {}", bodyFile.getName());
+	}
+
+	/**
+	 * Copies a range of bytes from the temporary file to another channel. transferTo() may copy less than requested, so loop until the range is done.
+	 * 
+	 * @param position
+	 *           Where the range starts in the temporary file.
+	 * @param count
+	 *           How many bytes to copy.
+	 * @param out
+	 *           The channel to copy to.
+	 * @throws IOException
+	 *            There was an issue reading or writing.
+	 */
+	private void copy(long position, long count, FileChannel out) throws IOException {
+		if (count <= 0)
+			return;
+
+		try (RandomAccessFile in = new RandomAccessFile(bodyFile, "r")) {
+			FileChannel inChannel = in.getChannel();
+			while (count > 0) {
+				long copied = inChannel.transferTo(position, count, out);
+				position += copied;
+				count -= copied;
+			}
+		}
+	}
+
+	/**
+	 * Reads a range of bytes from the temporary file.
+	 * 
+	 * @param position
+	 *           Where the range starts in the temporary file.
+	 * @param count
+	 *           How many bytes to read.
+	 * @param buffer
+	 *           The buffer to read into, which must have room for them.
+	 * @throws IOException
+	 *            There was an issue reading.
+	 */
+	private void read(long position, int count, ByteBuffer buffer) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(bodyFile, "r")) {
+			FileChannel inChannel = in.getChannel();
+			int limit = buffer.limit();
+			buffer.limit(buffer.position() + count);
+			while (buffer.hasRemaining())
+				if (inChannel.read(buffer, position + count - buffer.remaining()) < 0)
+					throw new IOException(bodyFile.getName() + " ended before the row at " + position + ".");
+			buffer.limit(limit);
+		}
+	}
+
+	/**
+	 * Moves a range of bytes further down a file, copying from the end of the range back to its start so the range may overlap where it is moved to.
+	 * 
+	 * @param channel
+	 *           The file.
+	 * @param position
+	 *           Where the range starts.
+	 * @param count
+	 *           How many bytes to move.
+	 * @param distance
+	 *           How far down the file to move them; not negative.
+	 * @throws IOException
+	 *            There was an issue reading or writing.
+	 */
+	private static void move(FileChannel channel, long position, long count, long distance) throws IOException {
+		if (count <= 0 || distance == 0)
+			return;
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, count));
+		long end = position + count;
+		while (end > position) {
+			int length = (int) Math.min(buffer.capacity(), end - position);
+			long start = end - length;
+
+			buffer.clear();
+			buffer.limit(length);
+			while (buffer.hasRemaining())
+				if (channel.read(buffer, start + buffer.position()) < 0)
+					throw new IOException("The temporary CSV file ended before " + end + ".");
+			buffer.flip();
+			writeFully(channel, buffer, start + distance);
+			end = start;
+		}
+	}
+
+	/**
+	 * Writes all of a buffer to a file at the given position.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	/**
+	 * Small record of where the min and max rows are in the temporary file. The first occurrence of a min or max wins, matching how the rows used to be placed.
+	 */
+	public static class ExtremaRecord {
+
+		private boolean empty = true;
+
+		private double minValue;
+		private long minOffset;
+		private int minLength;
+
+		private double maxValue;
+		private long maxOffset;
+		private int maxLength;
+
+		/**
+		 * Checks a value against the current min and max and records the row's position if it is a new extreme.
+		 * 
+		 * @param value
+		 *           The value in the row.
+		 * @param offset
+		 *           Where the row starts in the temporary file.
+		 * @param length
+		 *           The length of the row in bytes, including the line separator.
+		 */
+		void offer(double value, long offset, int length) {
+			if (empty) {
+				empty = false;
+				minValue = maxValue = value;
+				minOffset = maxOffset = offset;
+				minLength = maxLength = length;
+			} else if (value > maxValue) {
+				maxValue = value;
+				maxOffset = offset;
+				maxLength = length;
+			} else if (value < minValue) {
+				minValue = value;
+				minOffset = offset;
+				minLength = length;
+			}
+		}
+
+		/**
+		 * @return true if no rows have been recorded.
+		 */
+		public boolean isEmpty() {
+			return empty;
+		}
+
+		/**
+		 * @return the smallest value written; NaN if no rows were written.
+		 */
+		public double getMinValue() {
+			return empty ? Double.NaN : minValue;
+		}
+
+		/**
+		 * @return the largest value written; NaN if no rows were written.
+		 */
+		public double getMaxValue() {
+			return empty ? Double.NaN : maxValue;
+		}
+
+		long getMinOffset() {
+			return minOffset;
+		}
+
+		int getMinLength() {
+			return minLength;
+		}
+
+		long getMaxOffset() {
+			return maxOffset;
+		}
+
+		int getMaxLength() {
+			return maxLength;
+		}
+	}
+}
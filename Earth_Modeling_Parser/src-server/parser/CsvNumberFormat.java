@@ -0,0 +1,227 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         Writes numbers as ASCII straight into a byte array, for the CSV writer. Nothing is allocated for the common case: numbers from 0.001 up to 10,000,000, which covers coordinates and the values of every map so far.
+ * 
+ *         By default a number is written with the fewest digits that still read back as exactly the same double (or float), in the same layout as Double.toString(). The digits are found by trying 0, 1, 2... digits after the point: m = round(value * 10^d) is the answer once m / 10^d == value. Both m
+ *         (below 2^53) and 10^d are exact doubles, so that division is correctly rounded, just like parsing the text would be. Numbers outside of the fast range, or that need more digits than a long can hold, are handed to Double.toString() instead.
+ */
+
+package parser;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+public final class CsvNumberFormat {
+
+	/**
+	 * Longest text written for one number (the longest Double.toString()).
+	 */
+	public static final int MAX_LENGTH = 26;
+
+	/**
+	 * Numbers in [MIN_PLAIN, MAX_PLAIN) are written without an exponent, as Double.toString() does.
+	 */
+	private static final double MIN_PLAIN = 1e-3;
+	private static final double MAX_PLAIN = 1e7;
+
+	/**
+	 * Largest integer a double can hold exactly (2^53).
+	 */
+	private static final double MAX_EXACT = 9007199254740992.0;
+
+	/**
+	 * Powers of ten that are exactly representable as doubles, and the same powers as longs.
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+	private static final long[] LONG_POWERS_OF_TEN = new long[POWERS_OF_TEN.length];
+
+	static {
+		for (int i = 0; i < POWERS_OF_TEN.length; i++)
+			LONG_POWERS_OF_TEN[i] = (long) POWERS_OF_TEN[i];
+	}
+
+	private CsvNumberFormat() {
+	}
+
+	/**
+	 * Writes a double with the fewest digits that read back as the same double.
+	 * 
+	 * @param value
+	 *           The number to write.
+	 * @param out
+	 *           The array to write to. Must have MAX_LENGTH bytes free from position.
+	 * @param position
+	 *           Where to start writing.
+	 * @return The position after the last byte written.
+	 */
+	public static int format(double value, byte[] out, int position) {
+		double abs = Math.abs(value);
+
+		if (abs == 0)
+			return plain(value, 0, 0, out, position);
+
+		if (abs >= MIN_PLAIN && abs < MAX_PLAIN) {
+			for (int digits = 0; digits < POWERS_OF_TEN.length; digits++) {
+				double scaled = abs * POWERS_OF_TEN[digits];
+				if (scaled >= MAX_EXACT)
+					break;
+
+				long m = Math.round(scaled);
+				if (m / POWERS_OF_TEN[digits] == abs)
+					return plain(value, m, digits, out, position);
+			}
+		}
+
+		return copy(Double.toString(value), out, position);
+	}
+
+	/**
+	 * Writes a float with the fewest digits that read back as the same float.
+	 * 
+	 * @param value
+	 *           The number to write.
+	 * @param out
+	 *           The array to write to. Must have MAX_LENGTH bytes free from position.
+	 * @param position
+	 *           Where to start writing.
+	 * @return The position after the last byte written.
+	 */
+	public static int format(float value, byte[] out, int position) {
+		float abs = Math.abs(value);
+
+		if (abs == 0)
+			return plain(value, 0, 0, out, position);
+
+		if (abs >= MIN_PLAIN && abs < MAX_PLAIN) {
+			// Half the distance to the floats either side; a decimal closer than that reads back as abs
+			double halfGapUp = ((double) Math.nextUp(abs) - abs) / 2;
+			double halfGapDown = ((double) abs - Math.nextDown(abs)) / 2;
+
+			for (int digits = 0; digits < POWERS_OF_TEN.length; digits++) {
+				double scaled = abs * POWERS_OF_TEN[digits];
+				if (scaled >= MAX_EXACT)
+					break;
+
+				// Ties go to the even digit, as Float.toString() does
+				long m = (long) Math.rint(scaled);
+				double q = m / POWERS_OF_TEN[digits];
+				double distance = Math.abs(q - abs);
+				double halfGap = q >= abs ? halfGapUp : halfGapDown;
+
+				// q is rounded, so only trust it when the decimal is clearly inside the gap
+				if (distance < halfGap - Math.ulp(q))
+					return plain(value, m, digits, out, position);
+			}
+		}
+
+		return copy(Float.toString(value), out, position);
+	}
+
+	/**
+	 * Writes a double rounded to a fixed number of digits after the point (half away from zero). Numbers too large to round this way are written by format(double) instead.
+	 * 
+	 * @param value
+	 *           The number to write.
+	 * @param fractionDigits
+	 *           The number of digits after the point, from 0 to 18.
+	 * @param out
+	 *           The array to write to. Must have MAX_LENGTH bytes free from position.
+	 * @param position
+	 *           Where to start writing.
+	 * @return The position after the last byte written.
+	 */
+	public static int format(double value, int fractionDigits, byte[] out, int position) {
+		double scaled = Math.abs(value) * POWERS_OF_TEN[fractionDigits];
+		if (!(scaled < MAX_EXACT))
+			return format(value, out, position);
+
+		long m = Math.round(scaled);
+
+		// The product is rounded, so a value just below a half can come out as exactly a half. Settle those with exact arithmetic.
+		if (Math.abs(scaled - Math.floor(scaled) - 0.5) <= Math.ulp(scaled))
+			m = new BigDecimal(Math.abs(value)).setScale(fractionDigits, RoundingMode.HALF_UP).unscaledValue().longValue();
+
+		// Don't write -0.00
+		if (m == 0)
+			value = 0;
+
+		if (fractionDigits == 0) {
+			if (value < 0)
+				out[position++] = '-';
+			return digits(m, out, position);
+		}
+		return plain(value, m, fractionDigits, out, position);
+	}
+
+	/**
+	 * Writes m / 10^fractionDigits without an exponent, with at least one digit after the point.
+	 */
+	private static int plain(double value, long m, int fractionDigits, byte[] out, int position) {
+		// Negative zero too
+		if (value < 0 || (value == 0 && 1 / value < 0))
+			out[position++] = '-';
+
+		long power = LONG_POWERS_OF_TEN[fractionDigits];
+		position = digits(m / power, out, position);
+		out[position++] = '.';
+
+		if (fractionDigits == 0) {
+			out[position++] = '0';
+			return position;
+		}
+
+		// Leading zeros of the fraction
+		long fraction = m % power;
+		for (long p = power / 10; p > fraction && p > 1; p /= 10)
+			out[position++] = '0';
+		return digits(fraction, out, position);
+	}
+
+	/**
+	 * Writes a non-negative long.
+	 */
+	private static int digits(long n, byte[] out, int position) {
+		int end = position + length(n);
+		int i = end;
+		do {
+			out[--i] = (byte) ('0' + n % 10);
+			n /= 10;
+		} while (n != 0);
+		return end;
+	}
+
+	/**
+	 * @return The number of digits in a non-negative long.
+	 */
+	private static int length(long n) {
+		int length = 1;
+		while (length < LONG_POWERS_OF_TEN.length && n >= LONG_POWERS_OF_TEN[length])
+			length++;
+		return length;
+	}
+
+	/**
+	 * Copies text that was formatted some other way.
+	 */
+	private static int copy(String text, byte[] out, int position) {
+		byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(bytes, 0, out, position, bytes.length);
+		return position + bytes.length;
+	}
+}
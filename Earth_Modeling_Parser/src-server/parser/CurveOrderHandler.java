@@ -0,0 +1,142 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         Re-orders the cells of a grid along a space filling curve (see CellOrder) before handing them on, usually to the CSV writer. The grid is cut into square tiles of TILE_SIZE cells; the tiles are sent in table order, and the cells inside each tile along the curve. Only one band of tiles
+ *         (TILE_SIZE rows of the table) is held in memory at a time, so memory grows with the width of the grid but not its height.
+ * 
+ *         Only cells with data are handed on, and (unlike most handlers) not in table order. Handlers that need the table order, such as BlockAggregator, must come before this one.
+ */
+
+package parser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class CurveOrderHandler implements GridCellHandler {
+
+	/**
+	 * Number of cells along each side of a tile.
+	 */
+	public static final int TILE_SIZE = 64;
+
+	private final GridHeader header;
+
+	/**
+	 * The handler the re-ordered cells are sent to.
+	 */
+	private final GridCellHandler output;
+
+	/**
+	 * Cells of a tile in the order they are sent, each as row * TILE_SIZE + column.
+	 */
+	private final int[] tileOrder;
+
+	/**
+	 * The cells of the band being filled, TILE_SIZE rows of the table, NODATA where no cell has arrived.
+	 */
+	private final double[] cells;
+
+	/**
+	 * The band being filled, or -1 before the first cell.
+	 */
+	private int band;
+
+	/**
+	 * Creates a handler that re-orders the cells of a grid.
+	 * 
+	 * @param header
+	 *           The header of the grid.
+	 * @param order
+	 *           The curve to follow inside each tile.
+	 * @param output
+	 *           The handler the cells with data are sent to.
+	 */
+	public CurveOrderHandler(GridHeader header, CellOrder order, GridCellHandler output) {
+		this.header = header;
+		this.output = output;
+		this.tileOrder = order.tileOrder(TILE_SIZE);
+		this.cells = new double[TILE_SIZE * header.getNcols()];
+		this.band = -1;
+		Arrays.fill(cells, header.getNODATA());
+	}
+
+	/**
+	 * Holds the cell until its band is complete. The band is sent on once a cell from a later band arrives.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) throws IOException {
+		startBand(row / TILE_SIZE);
+		cells[(row % TILE_SIZE) * header.getNcols() + column] = value;
+	}
+
+	/**
+	 * The band starts out as NODATA, so a run only matters if it starts a new band.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) throws IOException {
+		startBand(row / TILE_SIZE);
+	}
+
+	/**
+	 * Sends on the last band, then finishes the output handler.
+	 */
+	@Override
+	public void finish() throws IOException {
+		flush();
+		band = -1;
+		output.finish();
+	}
+
+	private void startBand(int cellBand) throws IOException {
+		if (cellBand != band) {
+			flush();
+			band = cellBand;
+		}
+	}
+
+	/**
+	 * Sends every cell with data in the current band, tile by tile along the curve, and empties the band.
+	 */
+	private void flush() throws IOException {
+		if (band < 0)
+			return;
+
+		int ncols = header.getNcols();
+		int firstRow = band * TILE_SIZE;
+		int rows = Math.min(TILE_SIZE, header.getNrows() - firstRow);
+
+		for (int tileColumn = 0; tileColumn < ncols; tileColumn += TILE_SIZE) {
+			int columns = Math.min(TILE_SIZE, ncols - tileColumn);
+
+			for (int cell : tileOrder) {
+				int row = cell / TILE_SIZE;
+				int column = cell % TILE_SIZE;
+
+				// The last tiles of the band may be cut short by the edge of the grid
+				if (row >= rows || column >= columns)
+					continue;
+
+				int index = row * ncols + tileColumn + column;
+				double value = cells[index];
+				if (!header.isNoData(value))
+					output.handleCell(firstRow + row, tileColumn + column, value);
+			}
+		}
+
+		Arrays.fill(cells, header.getNODATA());
+	}
+}
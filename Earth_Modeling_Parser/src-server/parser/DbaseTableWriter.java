@@ -0,0 +1,447 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         Writes the latitude, longitude and value of every cell with data to a dBASE III table (.dbf) while the grid is parsed, so that publishing a map can make its XY layer straight from the table instead of converting the CSV into one first. Every cell is passed on unchanged to another
+ *         handler (such as the one writing the CSV), so the table is built in the same pass as the CSV.
+ * 
+ *         The three fields are numeric (N) fields FIELD_LENGTH characters wide with DECIMALS decimals, the layout ArcGIS uses for doubles. Numbers are written with the same digits as the CSV, without an exponent, and rounded to fewer decimals only where they don't fit. Records are fixed length, so they are written
+ *         straight to the file in table order and the record count is filled in at the end. As in the CSV, the min and max records are moved to the top of the table; the records they swap places with take their positions. A .cpg file next to the table names its code page.
+ * 
+ *         The table is written to a ".part" file that only replaces the output once it is complete.
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.pmw.tinylog.Logger;
+
+public class DbaseTableWriter implements GridCellHandler {
+
+	/**
+	 * File name ending of the table.
+	 */
+	public static final String EXTENSION = ".dbf";
+
+	/**
+	 * File name ending of the file holding the table's code page.
+	 */
+	public static final String CODE_PAGE_EXTENSION = ".cpg";
+
+	/**
+	 * Width of every field, and the decimals declared for it.
+	 */
+	public static final int FIELD_LENGTH = 19;
+	public static final int DECIMALS = 11;
+
+	/**
+	 * Names of the fields, matching the columns of the CSV.
+	 */
+	private static final String[] FIELD_NAMES = { "latitude", "longitude", "value" };
+
+	/**
+	 * Sizes of the parts of the file: the header before the field descriptors, one descriptor, and one record (a deletion flag then the fields).
+	 */
+	private static final int FILE_HEADER_SIZE = 32;
+	private static final int DESCRIPTOR_SIZE = 32;
+	private static final int HEADER_SIZE = FILE_HEADER_SIZE + FIELD_NAMES.length * DESCRIPTOR_SIZE + 1;
+	private static final int RECORD_SIZE = 1 + FIELD_NAMES.length * FIELD_LENGTH;
+
+	/**
+	 * Number of records buffered before they are written.
+	 */
+	private static final int BUFFERED_RECORDS = 1024;
+
+	private final GridCellHandler output;
+
+	private final File outFile;
+	private final File partFile;
+	private final FileChannel channel;
+
+	/**
+	 * Header of the grid being written, used to work out the coordinates of each cell.
+	 */
+	private final GridHeader grid;
+
+	/**
+	 * true to write values with as few digits as a float needs, as the CSV of a binary float grid does.
+	 */
+	private final boolean floats;
+
+	/**
+	 * Digits written after the point of each value; -1 for as many as the value needs.
+	 */
+	private int fractionDigits;
+
+	/**
+	 * Records waiting to be written.
+	 */
+	private final ByteBuffer records;
+
+	/**
+	 * Number of records so far.
+	 */
+	private int recordCount;
+
+	/**
+	 * Index and value of the min and max records.
+	 */
+	private final CsvGridWriter.ExtremaRecord extrema;
+
+	/**
+	 * Text of the longitude of each column, formatted the first time the column is written, and of the latitude of the row last written.
+	 */
+	private final byte[][] longitudes;
+	private byte[] latitude;
+	private int latitudeRow;
+
+	/**
+	 * Space numbers are formatted in before they are right aligned into their field.
+	 */
+	private final byte[] number;
+
+	/**
+	 * true once a number too large for its field has been logged.
+	 */
+	private boolean overflowLogged;
+
+	/**
+	 * true once the table has been moved into place.
+	 */
+	private boolean saved;
+
+	/**
+	 * Creates a writer for a grid.
+	 * 
+	 * @param grid
+	 *           The header of the grid being parsed.
+	 * @param outFile
+	 *           The table to create.
+	 * @param floats
+	 *           true if the values are floats, and should be written with as few digits as a float needs.
+	 * @param output
+	 *           The handler every cell is passed on to, or null.
+	 * @throws IOException
+	 *            The temporary file next to outFile could not be created.
+	 */
+	public DbaseTableWriter(GridHeader grid, File outFile, boolean floats, GridCellHandler output) throws IOException {
+		this.output = output;
+		this.outFile = outFile;
+		this.partFile = new File(outFile.getPath() + ".part");
+		this.grid = grid;
+		this.floats = floats;
+		this.fractionDigits = -1;
+		this.records = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE);
+		this.recordCount = 0;
+		this.extrema = new CsvGridWriter.ExtremaRecord();
+		this.longitudes = new byte[grid.getNcols()][];
+		this.latitude = null;
+		this.latitudeRow = -1;
+		this.number = new byte[CsvNumberFormat.MAX_LENGTH];
+		this.overflowLogged = false;
+		this.saved = false;
+
+		this.channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.READ);
+
+		// The header is written last, once the number of records is known
+		this.channel.position(HEADER_SIZE);
+	}
+
+	/**
+	 * Works out where the table of a map is written: in the tables directory, named like its CSV. ArcGIS doesn't take '-' in table names, so it is replaced with '_' (as publish_map.py does).
+	 * 
+	 * @param directory
+	 *           The directory tables are written to.
+	 * @param csvFile
+	 *           The CSV file the map is written to.
+	 * @return The table file.
+	 */
+	public static File getOutputFile(File directory, File csvFile) {
+		String name = csvFile.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(directory, name.replace('-', '_') + EXTENSION);
+	}
+
+	/**
+	 * @param table
+	 *           A table file.
+	 * @return The file naming the code page of the table.
+	 */
+	public static File getCodePageFile(File table) {
+		String name = table.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(table.getParentFile(), name + CODE_PAGE_EXTENSION);
+	}
+
+	/**
+	 * 
+	 * @return The number of digits written after the point of each value; -1 for as many as the value needs.
+	 */
+	public int getFractionDigits() {
+		return fractionDigits;
+	}
+
+	/**
+	 * Rounds the values to a fixed number of digits, as CsvGridWriter.setFractionDigits() does for the CSV.
+	 * 
+	 * @param fractionDigits
+	 *           The number of digits to write after the point of each value (0 to 18), or -1 for as many as the value needs.
+	 * @throws IllegalArgumentException
+	 *            If fractionDigits is out of range.
+	 */
+	public void setFractionDigits(int fractionDigits) {
+		if (fractionDigits < -1 || fractionDigits > 18)
+			throw new IllegalArgumentException("Fraction digits must be from 0 to 18, or -1.");
+		this.fractionDigits = fractionDigits;
+	}
+
+	/**
+	 * 
+	 * @return The number of records written so far.
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Passes the cell on, then adds a record for it unless it is NODATA.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) throws IOException {
+		if (output != null)
+			output.handleCell(row, column, value);
+		if (grid.isNoData(value))
+			return;
+
+		if (!records.hasRemaining())
+			flush();
+
+		if (row != latitudeRow) {
+			latitude = field(grid.getLatitude(row), false);
+			latitudeRow = row;
+		}
+		byte[] longitude = longitudes[column];
+		if (longitude == null)
+			longitude = longitudes[column] = field(grid.getLongitude(column), false);
+
+		extrema.offer(value, recordCount, RECORD_SIZE);
+		records.put((byte) ' ');
+		records.put(latitude);
+		records.put(longitude);
+		records.put(field(value, true));
+		recordCount++;
+	}
+
+	/**
+	 * Passes the run on; NODATA cells have no records.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) throws IOException {
+		if (output != null)
+			output.handleNoData(row, column, count, noData);
+	}
+
+	/**
+	 * Writes the last records, moves the min and max records to the top, writes the header and the code page file, moves the table into place, then finishes the output handler.
+	 */
+	@Override
+	public void finish() throws IOException {
+		try {
+			flush();
+			ByteBuffer end = ByteBuffer.wrap(new byte[] { 0x1A });
+			write(end, HEADER_SIZE + (long) recordCount * RECORD_SIZE);
+
+			if (!extrema.isEmpty()) {
+				long min = extrema.getMinOffset();
+				long max = extrema.getMaxOffset();
+				swap(0, min);
+				if (max != min) {
+					// The max may have been the record the min swapped places with
+					swap(1, max == 0 ? min : max);
+				}
+			}
+
+			writeHeader();
+			channel.close();
+			Files.write(getCodePageFile(outFile).toPath(), "UTF-8".getBytes(StandardCharsets.US_ASCII));
+			Files.move(partFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			saved = true;
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+		Logger.info("Wrote {} records to {} ({} bytes)", recordCount, outFile.getName(), outFile.length());
+
+		if (output != null)
+			output.finish();
+	}
+
+	/**
+	 * Throws away the partly written table, such as when the grid turns out to be invalid, or the saved table and its .cpg file if a later stage of the conversion fails after finish().
+	 */
+	public void abort() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Logger.warn("Couldn't close {}", partFile.getName(), e);
+		}
+		partFile.delete();
+		if (saved) {
+			outFile.delete();
+			getCodePageFile(outFile).delete();
+		}
+	}
+
+	/**
+	 * Formats a number right aligned in a field.
+	 * 
+	 * @param value
+	 *           The number.
+	 * @param isValue
+	 *           true for the value of a cell, which is written like the CSV writes it; false for a coordinate, which is always written exactly.
+	 * @return The text of the field.
+	 */
+	private byte[] field(double value, boolean isValue) {
+		int length;
+		if (isValue && fractionDigits >= 0)
+			length = CsvNumberFormat.format(value, fractionDigits, number, 0);
+		else if (isValue && floats)
+			length = CsvNumberFormat.format((float) value, number, 0);
+		else
+			length = CsvNumberFormat.format(value, number, 0);
+
+		byte[] text = new byte[FIELD_LENGTH];
+		if (length > FIELD_LENGTH || hasExponent(length)) {
+			// Numeric fields have no exponents, so write the same digits without one, rounded to as many decimals as fit
+			String plain = "";
+			if (Double.isFinite(value)) {
+				BigDecimal exact = new BigDecimal(new String(number, 0, length, StandardCharsets.US_ASCII));
+				plain = exact.toPlainString();
+				for (int digits = Math.min(exact.scale(), DECIMALS); plain.length() > FIELD_LENGTH && digits >= 0; digits--)
+					plain = exact.setScale(digits, RoundingMode.HALF_UP).toPlainString();
+			}
+
+			if (plain.isEmpty() || plain.length() > FIELD_LENGTH) {
+				// dBASE marks a number that doesn't fit by filling its field with '*'
+				Arrays.fill(text, (byte) '*');
+				if (!overflowLogged)
+					Logger.warn("{} doesn't fit in a field of {}, so it is left empty.", value, outFile.getName());
+				overflowLogged = true;
+				return text;
+			}
+			length = plain.length();
+			System.arraycopy(plain.getBytes(StandardCharsets.US_ASCII), 0, number, 0, length);
+		}
+
+		Arrays.fill(text, 0, FIELD_LENGTH - length, (byte) ' ');
+		System.arraycopy(number, 0, text, FIELD_LENGTH - length, length);
+		return text;
+	}
+
+	private boolean hasExponent(int length) {
+		for (int i = 0; i < length; i++)
+			if (number[i] == 'E')
+				return true;
+		return false;
+	}
+
+	/**
+	 * Swaps two records in the file.
+	 */
+	private void swap(long a, long b) throws IOException {
+		if (a == b)
+			return;
+
+		ByteBuffer first = ByteBuffer.allocate(RECORD_SIZE);
+		ByteBuffer second = ByteBuffer.allocate(RECORD_SIZE);
+		read(first, HEADER_SIZE + a * RECORD_SIZE);
+		read(second, HEADER_SIZE + b * RECORD_SIZE);
+		first.flip();
+		second.flip();
+		write(second, HEADER_SIZE + a * RECORD_SIZE);
+		write(first, HEADER_SIZE + b * RECORD_SIZE);
+	}
+
+	/**
+	 * Writes the file header and the field descriptors.
+	 */
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		// dBASE III without memo fields, the date of the last update, and the sizes of the file's parts
+		LocalDate today = LocalDate.now();
+		header.put((byte) 0x03);
+		header.put((byte) (today.getYear() - 1900)).put((byte) today.getMonthValue()).put((byte) today.getDayOfMonth());
+		header.putInt(recordCount);
+		header.putShort((short) HEADER_SIZE);
+		header.putShort((short) RECORD_SIZE);
+		header.position(FILE_HEADER_SIZE);
+
+		for (String name : FIELD_NAMES) {
+			int start = header.position();
+			header.put(name.getBytes(StandardCharsets.US_ASCII));
+			header.position(start + 11);
+			header.put((byte) 'N');
+			header.position(start + 16);
+			header.put((byte) FIELD_LENGTH).put((byte) DECIMALS);
+			header.position(start + DESCRIPTOR_SIZE);
+		}
+		header.put((byte) 0x0D);
+
+		header.flip();
+		write(header, 0);
+	}
+
+	/**
+	 * Writes the buffered records after the ones already written.
+	 */
+	private void flush() throws IOException {
+		records.flip();
+		long at = HEADER_SIZE + (long) (recordCount - records.remaining() / RECORD_SIZE) * RECORD_SIZE;
+		write(records, at);
+		records.clear();
+	}
+
+	private void read(ByteBuffer buffer, long at) throws IOException {
+		int length = buffer.remaining();
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, at + length - buffer.remaining()) < 0)
+				throw new IOException(partFile.getName() + " ended early.");
+	}
+
+	private void write(ByteBuffer buffer, long at) throws IOException {
+		int length = buffer.remaining();
+		while (buffer.hasRemaining())
+			channel.write(buffer, at + length - buffer.remaining());
+	}
+}
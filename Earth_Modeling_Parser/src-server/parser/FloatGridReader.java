@@ -0,0 +1,308 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Reads an ESRI binary float grid: a .flt file holding ncols * nrows 32 bit floats (top row first, no padding) and a .hdr text file next to it with the same values as the header of an ASCII grid, plus the byte order of the floats. The values are read straight into a float array, one row at a
+ *         time, so there is no text to parse.
+ */
+
+package parser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.StringTokenizer;
+
+import org.pmw.tinylog.Logger;
+
+public class FloatGridReader implements Closeable {
+
+	/**
+	 * Size of one value in the .flt file.
+	 */
+	private static final int BYTES_PER_VALUE = Float.BYTES;
+
+	/**
+	 * The .flt file holding the values.
+	 */
+	private File fltFile;
+
+	/**
+	 * The .hdr file holding the header.
+	 */
+	private File hdrFile;
+
+	/**
+	 * The header, once readHeader() has succeeded.
+	 */
+	private GridHeader header;
+
+	/**
+	 * Byte order of the values in the .flt file.
+	 */
+	private ByteOrder byteOrder;
+
+	/**
+	 * Open channel to the .flt file, opened by the first call to readRow().
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Buffer the bytes of a row are read into.
+	 */
+	private ByteBuffer rowBuffer;
+
+	/**
+	 * Number of bytes read from the .flt file so far.
+	 */
+	private long bytesRead;
+
+	/**
+	 * Creates a reader for a binary float grid. Nothing is read until readHeader() is called.
+	 * 
+	 * @param file
+	 *           Either the .flt or the .hdr file of the grid; the other is found by changing the extension.
+	 */
+	public FloatGridReader(File file) {
+		String path = file.getPath();
+		int dot = path.lastIndexOf('.');
+		String base = dot > path.lastIndexOf(File.separatorChar) ? path.substring(0, dot) : path;
+
+		this.fltFile = new File(base + ".flt");
+		this.hdrFile = new File(base + ".hdr");
+		this.header = null;
+		this.byteOrder = ByteOrder.nativeOrder();
+		this.channel = null;
+		this.rowBuffer = null;
+		this.bytesRead = 0;
+	}
+
+	/**
+	 * 
+	 * @return The .flt file holding the values.
+	 */
+	public File getFltFile() {
+		return fltFile;
+	}
+
+	/**
+	 * 
+	 * @return The .hdr file holding the header.
+	 */
+	public File getHdrFile() {
+		return hdrFile;
+	}
+
+	/**
+	 * 
+	 * @return The header, or null if readHeader() hasn't succeeded.
+	 */
+	public GridHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * 
+	 * @return The byte order of the values in the .flt file.
+	 */
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+
+	/**
+	 * 
+	 * @return The number of bytes read from the .flt file so far.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Reads the .hdr file and checks that the .flt file is the right size for it.
+	 * 
+	 * @return true if the header is valid and matches the .flt file; false otherwise.
+	 * @throws IOException
+	 *            The .hdr file couldn't be read.
+	 */
+	public boolean readHeader() throws IOException {
+		double ncols = Double.NaN;
+		double nrows = Double.NaN;
+		double xll = Double.NaN;
+		double yll = Double.NaN;
+		double cellSize = Double.NaN;
+		double noData = Double.NaN;
+		boolean xCenter = false;
+		boolean yCenter = false;
+
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(hdrFile), StandardCharsets.US_ASCII))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				StringTokenizer st = new StringTokenizer(line);
+				if (st.countTokens() < 2)
+					continue;
+
+				String key = st.nextToken().toLowerCase();
+				String value = st.nextToken();
+
+				try {
+					switch (key) {
+						case "ncols":
+							ncols = Double.parseDouble(value);
+							break;
+						case "nrows":
+							nrows = Double.parseDouble(value);
+							break;
+						case "xllcorner":
+							xll = Double.parseDouble(value);
+							break;
+						case "xllcenter":
+							xll = Double.parseDouble(value);
+							xCenter = true;
+							break;
+						case "yllcorner":
+							yll = Double.parseDouble(value);
+							break;
+						case "yllcenter":
+							yll = Double.parseDouble(value);
+							yCenter = true;
+							break;
+						case "cellsize":
+							cellSize = Double.parseDouble(value);
+							break;
+						case "nodata_value":
+							noData = Double.parseDouble(value);
+							break;
+						case "byteorder":
+							if (!setByteOrder(value))
+								return false;
+							break;
+						case "nbits":
+							if (Double.parseDouble(value) != 32) {
+								Logger.error("Only 32 bit float grids can be read, but {} has nbits {}.", hdrFile.getName(), value);
+								return false;
+							}
+							break;
+						default:
+							Logger.debug("Ignoring {} in {}", key, hdrFile.getName());
+					}
+				} catch (NumberFormatException e) {
+					Logger.error("Non double value found for {} in {}. Please check the header file.", key, hdrFile.getName());
+					return false;
+				}
+			}
+		}
+
+		if (Double.isNaN(ncols) || Double.isNaN(nrows) || Double.isNaN(xll) || Double.isNaN(yll) || Double.isNaN(cellSize) || Double.isNaN(noData)) {
+			Logger.error("The header file {} is missing values. Please check the header file.", hdrFile.getName());
+			return false;
+		}
+
+		if (ncols <= 0 || nrows <= 0 || ncols != Math.rint(ncols) || nrows != Math.rint(nrows) || ncols * nrows > Integer.MAX_VALUE) {
+			Logger.error("The header has an invalid number of rows or columns. Please check the header file.");
+			return false;
+		}
+
+		// The CSV coordinates start from the lower left corner, so move centres back by half a cell
+		if (xCenter)
+			xll -= cellSize / 2;
+		if (yCenter)
+			yll -= cellSize / 2;
+
+		long expectedSize = (long) ncols * (long) nrows * BYTES_PER_VALUE;
+		if (fltFile.length() != expectedSize) {
+			Logger.error("{} is {} bytes, but the header describes {} bytes of values. Please check the input files.", fltFile.getName(), fltFile.length(), expectedSize);
+			return false;
+		}
+
+		this.header = new GridHeader((int) ncols, (int) nrows, xll, yll, cellSize, noData);
+		return true;
+	}
+
+	/**
+	 * Sets the byte order from the value given in the header.
+	 * 
+	 * @param value
+	 *           LSBFIRST (or I, for Intel) for little endian; MSBFIRST (or M, for Motorola) for big endian.
+	 * @return true if the value is a known byte order.
+	 */
+	private boolean setByteOrder(String value) {
+		switch (value.toLowerCase()) {
+			case "lsbfirst":
+			case "i":
+				this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+				return true;
+			case "msbfirst":
+			case "m":
+				this.byteOrder = ByteOrder.BIG_ENDIAN;
+				return true;
+			default:
+				Logger.error("Unknown byte order {} in {}. Please check the header file.", value, hdrFile.getName());
+				return false;
+		}
+	}
+
+	/**
+	 * Reads part of a row of values.
+	 * 
+	 * @param row
+	 *           The row to read, 0 being the top.
+	 * @param firstColumn
+	 *           The first column to read.
+	 * @param values
+	 *           Array the values are copied into, starting at index 0.
+	 * @param count
+	 *           The number of values to read.
+	 * @throws IOException
+	 *            The .flt file couldn't be read, or ended early.
+	 */
+	public void readRow(int row, int firstColumn, float[] values, int count) throws IOException {
+		if (channel == null)
+			channel = FileChannel.open(fltFile.toPath(), StandardOpenOption.READ);
+
+		int length = count * BYTES_PER_VALUE;
+		if (rowBuffer == null || rowBuffer.capacity() < length)
+			rowBuffer = ByteBuffer.allocate(length).order(byteOrder);
+
+		long position = ((long) row * header.getNcols() + firstColumn) * BYTES_PER_VALUE;
+		rowBuffer.clear();
+		rowBuffer.limit(length);
+		while (rowBuffer.hasRemaining()) {
+			int read = channel.read(rowBuffer, position + rowBuffer.position());
+			if (read < 0)
+				throw new IOException(fltFile.getName() + " ended in the middle of row " + row + ".");
+		}
+		bytesRead += length;
+
+		rowBuffer.flip();
+		rowBuffer.asFloatBuffer().get(values, 0, count);
+	}
+
+	/**
+	 * Closes the .flt file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+}
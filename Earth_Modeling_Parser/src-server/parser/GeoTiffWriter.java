@@ -0,0 +1,491 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         Writes a grid as a GeoTIFF while it is parsed, so a map can be published as a raster instead of being turned into one point per cell. Every cell is passed on unchanged to another handler (such as the one writing the CSV), so the GeoTIFF is built in the same pass as the CSV.
+ * 
+ *         The image is one band of 32 bit floats, cut into TILE_SIZE x TILE_SIZE tiles that are each DEFLATE compressed. GeoKeys place it in WGS 84 latitude/longitude (EPSG:4326) with the same corner and cell size as the grid, and NODATA is recorded in the GDAL_NODATA tag. Internal overviews at 1/2,
+ *         1/4, 1/8... of the resolution follow the full resolution image, down to the first one that fits in a single tile; like the pyramid levels (see PyramidBuilder), each is combined by BlockAggregator straight from the parsed cells.
+ * 
+ *         Only one band of tiles per image is held in memory, and tiles are written as soon as their band is complete, so images are interleaved in the file; the directories describing them are written at the end. Rows and columns that never arrive (such as those outside a clipping box) are
+ *         NODATA. The file is written to a ".part" file that only replaces the output once it is complete.
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.pmw.tinylog.Logger;
+
+public class GeoTiffWriter implements GridCellHandler {
+
+	/**
+	 * Extension of a GeoTIFF file.
+	 */
+	public static final String EXTENSION = ".tif";
+
+	/**
+	 * Number of cells along each side of a tile.
+	 */
+	public static final int TILE_SIZE = 256;
+
+	/**
+	 * The largest offset a (non Big) TIFF can hold.
+	 */
+	private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+	/**
+	 * TIFF field types.
+	 */
+	private static final short ASCII = 2;
+	private static final short SHORT = 3;
+	private static final short LONG = 4;
+	private static final short DOUBLE = 12;
+
+	/**
+	 * The handler every cell is passed on to, or null.
+	 */
+	private final GridCellHandler output;
+
+	private final File outFile;
+	private final File partFile;
+	private final FileChannel channel;
+
+	/**
+	 * The full resolution image, then each overview.
+	 */
+	private final Image[] images;
+
+	/**
+	 * Combines the parsed cells into each overview (images[level] is fed by aggregators[level - 1]).
+	 */
+	private final BlockAggregator[] aggregators;
+
+	/**
+	 * Compresses the tiles, and holds the bytes of a tile before and after compression.
+	 */
+	private final Deflater deflater;
+	private final ByteBuffer tile;
+	private final byte[] compressed;
+
+	/**
+	 * Where the next bytes are written in the file.
+	 */
+	private long position;
+
+	/**
+	 * true once the file has been moved into place.
+	 */
+	private boolean saved;
+
+	/**
+	 * Creates a writer for a grid.
+	 * 
+	 * @param grid
+	 *           The header of the grid being parsed.
+	 * @param outFile
+	 *           The GeoTIFF file to create.
+	 * @param output
+	 *           The handler every cell is passed on to, or null.
+	 * @throws IOException
+	 *            The temporary file next to outFile could not be created.
+	 */
+	public GeoTiffWriter(GridHeader grid, File outFile, GridCellHandler output) throws IOException {
+		// Halve until an overview fits in one tile
+		int overviews = 0;
+		while (overviews < 30 && (grid.getNcols() > TILE_SIZE << overviews || grid.getNrows() > TILE_SIZE << overviews))
+			overviews++;
+
+		this.output = output;
+		this.outFile = outFile;
+		this.partFile = new File(outFile.getPath() + ".part");
+		this.images = new Image[overviews + 1];
+		this.aggregators = new BlockAggregator[overviews];
+		this.deflater = new Deflater();
+		this.tile = ByteBuffer.allocate(TILE_SIZE * TILE_SIZE * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		this.compressed = new byte[1 << 16];
+		this.saved = false;
+
+		images[0] = new Image(grid);
+		for (int level = 1; level <= overviews; level++) {
+			images[level] = new Image(grid.downsample(1 << level));
+			aggregators[level - 1] = new BlockAggregator(grid, 1 << level, BlockAggregator.Method.MEAN, images[level]);
+		}
+
+		this.channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+		// The TIFF header is written last, once the first directory's offset is known
+		this.position = 8;
+	}
+
+	/**
+	 * Works out where the GeoTIFF of a map is written: next to its CSV, with EXTENSION instead of .csv and '-' replaced by '_', which is the name publish_map.py looks for.
+	 * 
+	 * @param csvFile
+	 *           The CSV file the map is written to.
+	 * @return The GeoTIFF file.
+	 */
+	public static File getOutputFile(File csvFile) {
+		String name = csvFile.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(csvFile.getParentFile(), name.replace('-', '_') + EXTENSION);
+	}
+
+	/**
+	 * 
+	 * @return The number of overviews after the full resolution image.
+	 */
+	public int getOverviewCount() {
+		return aggregators.length;
+	}
+
+	/**
+	 * Passes the cell on, then adds it to the full resolution image and every overview.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) throws IOException {
+		if (output != null)
+			output.handleCell(row, column, value);
+		images[0].handleCell(row, column, value);
+		for (BlockAggregator aggregator : aggregators)
+			aggregator.handleCell(row, column, value);
+	}
+
+	/**
+	 * Passes the run on, then to every image.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) throws IOException {
+		if (output != null)
+			output.handleNoData(row, column, count, noData);
+		images[0].handleNoData(row, column, count, noData);
+		for (BlockAggregator aggregator : aggregators)
+			aggregator.handleNoData(row, column, count, noData);
+	}
+
+	/**
+	 * Writes the last tiles of every image and the directories describing them, moves the file into place, then finishes the output handler.
+	 */
+	@Override
+	public void finish() throws IOException {
+		try {
+			images[0].finish();
+			for (BlockAggregator aggregator : aggregators)
+				aggregator.finish();
+
+			// Each directory points at the next; the TIFF header points at the first
+			long pointer = 4;
+			for (int level = 0; level < images.length; level++)
+				pointer = writeDirectory(images[level], level, pointer);
+
+			ByteBuffer head = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			head.put((byte) 'I').put((byte) 'I').putShort((short) 42);
+			head.flip();
+			write(head, 0);
+
+			channel.close();
+			Files.move(partFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			saved = true;
+		} catch (IOException e) {
+			abort();
+			throw e;
+		} finally {
+			deflater.end();
+		}
+		Logger.info("Wrote {} with {} overviews ({} bytes)", outFile.getName(), aggregators.length, outFile.length());
+
+		if (output != null)
+			output.finish();
+	}
+
+	/**
+	 * Throws away the partly written file, such as when the grid turns out to be invalid, or the saved file if a later stage of the conversion fails after finish().
+	 */
+	public void abort() {
+		deflater.end();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Logger.warn("Couldn't close {}", partFile.getName(), e);
+		}
+		partFile.delete();
+		if (saved)
+			outFile.delete();
+	}
+
+	/**
+	 * Compresses a tile and appends it to the file.
+	 * 
+	 * @return The number of compressed bytes written.
+	 */
+	private int writeTile() throws IOException {
+		deflater.reset();
+		deflater.setInput(tile.array(), 0, tile.capacity());
+		deflater.finish();
+
+		int length = 0;
+		while (!deflater.finished()) {
+			int count = deflater.deflate(compressed);
+			length += write(ByteBuffer.wrap(compressed, 0, count), position + length);
+		}
+		position += length;
+		return length;
+	}
+
+	/**
+	 * Writes the directory (IFD) of an image at the end of the file and points the previous directory (or the TIFF header) at it.
+	 * 
+	 * @param image
+	 *           The image, with all of its tiles written.
+	 * @param level
+	 *           0 for the full resolution image, which also gets the GeoKeys; the overviews follow.
+	 * @param pointer
+	 *           Where the offset of this directory is to be written.
+	 * @return Where the offset of the next directory is to be written.
+	 */
+	private long writeDirectory(Image image, int level, long pointer) throws IOException {
+		GridHeader grid = image.grid;
+		List<Field> fields = new ArrayList<Field>();
+
+		fields.add(Field.longs(254, level == 0 ? 0 : 1)); // NewSubfileType: reduced resolution for overviews
+		fields.add(Field.longs(256, grid.getNcols())); // ImageWidth
+		fields.add(Field.longs(257, grid.getNrows())); // ImageLength
+		fields.add(Field.shorts(258, 32)); // BitsPerSample
+		fields.add(Field.shorts(259, 8)); // Compression: DEFLATE
+		fields.add(Field.shorts(262, 1)); // PhotometricInterpretation: BlackIsZero
+		fields.add(Field.shorts(277, 1)); // SamplesPerPixel
+		fields.add(Field.shorts(284, 1)); // PlanarConfiguration: chunky
+		fields.add(Field.shorts(322, TILE_SIZE)); // TileWidth
+		fields.add(Field.shorts(323, TILE_SIZE)); // TileLength
+		fields.add(Field.longs(324, image.tileOffsets)); // TileOffsets
+		fields.add(Field.longs(325, image.tileByteCounts)); // TileByteCounts
+		fields.add(Field.shorts(339, 3)); // SampleFormat: IEEE float
+
+		if (level == 0) {
+			// ModelPixelScale and ModelTiepoint: the top left corner of the top left cell
+			fields.add(Field.doubles(33550, grid.getCellSize(), grid.getCellSize(), 0));
+			fields.add(Field.doubles(33922, 0, 0, 0, grid.getXllCorner(), grid.getYllCorner() + grid.getNrows() * grid.getCellSize(), 0));
+
+			// GeoKeyDirectory: version 1.1.0 with 4 keys; geographic model, pixels are areas, WGS 84, degrees
+			fields.add(Field.shorts(34735, 1, 1, 0, 4, 1024, 0, 1, 2, 1025, 0, 1, 1, 2048, 0, 1, 4326, 2054, 0, 1, 9102));
+		}
+
+		fields.add(Field.ascii(42113, Double.toString(grid.getNODATA()))); // GDAL_NODATA
+
+		// Entries, then the next directory's offset (0 for now), then the values too big to fit in an entry
+		long start = position + (position & 1);
+		long extra = start + 2 + fields.size() * 12 + 4;
+		ByteBuffer entries = ByteBuffer.allocate(2 + fields.size() * 12 + 4).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer values = ByteBuffer.allocate(fields.stream().mapToInt(f -> f.value.length + 1).sum()).order(ByteOrder.LITTLE_ENDIAN);
+
+		entries.putShort((short) fields.size());
+		for (Field field : fields) {
+			entries.putShort((short) field.tag).putShort(field.type).putInt(field.count);
+			if (field.value.length <= 4)
+				entries.put(Arrays.copyOf(field.value, 4));
+			else {
+				if ((extra + values.position()) % 2 != 0)
+					values.put((byte) 0);
+				entries.putInt((int) checkOffset(extra + values.position()));
+				values.put(field.value);
+			}
+		}
+		entries.putInt(0);
+
+		entries.flip();
+		values.flip();
+		write(entries, start);
+		write(values, extra);
+		position = extra + values.limit();
+
+		ByteBuffer offset = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		offset.putInt((int) checkOffset(start));
+		offset.flip();
+		write(offset, pointer);
+
+		return start + 2 + fields.size() * 12;
+	}
+
+	/**
+	 * @return offset, if a TIFF can hold it.
+	 * @throws IOException
+	 *            If the file has grown past what a TIFF can address.
+	 */
+	private static long checkOffset(long offset) throws IOException {
+		if (offset > MAX_OFFSET)
+			throw new IOException("The GeoTIFF is larger than 4 GB, which a TIFF can't hold.");
+		return offset;
+	}
+
+	private int write(ByteBuffer buffer, long at) throws IOException {
+		int length = buffer.remaining();
+		while (buffer.hasRemaining())
+			channel.write(buffer, at + length - buffer.remaining());
+		return length;
+	}
+
+	/**
+	 * One image of the file: the cells of its current band of tiles, and where each of its tiles was written.
+	 */
+	private class Image implements GridCellHandler {
+
+		private final GridHeader grid;
+		private final float noData;
+
+		/**
+		 * TILE_SIZE rows of the image, NODATA where no cell has arrived.
+		 */
+		private final float[] band;
+
+		/**
+		 * The band being filled; every band before it has been written.
+		 */
+		private int bandIndex;
+
+		private final int tilesAcross;
+		private final long[] tileOffsets;
+		private final long[] tileByteCounts;
+
+		private Image(GridHeader grid) {
+			this.grid = grid;
+			this.noData = (float) grid.getNODATA();
+			this.band = new float[TILE_SIZE * grid.getNcols()];
+			this.bandIndex = 0;
+			this.tilesAcross = (grid.getNcols() + TILE_SIZE - 1) / TILE_SIZE;
+
+			int tilesDown = (grid.getNrows() + TILE_SIZE - 1) / TILE_SIZE;
+			this.tileOffsets = new long[tilesAcross * tilesDown];
+			this.tileByteCounts = new long[tilesAcross * tilesDown];
+			Arrays.fill(band, noData);
+		}
+
+		@Override
+		public void handleCell(int row, int column, double value) throws IOException {
+			startBand(row / TILE_SIZE);
+			band[(row % TILE_SIZE) * grid.getNcols() + column] = grid.isNoData(value) ? noData : (float) value;
+		}
+
+		/**
+		 * The band starts out as NODATA, so a run only matters if it starts a new band.
+		 */
+		@Override
+		public void handleNoData(int row, int column, int count, double noData) throws IOException {
+			startBand(row / TILE_SIZE);
+		}
+
+		/**
+		 * Writes the band being filled and any bands after it that no cells arrived for.
+		 */
+		@Override
+		public void finish() throws IOException {
+			startBand(tileOffsets.length / tilesAcross);
+		}
+
+		/**
+		 * Writes every band before the given one.
+		 */
+		private void startBand(int next) throws IOException {
+			while (bandIndex < next) {
+				writeBand();
+				Arrays.fill(band, noData);
+				bandIndex++;
+			}
+		}
+
+		private void writeBand() throws IOException {
+			int ncols = grid.getNcols();
+			int rows = Math.min(TILE_SIZE, grid.getNrows() - bandIndex * TILE_SIZE);
+			FloatBuffer floats = tile.asFloatBuffer();
+
+			for (int across = 0; across < tilesAcross; across++) {
+				int firstColumn = across * TILE_SIZE;
+				int columns = Math.min(TILE_SIZE, ncols - firstColumn);
+
+				// Tiles past the edge of the image are padded with NODATA
+				floats.clear();
+				for (int row = 0; row < TILE_SIZE; row++) {
+					if (row < rows)
+						floats.put(band, row * ncols + firstColumn, columns);
+					for (int column = row < rows ? columns : 0; column < TILE_SIZE; column++)
+						floats.put(noData);
+				}
+
+				int index = bandIndex * tilesAcross + across;
+				tileOffsets[index] = checkOffset(position);
+				tileByteCounts[index] = writeTile();
+			}
+		}
+	}
+
+	/**
+	 * A field of a TIFF directory, with its value already in little endian bytes.
+	 */
+	private static class Field {
+
+		private final int tag;
+		private final short type;
+		private final int count;
+		private final byte[] value;
+
+		private Field(int tag, short type, int count, ByteBuffer value) {
+			this.tag = tag;
+			this.type = type;
+			this.count = count;
+			this.value = value.array();
+		}
+
+		private static Field shorts(int tag, int... values) {
+			ByteBuffer buffer = ByteBuffer.allocate(values.length * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			for (int v : values)
+				buffer.putShort((short) v);
+			return new Field(tag, SHORT, values.length, buffer);
+		}
+
+		private static Field longs(int tag, long... values) {
+			ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			for (long v : values)
+				buffer.putInt((int) v);
+			return new Field(tag, LONG, values.length, buffer);
+		}
+
+		private static Field doubles(int tag, double... values) {
+			ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			for (double v : values)
+				buffer.putDouble(v);
+			return new Field(tag, DOUBLE, values.length, buffer);
+		}
+
+		private static Field ascii(int tag, String text) {
+			byte[] bytes = (text + '\0').getBytes(StandardCharsets.US_ASCII);
+			return new Field(tag, ASCII, bytes.length, ByteBuffer.wrap(bytes));
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Receives the cells of a grid as they are parsed. Lets the same parsing code feed a CSV file, an in-memory GridRaster, or anything else that consumes cells.
+ */
+
+package parser;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface GridCellHandler {
+
+	/**
+	 * Called once for every cell of the table, in table order (left to right, top to bottom). NODATA cells are passed along too, with the header's NODATA value.
+	 * 
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell, 0 being the left.
+	 * @param value
+	 *           The value of the cell.
+	 * @throws IOException
+	 *            The handler couldn't write the cell out.
+	 */
+	void handleCell(int row, int column, double value) throws IOException;
+
+	/**
+	 * Called for a run of NODATA cells along one row, in place of calling handleCell() for each of them. Parsers call this when they can skip a run without converting it; by default each cell is passed to handleCell(), so a handler only needs to override this to skip runs cheaply too.
+	 * 
+	 * @param row
+	 *           The row of the cells, 0 being the top.
+	 * @param column
+	 *           The column of the first cell in the run.
+	 * @param count
+	 *           The number of cells in the run; the run never goes past the end of the row.
+	 * @param noData
+	 *           The header's NODATA value.
+	 * @throws IOException
+	 *            The handler couldn't write the cells out.
+	 */
+	default void handleNoData(int row, int column, int count, double noData) throws IOException {
+		for (int i = 0; i < count; i++)
+			handleCell(row, column + i, noData);
+	}
+
+	/**
+	 * Called once after the last cell of the table has been handled, if the whole table was parsed. Does nothing unless the handler holds cells back (such as one that combines blocks of cells).
+	 * 
+	 * @throws IOException
+	 *            The handler couldn't write the remaining cells out.
+	 */
+	default void finish() throws IOException {
+	}
+}
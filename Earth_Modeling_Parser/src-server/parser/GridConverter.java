@@ -0,0 +1,506 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         A converter that holds only its settings, which never change, so one instance can be shared by any number of threads converting grids at the same time. Every conversion parses with its own AsciiToCsv and hands back everything it found in an immutable ConversionResult; nothing about a
+ *         conversion is left behind in the converter. Settings are changed by the with...() methods, which return a new converter.
+ * 
+ *         Conversions on the same thread reuse that thread's read buffer (see AsciiGridTokenizer), so a pool of threads sharing one converter allocates a buffer per thread rather than per grid. A conversion is followed or cancelled through the ConversionListener given to it.
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public final class GridConverter {
+
+	/**
+	 * Directory the CSV files are written to; null for the default CSV output directory.
+	 */
+	private final File outputDirectory;
+
+	/**
+	 * Box the grids are clipped to, or null to convert every cell.
+	 */
+	private final BoundingBox clip;
+
+	private final boolean useRowIndex;
+	private final GridPrecision precision;
+	private final int fractionDigits;
+
+	/**
+	 * What is made from the cells besides the output: downsampling, the pyramid, GeoTIFF and table, and the order of the cells in the CSV.
+	 */
+	private final OutputOptions outputOptions;
+
+	/**
+	 * Grids at least this many bytes long are converted to CSV on every core.
+	 */
+	private final long parallelMinSize;
+
+	/**
+	 * Creates a converter with the same defaults as a new AsciiToCsv: every cell is written to the default CSV output directory, on one core.
+	 */
+	public GridConverter() {
+		this(null, null, false, GridPrecision.DOUBLE, -1, new OutputOptions(), Long.MAX_VALUE);
+	}
+
+	private GridConverter(File outputDirectory, BoundingBox clip, boolean useRowIndex, GridPrecision precision, int fractionDigits, OutputOptions outputOptions, long parallelMinSize) {
+		this.outputDirectory = outputDirectory;
+		this.clip = clip;
+		this.useRowIndex = useRowIndex;
+		this.precision = precision;
+		this.fractionDigits = fractionDigits;
+		this.outputOptions = outputOptions;
+		this.parallelMinSize = parallelMinSize;
+	}
+
+	/**
+	 * 
+	 * @return The directory the CSV files are written to, or null for the default CSV output directory.
+	 */
+	public File getOutputDirectory() {
+		return outputDirectory;
+	}
+
+	/**
+	 * @param outputDirectory
+	 *           The directory to write the CSV files to, or null for the default CSV output directory.
+	 * @return A converter with this output directory and the rest of this converter's settings.
+	 */
+	public GridConverter withOutputDirectory(File outputDirectory) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions, parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return The box the grids are clipped to, or null if every cell is converted.
+	 */
+	public BoundingBox getClip() {
+		return clip;
+	}
+
+	/**
+	 * @param clip
+	 *           The box to clip the grids to (see AsciiToCsv.setClip()), or null to convert every cell.
+	 * @return A converter with this clipping box and the rest of this converter's settings.
+	 */
+	public GridConverter withClip(BoundingBox clip) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions, parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return true if ASCII files are read through a row index.
+	 */
+	public boolean getUseRowIndex() {
+		return useRowIndex;
+	}
+
+	/**
+	 * @param useRowIndex
+	 *           true to read ASCII files through a row index (see AsciiToCsv.setUseRowIndex()).
+	 * @return A converter with this setting and the rest of this converter's settings.
+	 */
+	public GridConverter withUseRowIndex(boolean useRowIndex) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions, parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return How the values of a raster are stored.
+	 */
+	public GridPrecision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @param precision
+	 *           How the values of a raster are stored (see AsciiToCsv.setPrecision()).
+	 * @return A converter with this precision and the rest of this converter's settings.
+	 */
+	public GridConverter withPrecision(GridPrecision precision) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions, parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return The digits written after the point of each value in the CSV; -1 for as many as the value needs.
+	 */
+	public int getFractionDigits() {
+		return fractionDigits;
+	}
+
+	/**
+	 * @param fractionDigits
+	 *           The digits to write after the point of each value in the CSV, from 0 to 18; -1 for as many as the value needs.
+	 * @return A converter with this setting and the rest of this converter's settings.
+	 * @throws IllegalArgumentException
+	 *            If fractionDigits is out of range.
+	 */
+	public GridConverter withFractionDigits(int fractionDigits) {
+		if (fractionDigits < -1 || fractionDigits > 18)
+			throw new IllegalArgumentException("Fraction digits must be from 0 to 18, or -1.");
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions, parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return What is made from the cells besides the output (downsampling, pyramid, GeoTIFF, table and cell order).
+	 */
+	public OutputOptions getOutputOptions() {
+		return outputOptions;
+	}
+
+	/**
+	 * 
+	 * @return The number of cells along each side of the blocks combined into one output cell; 1 if every cell is output.
+	 */
+	public int getDownsampleFactor() {
+		return outputOptions.getDownsampleFactor();
+	}
+
+	/**
+	 * 
+	 * @return How the cells of each block are combined.
+	 */
+	public BlockAggregator.Method getDownsampleMethod() {
+		return outputOptions.getDownsampleMethod();
+	}
+
+	/**
+	 * @param factor
+	 *           The number of cells along each side of the blocks combined into one output cell (see OutputOptions.withDownsample()); 1 to output every cell.
+	 * @param method
+	 *           How the cells of each block are combined.
+	 * @return A converter with this downsampling and the rest of this converter's settings.
+	 * @throws IllegalArgumentException
+	 *            If factor is less than 1.
+	 */
+	public GridConverter withDownsample(int factor, BlockAggregator.Method method) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions.withDownsample(factor, method), parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return The number of reduced resolution levels saved next to each CSV; 0 if none are.
+	 */
+	public int getPyramidLevels() {
+		return outputOptions.getPyramidLevels();
+	}
+
+	/**
+	 * 
+	 * @return How the cells of each block of a pyramid level are combined.
+	 */
+	public BlockAggregator.Method getPyramidMethod() {
+		return outputOptions.getPyramidMethod();
+	}
+
+	/**
+	 * @param levels
+	 *           The most reduced resolution levels to save next to each CSV (see OutputOptions.withPyramid()); 0 for none.
+	 * @param method
+	 *           How the cells of each block are combined.
+	 * @return A converter with this pyramid and the rest of this converter's settings.
+	 * @throws IllegalArgumentException
+	 *            If levels is negative.
+	 */
+	public GridConverter withPyramid(int levels, BlockAggregator.Method method) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions.withPyramid(levels, method), parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return The size in bytes from which grids are converted to CSV on every core.
+	 */
+	public long getParallelMinSize() {
+		return parallelMinSize;
+	}
+
+	/**
+	 * @param parallelMinSize
+	 *           Grids at least this many bytes long are converted to CSV on every core (see AsciiToCsv.parseToCsvParallel()); Long.MAX_VALUE to always use one core.
+	 * @return A converter with this setting and the rest of this converter's settings.
+	 */
+	public GridConverter withParallelMinSize(long parallelMinSize) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions, parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return The order the cells are written to the CSV in.
+	 */
+	public CellOrder getCellOrder() {
+		return outputOptions.getCellOrder();
+	}
+
+	/**
+	 * @param cellOrder
+	 *           The order to write the cells to the CSV in (see OutputOptions.withCellOrder()).
+	 * @return A converter with this order and the rest of this converter's settings.
+	 */
+	public GridConverter withCellOrder(CellOrder cellOrder) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions.withCellOrder(cellOrder), parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return true if a GeoTIFF is written next to each output.
+	 */
+	public boolean getGeoTiff() {
+		return outputOptions.getGeoTiff();
+	}
+
+	/**
+	 * @param geoTiff
+	 *           true to write a GeoTIFF next to each output (see OutputOptions.withGeoTiff()).
+	 * @return A converter with this setting and the rest of this converter's settings.
+	 */
+	public GridConverter withGeoTiff(boolean geoTiff) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions.withGeoTiff(geoTiff), parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return The directory a dBASE table of each output is written to, or null if none are written.
+	 */
+	public File getTableDirectory() {
+		return outputOptions.getTableDirectory();
+	}
+
+	/**
+	 * @param tableDirectory
+	 *           The directory to write a dBASE table of each output to (see OutputOptions.withTableDirectory()), or null for none.
+	 * @return A converter with this setting and the rest of this converter's settings.
+	 */
+	public GridConverter withTableDirectory(File tableDirectory) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions.withTableDirectory(tableDirectory), parallelMinSize);
+	}
+
+	/**
+	 * 
+	 * @return How the raster filled alongside each output is stored, or null if none is filled.
+	 */
+	public GridPrecision getRasterPrecision() {
+		return outputOptions.getRasterPrecision();
+	}
+
+	/**
+	 * @param precision
+	 *           How to store a raster of the parsed grid filled alongside each CSV or binary grid (see OutputOptions.withRaster()), or null for none. The raster is handed out by the ConversionResult.
+	 * @return A converter with this setting and the rest of this converter's settings.
+	 */
+	public GridConverter withRaster(GridPrecision precision) {
+		return new GridConverter(outputDirectory, clip, useRowIndex, this.precision, fractionDigits, outputOptions.withRaster(precision), parallelMinSize);
+	}
+
+	/**
+	 * @param f
+	 *           A file.
+	 * @return true if the file is the .flt or .hdr file of a binary float grid.
+	 */
+	public static boolean isFloatGrid(File f) {
+		String name = f.getName().toLowerCase();
+		return name.endsWith(".flt") || name.endsWith(".hdr");
+	}
+
+	/**
+	 * Works out where the CSV for a map is written.
+	 * 
+	 * @param mapName
+	 *           The name of the map, without any extension (such as MapProperties.toString()).
+	 * @return The CSV file in this converter's output directory.
+	 */
+	public File getOutputFile(String mapName) {
+		return newParser(null).getOutputFile(mapName);
+	}
+
+	/**
+	 * Works out where the CSV of a file is written. Every other output of the file (binary grid, GeoTIFF, table, pyramid) is named after it.
+	 * 
+	 * @param ftp
+	 *           The ASCII file (plain text or gzip compressed) or binary float grid to convert.
+	 * @return The CSV file in this converter's output directory.
+	 */
+	public File getOutputFile(File ftp) {
+		return newParser(null).getOutputFile(ftp);
+	}
+
+	/**
+	 * Converts an ASCII file (plain text or gzip compressed) or a binary float grid to CSV.
+	 * 
+	 * @param ftp
+	 *           The file to convert; a .flt or .hdr file is read as a binary float grid.
+	 * @return The result of the conversion. Never null, even if the conversion failed.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public ConversionResult toCsv(File ftp) throws IOException {
+		return toCsv(ftp, null);
+	}
+
+	/**
+	 * Converts an ASCII file (plain text or gzip compressed) or a binary float grid to CSV.
+	 * 
+	 * @param ftp
+	 *           The file to convert; a .flt or .hdr file is read as a binary float grid.
+	 * @param listener
+	 *           The listener that follows (and may cancel) the conversion, or null.
+	 * @return The result of the conversion. Never null, even if the conversion failed.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public ConversionResult toCsv(File ftp, ConversionListener listener) throws IOException {
+		AsciiToCsv parser = newParser(listener);
+
+		File output;
+		if (isFloatGrid(ftp))
+			output = parser.parseFloatGridToCsv(ftp);
+		else if (ftp.length() >= parallelMinSize)
+			output = parser.parseToCsvParallel(ftp);
+		else
+			output = parser.parseToCsv(ftp);
+
+		return result(parser, ftp, output);
+	}
+
+	/**
+	 * Converts an ASCII grid held in memory (such as an uploaded file) to CSV.
+	 * 
+	 * @param input
+	 *           The whole ASCII grid (plain text or gzip compressed), from its position to its limit. Its position is not changed.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @param listener
+	 *           The listener that follows (and may cancel) the conversion, or null.
+	 * @return The result of the conversion. Never null, even if the conversion failed.
+	 * @throws IOException
+	 *            The output couldn't be written.
+	 */
+	public ConversionResult toCsv(ByteBuffer input, File outFile, ConversionListener listener) throws IOException {
+		AsciiToCsv parser = newParser(listener);
+
+		File output;
+		if (input.remaining() >= parallelMinSize)
+			output = parser.parseToCsvParallel(input, outFile);
+		else
+			output = parser.parseToCsv(input, outFile);
+
+		return result(parser, null, output);
+	}
+
+	/**
+	 * Converts an ASCII file (plain text or gzip compressed) or an ESRI binary float grid to a compact binary grid (see BinaryGridWriter), written next to where its CSV would go.
+	 * 
+	 * @param ftp
+	 *           The file to convert; a .flt or .hdr file is read as an ESRI binary float grid.
+	 * @param listener
+	 *           The listener that follows (and may cancel) the conversion, or null.
+	 * @return The result of the conversion, whose output is the binary grid. Never null, even if the conversion failed.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public ConversionResult toBinary(File ftp, ConversionListener listener) throws IOException {
+		AsciiToCsv parser = newParser(listener);
+		File output = isFloatGrid(ftp) ? parser.parseFloatGridToBinary(ftp) : parser.parseToBinary(ftp);
+		return result(parser, ftp, output);
+	}
+
+	/**
+	 * Converts an ASCII grid held in memory (such as an uploaded file) to a compact binary grid (see BinaryGridWriter).
+	 * 
+	 * @param input
+	 *           The whole ASCII grid (plain text or gzip compressed), from its position to its limit. Its position is not changed.
+	 * @param outFile
+	 *           The binary grid file to create.
+	 * @param listener
+	 *           The listener that follows (and may cancel) the conversion, or null.
+	 * @return The result of the conversion, whose output is the binary grid. Never null, even if the conversion failed.
+	 * @throws IOException
+	 *            The output couldn't be written.
+	 */
+	public ConversionResult toBinary(ByteBuffer input, File outFile, ConversionListener listener) throws IOException {
+		AsciiToCsv parser = newParser(listener);
+		File output = parser.parseToBinary(input, outFile);
+		return result(parser, null, output);
+	}
+
+	/**
+	 * Converts an ASCII file (plain text or gzip compressed) or a binary float grid into an in-memory GridRaster.
+	 * 
+	 * @param ftp
+	 *           The file to convert; a .flt or .hdr file is read as a binary float grid.
+	 * @param listener
+	 *           The listener that follows (and may cancel) the conversion, or null.
+	 * @return The result of the conversion, holding the raster. Never null, even if the conversion failed.
+	 * @throws IOException
+	 *            Likely means that a file wasn't found.
+	 */
+	public ConversionResult toRaster(File ftp, ConversionListener listener) throws IOException {
+		AsciiToCsv parser = newParser(listener);
+		GridRaster raster = isFloatGrid(ftp) ? parser.parseFloatGridToRaster(ftp) : parser.parseToRaster(ftp);
+		return result(parser, ftp, null, raster);
+	}
+
+	/**
+	 * Converts an ASCII grid held in memory (such as an uploaded file) into an in-memory GridRaster.
+	 * 
+	 * @param input
+	 *           The whole ASCII grid (plain text or gzip compressed), from its position to its limit. Its position is not changed.
+	 * @param listener
+	 *           The listener that follows (and may cancel) the conversion, or null.
+	 * @return The result of the conversion, holding the raster. Never null, even if the conversion failed.
+	 * @throws IOException
+	 *            A compressed grid couldn't be read.
+	 */
+	public ConversionResult toRaster(ByteBuffer input, ConversionListener listener) throws IOException {
+		AsciiToCsv parser = newParser(listener);
+		return result(parser, null, null, parser.parseToRaster(input));
+	}
+
+	/**
+	 * Creates the parser for one conversion. It is never shared, so everything it keeps track of while parsing belongs to that conversion alone.
+	 * 
+	 * @param listener
+	 *           The listener that follows the conversion, or null.
+	 * @return A parser with this converter's settings.
+	 */
+	private AsciiToCsv newParser(ConversionListener listener) {
+		AsciiToCsv parser = new AsciiToCsv(outputDirectory, clip, useRowIndex, precision, fractionDigits, outputOptions);
+		parser.setListener(listener);
+		return parser;
+	}
+
+	/**
+	 * Collects what a parser found into the result of a conversion to a file, with the raster filled alongside it if one was asked for and the file was written.
+	 */
+	private static ConversionResult result(AsciiToCsv parser, File source, File output) {
+		return result(parser, source, output, output != null ? parser.getOutputRaster() : null);
+	}
+
+	/**
+	 * Collects what a parser found into a result. A cancelled conversion has no output.
+	 */
+	private static ConversionResult result(AsciiToCsv parser, File source, File output, GridRaster raster) {
+		GridHeader header = parser.getHeaderParsed() ? parser.getHeader() : null;
+		GridHeader outputHeader = header != null ? parser.getOutputHeader() : null;
+		boolean cancelled = parser.isCancelled();
+		return new ConversionResult(source, cancelled ? null : output, cancelled ? null : raster, header, outputHeader, parser.getStatistics(), parser.getvalues_parsed(), cancelled);
+	}
+}
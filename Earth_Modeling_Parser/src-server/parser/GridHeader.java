@@ -0,0 +1,195 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Immutable copy of the values given in the header of an ESRI grid, along with helpers for working out the coordinates of a cell.
+ */
+
+package parser;
+
+import java.io.Serializable;
+
+public class GridHeader implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int ncols;
+	private final int nrows;
+	private final double xllcorner;
+	private final double yllcorner;
+	private final double cellSize;
+	private final double noDataValue;
+
+	/**
+	 * Creates a header with the given values.
+	 * 
+	 * @param ncols
+	 *           The number of columns in the grid.
+	 * @param nrows
+	 *           The number of rows in the grid.
+	 * @param xllcorner
+	 *           Longitude of the lower left corner of the grid.
+	 * @param yllcorner
+	 *           Latitude of the lower left corner of the grid.
+	 * @param cellSize
+	 *           Size of step from one cell to the next, in degrees.
+	 * @param noDataValue
+	 *           Value which marks a cell as having no data.
+	 * @throws IllegalArgumentException
+	 *            If the number of rows or columns isn't positive.
+	 */
+	public GridHeader(int ncols, int nrows, double xllcorner, double yllcorner, double cellSize, double noDataValue) {
+		if (ncols <= 0 || nrows <= 0)
+			throw new IllegalArgumentException("A grid must have at least one row and one column.");
+
+		this.ncols = ncols;
+		this.nrows = nrows;
+		this.xllcorner = xllcorner;
+		this.yllcorner = yllcorner;
+		this.cellSize = cellSize;
+		this.noDataValue = noDataValue;
+	}
+
+	/**
+	 * @return The number of columns in the grid.
+	 */
+	public int getNcols() {
+		return ncols;
+	}
+
+	/**
+	 * @return The number of rows in the grid.
+	 */
+	public int getNrows() {
+		return nrows;
+	}
+
+	/**
+	 * @return Longitude of the lower left corner of the grid.
+	 */
+	public double getXllCorner() {
+		return xllcorner;
+	}
+
+	/**
+	 * @return Latitude of the lower left corner of the grid.
+	 */
+	public double getYllCorner() {
+		return yllcorner;
+	}
+
+	/**
+	 * @return Size of step from one cell to the next, in degrees.
+	 */
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * @return Value which marks a cell as having no data.
+	 */
+	public double getNODATA() {
+		return noDataValue;
+	}
+
+	/**
+	 * @return The number of cells in the grid (ncols * nrows).
+	 */
+	public long getCellCount() {
+		return (long) ncols * nrows;
+	}
+
+	/**
+	 * @return Longitude of the first column (the starting point when reading the table).
+	 */
+	public double getLongitude() {
+		return xllcorner;
+	}
+
+	/**
+	 * @return Latitude of the first row (the starting point when reading the table).
+	 */
+	public double getLatitude() {
+		return yllcorner + (cellSize * (nrows - 1));
+	}
+
+	/**
+	 * @param row
+	 *           A row of the table, 0 being the top.
+	 * @return The latitude of the row, as written to the CSV.
+	 */
+	public double getLatitude(int row) {
+		return getLatitude() - row * cellSize;
+	}
+
+	/**
+	 * @param column
+	 *           A column of the table, 0 being the left.
+	 * @return The longitude of the column, as written to the CSV.
+	 */
+	public double getLongitude(int column) {
+		return getLongitude() + column * cellSize;
+	}
+
+	/**
+	 * @param value
+	 *           A value from the table.
+	 * @return true if the value marks a cell with no data.
+	 */
+	public boolean isNoData(double value) {
+		return value == noDataValue;
+	}
+
+	/**
+	 * Works out the header of this grid after blocks of factor x factor cells have been combined into one. The top left corner stays where it is; if the rows or columns don't divide evenly, the blocks along the bottom and right edges reach past the edge of this grid.
+	 * 
+	 * @param factor
+	 *           The number of cells along each side of a block.
+	 * @return The header of the coarser grid.
+	 * @throws IllegalArgumentException
+	 *            If factor is less than 1.
+	 */
+	public GridHeader downsample(int factor) {
+		if (factor < 1)
+			throw new IllegalArgumentException("The downsampling factor must be at least 1.");
+
+		int coarseCols = (ncols + factor - 1) / factor;
+		int coarseRows = (nrows + factor - 1) / factor;
+		double coarseSize = cellSize * factor;
+
+		// Keep the top edge in place, so the bottom moves down if the last block is partial
+		double top = yllcorner + nrows * cellSize;
+		return new GridHeader(coarseCols, coarseRows, xllcorner, top - coarseRows * coarseSize, coarseSize, noDataValue);
+	}
+
+	/**
+	 * Checks if another header describes the same cells (same size, position and cell size).
+	 * 
+	 * @param other
+	 *           The header to compare against.
+	 * @return true if both grids line up cell for cell.
+	 */
+	public boolean sameGeometry(GridHeader other) {
+		return other != null && ncols == other.ncols && nrows == other.nrows && xllcorner == other.xllcorner && yllcorner == other.yllcorner && cellSize == other.cellSize;
+	}
+
+	/**
+	 * Returns the header in the same layout as an ESRI ASCII grid.
+	 */
+	@Override
+	public String toString() {
+		return "ncols " + ncols + "\nnrows " + nrows + "\nxllcorner " + xllcorner + "\nyllcorner " + yllcorner + "\ncellsize " + cellSize + "\nNODATA_value " + noDataValue;
+	}
+}
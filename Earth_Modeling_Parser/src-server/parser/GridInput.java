@@ -0,0 +1,206 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Opens ASCII grids for reading, whether they are plain text or gzip compressed (.txt.gz / .asc.gz). Compressed grids are recognised by the gzip magic number rather than the file name, and are decompressed as a stream while they are read, so the plain text never exists in full on disk or in memory.
+ */
+
+package parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+public final class GridInput {
+
+	/**
+	 * The first two bytes of every gzip stream.
+	 */
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+
+	/**
+	 * Size of the buffer used by the decompressor.
+	 */
+	private static final int INFLATE_BUFFER_SIZE = 1 << 16;
+
+	private GridInput() {
+	}
+
+	/**
+	 * @param file
+	 *           The file to check.
+	 * @return true if the file starts with the gzip magic number.
+	 * @throws IOException
+	 *            The file couldn't be read.
+	 */
+	public static boolean isGzip(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+		}
+	}
+
+	/**
+	 * @param buffer
+	 *           The bytes to check, from position to limit. The position is not changed.
+	 * @return true if the bytes start with the gzip magic number.
+	 */
+	public static boolean isGzip(ByteBuffer buffer) {
+		int p = buffer.position();
+		return buffer.remaining() >= 2 && (buffer.get(p) & 0xff) == GZIP_MAGIC_1 && (buffer.get(p + 1) & 0xff) == GZIP_MAGIC_2;
+	}
+
+	/**
+	 * Opens a grid file for reading from the start.
+	 * 
+	 * @param file
+	 *           The plain text or gzip compressed grid.
+	 * @return A channel over the plain text of the grid. The caller must close it.
+	 * @throws IOException
+	 *            The file couldn't be opened.
+	 */
+	public static ReadableByteChannel open(File file) throws IOException {
+		return open(file, 0);
+	}
+
+	/**
+	 * Opens a grid file for reading from the given offset in its plain text. A compressed grid has to be decompressed up to the offset, so this is only cheap for plain text files.
+	 * 
+	 * @param file
+	 *           The plain text or gzip compressed grid.
+	 * @param position
+	 *           Offset in the plain text to start reading from.
+	 * @return A channel over the plain text of the grid. The caller must close it.
+	 * @throws IOException
+	 *            The file couldn't be opened, or is shorter than position.
+	 */
+	public static ReadableByteChannel open(File file, long position) throws IOException {
+		if (!isGzip(file)) {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			channel.position(position);
+			return channel;
+		}
+
+		InputStream in = new GZIPInputStream(new FileInputStream(file), INFLATE_BUFFER_SIZE);
+		try {
+			skipFully(in, position);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return Channels.newChannel(in);
+	}
+
+	/**
+	 * Opens a grid held in memory for reading. Plain text should be read straight from the buffer instead (see AsciiGridTokenizer(ByteBuffer)); this is for compressed grids.
+	 * 
+	 * @param buffer
+	 *           The gzip compressed grid, from position to limit. The position is not changed.
+	 * @return A channel over the plain text of the grid.
+	 * @throws IOException
+	 *            The buffer doesn't hold a valid gzip header.
+	 */
+	public static ReadableByteChannel openGzip(ByteBuffer buffer) throws IOException {
+		return openGzip(buffer, 0);
+	}
+
+	/**
+	 * Opens a compressed grid held in memory for reading from part way through, such as straight past its header.
+	 * 
+	 * @param buffer
+	 *           The gzip compressed grid, from position to limit. The position is not changed.
+	 * @param position
+	 *           The offset in the plain text of the first byte to read.
+	 * @return A channel over the plain text of the grid, positioned at position.
+	 * @throws IOException
+	 *            The buffer doesn't hold a valid gzip header, or its plain text is shorter than position.
+	 */
+	public static ReadableByteChannel openGzip(ByteBuffer buffer, long position) throws IOException {
+		InputStream compressed;
+		if (buffer.hasArray())
+			compressed = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		else
+			compressed = new ByteBufferInputStream(buffer.duplicate());
+
+		InputStream in = new GZIPInputStream(compressed, INFLATE_BUFFER_SIZE);
+		try {
+			skipFully(in, position);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return Channels.newChannel(in);
+	}
+
+	/**
+	 * Reads and throws away bytes from a stream.
+	 * 
+	 * @param in
+	 *           The stream to skip through.
+	 * @param count
+	 *           How many bytes to skip.
+	 * @throws IOException
+	 *            The stream ended before count bytes were skipped.
+	 */
+	private static void skipFully(InputStream in, long count) throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				if (in.read() < 0)
+					throw new EOFException("Compressed grid ended " + count + " bytes before the requested position.");
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+
+	/**
+	 * Reads the bytes of a buffer that isn't backed by an array (such as a memory mapped file).
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				return -1;
+
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+}
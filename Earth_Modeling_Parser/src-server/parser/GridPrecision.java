@@ -0,0 +1,43 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         How the cells of a GridRaster are stored. DOUBLE keeps every value exactly as parsed. FLOAT halves the memory, and SCALED_SHORT quarters it by storing each value as a 16 bit step between the grid's min and max. The lossy modes keep track of the largest error they introduce, which is fine
+ *         for display products (such as NPP or ET maps) but not for values that are computed with later.
+ */
+
+package parser;
+
+public enum GridPrecision {
+	DOUBLE(8), FLOAT(4), SCALED_SHORT(2);
+
+	/**
+	 * Memory used by each cell.
+	 */
+	private final int bytesPerCell;
+
+	private GridPrecision(int bytesPerCell) {
+		this.bytesPerCell = bytesPerCell;
+	}
+
+	/**
+	 * 
+	 * @return The number of bytes each cell takes up in memory.
+	 */
+	public int getBytesPerCell() {
+		return bytesPerCell;
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         In-memory grid produced by parsing an ASCII file. Holds the header and every cell in a primitive array (row by row from the top left), so later stages can read the values without parsing text again. NODATA cells hold the header's NODATA value.
+ * 
+ *         Cells are stored as doubles (8 bytes each) unless a smaller GridPrecision is chosen: floats (4 bytes), or 16 bit steps between a min and a max (2 bytes, see toScaledShort()). The lossy precisions keep track of the largest difference between a value that was set and the value that is stored, so
+ *         the error of a map can be reported. NODATA is always stored exactly.
+ */
+
+package parser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class GridRaster implements GridCellHandler {
+
+	/**
+	 * The values from the header of the grid.
+	 */
+	private final GridHeader header;
+
+	/**
+	 * How the cells are stored.
+	 */
+	private final GridPrecision precision;
+
+	/**
+	 * Every cell of the grid, row by row starting from the top left. Only the array for the precision is used; the others are null.
+	 */
+	private final double[] cells;
+	private final float[] floatCells;
+	private final short[] shortCells;
+
+	/**
+	 * Stored short s stands for the value offset + s * scale (SCALED_SHORT only).
+	 */
+	private final double offset;
+	private final double scale;
+
+	/**
+	 * NODATA as stored by the FLOAT precision.
+	 */
+	private final float floatNoData;
+
+	/**
+	 * Largest difference between a value that was set and the value that was stored (0 for DOUBLE).
+	 */
+	private double maxError;
+
+	/**
+	 * true if this is a view made by readOnly(), whose cells can't be set.
+	 */
+	private final boolean readOnly;
+
+	/**
+	 * Creates a raster for the given header with every cell set to NODATA.
+	 * 
+	 * @param header
+	 *           The header describing the size and position of the grid.
+	 * @throws IllegalArgumentException
+	 *            If the grid has too many cells to fit in an array.
+	 */
+	public GridRaster(GridHeader header) {
+		this(header, GridPrecision.DOUBLE);
+	}
+
+	/**
+	 * Creates a raster for the given header with every cell set to NODATA.
+	 * 
+	 * @param header
+	 *           The header describing the size and position of the grid.
+	 * @param precision
+	 *           How the cells are stored: DOUBLE or FLOAT. A SCALED_SHORT raster needs the range of its values up front, so is made with GridRaster(GridHeader, double, double) or toScaledShort().
+	 * @throws IllegalArgumentException
+	 *            If the grid has too many cells to fit in an array, or precision is SCALED_SHORT.
+	 */
+	public GridRaster(GridHeader header, GridPrecision precision) {
+		this(header, unscaled(precision), 0, 1);
+	}
+
+	/**
+	 * Creates a SCALED_SHORT raster for the given header with every cell set to NODATA. The range is split into 65534 equal steps, so every value inside it is stored within half a step; values outside of it are stored as the nearest end of the range.
+	 * 
+	 * @param header
+	 *           The header describing the size and position of the grid.
+	 * @param min
+	 *           The smallest value that will be stored.
+	 * @param max
+	 *           The largest value that will be stored.
+	 * @throws IllegalArgumentException
+	 *            If the grid has too many cells to fit in an array, or the range isn't finite.
+	 */
+	public GridRaster(GridHeader header, double min, double max) {
+		this(header, GridPrecision.SCALED_SHORT, (min + max) / 2, (max - min) / (2.0 * Short.MAX_VALUE));
+		if (Double.isNaN(offset) || Double.isInfinite(offset) || Double.isInfinite(max - min) || max < min)
+			throw new IllegalArgumentException("A SCALED_SHORT raster needs a finite range of values, not [" + min + ", " + max + "].");
+	}
+
+	private GridRaster(GridHeader header, GridPrecision precision, double offset, double scale) {
+		if (header.getCellCount() > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("The grid has " + header.getCellCount() + " cells, which is too many to hold in memory.");
+
+		int cellCount = (int) header.getCellCount();
+		this.header = header;
+		this.precision = precision;
+		this.cells = precision == GridPrecision.DOUBLE ? new double[cellCount] : null;
+		this.floatCells = precision == GridPrecision.FLOAT ? new float[cellCount] : null;
+		this.shortCells = precision == GridPrecision.SCALED_SHORT ? new short[cellCount] : null;
+		// A grid of all the same value still needs a step size
+		this.offset = offset;
+		this.scale = scale > 0 ? scale : 1;
+		this.floatNoData = (float) header.getNODATA();
+		this.maxError = 0;
+		this.readOnly = false;
+
+		if (cells != null)
+			Arrays.fill(cells, header.getNODATA());
+		else if (floatCells != null)
+			Arrays.fill(floatCells, floatNoData);
+		else
+			Arrays.fill(shortCells, Short.MIN_VALUE);
+	}
+
+	/**
+	 * Creates a read-only view of a raster, sharing its cells.
+	 */
+	private GridRaster(GridRaster source) {
+		this.header = source.header;
+		this.precision = source.precision;
+		this.cells = source.cells;
+		this.floatCells = source.floatCells;
+		this.shortCells = source.shortCells;
+		this.offset = source.offset;
+		this.scale = source.scale;
+		this.floatNoData = source.floatNoData;
+		this.maxError = source.maxError;
+		this.readOnly = true;
+	}
+
+	/**
+	 * Checks that a precision can be used without knowing the range of the values.
+	 */
+	private static GridPrecision unscaled(GridPrecision precision) {
+		if (precision == GridPrecision.SCALED_SHORT)
+			throw new IllegalArgumentException("A SCALED_SHORT raster needs the range of its values.");
+		return precision;
+	}
+
+	/**
+	 * @return The header describing the size and position of the grid.
+	 */
+	public GridHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return How the cells are stored.
+	 */
+	public GridPrecision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return The memory used by the cells, in bytes.
+	 */
+	public long getSizeInBytes() {
+		return header.getCellCount() * precision.getBytesPerCell();
+	}
+
+	/**
+	 * @return The largest difference between a value that was set and the value that is stored; 0 if every value is stored exactly. For a raster converted from a lossy one, this includes the error of the original.
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Gives a view of the raster whose cells can be read but not set, for handing a finished raster to code that shouldn't change it. The view shares the cells of this raster, so it costs no memory, but it only stays unchanged if this raster isn't set any more either.
+	 * 
+	 * @return A read-only view of this raster; this raster itself if it already is one.
+	 */
+	public GridRaster readOnly() {
+		return readOnly ? this : new GridRaster(this);
+	}
+
+	/**
+	 * @return true if the cells of this raster can't be set (see readOnly()).
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell, 0 being the left.
+	 * @return The value of the cell. NODATA cells return the header's NODATA value.
+	 */
+	public double get(int row, int column) {
+		return get(row * header.getNcols() + column);
+	}
+
+	/**
+	 * @param index
+	 *           The index of the cell, counted row by row from the top left.
+	 * @return The value of the cell. NODATA cells return the header's NODATA value.
+	 */
+	public double get(int index) {
+		switch (precision) {
+			case FLOAT:
+				float f = floatCells[index];
+				return f == floatNoData ? header.getNODATA() : f;
+			case SCALED_SHORT:
+				short s = shortCells[index];
+				return s == Short.MIN_VALUE ? header.getNODATA() : offset + s * scale;
+			default:
+				return cells[index];
+		}
+	}
+
+	/**
+	 * Sets the value of a cell.
+	 * 
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell, 0 being the left.
+	 * @param value
+	 *           The new value of the cell.
+	 * @throws UnsupportedOperationException
+	 *            If the raster is read-only.
+	 */
+	public void set(int row, int column, double value) {
+		if (readOnly)
+			throw new UnsupportedOperationException("The raster is read-only.");
+
+		int index = row * header.getNcols() + column;
+
+		switch (precision) {
+			case FLOAT:
+				if (header.isNoData(value))
+					floatCells[index] = floatNoData;
+				else {
+					float f = (float) value;
+					floatCells[index] = f;
+					recordError(value, f);
+				}
+				break;
+			case SCALED_SHORT:
+				if (header.isNoData(value))
+					shortCells[index] = Short.MIN_VALUE;
+				else {
+					// Short.MIN_VALUE is kept for NODATA
+					long step = Math.round((value - offset) / scale);
+					short s = (short) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, step));
+					shortCells[index] = s;
+					recordError(value, offset + s * scale);
+				}
+				break;
+			default:
+				cells[index] = value;
+		}
+	}
+
+	/**
+	 * Keeps track of the largest error made storing a value.
+	 */
+	private void recordError(double value, double stored) {
+		maxError = largerError(maxError, value, stored);
+	}
+
+	/**
+	 * Works out the largest error made storing values, for the lossy stores of grids (FLOAT and SCALED_SHORT rasters, float binary grids and sparse grids, and time series cubes).
+	 * 
+	 * @param maxError
+	 *           The largest error so far.
+	 * @param value
+	 *           A value being stored.
+	 * @param stored
+	 *           The value as it is stored.
+	 * @return The larger of maxError and the error storing value; infinite if the error is NaN.
+	 */
+	static double largerError(double maxError, double value, double stored) {
+		double error = Math.abs(stored - value);
+		// NaN compares false, so check for it explicitly
+		if (Double.isNaN(error))
+			return Double.POSITIVE_INFINITY;
+		return Math.max(maxError, error);
+	}
+
+	/**
+	 * Copies the raster into a SCALED_SHORT raster spanning the range of its values. Used to quarter the memory of a grid that could only be read once, as the range isn't known until it has been parsed.
+	 * 
+	 * @return The SCALED_SHORT copy. Its getMaxError() covers both the error of this raster and the error of the copy.
+	 */
+	public GridRaster toScaledShort() {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		int cellCount = (int) header.getCellCount();
+		for (int i = 0; i < cellCount; i++) {
+			double value = get(i);
+			if (!header.isNoData(value) && !Double.isNaN(value) && !Double.isInfinite(value)) {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+		}
+		if (min > max)
+			min = max = 0;
+
+		GridRaster scaled = new GridRaster(header, min, max);
+		int ncols = header.getNcols();
+		for (int i = 0; i < cellCount; i++)
+			scaled.set(i / ncols, i % ncols, get(i));
+
+		scaled.maxError += maxError;
+		return scaled;
+	}
+
+	/**
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell, 0 being the left.
+	 * @return true if the cell holds no data.
+	 */
+	public boolean isNoData(int row, int column) {
+		return header.isNoData(get(row, column));
+	}
+
+	/**
+	 * Stores a parsed cell. Lets a GridRaster be handed straight to the parser.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) {
+		set(row, column, value);
+	}
+
+	/**
+	 * Stores a run of NODATA cells in one go.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) {
+		if (readOnly)
+			throw new UnsupportedOperationException("The raster is read-only.");
+
+		int from = row * header.getNcols() + column;
+
+		switch (precision) {
+			case FLOAT:
+				Arrays.fill(floatCells, from, from + count, floatNoData);
+				break;
+			case SCALED_SHORT:
+				Arrays.fill(shortCells, from, from + count, Short.MIN_VALUE);
+				break;
+			default:
+				Arrays.fill(cells, from, from + count, header.getNODATA());
+		}
+	}
+
+	/**
+	 * Sends every cell of the raster, in table order, to the given handler.
+	 * 
+	 * @param handler
+	 *           The handler to receive the cells.
+	 * @throws IOException
+	 *            The handler couldn't write a cell out.
+	 */
+	public void forEachCell(GridCellHandler handler) throws IOException {
+		int ncols = header.getNcols();
+		int nrows = header.getNrows();
+		int index = 0;
+		for (int row = 0; row < nrows; row++)
+			for (int column = 0; column < ncols; column++)
+				handler.handleCell(row, column, get(index++));
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         The byte offset (and line number) at which each row of an ASCII grid starts, so that any range of rows can be read by seeking straight to it instead of scanning the file from the top. The index is built while the grid is first parsed and saved next to it (big.txt gets big.txt.rowidx).
+ * 
+ *         The size and modification time of the grid are saved with the index, and an index that doesn't match its grid any more is ignored. Offsets are into the plain text, so for a gzip compressed grid they still save the parsing, but not the decompression.
+ */
+
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.pmw.tinylog.Logger;
+
+public class GridRowIndex {
+
+	/**
+	 * Added to the name of the grid to get the name of its index.
+	 */
+	public static final String EXTENSION = ".rowidx";
+
+	/**
+	 * First bytes of an index file ("VRIX"), followed by the format version.
+	 */
+	private static final int MAGIC = 0x56524958;
+	private static final int VERSION = 1;
+
+	/**
+	 * Size and modification time of the grid when the index was built.
+	 */
+	private final long gridLength;
+	private final long gridModified;
+
+	/**
+	 * Offset into the plain text of the first value of each row.
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Line (counting from 0) of the byte at each offset.
+	 */
+	private final int[] lines;
+
+	/**
+	 * Creates an empty index for a grid, to be filled in with setRow() while the grid is parsed.
+	 * 
+	 * @param grid
+	 *           The grid file being indexed.
+	 * @param nrows
+	 *           The number of rows in the grid.
+	 */
+	public GridRowIndex(File grid, int nrows) {
+		this(grid.length(), grid.lastModified(), new long[nrows], new int[nrows]);
+	}
+
+	private GridRowIndex(long gridLength, long gridModified, long[] offsets, int[] lines) {
+		this.gridLength = gridLength;
+		this.gridModified = gridModified;
+		this.offsets = offsets;
+		this.lines = lines;
+	}
+
+	/**
+	 * @param grid
+	 *           A grid file.
+	 * @return The file the grid's index is saved in.
+	 */
+	public static File getIndexFile(File grid) {
+		return new File(grid.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Loads the index of a grid, if it has one that is up to date.
+	 * 
+	 * @param grid
+	 *           The grid file.
+	 * @param nrows
+	 *           The number of rows in the grid, from its header.
+	 * @return The index; null if there isn't one, or it was built for a different version of the grid.
+	 */
+	public static GridRowIndex load(File grid, int nrows) {
+		File indexFile = getIndexFile(grid);
+		if (!indexFile.isFile())
+			return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				Logger.warn("{} is not a row index, ignoring it.", indexFile.getName());
+				return null;
+			}
+
+			long length = in.readLong();
+			long modified = in.readLong();
+			if (length != grid.length() || modified != grid.lastModified() || in.readInt() != nrows) {
+				Logger.info("{} is out of date, ignoring it.", indexFile.getName());
+				return null;
+			}
+
+			long[] offsets = new long[nrows];
+			int[] lines = new int[nrows];
+			for (int row = 0; row < nrows; row++) {
+				offsets[row] = in.readLong();
+				lines[row] = in.readInt();
+			}
+			return new GridRowIndex(length, modified, offsets, lines);
+		} catch (IOException e) {
+			Logger.warn("Couldn't read the row index {}, ignoring it.", indexFile.getName(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the index next to the grid. Failing to save isn't an error, as the index only makes later reads faster.
+	 * 
+	 * @param grid
+	 *           The grid file the index was built for.
+	 * @return true if the index was saved.
+	 */
+	public boolean save(File grid) {
+		File indexFile = getIndexFile(grid);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(gridLength);
+			out.writeLong(gridModified);
+			out.writeInt(offsets.length);
+			for (int row = 0; row < offsets.length; row++) {
+				out.writeLong(offsets[row]);
+				out.writeInt(lines[row]);
+			}
+		} catch (IOException e) {
+			Logger.warn("Couldn't save the row index {}", indexFile, e);
+			indexFile.delete();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Records where a row starts.
+	 * 
+	 * @param row
+	 *           The row.
+	 * @param offset
+	 *           Offset into the plain text at or just before the first value of the row (whitespace before it is fine).
+	 * @param line
+	 *           The line (counting from 0) of the byte at offset.
+	 */
+	public void setRow(int row, long offset, int line) {
+		offsets[row] = offset;
+		lines[row] = line;
+	}
+
+	/**
+	 * @return The number of rows in the index.
+	 */
+	public int getRowCount() {
+		return offsets.length;
+	}
+
+	/**
+	 * @param row
+	 *           A row of the grid.
+	 * @return The offset into the plain text to start reading the row from.
+	 */
+	public long getOffset(int row) {
+		return offsets[row];
+	}
+
+	/**
+	 * @param row
+	 *           A row of the grid.
+	 * @return The line (counting from 0) of the byte at getOffset(row).
+	 */
+	public int getLine(int row) {
+		return lines[row];
+	}
+}
@@ -0,0 +1,382 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Statistics of the values in a grid, gathered one value at a time while the table is parsed so the values never have to be read twice. Keeps the count, sum, min, max, mean and variance (Welford's method, so large grids don't lose precision), and a histogram with a fixed number of bins from which
+ *         percentiles are estimated.
+ * 
+ *         The range of the values isn't known until the table has been read, so the histogram starts out with narrow bins around the first value and doubles the width of its bins (merging them in pairs) whenever a value falls outside of it. Bin edges are always multiples of the bin width, which lets two
+ *         histograms be merged; that is how the chunks of a parallel parse are combined.
+ */
+
+package parser;
+
+public class GridStatistics {
+
+	/**
+	 * Number of bins in the histogram.
+	 */
+	public static final int HISTOGRAM_BINS = 256;
+
+	/**
+	 * The first bin width is the magnitude of the first value divided by this (rounded to a power of two).
+	 */
+	private static final double INITIAL_RESOLUTION = 1 << 20;
+
+	/**
+	 * Number of values that aren't NODATA.
+	 */
+	private long count;
+
+	/**
+	 * Number of NODATA cells.
+	 */
+	private long noDataCount;
+
+	private double sum;
+	private double min;
+	private double max;
+
+	/**
+	 * Running mean, and running sum of squared differences from the mean (Welford).
+	 */
+	private double mean;
+	private double m2;
+
+	/**
+	 * Counts of values in each bin. Bin i holds the values in [(firstBin + i) * binWidth, (firstBin + i + 1) * binWidth).
+	 */
+	private long[] histogram;
+	private long firstBin;
+	private double binWidth;
+
+	/**
+	 * Number of values that went into the histogram (infinite and NaN values are left out of it).
+	 */
+	private long histogramCount;
+
+	/**
+	 * Creates empty statistics.
+	 */
+	public GridStatistics() {
+		this.count = 0;
+		this.noDataCount = 0;
+		this.sum = 0;
+		this.min = Double.NaN;
+		this.max = Double.NaN;
+		this.mean = 0;
+		this.m2 = 0;
+		this.histogram = new long[HISTOGRAM_BINS];
+		this.firstBin = 0;
+		this.binWidth = 0;
+		this.histogramCount = 0;
+	}
+
+	/**
+	 * Creates a copy of another set of statistics.
+	 * 
+	 * @param other
+	 *           The statistics to copy. Not changed.
+	 */
+	public GridStatistics(GridStatistics other) {
+		this.count = other.count;
+		this.noDataCount = other.noDataCount;
+		this.sum = other.sum;
+		this.min = other.min;
+		this.max = other.max;
+		this.mean = other.mean;
+		this.m2 = other.m2;
+		this.histogram = other.histogram.clone();
+		this.firstBin = other.firstBin;
+		this.binWidth = other.binWidth;
+		this.histogramCount = other.histogramCount;
+	}
+
+	/**
+	 * Adds a value from the table.
+	 * 
+	 * @param value
+	 *           A value that isn't NODATA.
+	 */
+	public void add(double value) {
+		if (count == 0) {
+			min = value;
+			max = value;
+		} else if (value > max)
+			max = value;
+		else if (value < min)
+			min = value;
+
+		count++;
+		sum += value;
+
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+
+		if (!Double.isNaN(value) && !Double.isInfinite(value))
+			addToHistogram(value);
+	}
+
+	/**
+	 * Counts a NODATA cell. It has no effect on any of the other statistics.
+	 */
+	public void addNoData() {
+		noDataCount++;
+	}
+
+	/**
+	 * Counts a run of NODATA cells.
+	 * 
+	 * @param count
+	 *           The number of cells in the run.
+	 */
+	public void addNoData(long count) {
+		noDataCount += count;
+	}
+
+	/**
+	 * Adds every value counted by another set of statistics, as if they had been added to this one after its own values.
+	 * 
+	 * @param other
+	 *           The statistics to add. Not changed.
+	 */
+	public void merge(GridStatistics other) {
+		noDataCount += other.noDataCount;
+		if (other.count == 0)
+			return;
+
+		if (count == 0) {
+			min = other.min;
+			max = other.max;
+		} else {
+			if (other.max > max)
+				max = other.max;
+			if (other.min < min)
+				min = other.min;
+		}
+
+		// Combine means and variances (Chan et al.)
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+		mean += delta * other.count / total;
+		count = total;
+		sum += other.sum;
+
+		// Into an empty histogram, take the other's bins as they are; re-centring them could widen them for no reason.
+		if (histogramCount == 0) {
+			histogram = other.histogram.clone();
+			firstBin = other.firstBin;
+			binWidth = other.binWidth;
+			histogramCount = other.histogramCount;
+			return;
+		}
+
+		for (int i = 0; i < HISTOGRAM_BINS; i++)
+			if (other.histogram[i] != 0)
+				addBin(other.firstBin + i, other.binWidth, other.histogram[i]);
+	}
+
+	/**
+	 * 
+	 * @return The number of values that aren't NODATA.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 
+	 * @return The number of NODATA cells.
+	 */
+	public long getNoDataCount() {
+		return noDataCount;
+	}
+
+	/**
+	 * 
+	 * @return The sum of all values.
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * 
+	 * @return The smallest value; NaN if there were no values.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * 
+	 * @return The largest value; NaN if there were no values.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * 
+	 * @return The mean of all values; NaN if there were no values.
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/**
+	 * 
+	 * @return The (population) variance of all values; NaN if there were no values.
+	 */
+	public double getVariance() {
+		return count == 0 ? Double.NaN : m2 / count;
+	}
+
+	/**
+	 * 
+	 * @return The (population) standard deviation of all values; NaN if there were no values.
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * 
+	 * @return A copy of the histogram counts. Bin i covers [getHistogramStart() + i * getBinWidth(), getHistogramStart() + (i + 1) * getBinWidth()).
+	 */
+	public long[] getHistogram() {
+		return histogram.clone();
+	}
+
+	/**
+	 * 
+	 * @return The lower edge of the first bin of the histogram.
+	 */
+	public double getHistogramStart() {
+		return firstBin * binWidth;
+	}
+
+	/**
+	 * 
+	 * @return The width of every bin of the histogram; 0 if there were no values.
+	 */
+	public double getBinWidth() {
+		return binWidth;
+	}
+
+	/**
+	 * Estimates a percentile from the histogram. The values in a bin are assumed to be spread evenly across it, so the error is at most one bin width.
+	 * 
+	 * @param percent
+	 *           The percentile to find, from 0 to 100.
+	 * @return The estimated value below which percent of the values fall; NaN if there were no values.
+	 */
+	public double getPercentile(double percent) {
+		if (histogramCount == 0)
+			return Double.NaN;
+		if (percent <= 0)
+			return min;
+		if (percent >= 100)
+			return max;
+
+		double target = histogramCount * percent / 100;
+		long below = 0;
+		for (int i = 0; i < HISTOGRAM_BINS; i++) {
+			if (histogram[i] == 0)
+				continue;
+			if (below + histogram[i] >= target) {
+				double estimate = (firstBin + i + (target - below) / histogram[i]) * binWidth;
+				return Math.max(min, Math.min(max, estimate));
+			}
+			below += histogram[i];
+		}
+		return max;
+	}
+
+	/**
+	 * 
+	 * @return The estimated median; NaN if there were no values.
+	 */
+	public double getMedian() {
+		return getPercentile(50);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", nodata=" + noDataCount + ", min=" + getMin() + ", max=" + getMax() + ", mean=" + getMean() + ", stddev=" + getStandardDeviation() + ", p5=" + getPercentile(5) + ", median=" + getMedian() + ", p95=" + getPercentile(95);
+	}
+
+	/**
+	 * Adds a finite value to the histogram, widening the bins until it fits.
+	 */
+	private void addToHistogram(double value) {
+		if (histogramCount == 0) {
+			// Start with narrow bins centred on the first value.
+			binWidth = Math.scalb(1.0, Math.getExponent(Math.max(Math.abs(value), Double.MIN_NORMAL) / INITIAL_RESOLUTION));
+			firstBin = (long) Math.floor(value / binWidth) - HISTOGRAM_BINS / 2;
+		}
+
+		while (value < firstBin * binWidth || value >= (firstBin + HISTOGRAM_BINS) * binWidth)
+			widen(value < firstBin * binWidth);
+
+		int bin = (int) ((long) Math.floor(value / binWidth) - firstBin);
+		histogram[Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin))]++;
+		histogramCount++;
+	}
+
+	/**
+	 * Adds the contents of a bin from another histogram to this one, which must not be empty.
+	 * 
+	 * @param bin
+	 *           The bin's index (its lower edge divided by width).
+	 * @param width
+	 *           The bin width of the other histogram.
+	 * @param binCount
+	 *           The number of values in the bin.
+	 */
+	private void addBin(long bin, double width, long binCount) {
+		while (binWidth < width)
+			widen(bin * width < firstBin * binWidth);
+
+		// Both widths are powers of two, so this is exact.
+		long key = Math.floorDiv(bin, (long) (binWidth / width));
+		while (key < firstBin || key >= firstBin + HISTOGRAM_BINS) {
+			widen(key < firstBin);
+			key = Math.floorDiv(key, 2L);
+		}
+
+		histogram[(int) (key - firstBin)] += binCount;
+		histogramCount += binCount;
+	}
+
+	/**
+	 * Doubles the width of the bins, merging them in pairs. The new range covers the old one, and the free half of it is put on the side that needs room.
+	 * 
+	 * @param downward
+	 *           true to make room below the current range; false to make room above it.
+	 */
+	private void widen(boolean downward) {
+		long newFirst = downward ? Math.floorDiv(firstBin + HISTOGRAM_BINS - 1, 2L) - HISTOGRAM_BINS + 1 : Math.floorDiv(firstBin, 2L);
+		long[] merged = new long[HISTOGRAM_BINS];
+		for (int i = 0; i < HISTOGRAM_BINS; i++)
+			merged[(int) (Math.floorDiv(firstBin + i, 2L) - newFirst)] += histogram[i];
+
+		histogram = merged;
+		firstBin = newFirst;
+		binWidth *= 2;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         The handlers that the cells of one conversion go through on their way to its output, put together from its OutputOptions by create(). The cells are downsampled first; the GeoTIFF, dBASE table and pyramid are then written from the same cells as the output, and a raster of the parsed cells filled if one was asked for; and last the cells of a CSV
+ *         are re-ordered. Every conversion builds its chain here, so the stages always come in this order, and a conversion that fails throws all of them away with abort().
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+
+public final class OutputChain {
+
+	/**
+	 * The handler that the cells of the parsed grid are sent to.
+	 */
+	private GridCellHandler handler;
+
+	/**
+	 * The stages that write files of their own, or null for those that weren't asked for.
+	 */
+	private PyramidBuilder pyramid;
+	private GeoTiffWriter geoTiff;
+	private DbaseTableWriter table;
+
+	/**
+	 * The raster filled from the cells as they are parsed, or null if none was asked for.
+	 */
+	private GridRaster raster;
+
+	/**
+	 * Builds the chain for one conversion.
+	 * 
+	 * @param options
+	 *           What to make from the cells besides the output.
+	 * @param header
+	 *           The header of the grid that is parsed.
+	 * @param outFile
+	 *           The output being created; the pyramid and GeoTIFF are saved next to it, and the table is named after it.
+	 * @param output
+	 *           The handler that writes the output, or null if only the GeoTIFF, table and pyramid are wanted.
+	 * @param csv
+	 *           true if output writes a CSV, whose cells are re-ordered if the options ask for it.
+	 * @param floats
+	 *           true if the parsed values are floats. The table is then written with as few digits as a float needs, unless the values are combined by downsampling.
+	 * @param fractionDigits
+	 *           The digits to write after the point of each value in the table; -1 for as many as the value needs.
+	 * @return The chain, whose handler the cells of the parsed grid are sent to.
+	 * @throws IOException
+	 *            The temporary file of the pyramid, GeoTIFF or table could not be created.
+	 */
+	public static OutputChain create(OutputOptions options, GridHeader header, File outFile, GridCellHandler output, boolean csv, boolean floats, int fractionDigits) throws IOException {
+		GridHeader outputHeader = options.getOutputHeader(header);
+		OutputChain chain = new OutputChain();
+
+		GridCellHandler handler = output != null ? output : (row, column, value) -> {};
+		try {
+			if (csv && output != null && options.getCellOrder() != CellOrder.ROW)
+				handler = new CurveOrderHandler(outputHeader, options.getCellOrder(), handler);
+			if (options.getPyramidLevels() > 0)
+				handler = chain.pyramid = new PyramidBuilder(outputHeader, options.getPyramidLevels(), options.getPyramidMethod(), outFile, handler);
+			if (options.getTableDirectory() != null) {
+				handler = chain.table = new DbaseTableWriter(outputHeader, DbaseTableWriter.getOutputFile(options.getTableDirectory(), outFile), floats && options.getDownsampleFactor() <= 1, handler);
+				chain.table.setFractionDigits(fractionDigits);
+			}
+			if (options.getGeoTiff())
+				handler = chain.geoTiff = new GeoTiffWriter(outputHeader, GeoTiffWriter.getOutputFile(outFile), handler);
+		} catch (IOException | RuntimeException e) {
+			chain.abort();
+			throw e;
+		}
+
+		chain.handler = options.downsample(header, handler);
+		if (options.getRasterPrecision() != null) {
+			chain.raster = new GridRaster(header, options.getRasterPrecision());
+			chain.handler = new Tee(chain.raster, chain.handler);
+		}
+		return chain;
+	}
+
+	/**
+	 * Chains are only made by create().
+	 */
+	private OutputChain() {
+		this.handler = null;
+		this.pyramid = null;
+		this.geoTiff = null;
+		this.table = null;
+		this.raster = null;
+	}
+
+	/**
+	 * 
+	 * @return The handler that the cells of the parsed grid are sent to, in table order.
+	 */
+	public GridCellHandler getHandler() {
+		return handler;
+	}
+
+	/**
+	 * 
+	 * @return The raster filled from the cells of the parsed grid, or null if the options didn't ask for one. It is only complete once the conversion has succeeded.
+	 */
+	public GridRaster getRaster() {
+		return raster;
+	}
+
+	/**
+	 * Throws away the files of the pyramid, GeoTIFF and table after the conversion has failed, including any that finishing the chain already saved (such as when the output itself then fails to finish).
+	 */
+	public void abort() {
+		if (pyramid != null)
+			pyramid.abort();
+		if (geoTiff != null)
+			geoTiff.abort();
+		if (table != null)
+			table.abort();
+	}
+
+	/**
+	 * Sends every cell to the raster as well as to the rest of the chain.
+	 */
+	private static final class Tee implements GridCellHandler {
+
+		private final GridRaster raster;
+		private final GridCellHandler next;
+
+		Tee(GridRaster raster, GridCellHandler next) {
+			this.raster = raster;
+			this.next = next;
+		}
+
+		@Override
+		public void handleCell(int row, int column, double value) throws IOException {
+			raster.handleCell(row, column, value);
+			next.handleCell(row, column, value);
+		}
+
+		@Override
+		public void handleNoData(int row, int column, int count, double noData) throws IOException {
+			raster.handleNoData(row, column, count, noData);
+			next.handleNoData(row, column, count, noData);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			raster.finish();
+			next.finish();
+		}
+	}
+}
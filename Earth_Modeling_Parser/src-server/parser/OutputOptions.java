@@ -0,0 +1,279 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         What is made from the cells of a grid besides its CSV: whether it is downsampled first, the pyramid, GeoTIFF and dBASE table written from the same cells, and the order the cells are written to the CSV in. Options are immutable and changed by the with...() methods, which return new options, so one instance can be shared by any number of conversions. Each
+ *         conversion builds its own OutputChain from them.
+ */
+
+package parser;
+
+import java.io.File;
+
+public final class OutputOptions {
+
+	/**
+	 * Number of cells along each side of the blocks combined into one output cell; 1 to output every cell.
+	 */
+	private int downsampleFactor;
+
+	/**
+	 * How the cells of each block are combined.
+	 */
+	private BlockAggregator.Method downsampleMethod;
+
+	/**
+	 * Number of reduced resolution levels saved next to the output; 0 for none.
+	 */
+	private int pyramidLevels;
+
+	/**
+	 * How the cells of each block of a pyramid level are combined.
+	 */
+	private BlockAggregator.Method pyramidMethod;
+
+	/**
+	 * The order the cells are written to a CSV in.
+	 */
+	private CellOrder cellOrder;
+
+	/**
+	 * true to write a GeoTIFF of the output grid next to the output.
+	 */
+	private boolean geoTiff;
+
+	/**
+	 * Directory to write a dBASE table of the output grid to, or null for none.
+	 */
+	private File tableDirectory;
+
+	/**
+	 * How a raster of the parsed grid filled from the same cells is stored, or null for none.
+	 */
+	private GridPrecision rasterPrecision;
+
+	/**
+	 * Creates options that write only the output itself, with every cell in table order.
+	 */
+	public OutputOptions() {
+		this.downsampleFactor = 1;
+		this.downsampleMethod = BlockAggregator.Method.MEAN;
+		this.pyramidLevels = 0;
+		this.pyramidMethod = BlockAggregator.Method.MEAN;
+		this.cellOrder = CellOrder.ROW;
+		this.geoTiff = false;
+		this.tableDirectory = null;
+		this.rasterPrecision = null;
+	}
+
+	/**
+	 * Copies other options. The with...() methods change the copy before returning it, so options never change once they have been handed out.
+	 */
+	private OutputOptions(OutputOptions other) {
+		this.downsampleFactor = other.downsampleFactor;
+		this.downsampleMethod = other.downsampleMethod;
+		this.pyramidLevels = other.pyramidLevels;
+		this.pyramidMethod = other.pyramidMethod;
+		this.cellOrder = other.cellOrder;
+		this.geoTiff = other.geoTiff;
+		this.tableDirectory = other.tableDirectory;
+		this.rasterPrecision = other.rasterPrecision;
+	}
+
+	/**
+	 * 
+	 * @return The number of cells along each side of the blocks combined into one output cell; 1 if every cell is output.
+	 */
+	public int getDownsampleFactor() {
+		return downsampleFactor;
+	}
+
+	/**
+	 * 
+	 * @return How the cells of each block are combined.
+	 */
+	public BlockAggregator.Method getDownsampleMethod() {
+		return downsampleMethod;
+	}
+
+	/**
+	 * Outputs a coarser grid than the one parsed: every block of factor x factor cells is combined into one cell while the table is parsed, cutting the size of the output by about factor squared. NODATA cells are left out of each block. The statistics still describe the cells that were parsed.
+	 * 
+	 * @param factor
+	 *           The number of cells along each side of a block; 1 to output every cell.
+	 * @param method
+	 *           How the cells of each block are combined.
+	 * @return Options with this downsampling and the rest of these options.
+	 * @throws IllegalArgumentException
+	 *            If factor is less than 1.
+	 */
+	public OutputOptions withDownsample(int factor, BlockAggregator.Method method) {
+		if (factor < 1)
+			throw new IllegalArgumentException("The downsampling factor must be at least 1.");
+		OutputOptions options = new OutputOptions(this);
+		options.downsampleFactor = factor;
+		options.downsampleMethod = method;
+		return options;
+	}
+
+	/**
+	 * 
+	 * @return The number of reduced resolution levels saved next to the output; 0 if none are.
+	 */
+	public int getPyramidLevels() {
+		return pyramidLevels;
+	}
+
+	/**
+	 * 
+	 * @return How the cells of each block of a pyramid level are combined.
+	 */
+	public BlockAggregator.Method getPyramidMethod() {
+		return pyramidMethod;
+	}
+
+	/**
+	 * Saves reduced resolution copies of the output grid (1/2, 1/4, 1/8... of its resolution) next to the output, built in the same pass (see PyramidBuilder).
+	 * 
+	 * @param levels
+	 *           The most levels to build; 0 for none.
+	 * @param method
+	 *           How the cells of each block are combined.
+	 * @return Options with this pyramid and the rest of these options.
+	 * @throws IllegalArgumentException
+	 *            If levels is negative.
+	 */
+	public OutputOptions withPyramid(int levels, BlockAggregator.Method method) {
+		if (levels < 0)
+			throw new IllegalArgumentException("The number of pyramid levels can't be negative.");
+		OutputOptions options = new OutputOptions(this);
+		options.pyramidLevels = levels;
+		options.pyramidMethod = method;
+		return options;
+	}
+
+	/**
+	 * 
+	 * @return The order the cells are written to a CSV in.
+	 */
+	public CellOrder getCellOrder() {
+		return cellOrder;
+	}
+
+	/**
+	 * Z_ORDER and HILBERT write the cells of each tile of the grid along a space filling curve (see CurveOrderHandler), so that points that are close on the map are close in the CSV too. The min and max rows still come first.
+	 * 
+	 * @param cellOrder
+	 *           The order to write the cells of a CSV in.
+	 * @return Options with this order and the rest of these options.
+	 */
+	public OutputOptions withCellOrder(CellOrder cellOrder) {
+		OutputOptions options = new OutputOptions(this);
+		options.cellOrder = cellOrder;
+		return options;
+	}
+
+	/**
+	 * 
+	 * @return true if a GeoTIFF of the output grid is written next to the output.
+	 */
+	public boolean getGeoTiff() {
+		return geoTiff;
+	}
+
+	/**
+	 * Writes a tiled, compressed GeoTIFF of the output grid, with overviews, next to the output, built in the same pass (see GeoTiffWriter).
+	 * 
+	 * @param geoTiff
+	 *           true to write a GeoTIFF.
+	 * @return Options with this setting and the rest of these options.
+	 */
+	public OutputOptions withGeoTiff(boolean geoTiff) {
+		OutputOptions options = new OutputOptions(this);
+		options.geoTiff = geoTiff;
+		return options;
+	}
+
+	/**
+	 * 
+	 * @return The directory a dBASE table of the output grid is written to, or null if none is written.
+	 */
+	public File getTableDirectory() {
+		return tableDirectory;
+	}
+
+	/**
+	 * Writes the rows of the output to a dBASE table as well, built in the same pass (see DbaseTableWriter), so they can be published without converting the CSV into a table first.
+	 * 
+	 * @param tableDirectory
+	 *           The directory to write the table to, or null for no table.
+	 * @return Options with this setting and the rest of these options.
+	 */
+	public OutputOptions withTableDirectory(File tableDirectory) {
+		OutputOptions options = new OutputOptions(this);
+		options.tableDirectory = tableDirectory;
+		return options;
+	}
+
+	/**
+	 * 
+	 * @return How the raster filled alongside the output is stored, or null if none is filled.
+	 */
+	public GridPrecision getRasterPrecision() {
+		return rasterPrecision;
+	}
+
+	/**
+	 * Fills an in-memory raster of the parsed grid from the same cells as the output, so a conversion that needs the grid in memory as well as on disk (such as a time series cube) doesn't parse it twice. The raster holds the cells as parsed, before any downsampling, and is handed out by
+	 * the ConversionResult.
+	 * 
+	 * @param precision
+	 *           How the cells of the raster are stored: DOUBLE or FLOAT; null for no raster.
+	 * @return Options with this raster and the rest of these options.
+	 * @throws IllegalArgumentException
+	 *            If precision is SCALED_SHORT, whose range isn't known until the grid has been parsed.
+	 */
+	public OutputOptions withRaster(GridPrecision precision) {
+		if (precision == GridPrecision.SCALED_SHORT)
+			throw new IllegalArgumentException("A raster filled alongside the output can't be SCALED_SHORT.");
+		OutputOptions options = new OutputOptions(this);
+		options.rasterPrecision = precision;
+		return options;
+	}
+
+	/**
+	 * @param header
+	 *           The header of the grid that is parsed.
+	 * @return The header of the grid that is output: the same header, or the coarser one if the grid is downsampled.
+	 */
+	public GridHeader getOutputHeader(GridHeader header) {
+		return downsampleFactor > 1 ? header.downsample(downsampleFactor) : header;
+	}
+
+	/**
+	 * Wraps the handler that the cells of the output grid are sent to, so that blocks of cells are combined first if the grid is downsampled. This is all of the chain that an in-memory grid goes through.
+	 * 
+	 * @param header
+	 *           The header of the grid that is parsed.
+	 * @param handler
+	 *           The handler for the cells of the output grid.
+	 * @return The handler for the cells of the parsed grid.
+	 */
+	public GridCellHandler downsample(GridHeader header, GridCellHandler handler) {
+		if (downsampleFactor > 1)
+			return new BlockAggregator(header, downsampleFactor, downsampleMethod, handler);
+		return handler;
+	}
+}
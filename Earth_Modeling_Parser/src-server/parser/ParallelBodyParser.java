@@ -0,0 +1,629 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Parses the table of a large ASCII file on every core. The file is memory mapped (or read from memory, for grids that were uploaded) and the table is split into one chunk per core, with every split moved forward to the next line break so no value is cut in half. The chunks are handled in two passes on a ForkJoinPool:
+ * 
+ *         1. Every chunk counts its values (a raw byte scan, no number parsing). The counts give the index of the first value in each chunk, which is where its row and column start. The total is checked against ncols * nrows before any parsing is done.
+ * 
+ *         2. Every chunk parses its values, writes its rows to its own CsvGridWriter and gathers its own GridStatistics. The pieces and the statistics are then merged, in order.
+ * 
+ *         If the pyramid, GeoTIFF or table of the grid is wanted as well, the table is split into chunks of at most MAX_KEPT_CHUNK_SIZE, and every chunk also keeps its cells with data in a SparseGrid. As soon as a chunk and every chunk before it are parsed, its cells are sent on to the handler that writes those (see OutputChain) and dropped. Only a few chunks per thread are parsed ahead of the one being sent on, so the cells held at once don't grow with the grid. NODATA is never stored or sent, which
+ *         the handlers treat the same as a run of NODATA.
+ */
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.pmw.tinylog.Logger;
+
+public class ParallelBodyParser {
+
+	/**
+	 * Pool shared by all parallel parses. One thread per core.
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Chunks smaller than this aren't worth a thread of their own.
+	 */
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+
+	/**
+	 * Largest region that a single MappedByteBuffer can cover.
+	 */
+	private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+	/**
+	 * Largest chunk when the cells are kept for the pyramid, GeoTIFF or table. The cells of a chunk are held until every chunk before it has been sent on, so small chunks keep that memory down.
+	 */
+	private static final long MAX_KEPT_CHUNK_SIZE = 4L << 20;
+
+	/**
+	 * Number of chunks per thread that may be parsed ahead of the one being sent on, when the cells are kept.
+	 */
+	private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+	/**
+	 * The parser that has already read the header of the file.
+	 */
+	private AsciiToCsv header;
+
+	/**
+	 * Number of chunks the table is split into; 0 for one per core, as long as they aren't smaller than MIN_CHUNK_SIZE.
+	 */
+	private final int chunkCount;
+
+	/**
+	 * Number of values found in the table.
+	 */
+	private long valuesParsed;
+
+	/**
+	 * Number of values and bytes that every chunk has got through so far, for progress updates. Only touched in reportProgress().
+	 */
+	private long valuesDone;
+	private long bytesDone;
+
+	/**
+	 * Creates a parallel parser for a file whose header has already been parsed.
+	 * 
+	 * @param header
+	 *           The AsciiToCsv that parsed the header of the file. Used for the grid size, NODATA value, and the coordinates of the upper left corner.
+	 */
+	public ParallelBodyParser(AsciiToCsv header) {
+		this(header, 0);
+	}
+
+	/**
+	 * Creates a parallel parser that splits the table into a given number of chunks, however small they are. Lets a small table be parsed in as many chunks as a large one would be.
+	 * 
+	 * @param header
+	 *           The AsciiToCsv that parsed the header of the file.
+	 * @param chunkCount
+	 *           The number of chunks to split the table into; 0 for one per core.
+	 */
+	ParallelBodyParser(AsciiToCsv header, int chunkCount) {
+		this.header = header;
+		this.chunkCount = chunkCount;
+		this.valuesParsed = 0;
+		this.valuesDone = 0;
+		this.bytesDone = 0;
+	}
+
+	/**
+	 * 
+	 * @return The number of values found in the table by the last call to parseToCsv().
+	 */
+	public long getValuesParsed() {
+		return valuesParsed;
+	}
+
+	/**
+	 * Parses the table of the file in parallel and writes the result to outFile.
+	 * 
+	 * @param ftp
+	 *           The ASCII file whose header has been parsed by the AsciiToCsv given in the constructor.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The statistics of the table, or null if the table was invalid (in which case no output file is created).
+	 * @throws IOException
+	 *            The file couldn't be read, or the output couldn't be written.
+	 */
+	public GridStatistics parseToCsv(File ftp, File outFile) throws IOException {
+		return parseToCsv(ftp, outFile, null);
+	}
+
+	/**
+	 * Parses the table of the file in parallel and writes the result to outFile, sending the cells with data to another handler as well.
+	 * 
+	 * @param ftp
+	 *           The ASCII file whose header has been parsed by the AsciiToCsv given in the constructor.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @param extras
+	 *           The handler that every cell with data is also sent to, in table order, chunk by chunk as they are parsed, and then finished; null for none. It is finished before the CSV is put in place.
+	 * @return The statistics of the table, or null if the table was invalid (in which case no output file is created, and extras isn't finished).
+	 * @throws IOException
+	 *            The file couldn't be read, or the output couldn't be written.
+	 */
+	public GridStatistics parseToCsv(File ftp, File outFile, GridCellHandler extras) throws IOException {
+		if (!header.getHeaderParsed()) {
+			Logger.error("Header was not successfully parsed. Check the input file. Failing in parseToCsv method of ParallelBodyParser.");
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(ftp.toPath(), StandardOpenOption.READ)) {
+			return parseToCsv(split(channel, header.getBodyOffset(), channel.size(), extras != null), outFile, extras);
+		}
+	}
+
+	/**
+	 * Parses the table of an ASCII grid held in memory in parallel and writes the result to outFile.
+	 * 
+	 * @param grid
+	 *           The whole ASCII grid (header included), whose header has been parsed by the AsciiToCsv given in the constructor. Its position is not changed.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @return The statistics of the table, or null if the table was invalid (in which case no output file is created).
+	 * @throws IOException
+	 *            The output couldn't be written.
+	 */
+	public GridStatistics parseToCsv(ByteBuffer grid, File outFile) throws IOException {
+		return parseToCsv(grid, outFile, null);
+	}
+
+	/**
+	 * Parses the table of an ASCII grid held in memory in parallel and writes the result to outFile, sending the cells with data to another handler as well.
+	 * 
+	 * @param grid
+	 *           The whole ASCII grid (header included), whose header has been parsed by the AsciiToCsv given in the constructor. Its position is not changed.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @param extras
+	 *           The handler that every cell with data is also sent to, in table order, chunk by chunk as they are parsed, and then finished; null for none. It is finished before the CSV is put in place.
+	 * @return The statistics of the table, or null if the table was invalid (in which case no output file is created, and extras isn't finished).
+	 * @throws IOException
+	 *            The output couldn't be written.
+	 */
+	public GridStatistics parseToCsv(ByteBuffer grid, File outFile, GridCellHandler extras) throws IOException {
+		if (!header.getHeaderParsed()) {
+			Logger.error("Header was not successfully parsed. Check the input file. Failing in parseToCsv method of ParallelBodyParser.");
+			return null;
+		}
+
+		return parseToCsv(split(grid, grid.position() + (int) header.getBodyOffset(), extras != null), outFile, extras);
+	}
+
+	/**
+	 * Counts and then parses the chunks of the table.
+	 * 
+	 * @param chunks
+	 *           The chunks of the table, in table order.
+	 * @param outFile
+	 *           The CSV file to create.
+	 * @param extras
+	 *           The handler that the cells with data are also sent to, or null.
+	 * @return The statistics of the table, or null if the table was invalid.
+	 * @throws IOException
+	 *            The output couldn't be written.
+	 */
+	private GridStatistics parseToCsv(List<Chunk> chunks, File outFile, GridCellHandler extras) throws IOException {
+		// Pass 1: count values in each chunk so every chunk knows which row and column it starts on.
+		List<Callable<Void>> counts = new ArrayList<Callable<Void>>();
+		for (Chunk chunk : chunks)
+			counts.add(() -> {
+				chunk.count();
+				return null;
+			});
+		invokeAll(counts);
+
+		long expectedValues = (long) header.getNcols() * (long) header.getNrows();
+		long index = 0;
+		int line = header.getLinesInHeader() - 1;
+		for (Chunk chunk : chunks) {
+			chunk.firstIndex = index;
+			chunk.firstLine = line;
+			index += chunk.values;
+			line += chunk.lines;
+		}
+		valuesParsed = index;
+
+		if (expectedValues != valuesParsed) {
+			Logger.error("Number of rows and columns in the header do not match the number of values in the document. Please check your input file.");
+			return null;
+		}
+
+		if (header.isCancelled()) {
+			Logger.warn("Conversion was cancelled before the table was parsed.");
+			return null;
+		}
+		valuesDone = 0;
+		bytesDone = header.getBodyOffset();
+
+		// Pass 2: parse every chunk into its own piece of the output. If the cells are kept for the other outputs, only a few chunks are parsed ahead of the one whose cells are being sent on, so the cells of the whole grid are never held at once.
+		int ahead = extras != null ? CHUNKS_AHEAD_PER_THREAD * POOL.getParallelism() : chunks.size();
+		List<CsvGridWriter> parts = new ArrayList<CsvGridWriter>();
+		List<Future<Boolean>> parses = new ArrayList<Future<Boolean>>();
+		try {
+			boolean parsed = true;
+			for (int i = 0; i < chunks.size() && parsed; i++) {
+				while (parses.size() < chunks.size() && parses.size() <= i + ahead) {
+					Chunk chunk = chunks.get(parses.size());
+					CsvGridWriter part = header.createWriter(new File(outFile.getPath() + "." + parses.size()));
+					parts.add(part);
+					parses.add(POOL.submit(() -> chunk.parse(part, extras != null)));
+				}
+
+				parsed = getResult(parses.get(i));
+
+				// Send the cells to the other outputs in table order, dropping the chunk's cells once they are sent
+				Chunk chunk = chunks.get(i);
+				if (parsed && extras != null)
+					chunk.cells.forEachValidCell(extras);
+				chunk.cells = null;
+			}
+
+			if (!parsed) {
+				awaitAll(parses);
+				if (header.isCancelled())
+					Logger.warn("Conversion was cancelled while the table was being parsed.");
+				for (CsvGridWriter part : parts)
+					part.abort();
+				return null;
+			}
+
+			if (extras != null)
+				extras.finish();
+
+			CsvGridWriter.merge(outFile, parts);
+		} catch (IOException | RuntimeException e) {
+			awaitAll(parses);
+			for (CsvGridWriter part : parts)
+				part.abort();
+			throw e;
+		}
+
+		// Combine the statistics of all of the chunks, in table order.
+		GridStatistics statistics = new GridStatistics();
+		for (Chunk chunk : chunks)
+			statistics.merge(chunk.statistics);
+		return statistics;
+	}
+
+	/**
+	 * Adds to the progress of the whole table and passes it on to the listener, if there is one. Called from every chunk's thread, so it is synchronized: the listener
+	 * gets one update at a time and never sees the progress go backwards.
+	 * 
+	 * @param values
+	 *           The number of values a chunk has got through since it last reported.
+	 * @param bytes
+	 *           The number of bytes a chunk has read since it last reported.
+	 */
+	private synchronized void reportProgress(long values, long bytes) {
+		valuesDone += values;
+		bytesDone += bytes;
+
+		ConversionListener listener = header.getListener();
+		if (listener != null)
+			listener.progressUpdated((int) (valuesDone / header.getHeader().getNcols()), header.getHeader().getNrows(), bytesDone);
+	}
+
+	/**
+	 * Splits the table into chunks of about the same size, each ending just after a line break.
+	 * 
+	 * @param channel
+	 *           The open file.
+	 * @param start
+	 *           Byte offset of the first value in the table.
+	 * @param end
+	 *           Size of the file.
+	 * @param keepCells
+	 *           true if the cells of the chunks are kept for the other outputs of the grid.
+	 * @return The chunks, in table order.
+	 * @throws IOException
+	 *            The file couldn't be read.
+	 */
+	private List<Chunk> split(FileChannel channel, long start, long end, boolean keepCells) throws IOException {
+		long length = end - start;
+		long count = countChunks(length, keepCells);
+		long target = Math.max(1, Math.min(length / count, MAX_CHUNK_SIZE / 2));
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		long chunkStart = start;
+		while (chunkStart < end) {
+			// Let the last chunk take whatever is left rather than leaving a tiny chunk at the end.
+			long chunkEnd = end - chunkStart < target + target / 2 ? end : nextLineStart(channel, chunkStart + target, end);
+			// The line break might be further away than a mapped buffer allows, split on any whitespace instead.
+			if (chunkEnd - chunkStart > MAX_CHUNK_SIZE)
+				chunkEnd = nextTokenStart(channel, chunkStart + target, end);
+			chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart)));
+			chunkStart = chunkEnd;
+		}
+
+		return chunks;
+	}
+
+	/**
+	 * Splits the table of an in-memory grid into chunks of about the same size, each ending just after a line break.
+	 * 
+	 * @param grid
+	 *           The grid.
+	 * @param start
+	 *           Index of the first value in the table.
+	 * @param keepCells
+	 *           true if the cells of the chunks are kept for the other outputs of the grid.
+	 * @return The chunks, in table order.
+	 */
+	private List<Chunk> split(ByteBuffer grid, int start, boolean keepCells) {
+		int end = grid.limit();
+		long length = end - start;
+		long count = countChunks(length, keepCells);
+		int target = (int) Math.max(1, length / count);
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		int chunkStart = start;
+		while (chunkStart < end) {
+			int chunkEnd = end - chunkStart < target + target / 2 ? end : chunkStart + target;
+			while (chunkEnd < end && grid.get(chunkEnd - 1) != '\n')
+				chunkEnd++;
+
+			ByteBuffer chunk = grid.duplicate();
+			chunk.limit(chunkEnd);
+			chunk.position(chunkStart);
+			chunks.add(new Chunk(chunk.slice()));
+			chunkStart = chunkEnd;
+		}
+
+		return chunks;
+	}
+
+	/**
+	 * Works out how many chunks to split the table into: one per core, unless that would make them smaller than MIN_CHUNK_SIZE. Chunks whose cells are kept are no larger than MAX_KEPT_CHUNK_SIZE.
+	 * 
+	 * @param length
+	 *           The number of bytes in the table.
+	 * @param keepCells
+	 *           true if the cells of the chunks are kept for the other outputs of the grid.
+	 * @return The number of chunks.
+	 */
+	private long countChunks(long length, boolean keepCells) {
+		if (chunkCount > 0)
+			return chunkCount;
+
+		long count = Math.max(1, Math.min(POOL.getParallelism(), length / MIN_CHUNK_SIZE));
+		if (keepCells)
+			count = Math.max(count, (length + MAX_KEPT_CHUNK_SIZE - 1) / MAX_KEPT_CHUNK_SIZE);
+		return count;
+	}
+
+	/**
+	 * Finds the first byte after the next line break.
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long end) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while (position < end) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++)
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			position += read;
+		}
+		return end;
+	}
+
+	/**
+	 * Finds the first byte after the next whitespace.
+	 */
+	private static long nextTokenStart(FileChannel channel, long position, long end) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while (position < end) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++)
+				if (AsciiGridTokenizer.isWhitespace(buffer.get(i)))
+					return position + i + 1;
+			position += read;
+		}
+		return end;
+	}
+
+	/**
+	 * Runs all of the tasks on the pool and waits for them to finish.
+	 */
+	private static <T> List<Future<T>> invokeAll(List<Callable<T>> tasks) throws IOException {
+		List<Future<T>> results = POOL.invokeAll(tasks);
+		for (Future<T> result : results)
+			getResult(result);
+		return results;
+	}
+
+	/**
+	 * Waits for every task to finish, whatever they return or throw. Used before the pieces of the output are removed, so no task is still writing to them.
+	 */
+	private static void awaitAll(List<? extends Future<?>> tasks) {
+		for (Future<?> task : tasks)
+			try {
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				// Only the first failure is passed on
+			}
+	}
+
+	/**
+	 * Unwraps the result of a finished task, rethrowing whatever it threw.
+	 */
+	private static <T> T getResult(Future<T> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing in parallel.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * A piece of the table that is handled by one thread.
+	 */
+	private class Chunk implements GridCellHandler {
+
+		/**
+		 * The bytes of this chunk (memory mapped, or a slice of a grid in memory).
+		 */
+		private ByteBuffer bytes;
+
+		/**
+		 * Number of values and line breaks in this chunk (set by count()).
+		 */
+		private long values;
+		private int lines;
+
+		/**
+		 * Index of the first value in this chunk, counted from the start of the table, and the zero based line it is on.
+		 */
+		private long firstIndex;
+		private int firstLine;
+
+		/**
+		 * Statistics of the values in this chunk (set by parse()).
+		 */
+		private GridStatistics statistics;
+
+		/**
+		 * The cells with data in this chunk, kept for the other outputs of the grid; null if there aren't any.
+		 */
+		private SparseGrid cells;
+
+		/**
+		 * The piece of the CSV this chunk is written to, and the NODATA value that is left out of it (set by parse()).
+		 */
+		private CsvGridWriter output;
+		private double noData;
+
+		private Chunk(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Counts the values and line breaks in this chunk without parsing them.
+		 */
+		private void count() throws IOException {
+			try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(bytes)) {
+				long found = 0;
+				while (tokenizer.skipToken())
+					found++;
+				tokenizer.peek();
+
+				values = found;
+				lines = tokenizer.getLineNumber();
+			}
+		}
+
+		/**
+		 * Parses this chunk and writes its rows to the given writer.
+		 * 
+		 * @param keepCells
+		 *           true to keep the cells with data for the other outputs of the grid as well.
+		 * @return true if every value was a number.
+		 */
+		private boolean parse(CsvGridWriter output, boolean keepCells) throws IOException {
+			if (keepCells)
+				cells = new SparseGrid(header.getHeader());
+
+			// Closing the tokenizer lets the next chunk on this thread reuse its buffer, and closing the piece of the CSV keeps only the chunks being parsed open
+			try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(bytes)) {
+				tokenizer.setLineNumber(firstLine);
+				boolean parsed = parse(tokenizer, output);
+				output.close();
+				return parsed;
+			}
+		}
+
+		/**
+		 * Parses this chunk from a tokenizer over its bytes.
+		 * 
+		 * @return true if every value was a number.
+		 */
+		private boolean parse(AsciiGridTokenizer tokenizer, CsvGridWriter output) throws IOException {
+			this.output = output;
+			this.noData = header.getNODATA();
+			statistics = new GridStatistics();
+			long end = firstIndex + values;
+
+			// Start on the right row and column for where this chunk sits in the table, skipping the cells outside of the clipping box (if there is one)
+			BoundingBox clip = header.getClip();
+			GridHeader grid = header.getHeader();
+			TableCursor cursor = clip != null ? new TableCursor(grid, clip.firstRow(grid), clip.lastRow(grid), clip.firstColumn(grid), clip.lastColumn(grid), firstIndex)
+					: new TableCursor(grid, 0, grid.getNrows() - 1, 0, grid.getNcols() - 1, firstIndex);
+
+			// Nothing to do if the whole chunk is outside of the clipping box
+			if (cursor.nextCellInWindow(firstIndex) >= end) {
+				reportProgress(values, bytes.limit());
+				return true;
+			}
+
+			// The row, index and position that progress was last reported for
+			int reportedRow = cursor.getRow();
+			long reportedIndex = firstIndex;
+			long reportedPosition = 0;
+
+			while (tokenizer.hasNext()) {
+
+				// Report progress and check for cancellation once per row
+				if (cursor.getRow() != reportedRow) {
+					long index = cursor.getIndex();
+					reportProgress(index - reportedIndex, tokenizer.getPosition() - reportedPosition);
+					reportedRow = cursor.getRow();
+					reportedIndex = index;
+					reportedPosition = tokenizer.getPosition();
+
+					if (header.isCancelled())
+						return false;
+				}
+
+				if (cursor.next(tokenizer, end, this, statistics) < 0)
+					return false;
+			}
+
+			reportProgress(end - reportedIndex, tokenizer.getPosition() - reportedPosition);
+			return true;
+		}
+
+		/**
+		 * Writes a cell with data to this chunk's piece of the CSV, and keeps it for the other outputs if they are wanted.
+		 */
+		@Override
+		public void handleCell(int row, int column, double value) throws IOException {
+			if (value != noData) {
+				output.writeCell(row, column, value);
+				if (cells != null)
+					cells.handleCell(row, column, value);
+			}
+		}
+
+		/**
+		 * Nothing is written or kept for NODATA.
+		 */
+		@Override
+		public void handleNoData(int row, int column, int count, double noData) {
+		}
+	}
+}
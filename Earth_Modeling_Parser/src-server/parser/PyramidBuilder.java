@@ -0,0 +1,297 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         Builds reduced resolution copies of a grid (1/2, 1/4, 1/8... of the resolution) while the grid is parsed, so that zoomed out views of a map never need to read the full resolution data. Every cell is passed on unchanged to another handler (such as the one writing the CSV) and also added to one
+ *         BlockAggregator per level, so all of the levels are built in the same pass as the CSV.
+ * 
+ *         Each level combines blocks of 2^level cells per side straight from the parsed cells (not from the level above it), so NODATA cells are left out exactly and a level's means are not skewed by gaps in the one above. Levels are saved as ESRI ASCII grids next to the CSV: map.csv gets map_L1.asc,
+ *         map_L2.asc and so on. Only one band of blocks per level is held in memory at a time.
+ */
+
+package parser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.pmw.tinylog.Logger;
+
+public class PyramidBuilder implements GridCellHandler {
+
+	/**
+	 * The handler every cell is passed on to.
+	 */
+	private final GridCellHandler output;
+
+	/**
+	 * The aggregator and writer of each level, the first being half the resolution of the grid.
+	 */
+	private final BlockAggregator[] aggregators;
+	private final LevelWriter[] writers;
+
+	/**
+	 * Creates a builder for a grid. Levels stop early once a level is a single cell.
+	 * 
+	 * @param grid
+	 *           The header of the grid being parsed.
+	 * @param levels
+	 *           The most levels to build.
+	 * @param method
+	 *           How the cells of each block are combined.
+	 * @param outFile
+	 *           The CSV file of the grid; the levels are saved next to it.
+	 * @param output
+	 *           The handler every cell is passed on to.
+	 * @throws IllegalArgumentException
+	 *            If levels is less than 1.
+	 * @throws IOException
+	 *            The temporary files of the levels could not be created.
+	 */
+	public PyramidBuilder(GridHeader grid, int levels, BlockAggregator.Method method, File outFile, GridCellHandler output) throws IOException {
+		if (levels < 1)
+			throw new IllegalArgumentException("A pyramid needs at least one level.");
+
+		// No point halving a grid that is already one cell
+		int count = 0;
+		while (count < levels && count < 30 && (grid.getNcols() > 1 << count || grid.getNrows() > 1 << count))
+			count++;
+
+		this.output = output;
+		this.aggregators = new BlockAggregator[count];
+		this.writers = new LevelWriter[count];
+
+		try {
+			for (int level = 1; level <= count; level++) {
+				GridHeader levelHeader = grid.downsample(1 << level);
+				writers[level - 1] = new LevelWriter(getLevelFile(outFile, level), levelHeader);
+				aggregators[level - 1] = new BlockAggregator(grid, 1 << level, method, writers[level - 1]);
+			}
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Works out where a level of a grid's pyramid is saved.
+	 * 
+	 * @param outFile
+	 *           The CSV file of the grid.
+	 * @param level
+	 *           The level, 1 being half the resolution of the grid.
+	 * @return The ESRI ASCII grid file of the level, next to outFile.
+	 */
+	public static File getLevelFile(File outFile, int level) {
+		String name = outFile.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(outFile.getParentFile(), name + "_L" + level + ".asc");
+	}
+
+	/**
+	 * @param f
+	 *           A file.
+	 * @return true if the file is named like a level of a pyramid (see getLevelFile()).
+	 */
+	public static boolean isLevelFile(File f) {
+		return f.getName().matches("(?i).+_L[0-9]+\\.asc");
+	}
+
+	/**
+	 * 
+	 * @return The number of levels being built.
+	 */
+	public int getLevelCount() {
+		return aggregators.length;
+	}
+
+	/**
+	 * 
+	 * @param level
+	 *           The level, 1 being half the resolution of the grid.
+	 * @return The header of the level.
+	 */
+	public GridHeader getLevelHeader(int level) {
+		return aggregators[level - 1].getCoarseHeader();
+	}
+
+	/**
+	 * Passes the cell on, then adds it to its block in every level.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) throws IOException {
+		output.handleCell(row, column, value);
+		for (BlockAggregator aggregator : aggregators)
+			aggregator.handleCell(row, column, value);
+	}
+
+	/**
+	 * Passes the run on, then to every level.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) throws IOException {
+		output.handleNoData(row, column, count, noData);
+		for (BlockAggregator aggregator : aggregators)
+			aggregator.handleNoData(row, column, count, noData);
+	}
+
+	/**
+	 * Writes out the last band of every level and finishes the output handler, then saves the levels. The levels are only moved into place once the output has been, so an output that fails to finish leaves no levels behind.
+	 */
+	@Override
+	public void finish() throws IOException {
+		try {
+			for (BlockAggregator aggregator : aggregators)
+				aggregator.finish();
+			output.finish();
+			for (LevelWriter writer : writers)
+				writer.save();
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+		Logger.debug("Built {} pyramid levels", aggregators.length);
+	}
+
+	/**
+	 * Closes and removes the files of the levels, including any already saved by finish(). Used when parsing fails part way through, or when a later stage of the conversion fails to finish.
+	 */
+	public void abort() {
+		for (LevelWriter writer : writers)
+			if (writer != null)
+				writer.abort();
+	}
+
+	/**
+	 * Streams the cells of one level to an ESRI ASCII grid, one row per line. Cells arrive in table order; rows and columns that never arrive (such as those outside a clipping box) are written as NODATA. The grid is written to a ".part" file, which finish() completes and save() moves into place.
+	 */
+	private static class LevelWriter implements GridCellHandler {
+
+		private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+		private final File file;
+		private final File partFile;
+		private final GridHeader header;
+		private final OutputStream out;
+
+		/**
+		 * Text of the NODATA value, and of the value being written.
+		 */
+		private final byte[] noData;
+		private final byte[] text;
+
+		/**
+		 * The next cell to be written, as an index into the table.
+		 */
+		private long next;
+
+		/**
+		 * true once the grid has been moved into place.
+		 */
+		private boolean saved;
+
+		private LevelWriter(File file, GridHeader header) throws IOException {
+			this.file = file;
+			this.partFile = new File(file.getPath() + ".part");
+			this.header = header;
+			this.out = new BufferedOutputStream(new FileOutputStream(partFile), 1 << 16);
+			this.text = new byte[CsvNumberFormat.MAX_LENGTH + 1];
+			this.noData = Arrays.copyOf(text, CsvNumberFormat.format(header.getNODATA(), text, 0));
+			this.next = 0;
+			this.saved = false;
+
+			out.write(header.toString().replace("\n", System.lineSeparator()).getBytes(StandardCharsets.US_ASCII));
+			out.write(NEW_LINE);
+		}
+
+		@Override
+		public void handleCell(int row, int column, double value) throws IOException {
+			fillTo((long) row * header.getNcols() + column);
+
+			int length = header.isNoData(value) ? copyNoData() : CsvNumberFormat.format(value, text, 0);
+			write(length);
+		}
+
+		/**
+		 * Cells that never arrive are written as NODATA by fillTo(), so a run only has to be written once a later cell (or the end of the grid) is reached.
+		 */
+		@Override
+		public void handleNoData(int row, int column, int count, double noData) {
+		}
+
+		/**
+		 * Writes NODATA for every cell before the given one that hasn't been written.
+		 */
+		private void fillTo(long index) throws IOException {
+			while (next < index)
+				write(copyNoData());
+		}
+
+		private int copyNoData() {
+			System.arraycopy(noData, 0, text, 0, noData.length);
+			return noData.length;
+		}
+
+		/**
+		 * Writes the value held in text, followed by a space or (at the end of a row) a new line.
+		 */
+		private void write(int length) throws IOException {
+			next++;
+			if (next % header.getNcols() == 0) {
+				out.write(text, 0, length);
+				out.write(NEW_LINE);
+			} else {
+				text[length] = ' ';
+				out.write(text, 0, length + 1);
+			}
+		}
+
+		/**
+		 * Writes NODATA for the cells after the last one and closes the ".part" file, without moving it into place.
+		 */
+		@Override
+		public void finish() throws IOException {
+			fillTo(header.getCellCount());
+			out.close();
+		}
+
+		private void save() throws IOException {
+			Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			saved = true;
+		}
+
+		private void abort() {
+			try {
+				out.close();
+			} catch (IOException e) {
+				Logger.error("Error closing temporary pyramid file {}", partFile.getName(), e);
+			}
+
+			if (partFile.exists() && !partFile.delete())
+				Logger.warn("Could not delete temporary pyramid file {}", partFile.getName());
+			if (saved && !file.delete())
+				Logger.warn("Could not delete pyramid file {}", file.getName());
+		}
+	}
+}
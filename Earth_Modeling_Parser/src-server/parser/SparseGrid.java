@@ -0,0 +1,335 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         An in-memory grid that only stores the cells with data. Grids such as GLOBAL maps are mostly NODATA (ocean), so instead of a value for every cell like GridRaster, each row is stored as runs of consecutive cells with data (the NODATA spans are the gaps between them) and the values of
+ *         those cells are packed one after another. Memory grows with the number of cells with data, not the size of the grid.
+ * 
+ *         Cells can be looked up by row and column, but the grid is meant to be read in table order with forEachValidCell(), which visits the cells with data and never touches the NODATA spans; statistics and CSV output both work that way. Like GridRaster it can be handed straight to the parser,
+ *         which fills it as the table is read (cells must arrive in table order). The parallel parse keeps the cells of each of its chunks in one, and writes the pyramid, GeoTIFF and table of the grid from them (see ParallelBodyParser).
+ */
+
+package parser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class SparseGrid implements GridCellHandler {
+
+	/**
+	 * Size the arrays start at; they double whenever they fill up.
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final GridHeader header;
+	private final GridPrecision precision;
+
+	/**
+	 * The values of the cells with data, in table order. Only one of the arrays is used, depending on the precision.
+	 */
+	private double[] values;
+	private float[] floatValues;
+	private int valueCount;
+
+	/**
+	 * The largest difference between a value and the float it is stored as; 0 for doubles.
+	 */
+	private double maxError;
+
+	/**
+	 * The first column of each run, its length, and the index of its first value.
+	 */
+	private int[] runColumns;
+	private int[] runLengths;
+	private int[] runOffsets;
+	private int runCount;
+
+	/**
+	 * Index of the first run of each row; rowRuns[nrows] is the number of runs.
+	 */
+	private final int[] rowRuns;
+
+	/**
+	 * The last row whose entry in rowRuns has been set.
+	 */
+	private int lastRow;
+
+	/**
+	 * Creates an empty grid (every cell NODATA), storing values as doubles.
+	 * 
+	 * @param header
+	 *           The header of the grid.
+	 */
+	public SparseGrid(GridHeader header) {
+		this(header, GridPrecision.DOUBLE);
+	}
+
+	/**
+	 * Creates an empty grid (every cell NODATA).
+	 * 
+	 * @param header
+	 *           The header of the grid.
+	 * @param precision
+	 *           DOUBLE or FLOAT.
+	 * @throws IllegalArgumentException
+	 *            If precision is SCALED_SHORT, which needs the range of the values before they are stored.
+	 */
+	public SparseGrid(GridHeader header, GridPrecision precision) {
+		if (precision == GridPrecision.SCALED_SHORT)
+			throw new IllegalArgumentException("A sparse grid can only store doubles or floats.");
+
+		this.header = header;
+		this.precision = precision;
+		if (precision == GridPrecision.FLOAT)
+			this.floatValues = new float[INITIAL_CAPACITY];
+		else
+			this.values = new double[INITIAL_CAPACITY];
+		this.valueCount = 0;
+		this.maxError = 0;
+		this.runColumns = new int[INITIAL_CAPACITY];
+		this.runLengths = new int[INITIAL_CAPACITY];
+		this.runOffsets = new int[INITIAL_CAPACITY];
+		this.runCount = 0;
+		this.rowRuns = new int[header.getNrows() + 1];
+		this.lastRow = -1;
+	}
+
+	/**
+	 * 
+	 * @return The header of the grid.
+	 */
+	public GridHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * 
+	 * @return How the values are stored.
+	 */
+	public GridPrecision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * 
+	 * @return The number of cells with data.
+	 */
+	public int getValidCount() {
+		return valueCount;
+	}
+
+	/**
+	 * 
+	 * @return The number of runs of cells with data.
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * 
+	 * @return The memory used by the values and runs, in bytes (not counting spare capacity).
+	 */
+	public long getSizeInBytes() {
+		return (long) valueCount * precision.getBytesPerCell() + 3L * Integer.BYTES * runCount + (long) Integer.BYTES * rowRuns.length;
+	}
+
+	/**
+	 * @return The largest difference between a value that was stored and the value that is kept; 0 if the values are kept as doubles.
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Stores a parsed cell. NODATA cells are not stored at all.
+	 * 
+	 * @throws IllegalStateException
+	 *            If the cell comes before a cell that has already been stored.
+	 */
+	@Override
+	public void handleCell(int row, int column, double value) {
+		if (header.isNoData(value))
+			return;
+
+		startRow(row);
+		int last = runCount - 1;
+		if (last >= rowRuns[row]) {
+			int end = runColumns[last] + runLengths[last];
+			if (column < end)
+				throw new IllegalStateException("The cells of a sparse grid must be stored in table order.");
+			if (column == end) {
+				// Carries on the run before it
+				runLengths[last]++;
+				addValue(value);
+				return;
+			}
+		}
+
+		if (runCount == runColumns.length) {
+			runColumns = Arrays.copyOf(runColumns, runCount * 2);
+			runLengths = Arrays.copyOf(runLengths, runCount * 2);
+			runOffsets = Arrays.copyOf(runOffsets, runCount * 2);
+		}
+		runColumns[runCount] = column;
+		runLengths[runCount] = 1;
+		runOffsets[runCount] = valueCount;
+		runCount++;
+		addValue(value);
+	}
+
+	/**
+	 * NODATA isn't stored, so a run of it is just a gap.
+	 */
+	@Override
+	public void handleNoData(int row, int column, int count, double noData) {
+	}
+
+	/**
+	 * Marks the rest of the rows as empty once the whole table has been parsed.
+	 */
+	@Override
+	public void finish() {
+		startRow(header.getNrows());
+	}
+
+	/**
+	 * Sets the first run of every row up to the given one.
+	 * 
+	 * @throws IllegalStateException
+	 *            If the row comes before one that has already been started.
+	 */
+	private void startRow(int row) {
+		if (row < lastRow)
+			throw new IllegalStateException("The cells of a sparse grid must be stored in table order.");
+		while (lastRow < row)
+			rowRuns[++lastRow] = runCount;
+	}
+
+	private void addValue(double value) {
+		if (precision == GridPrecision.FLOAT) {
+			if (valueCount == floatValues.length)
+				floatValues = Arrays.copyOf(floatValues, valueCount * 2);
+			float f = (float) value;
+			floatValues[valueCount++] = f;
+			maxError = GridRaster.largerError(maxError, value, f);
+		} else {
+			if (valueCount == values.length)
+				values = Arrays.copyOf(values, valueCount * 2);
+			values[valueCount++] = value;
+		}
+	}
+
+	private double value(int index) {
+		return precision == GridPrecision.FLOAT ? floatValues[index] : values[index];
+	}
+
+	/**
+	 * Gets the value of a cell, by searching the runs of its row.
+	 * 
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell, 0 being the left.
+	 * @return The value of the cell, or the header's NODATA value if it has no data.
+	 */
+	public double get(int row, int column) {
+		if (row > lastRow)
+			return header.getNODATA();
+
+		int low = rowRuns[row];
+		int high = (row < lastRow ? rowRuns[row + 1] : runCount) - 1;
+
+		// Find the last run starting at or before the column
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (runColumns[middle] <= column)
+				low = middle + 1;
+			else
+				high = middle - 1;
+		}
+
+		if (high >= rowRuns[row] && column < runColumns[high] + runLengths[high])
+			return value(runOffsets[high] + column - runColumns[high]);
+		return header.getNODATA();
+	}
+
+	/**
+	 * Sends every cell with data, in table order, to the given handler. The NODATA spans are skipped without being visited.
+	 * 
+	 * @param handler
+	 *           The handler to receive the cells.
+	 * @throws IOException
+	 *            The handler couldn't write a cell out.
+	 */
+	public void forEachValidCell(GridCellHandler handler) throws IOException {
+		int row = 0;
+		for (int run = 0; run < runCount; run++) {
+			while (row < lastRow && rowRuns[row + 1] <= run)
+				row++;
+
+			int index = runOffsets[run];
+			int end = runColumns[run] + runLengths[run];
+			for (int column = runColumns[run]; column < end; column++)
+				handler.handleCell(row, column, value(index++));
+		}
+	}
+
+	/**
+	 * Sends every cell of the grid, in table order, to the given handler: the cells with data one at a time, and each NODATA span as a single run (see GridCellHandler.handleNoData()).
+	 * 
+	 * @param handler
+	 *           The handler to receive the cells.
+	 * @throws IOException
+	 *            The handler couldn't write a cell out.
+	 */
+	public void forEachCell(GridCellHandler handler) throws IOException {
+		int ncols = header.getNcols();
+		double noData = header.getNODATA();
+
+		for (int row = 0; row < header.getNrows(); row++) {
+			int column = 0;
+			int firstRun = row <= lastRow ? rowRuns[row] : runCount;
+			int endRun = row < lastRow ? rowRuns[row + 1] : runCount;
+
+			for (int run = firstRun; run < endRun; run++) {
+				if (runColumns[run] > column)
+					handler.handleNoData(row, column, runColumns[run] - column, noData);
+
+				int index = runOffsets[run];
+				column = runColumns[run] + runLengths[run];
+				for (int c = runColumns[run]; c < column; c++)
+					handler.handleCell(row, c, value(index++));
+			}
+
+			if (column < ncols)
+				handler.handleNoData(row, column, ncols - column, noData);
+		}
+	}
+
+	/**
+	 * Works out the statistics of the grid from the cells with data alone.
+	 * 
+	 * @return The statistics of the values; every other cell is counted as NODATA.
+	 */
+	public GridStatistics getStatistics() {
+		GridStatistics statistics = new GridStatistics();
+		for (int i = 0; i < valueCount; i++)
+			statistics.add(value(i));
+		statistics.addNoData(header.getCellCount() - valueCount);
+		return statistics;
+	}
+}
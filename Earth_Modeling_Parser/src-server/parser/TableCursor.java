@@ -0,0 +1,202 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Reads the values of an ASCII grid's table from a tokenizer, keeping track of the row and column they belong to. Rows may be wrapped across lines, so the position is worked out by counting values. Cells outside a window of the table (such as a clipping box) are skipped without being
+ *         converted, and so are runs of NODATA spelt the same way as the first NODATA cell. Both the parse on one core (AsciiToCsv) and every chunk of the parallel parse (ParallelBodyParser) read their cells through a cursor, so they convert and skip exactly the same cells.
+ */
+
+package parser;
+
+import java.io.IOException;
+
+import org.pmw.tinylog.Logger;
+
+public final class TableCursor {
+
+	private final int columnsInRow;
+	private final long cellCount;
+	private final double noData;
+
+	/**
+	 * The rows and columns of the window; the cells outside it are skipped.
+	 */
+	private final int firstRow;
+	private final int lastRow;
+	private final int firstColumn;
+	private final int lastColumn;
+	private final boolean windowed;
+
+	/**
+	 * How the table spells NODATA, learned from the first NODATA cell; null until then.
+	 */
+	private byte[] noDataToken;
+
+	/**
+	 * The row and column of the next value.
+	 */
+	private int row;
+	private int column;
+
+	/**
+	 * Creates a cursor over a table.
+	 * 
+	 * @param grid
+	 *           The header of the grid.
+	 * @param firstRow
+	 *           The first row of the window.
+	 * @param lastRow
+	 *           The last row of the window.
+	 * @param firstColumn
+	 *           The first column of the window.
+	 * @param lastColumn
+	 *           The last column of the window.
+	 * @param index
+	 *           Index of the cell the tokenizer is positioned at, counted from the start of the table.
+	 */
+	public TableCursor(GridHeader grid, int firstRow, int lastRow, int firstColumn, int lastColumn, long index) {
+		this.columnsInRow = grid.getNcols();
+		this.cellCount = grid.getCellCount();
+		this.noData = grid.getNODATA();
+		this.firstRow = firstRow;
+		this.lastRow = lastRow;
+		this.firstColumn = firstColumn;
+		this.lastColumn = lastColumn;
+		this.windowed = firstRow > 0 || lastRow < grid.getNrows() - 1 || firstColumn > 0 || lastColumn < columnsInRow - 1;
+		this.noDataToken = null;
+		this.row = (int) (index / columnsInRow);
+		this.column = (int) (index % columnsInRow);
+	}
+
+	/**
+	 * 
+	 * @return The row of the next value.
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * 
+	 * @return The column of the next value.
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * 
+	 * @return The index of the next value, counted from the start of the table.
+	 */
+	public long getIndex() {
+		return (long) row * columnsInRow + column;
+	}
+
+	/**
+	 * Reads the next value of the table and sends it to the handler, or passes over the next stretch of cells that don't have to be converted: the cells up to the window (no further than limit), or a run of NODATA up to the end of the window's part of the row. A run is sent to the handler as
+	 * such.
+	 * 
+	 * @param tokenizer
+	 *           The tokenizer positioned at the next value.
+	 * @param limit
+	 *           Index of a cell that cells outside the window are never skipped past, such as the start of a row that has to be indexed.
+	 * @param handler
+	 *           The handler the cells inside the window are sent to.
+	 * @param statistics
+	 *           The statistics the cells inside the window are added to.
+	 * @return The number of values read or skipped; -1 if the table is invalid (the next value isn't a number, or there are more values than cells), which has been logged.
+	 * @throws IOException
+	 *            The input could not be read, or the output could not be written to.
+	 */
+	public long next(AsciiGridTokenizer tokenizer, long limit, GridCellHandler handler, GridStatistics statistics) throws IOException {
+		long index = getIndex();
+
+		// Skip cells outside of the window without converting them (whole rows at a time where possible)
+		if (windowed && (row < firstRow || row > lastRow || column < firstColumn || column > lastColumn)) {
+			long next = Math.min(nextCellInWindow(index), limit);
+			if (next > index) {
+				long skipped = tokenizer.skipTokens(next - index);
+				moveTo(index + skipped);
+				return skipped;
+			}
+		}
+
+		if (index >= cellCount) {
+			Logger.error("Number of rows and columns in the header do not match the number of values in the document. Please check your input file.");
+			return -1;
+		}
+
+		// Runs of NODATA (such as ocean) are matched byte for byte and passed on without being converted
+		if (noDataToken != null) {
+			int run = tokenizer.skipMatching(noDataToken, lastColumn + 1 - column);
+			if (run > 0) {
+				statistics.addNoData(run);
+				handler.handleNoData(row, column, run, noData);
+				moveTo(index + run);
+				return run;
+			}
+		}
+
+		double value;
+		try {
+			value = tokenizer.nextDouble();
+		} catch (NumberFormatException e) {
+			Logger.error("Non double value found in the body of the Table on line {}. Please check your input file.", tokenizer.getLineNumber() + 1);
+			return -1;
+		}
+
+		// Keep track of the min, max and the rest of the statistics
+		if (value != noData)
+			statistics.add(value);
+		else {
+			statistics.addNoData();
+			if (noDataToken == null)
+				noDataToken = tokenizer.lastToken();
+		}
+
+		handler.handleCell(row, column, value);
+		moveTo(index + 1);
+		return 1;
+	}
+
+	/**
+	 * Finds the next cell inside the window, counting cells in table order (left to right, then top to bottom).
+	 * 
+	 * @param index
+	 *           Index of a cell in the table.
+	 * @return The index of the first cell at or after index that is inside the window; the number of cells in the table if there are none.
+	 */
+	public long nextCellInWindow(long index) {
+		if (firstRow > lastRow || firstColumn > lastColumn)
+			return cellCount;
+
+		long row = index / columnsInRow;
+		long column = index % columnsInRow;
+		if (row < firstRow)
+			return (long) firstRow * columnsInRow + firstColumn;
+		if (column > lastColumn) {
+			row++;
+			column = firstColumn;
+		} else if (column < firstColumn)
+			column = firstColumn;
+
+		return row > lastRow ? cellCount : row * columnsInRow + column;
+	}
+
+	private void moveTo(long index) {
+		row = (int) (index / columnsInRow);
+		column = (int) (index % columnsInRow);
+	}
+}
@@ -0,0 +1,416 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * @author agent
+ * 
+ *         A stack of grids with the same geometry, one per time step (such as the 12 monthly maps of a compound for a year), saved as one binary file. The grid is cut into square chunks of CHUNK_SIZE cells and every chunk holds all the time steps of its cells, cell by cell, so the whole series of a
+ *         cell is one contiguous read instead of one file per step.
+ * 
+ *         The file starts with a HEADER_SIZE byte header (the grid's header, the number of steps, the chunk size and which steps have been written), followed by the chunks in table order. Values are 32 bit floats; chunks at the right and bottom edges are padded to full size with NODATA. Steps can
+ *         be written in any order, one at a time, so a cube is filled in as its maps arrive; steps that haven't been written read as NODATA.
+ */
+
+package parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.pmw.tinylog.Logger;
+
+public class TimeSeriesCube implements Closeable {
+
+	/**
+	 * Extension of a cube file.
+	 */
+	public static final String EXTENSION = ".cube";
+
+	/**
+	 * Number of cells along each side of a chunk.
+	 */
+	public static final int CHUNK_SIZE = 64;
+
+	/**
+	 * The most time steps a cube can hold (one bit each in the header).
+	 */
+	public static final int MAX_STEPS = 32;
+
+	/**
+	 * First bytes of a cube file ("VCUB"), followed by the format version.
+	 */
+	private static final int MAGIC = 0x56435542;
+	private static final int VERSION = 1;
+
+	/**
+	 * Size of the header, and where the bits of the steps that have been written are kept in it.
+	 */
+	private static final int HEADER_SIZE = 64;
+	private static final int STEPS_PRESENT_POSITION = 56;
+
+	private final File file;
+	private final FileChannel channel;
+	private final GridHeader header;
+	private final int steps;
+
+	/**
+	 * NODATA as it is stored in the file.
+	 */
+	private final float floatNoData;
+
+	/**
+	 * Number of chunks across the grid, and the size of each in bytes.
+	 */
+	private final int chunkColumns;
+	private final int chunkBytes;
+
+	/**
+	 * One bit for each step that has been written.
+	 */
+	private int stepsPresent;
+
+	private TimeSeriesCube(File file, FileChannel channel, GridHeader header, int steps, int stepsPresent) {
+		this.file = file;
+		this.channel = channel;
+		this.header = header;
+		this.steps = steps;
+		this.stepsPresent = stepsPresent;
+		this.floatNoData = (float) header.getNODATA();
+		this.chunkColumns = (header.getNcols() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunkBytes = CHUNK_SIZE * CHUNK_SIZE * steps * Float.BYTES;
+	}
+
+	/**
+	 * Creates an empty cube, with every step of every cell NODATA. An existing file is replaced.
+	 * 
+	 * @param file
+	 *           The file to create.
+	 * @param header
+	 *           The header every step of the cube shares.
+	 * @param steps
+	 *           The number of time steps, from 1 to MAX_STEPS.
+	 * @return The open cube.
+	 * @throws IOException
+	 *            The file couldn't be written.
+	 * @throws IllegalArgumentException
+	 *            If steps is out of range.
+	 */
+	public static TimeSeriesCube create(File file, GridHeader header, int steps) throws IOException {
+		if (steps < 1 || steps > MAX_STEPS)
+			throw new IllegalArgumentException("A cube must have from 1 to " + MAX_STEPS + " steps.");
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		TimeSeriesCube cube = new TimeSeriesCube(file, channel, header, steps, 0);
+		try {
+			ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+			head.putInt(MAGIC).putInt(VERSION);
+			head.putInt(header.getNcols()).putInt(header.getNrows());
+			head.putDouble(header.getXllCorner()).putDouble(header.getYllCorner()).putDouble(header.getCellSize()).putDouble(header.getNODATA());
+			head.putInt(steps).putInt(CHUNK_SIZE).putInt(0);
+			head.clear();
+			cube.write(head, 0);
+
+			ByteBuffer chunk = ByteBuffer.allocate(cube.chunkBytes);
+			while (chunk.hasRemaining())
+				chunk.putFloat(cube.floatNoData);
+			for (int index = 0; index < cube.getChunkCount(); index++) {
+				chunk.clear();
+				cube.write(chunk, cube.getChunkPosition(index));
+			}
+		} catch (IOException e) {
+			cube.close();
+			file.delete();
+			throw e;
+		}
+		return cube;
+	}
+
+	/**
+	 * Opens an existing cube to read it or write more steps to it.
+	 * 
+	 * @param file
+	 *           The cube file.
+	 * @return The open cube; null if the file isn't a cube, or is the wrong size for its header (such as a cube that was never finished being created).
+	 * @throws IOException
+	 *            The file couldn't be opened or read.
+	 */
+	public static TimeSeriesCube open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+			while (head.hasRemaining())
+				if (channel.read(head, head.position()) < 0)
+					break;
+			head.flip();
+
+			if (head.remaining() < HEADER_SIZE || head.getInt() != MAGIC || head.getInt() != VERSION) {
+				Logger.warn("{} is not a time series cube.", file.getName());
+				channel.close();
+				return null;
+			}
+
+			int ncols = head.getInt();
+			int nrows = head.getInt();
+			GridHeader header = new GridHeader(ncols, nrows, head.getDouble(), head.getDouble(), head.getDouble(), head.getDouble());
+			int steps = head.getInt();
+			int chunkSize = head.getInt();
+			int stepsPresent = head.getInt();
+
+			if (steps < 1 || steps > MAX_STEPS || chunkSize != CHUNK_SIZE) {
+				Logger.warn("{} has a header this version can't read.", file.getName());
+				channel.close();
+				return null;
+			}
+
+			TimeSeriesCube cube = new TimeSeriesCube(file, channel, header, steps, stepsPresent);
+			if (channel.size() != cube.getChunkPosition(cube.getChunkCount())) {
+				Logger.warn("{} is {} bytes, but its header describes {} bytes.", file.getName(), channel.size(), cube.getChunkPosition(cube.getChunkCount()));
+				channel.close();
+				return null;
+			}
+			return cube;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 
+	 * @return The cube file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 
+	 * @return The header every step of the cube shares.
+	 */
+	public GridHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * 
+	 * @return The number of time steps in the cube.
+	 */
+	public int getStepCount() {
+		return steps;
+	}
+
+	/**
+	 * @param step
+	 *           A time step, counting from 0.
+	 * @return true if the step has been written.
+	 */
+	public boolean hasStep(int step) {
+		checkStep(step);
+		return (stepsPresent & (1 << step)) != 0;
+	}
+
+	/**
+	 * 
+	 * @return The number of steps that have been written.
+	 */
+	public int getStepsWritten() {
+		return Integer.bitCount(stepsPresent);
+	}
+
+	/**
+	 * 
+	 * @return true if every step has been written.
+	 */
+	public boolean isComplete() {
+		return getStepsWritten() == steps;
+	}
+
+	/**
+	 * Writes one time step of the cube. Each chunk is read, has the step's values put in, and is written back, so only one chunk is held in memory. The values are stored as floats, and the largest error in them is logged.
+	 * 
+	 * @param step
+	 *           The time step, counting from 0.
+	 * @param raster
+	 *           The grid for the step. NODATA cells are stored as the cube's NODATA.
+	 * @return true if the step was written; false if the raster doesn't line up with the cube.
+	 * @throws IOException
+	 *            The file couldn't be read or written.
+	 */
+	public boolean writeStep(int step, GridRaster raster) throws IOException {
+		checkStep(step);
+		if (!header.sameGeometry(raster.getHeader())) {
+			Logger.error("The grid for step {} doesn't line up with the cube {}.", step, file.getName());
+			return false;
+		}
+
+		double maxError = fillStep(step, raster);
+		setStepPresent(step, true);
+		Logger.info("Wrote step {} of {}, largest error {}", step, file.getName(), raster.getMaxError() + maxError);
+		return true;
+	}
+
+	/**
+	 * Sets every cell of a time step back to NODATA, as if it had never been written.
+	 * 
+	 * @param step
+	 *           The time step, counting from 0.
+	 * @throws IOException
+	 *            The file couldn't be read or written.
+	 */
+	public void clearStep(int step) throws IOException {
+		checkStep(step);
+		setStepPresent(step, false);
+		fillStep(step, null);
+	}
+
+	/**
+	 * Reads every time step of one cell in a single read.
+	 * 
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell.
+	 * @param values
+	 *           Array of at least getStepCount() values the series is copied into; NODATA for steps with no data.
+	 * @throws IOException
+	 *            The file couldn't be read.
+	 */
+	public void readSeries(int row, int column, double[] values) throws IOException {
+		if (row < 0 || row >= header.getNrows() || column < 0 || column >= header.getNcols())
+			throw new IndexOutOfBoundsException("Cell " + row + ", " + column + " is outside the cube.");
+
+		int index = (row / CHUNK_SIZE) * chunkColumns + column / CHUNK_SIZE;
+		int cell = (row % CHUNK_SIZE) * CHUNK_SIZE + column % CHUNK_SIZE;
+
+		ByteBuffer series = ByteBuffer.allocate(steps * Float.BYTES);
+		read(series, getChunkPosition(index) + (long) cell * steps * Float.BYTES);
+		series.flip();
+
+		for (int step = 0; step < steps; step++) {
+			float f = series.getFloat();
+			values[step] = f == floatNoData ? header.getNODATA() : f;
+		}
+	}
+
+	/**
+	 * Reads every time step of one cell.
+	 * 
+	 * @param row
+	 *           The row of the cell, 0 being the top.
+	 * @param column
+	 *           The column of the cell.
+	 * @return The value of the cell at each step; NODATA for steps with no data.
+	 * @throws IOException
+	 *            The file couldn't be read.
+	 */
+	public double[] readSeries(int row, int column) throws IOException {
+		double[] values = new double[steps];
+		readSeries(row, column, values);
+		return values;
+	}
+
+	/**
+	 * Closes the cube file.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Puts the values of a step into every chunk.
+	 * 
+	 * @param step
+	 *           The time step.
+	 * @param raster
+	 *           The grid for the step, or null to fill the step with NODATA.
+	 * @return The largest difference between a value of the raster and the float it is stored as.
+	 */
+	private double fillStep(int step, GridRaster raster) throws IOException {
+		double maxError = 0;
+		int ncols = header.getNcols();
+		int nrows = header.getNrows();
+		ByteBuffer chunk = ByteBuffer.allocate(chunkBytes);
+
+		for (int index = 0; index < getChunkCount(); index++) {
+			int firstRow = (index / chunkColumns) * CHUNK_SIZE;
+			int firstColumn = (index % chunkColumns) * CHUNK_SIZE;
+			int rows = Math.min(CHUNK_SIZE, nrows - firstRow);
+			int columns = Math.min(CHUNK_SIZE, ncols - firstColumn);
+			long position = getChunkPosition(index);
+
+			chunk.clear();
+			read(chunk, position);
+
+			for (int row = 0; row < rows; row++)
+				for (int column = 0; column < columns; column++) {
+					float value = floatNoData;
+					if (raster != null && !raster.isNoData(firstRow + row, firstColumn + column)) {
+						double cell = raster.get(firstRow + row, firstColumn + column);
+						value = (float) cell;
+						maxError = GridRaster.largerError(maxError, cell, value);
+					}
+					chunk.putFloat(((row * CHUNK_SIZE + column) * steps + step) * Float.BYTES, value);
+				}
+
+			chunk.clear();
+			write(chunk, position);
+		}
+		return maxError;
+	}
+
+	/**
+	 * Records in the header whether a step has been written. This is done after the values are written, so a step interrupted part way through isn't counted as written.
+	 */
+	private void setStepPresent(int step, boolean present) throws IOException {
+		if (present)
+			stepsPresent |= 1 << step;
+		else
+			stepsPresent &= ~(1 << step);
+
+		ByteBuffer bits = ByteBuffer.allocate(Integer.BYTES);
+		bits.putInt(stepsPresent);
+		bits.flip();
+		write(bits, STEPS_PRESENT_POSITION);
+	}
+
+	private void checkStep(int step) {
+		if (step < 0 || step >= steps)
+			throw new IndexOutOfBoundsException("Step " + step + " is outside the cube, which has " + steps + " steps.");
+	}
+
+	private int getChunkCount() {
+		return chunkColumns * ((header.getNrows() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+	}
+
+	private long getChunkPosition(int index) {
+		return HEADER_SIZE + (long) index * chunkBytes;
+	}
+
+	private void read(ByteBuffer buffer, long position) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, position + buffer.position() - start) < 0)
+				throw new IOException(file.getName() + " ended early; it may have been cut short.");
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position() - start);
+	}
+}
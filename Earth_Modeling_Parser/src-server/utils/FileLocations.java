@@ -39,6 +39,7 @@ public class FileLocations {
 	public static final String ASCII_INPUT_DIRECTORY_LOCATION = CURRENT_WORKING_DIRECTORY_LOCATION + "Original_ASCII_files\\";
 	public static final String CSV_OUTPUT_DIRECTORY_LOCATION = CURRENT_WORKING_DIRECTORY_LOCATION + "Parsed_CSV_files\\";
 	public static final String TEMP_WORKING_DIRECTORY_LOCATION = CURRENT_WORKING_DIRECTORY_LOCATION + "Temp_Working_Files\\";
+	public static final String TIME_SERIES_CUBES_DIRECTORY_LOCATION = CURRENT_WORKING_DIRECTORY_LOCATION + "Time_Series_Cubes\\";
 	public static final String LOGS_DIRECTORY_LOCATION = System.getProperty("user.dir");
 
 	// Files that are used by EarthModellingDaemon.
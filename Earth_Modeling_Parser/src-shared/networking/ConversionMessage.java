@@ -0,0 +1,140 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         This class defines a message about a map that is being converted: a request from the client to cancel its conversion, or an update from the server on how far the conversion has got.
+ */
+
+package networking;
+
+import java.io.Serializable;
+
+import utils.MapProperties;
+
+public class ConversionMessage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Type {
+		CANCEL_REQUEST, PROGRESS_UPDATE;
+	};
+
+	private Type type;
+	private MapProperties properties;
+	private int percentDone;
+
+	/**
+	 * Constructs a cancel request from the client to the server.
+	 * 
+	 * @param type
+	 *           Must be of Type.CANCEL_REQUEST.
+	 * @param properties
+	 *           The MapProperties of the map whose conversion should be cancelled.
+	 * @throws IllegalAccessException
+	 *            If any of the passed arguments are null.
+	 */
+	public ConversionMessage(Type type, MapProperties properties) throws IllegalAccessException {
+		checkArg(type);
+		checkArg(properties);
+
+		this.type = type;
+		this.properties = properties;
+
+		if (!isCancelRequest())
+			throw new IllegalArgumentException("This constructor can only define a client-side request of Type.CANCEL_REQUEST.");
+	}
+
+	/**
+	 * Constructs a progress update from the server to the client.
+	 * 
+	 * @param type
+	 *           Must be of Type.PROGRESS_UPDATE.
+	 * @param properties
+	 *           The MapProperties of the map being converted.
+	 * @param percentDone
+	 *           How much of the ASCII file has been converted, from 0 to 100.
+	 * @throws IllegalAccessException
+	 *            If any of the passed arguments are null.
+	 */
+	public ConversionMessage(Type type, MapProperties properties, int percentDone) throws IllegalAccessException {
+		checkArg(type);
+		checkArg(properties);
+		if (percentDone < 0 || percentDone > 100)
+			throw new IllegalArgumentException("percentDone must be from 0 to 100.");
+
+		this.type = type;
+		this.properties = properties;
+		this.percentDone = percentDone;
+
+		if (!isProgressUpdate())
+			throw new IllegalArgumentException("This constructor can only define a server-side update of Type.PROGRESS_UPDATE.");
+	}
+
+	/**
+	 * Helper method to make sure passed argument isn't null.
+	 * 
+	 * @param arg
+	 *           The Object that you wish to check for a null value.
+	 * @throws IllegalAccessException
+	 *            If the passed argument was null.
+	 */
+	private void checkArg(Object arg) throws IllegalAccessException {
+		if (arg == null)
+			throw new IllegalAccessException("You cannot pass null arguments.");
+	}
+
+	/**
+	 * @return The utils.MapProperties of the map this message is about.
+	 */
+	public MapProperties getMapProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return How much of the ASCII file has been converted, from 0 to 100. Will return 0 if type is not Type.PROGRESS_UPDATE.
+	 */
+	public int getPercentDone() {
+		return percentDone;
+	}
+
+	/**
+	 * @return true if this message represents a client-side request to cancel a conversion; false otherwise.
+	 */
+	public boolean isCancelRequest() {
+		if (type != Type.CANCEL_REQUEST)
+			return false;
+
+		return true;
+	}
+
+	/**
+	 * @return true if this message represents a progress update from the server; false otherwise.
+	 */
+	public boolean isProgressUpdate() {
+		if (type != Type.PROGRESS_UPDATE)
+			return false;
+
+		return true;
+	}
+
+	/**
+	 * Accessor for this message's type.
+	 * 
+	 * @return A Type.messageType
+	 */
+	public Type getType() {
+		return type;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for AsciiGridTokenizer: the fast double parser against Double.parseDouble(), and tokens that are split across reads of the channel.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AsciiGridTokenizerTest {
+
+	@Test
+	public void parsesPlainDecimalsExactly() {
+		String[] values = { "0", "-0", "0.0", "-0.0", "1", "-1", "+7", "42.5", "-9999", "0.1", "0.000123", "123456789012345", "1.23456789012345", "-0.99999999999999", "3.", ".5", "-.25", "1e3", "1.5E-7", "2e+22", "1e22" };
+		for (String value : values)
+			assertParsed(value);
+	}
+
+	@Test
+	public void parsesRandomDecimalsExactly() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			long digits = random.nextLong() % 1000000000000000L;
+			int scale = random.nextInt(16);
+			String value = new BigDecimal(BigInteger.valueOf(digits), scale).toPlainString();
+			assertParsed(value);
+		}
+	}
+
+	@Test
+	public void fallsBackForAnythingElse() {
+		String[] values = { "NaN", "-Infinity", "1234567890123456789012", "0.12345678901234567890", "1e300", "4.9e-324", "1e-30" };
+		for (String value : values)
+			assertParsed(value);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void rejectsGarbage() {
+		parse("12abc");
+	}
+
+	@Test
+	public void readsTokensAcrossSmallReads() throws IOException {
+		String text = "ncols 3\r\nnrows\t2\n  -9999 1.5 2.25\n3 -9999 -9999\n";
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII))), 8)) {
+			assertEquals("ncols", tokenizer.nextWord());
+			assertEquals(3, tokenizer.nextDouble(), 0);
+			assertEquals("nrows", tokenizer.nextWord());
+			assertEquals(1, tokenizer.getLineNumber());
+			assertEquals(2, tokenizer.nextDouble(), 0);
+
+			assertEquals(-9999, tokenizer.nextDouble(), 0);
+			assertEquals(1.5, tokenizer.nextDouble(), 0);
+			assertEquals(2.25, tokenizer.nextDouble(), 0);
+			assertEquals(3, tokenizer.nextDouble(), 0);
+			assertTrue(tokenizer.skipToken());
+			assertTrue(tokenizer.skipToken());
+			assertFalse(tokenizer.skipToken());
+
+			assertFalse(tokenizer.hasNext());
+			assertNull(tokenizer.nextWord());
+			assertEquals(text.length(), tokenizer.getPosition());
+			assertEquals(4, tokenizer.getLineNumber());
+		}
+	}
+
+	@Test
+	public void skipsRunsOfTheLastToken() throws IOException {
+		String text = "-9999 1.5 -9999\n-9999 -9999.0 -9999 -9999";
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII))), 8)) {
+			assertEquals(-9999, tokenizer.nextDouble(), 0);
+			byte[] noData = tokenizer.lastToken();
+			assertArrayEquals("-9999".getBytes(StandardCharsets.US_ASCII), noData);
+
+			assertEquals(0, tokenizer.skipMatching(noData, 10));
+			assertEquals(1.5, tokenizer.nextDouble(), 0);
+			assertEquals(2, tokenizer.skipMatching(noData, 10));
+			assertEquals(-9999, tokenizer.nextDouble(), 0);
+			assertEquals(1, tokenizer.skipMatching(noData, 1));
+			assertEquals(1, tokenizer.skipMatching(noData, 10));
+			assertFalse(tokenizer.hasNext());
+		}
+	}
+
+	@Test
+	public void skipsTokens() throws IOException {
+		byte[] text = "1 2 3 4\n5 6\n".getBytes(StandardCharsets.US_ASCII);
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(Channels.newChannel(new ByteArrayInputStream(text)), 8)) {
+			assertEquals(5, tokenizer.skipTokens(5));
+			assertEquals(1, tokenizer.getLineNumber());
+			assertEquals(6, tokenizer.nextDouble(), 0);
+			assertEquals(0, tokenizer.skipTokens(5));
+			assertEquals(text.length, tokenizer.getPosition());
+		}
+	}
+
+	@Test
+	public void skipsTokensFromAnOffset() throws IOException {
+		byte[] text = "header\n1 2 3 4\n5 6\n".getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer buffer = ByteBuffer.wrap(text);
+		buffer.position(7);
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(buffer)) {
+			tokenizer.setPosition(7);
+			tokenizer.setLineNumber(1);
+
+			assertEquals(5, tokenizer.skipTokens(5));
+			assertEquals(2, tokenizer.getLineNumber());
+			assertEquals(6, tokenizer.nextDouble(), 0);
+			assertEquals(0, tokenizer.skipTokens(5));
+			assertEquals(text.length, tokenizer.getPosition());
+		}
+		assertEquals(7, buffer.position());
+	}
+
+	@Test
+	public void readsFromABufferWithoutAnArray() throws IOException {
+		byte[] text = "1.25 -2.5\n-9999".getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(text.length);
+		buffer.put(text).flip();
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(buffer)) {
+			assertEquals(1.25, tokenizer.nextDouble(), 0);
+			assertEquals(-2.5, tokenizer.nextDouble(), 0);
+			assertEquals(-9999, tokenizer.nextDouble(), 0);
+			assertFalse(tokenizer.hasNext());
+		}
+	}
+
+	@Test
+	public void rejectsATokenLongerThanTheBuffer() throws IOException {
+		byte[] text = "1 123456789012 2".getBytes(StandardCharsets.US_ASCII);
+		try (AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(Channels.newChannel(new ByteArrayInputStream(text)), 8)) {
+			assertEquals(1, tokenizer.nextDouble(), 0);
+			tokenizer.nextDouble();
+			fail("A token longer than the buffer should not be read");
+		} catch (IOException expected) {
+			assertTrue(expected.getMessage().contains("longer than the 8 byte buffer"));
+		}
+	}
+
+	/**
+	 * Checks that the tokenizer parses a value to exactly the same double as the JDK.
+	 */
+	private static void assertParsed(String value) {
+		double expected = Double.parseDouble(value);
+		assertEquals(value, Double.doubleToLongBits(expected), Double.doubleToLongBits(parse(value)));
+	}
+
+	private static double parse(String value) {
+		byte[] bytes = (" " + value + " ").getBytes(StandardCharsets.US_ASCII);
+		return AsciiGridTokenizer.parseDouble(bytes, 1, bytes.length - 1);
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for AsciiGridValidator: well formed grids pass whether they are plain text or gzip compressed, in a file or in memory, and malformed or truncated ones are rejected with the line at fault.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsciiGridValidatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final AsciiGridValidator validator = new AsciiGridValidator();
+
+	@Test
+	public void acceptsAWellFormedGrid() throws IOException {
+		byte[] grid = bytes(ParallelBodyParserTest.grid(new Random(1), 37, 23, 0.3, false, "\n"));
+
+		assertValid(grid);
+		assertEquals(37, validator.getHeader().getNcols());
+		assertEquals(23, validator.getHeader().getNrows());
+		assertEquals(-9999, validator.getHeader().getNODATA(), 0);
+	}
+
+	@Test
+	public void acceptsRowsWrappedAcrossLines() throws IOException {
+		assertValid(bytes(ParallelBodyParserTest.grid(new Random(2), 41, 17, 0.3, true, "\r\n")));
+	}
+
+	@Test
+	public void acceptsACompressedGrid() throws IOException {
+		assertValid(gzip(bytes(ParallelBodyParserTest.grid(new Random(3), 29, 31, 0.3, false, "\n"))));
+	}
+
+	@Test
+	public void reportsTheFirstLineWithTheWrongNumberOfValues() throws IOException {
+		// Rows start on line 7; drop a value from the fourth row and add one to the sixth
+		String[] lines = ParallelBodyParserTest.grid(new Random(4), 20, 10, 0.3, false, "\n").split("\n");
+		lines[9] = lines[9].substring(0, lines[9].lastIndexOf(' '));
+		lines[11] = lines[11] + " 1";
+		byte[] grid = bytes(String.join("\n", lines) + "\n");
+
+		assertInvalid(grid, "Line 10 has 19 values, but ncols is 20.");
+		assertInvalid(gzip(grid), "Line 10 has 19 values, but ncols is 20.");
+	}
+
+	@Test
+	public void reportsAShortLastLine() throws IOException {
+		String grid = ParallelBodyParserTest.grid(new Random(5), 20, 10, 0.3, false, "\n");
+		assertInvalid(bytes(grid.substring(0, grid.lastIndexOf(' ')) + "\n"), "Line 16 has 19 values, but ncols is 20.");
+	}
+
+	@Test
+	public void countsTheValuesOfWrappedRows() throws IOException {
+		String grid = ParallelBodyParserTest.grid(new Random(6), 20, 10, 0.3, true, "\n");
+		// The first line doesn't hold a whole row, so only the total is checked
+		grid = grid.replaceFirst("\n(-9999|[-0-9.e+]+) ", "\n$1\n");
+
+		assertValid(bytes(grid));
+		assertInvalid(bytes(grid.substring(0, grid.lastIndexOf(' ')) + "\n"), "The table has 199 values, but ncols * nrows is 200.");
+		assertInvalid(bytes(grid + "1 2\n"), "The table has more than ncols * nrows (200) values; the extra values start on line " + (grid.split("\n").length + 1) + ".");
+	}
+
+	@Test
+	public void rejectsATruncatedFile() throws IOException {
+		String grid = ParallelBodyParserTest.grid(new Random(7), 20, 10, 0.3, false, "\n");
+		// Cut off in the middle of the fifth row
+		int cut = grid.indexOf('\n', grid.indexOf("NODATA")) + 1;
+		for (int line = 0; line < 4; line++)
+			cut = grid.indexOf('\n', cut) + 1;
+		cut = grid.indexOf(' ', cut + 10);
+
+		assertInvalid(bytes(grid.substring(0, cut)), "Line 11 has " + grid.substring(grid.lastIndexOf('\n', cut) + 1, cut).split(" ").length + " values, but ncols is 20.");
+	}
+
+	@Test
+	public void rejectsATruncatedCompressedFile() throws IOException {
+		byte[] compressed = gzip(bytes(ParallelBodyParserTest.grid(new Random(8), 50, 40, 0.1, false, "\n")));
+		byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+		File file = folder.newFile("truncated.asc.gz");
+		Files.write(file.toPath(), truncated);
+		assertRejected(() -> validator.validate(file));
+		assertRejected(() -> validator.validate(ByteBuffer.wrap(truncated)));
+	}
+
+	@Test
+	public void rejectsABadHeader() throws IOException {
+		String grid = ParallelBodyParserTest.grid(new Random(9), 5, 5, 0.3, false, "\n");
+		String error = "The header is missing values, has an invalid value, or is longer than 30 lines.";
+
+		assertInvalid(bytes(grid.replace("nrows 5\n", "")), error);
+		assertInvalid(bytes(grid.replace("cellsize 0.5", "cellsize abc")), error);
+		StringBuilder comments = new StringBuilder();
+		for (int i = 0; i < 30; i++)
+			comments.append("note ").append(i).append('\n');
+		assertInvalid(bytes(comments + grid), error);
+		assertNull(validator.getHeader());
+	}
+
+	@Test
+	public void rejectsAnEmptyFile() throws IOException {
+		assertInvalid(new byte[0], "The header is missing values, has an invalid value, or is longer than 30 lines.");
+	}
+
+	@Test
+	public void forgetsTheLastError() throws IOException {
+		assertInvalid(new byte[0], "The header is missing values, has an invalid value, or is longer than 30 lines.");
+		assertValid(bytes(ParallelBodyParserTest.grid(new Random(10), 5, 5, 0.3, false, "\n")));
+	}
+
+	/**
+	 * Validates the grid from a file and from memory, and checks that it passes both times.
+	 */
+	private void assertValid(byte[] grid) throws IOException {
+		assertTrue(validator.validate(ByteBuffer.wrap(grid)));
+		assertNull(validator.getError());
+		assertTrue(validator.validate(write(grid)));
+		assertNull(validator.getError());
+	}
+
+	/**
+	 * Validates the grid from a file and from memory, and checks that it fails both times with the given error.
+	 */
+	private void assertInvalid(byte[] grid, String error) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(grid);
+		assertFalse(validator.validate(buffer));
+		assertEquals(error, validator.getError());
+		assertEquals(0, buffer.position());
+
+		assertFalse(validator.validate(write(grid)));
+		assertEquals(error, validator.getError());
+	}
+
+	/**
+	 * A compressed grid that ends early may either be rejected or fail to be read, but must never pass.
+	 */
+	private void assertRejected(Validation validation) {
+		try {
+			assertFalse(validation.validate());
+		} catch (IOException e) {
+			// Couldn't be decompressed
+		}
+	}
+
+	private interface Validation {
+		boolean validate() throws IOException;
+	}
+
+	private File write(byte[] grid) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), grid);
+		return file;
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(bytes);
+		}
+		return out.toByteArray();
+	}
+}
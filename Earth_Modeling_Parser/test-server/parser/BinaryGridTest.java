@@ -0,0 +1,207 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for BinaryGridWriter and BinaryGrid: a grid written cell by cell (and in NODATA runs) reads back the same, at both value sizes.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BinaryGridTest {
+
+	private static final double NODATA = -9999;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Rows that aren't a whole number of bitmap words, so rows start part way into a long.
+	 */
+	private final GridHeader header = new GridHeader(77, 45, -100.25, 30.5, 0.125, NODATA);
+
+	@Test
+	public void roundTripsDoubles() throws IOException {
+		double[] cells = randomCells(new Random(1));
+		File file = write(cells, GridPrecision.DOUBLE, 0);
+		BinaryGrid grid = BinaryGrid.open(file);
+
+		assertNotNull(grid);
+		assertEquals(GridPrecision.DOUBLE, grid.getPrecision());
+		assertCells(cells, grid, false);
+	}
+
+	@Test
+	public void roundTripsFloatsWithinTheirError() throws IOException {
+		double[] cells = randomCells(new Random(2));
+		File file = write(cells, GridPrecision.FLOAT, maxFloatError(cells));
+		BinaryGrid grid = BinaryGrid.open(file);
+
+		assertNotNull(grid);
+		assertEquals(GridPrecision.FLOAT, grid.getPrecision());
+		assertCells(cells, grid, true);
+	}
+
+	@Test
+	public void roundTripsAnEmptyGrid() throws IOException {
+		double[] cells = new double[(int) header.getCellCount()];
+		Arrays.fill(cells, NODATA);
+		BinaryGrid grid = BinaryGrid.open(write(cells, GridPrecision.FLOAT, 0));
+
+		assertNotNull(grid);
+		assertEquals(0, grid.getValidCount());
+		assertTrue(grid.isNoData(44, 76));
+		assertEquals(NODATA, grid.get(44, 76), 0);
+	}
+
+	@Test
+	public void abortLeavesNothingBehind() throws IOException {
+		File file = new File(folder.getRoot(), "aborted" + BinaryGridWriter.EXTENSION);
+		BinaryGridWriter writer = new BinaryGridWriter(header, GridPrecision.FLOAT, file);
+		writer.handleCell(0, 0, 1);
+		writer.abort();
+
+		assertFalse(file.exists());
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void refusesFilesThatDontMatchTheirHeader() throws IOException {
+		File file = write(randomCells(new Random(3)), GridPrecision.FLOAT, -1);
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			out.setLength(out.length() - Float.BYTES);
+		}
+		assertNull(BinaryGrid.open(file));
+
+		File text = folder.newFile("text" + BinaryGridWriter.EXTENSION);
+		try (RandomAccessFile out = new RandomAccessFile(text, "rw")) {
+			out.write(new byte[BinaryGridWriter.HEADER_SIZE]);
+		}
+		assertNull(BinaryGrid.open(text));
+	}
+
+	/**
+	 * Writes the cells in table order, passing runs of NODATA along as runs.
+	 * 
+	 * @param maxError
+	 *           The error the writer should report, or -1 not to check it.
+	 */
+	private File write(double[] cells, GridPrecision precision, double maxError) throws IOException {
+		File file = new File(folder.getRoot(), precision + BinaryGridWriter.EXTENSION);
+		BinaryGridWriter writer = new BinaryGridWriter(header, precision, file);
+		int ncols = header.getNcols();
+
+		for (int row = 0; row < header.getNrows(); row++) {
+			int column = 0;
+			while (column < ncols) {
+				int run = 0;
+				while (column + run < ncols && cells[row * ncols + column + run] == NODATA)
+					run++;
+				if (run > 1) {
+					writer.handleNoData(row, column, run, NODATA);
+					column += run;
+				} else {
+					writer.handleCell(row, column, cells[row * ncols + column]);
+					column++;
+				}
+			}
+		}
+		writer.finish();
+
+		assertTrue(file.exists());
+		assertFalse(new File(file.getPath() + ".part").exists());
+		if (maxError >= 0)
+			assertEquals(maxError, writer.getMaxError(), 0);
+		return file;
+	}
+
+	private void assertCells(double[] cells, BinaryGrid grid, boolean floats) throws IOException {
+		assertTrue(grid.getHeader().sameGeometry(header));
+		assertEquals(NODATA, grid.getHeader().getNODATA(), 0);
+
+		GridStatistics statistics = new GridStatistics();
+		int ncols = header.getNcols();
+		for (int row = 0; row < header.getNrows(); row++)
+			for (int column = 0; column < ncols; column++) {
+				double cell = cells[row * ncols + column];
+				if (cell == NODATA) {
+					assertTrue(grid.isNoData(row, column));
+					assertEquals(NODATA, grid.get(row, column), 0);
+				} else {
+					statistics.add(cell);
+					assertFalse(grid.isNoData(row, column));
+					assertEquals(floats ? (float) cell : cell, grid.get(row, column), 0);
+				}
+			}
+
+		assertEquals(statistics.getCount(), grid.getValidCount());
+		assertEquals(statistics.getMin(), grid.getMin(), 0);
+		assertEquals(statistics.getMax(), grid.getMax(), 0);
+		assertEquals(statistics.getMean(), grid.getMean(), 0);
+		assertEquals(statistics.getStandardDeviation(), grid.getStandardDeviation(), 0);
+
+		int[] next = new int[1];
+		grid.forEachValidCell(new GridCellHandler() {
+			@Override
+			public void handleCell(int row, int column, double value) {
+				while (cells[next[0]] == NODATA)
+					next[0]++;
+				assertEquals(next[0], row * ncols + column);
+				assertEquals(floats ? (float) cells[next[0]] : cells[next[0]], value, 0);
+				next[0]++;
+			}
+		});
+		for (; next[0] < cells.length; next[0]++)
+			assertEquals(NODATA, cells[next[0]], 0);
+	}
+
+	/**
+	 * @return Random values with single NODATA cells, runs of NODATA, and a whole row of NODATA.
+	 */
+	private double[] randomCells(Random random) {
+		int ncols = header.getNcols();
+		double[] cells = new double[(int) header.getCellCount()];
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = random.nextInt(4) == 0 ? NODATA : random.nextGaussian() * 100;
+		for (int i = 5 * ncols + 10; i < 9 * ncols + 3; i++)
+			cells[i] = NODATA;
+		for (int i = 20 * ncols; i < 21 * ncols; i++)
+			cells[i] = NODATA;
+		return cells;
+	}
+
+	private static double maxFloatError(double[] cells) {
+		double maxError = 0;
+		for (double cell : cells)
+			if (cell != NODATA)
+				maxError = Math.max(maxError, Math.abs(cell - (float) cell));
+		return maxError;
+	}
+}
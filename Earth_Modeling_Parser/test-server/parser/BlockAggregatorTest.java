@@ -0,0 +1,200 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for BlockAggregator: every block, including the partial ones along the bottom and right edges, is combined the same as by a plain reference, blocks without data become NODATA, and the coarse header keeps the top left corner in place.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockAggregatorTest {
+
+	private static final double NODATA = -9999;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void combinesEveryBlockLikeTheReference() throws IOException {
+		GridHeader header = new GridHeader(23, 17, -10.5, 20.25, 0.5, NODATA);
+		double[][] cells = cells(new Random(1), header, 0.3);
+
+		// Factors that divide neither side, one that is larger than the grid, and 1
+		for (int factor : new int[] { 1, 2, 3, 7, 30 })
+			for (BlockAggregator.Method method : BlockAggregator.Method.values())
+				assertCombined(header, cells, factor, method);
+	}
+
+	@Test
+	public void combinesEvenlyDividedGrids() throws IOException {
+		GridHeader header = new GridHeader(24, 16, 0, 0, 1, NODATA);
+		double[][] cells = cells(new Random(2), header, 0.1);
+		for (BlockAggregator.Method method : BlockAggregator.Method.values()) {
+			assertCombined(header, cells, 4, method);
+			assertCombined(header, cells, 8, method);
+		}
+	}
+
+	@Test
+	public void makesBlocksWithoutDataNoData() throws IOException {
+		GridHeader header = new GridHeader(10, 7, 0, 0, 1, NODATA);
+		double[][] cells = cells(new Random(3), header, 0);
+		// Empty the top left block and the partial block in the bottom right corner
+		for (int row = 0; row < 3; row++)
+			for (int column = 0; column < 3; column++)
+				cells[row][column] = NODATA;
+		for (int row = 6; row < 7; row++)
+			for (int column = 9; column < 10; column++)
+				cells[row][column] = NODATA;
+
+		GridRaster coarse = aggregate(header, cells, 3, BlockAggregator.Method.SUM);
+		assertEquals(NODATA, coarse.get(0, 0), 0);
+		assertEquals(NODATA, coarse.get(2, 3), 0);
+		assertEquals(cells[0][3] + cells[0][4] + cells[0][5] + cells[1][3] + cells[1][4] + cells[1][5] + cells[2][3] + cells[2][4] + cells[2][5], coarse.get(0, 1), 1e-9);
+
+		header = new GridHeader(5, 5, 0, 0, 1, NODATA);
+		coarse = aggregate(header, cells(new Random(4), header, 1), 2, BlockAggregator.Method.MEAN);
+		for (int i = 0; i < 9; i++)
+			assertEquals(NODATA, coarse.get(i), 0);
+	}
+
+	@Test
+	public void keepsTheTopLeftCorner() {
+		GridHeader header = new GridHeader(23, 17, -10.5, 20.25, 0.5, NODATA);
+		GridHeader coarse = header.downsample(3);
+
+		assertEquals(8, coarse.getNcols());
+		assertEquals(6, coarse.getNrows());
+		assertEquals(1.5, coarse.getCellSize(), 0);
+		assertEquals(-10.5, coarse.getXllCorner(), 0);
+		// The partial blocks along the bottom reach past the grid, so the bottom edge moves down
+		assertEquals(20.25 + 17 * 0.5, coarse.getYllCorner() + 6 * 1.5, 1e-12);
+		assertEquals(NODATA, coarse.getNODATA(), 0);
+
+		assertEquals(header.getNcols(), header.downsample(1).getNcols());
+		assertEquals(1, header.downsample(100).getNcols());
+		assertEquals(1, header.downsample(100).getNrows());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAFactorBelowOne() {
+		new GridHeader(5, 5, 0, 0, 1, NODATA).downsample(0);
+	}
+
+	@Test
+	public void downsamplesWhileParsing() throws IOException {
+		File grid = new File(folder.getRoot(), "grid.asc");
+		Files.write(grid.toPath(), ParallelBodyParserTest.grid(new Random(5), 37, 23, 0.3, true, "\n").getBytes(StandardCharsets.US_ASCII));
+
+		GridRaster full = new AsciiToCsv().parseToRaster(grid);
+		assertNotNull(full);
+		GridHeader header = full.getHeader();
+		double[][] cells = new double[header.getNrows()][header.getNcols()];
+		for (int row = 0; row < header.getNrows(); row++)
+			for (int column = 0; column < header.getNcols(); column++)
+				cells[row][column] = full.get(row, column);
+
+		for (BlockAggregator.Method method : BlockAggregator.Method.values()) {
+			AsciiToCsv parser = new AsciiToCsv();
+			parser.setOutputOptions(parser.getOutputOptions().withDownsample(4, method));
+			GridRaster coarse = parser.parseToRaster(grid);
+			assertNotNull(coarse);
+			assertRaster(reference(header, cells, 4, method), coarse, method + " parsed");
+		}
+	}
+
+	private static void assertCombined(GridHeader header, double[][] cells, int factor, BlockAggregator.Method method) throws IOException {
+		assertRaster(reference(header, cells, factor, method), aggregate(header, cells, factor, method), method + " x" + factor);
+	}
+
+	private static void assertRaster(double[][] expected, GridRaster actual, String message) {
+		assertEquals(message, expected.length, actual.getHeader().getNrows());
+		assertEquals(message, expected[0].length, actual.getHeader().getNcols());
+		for (int row = 0; row < expected.length; row++)
+			for (int column = 0; column < expected[row].length; column++)
+				assertEquals(message + " at " + row + "," + column, expected[row][column], actual.get(row, column), 1e-9);
+	}
+
+	/**
+	 * Sends every cell through an aggregator in table order, and collects the combined cells.
+	 */
+	private static GridRaster aggregate(GridHeader header, double[][] cells, int factor, BlockAggregator.Method method) throws IOException {
+		GridRaster coarse = new GridRaster(header.downsample(factor));
+		BlockAggregator aggregator = new BlockAggregator(header, factor, method, coarse);
+		assertEquals(coarse.getHeader().getNcols(), aggregator.getCoarseHeader().getNcols());
+		for (int row = 0; row < header.getNrows(); row++)
+			for (int column = 0; column < header.getNcols(); column++)
+				aggregator.handleCell(row, column, cells[row][column]);
+		aggregator.finish();
+		return coarse;
+	}
+
+	/**
+	 * Combines each block by looking at all of its cells at once.
+	 */
+	private static double[][] reference(GridHeader header, double[][] cells, int factor, BlockAggregator.Method method) {
+		int nrows = (header.getNrows() + factor - 1) / factor;
+		int ncols = (header.getNcols() + factor - 1) / factor;
+		double[][] coarse = new double[nrows][ncols];
+		for (int blockRow = 0; blockRow < nrows; blockRow++)
+			for (int blockColumn = 0; blockColumn < ncols; blockColumn++) {
+				double total = 0;
+				double max = Double.NEGATIVE_INFINITY;
+				int count = 0;
+				for (int row = blockRow * factor; row < Math.min(header.getNrows(), (blockRow + 1) * factor); row++)
+					for (int column = blockColumn * factor; column < Math.min(header.getNcols(), (blockColumn + 1) * factor); column++)
+						if (cells[row][column] != NODATA) {
+							total += cells[row][column];
+							max = Math.max(max, cells[row][column]);
+							count++;
+						}
+
+				if (count == 0)
+					coarse[blockRow][blockColumn] = NODATA;
+				else if (method == BlockAggregator.Method.MEAN)
+					coarse[blockRow][blockColumn] = total / count;
+				else if (method == BlockAggregator.Method.SUM)
+					coarse[blockRow][blockColumn] = total;
+				else
+					coarse[blockRow][blockColumn] = max;
+			}
+		return coarse;
+	}
+
+	/**
+	 * @param noData
+	 *           The share of cells that are NODATA.
+	 */
+	private static double[][] cells(Random random, GridHeader header, double noData) {
+		double[][] cells = new double[header.getNrows()][header.getNcols()];
+		for (int row = 0; row < header.getNrows(); row++)
+			for (int column = 0; column < header.getNcols(); column++)
+				cells[row][column] = random.nextDouble() < noData ? NODATA : random.nextGaussian() * 100;
+		return cells;
+	}
+}
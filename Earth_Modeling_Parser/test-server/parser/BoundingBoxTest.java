@@ -0,0 +1,252 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for BoundingBox and clipped parses: the window of rows and columns holds exactly the cells whose CSV point is inside the box, edges included, and a clipped parse writes exactly those cells of the full parse.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BoundingBoxTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void windowHoldsTheCellsInsideTheBox() {
+		Random random = new Random(1);
+		double[] cellSizes = { 0.5, 0.25, 0.1, 1.0 / 3 };
+		for (int test = 0; test < 2000; test++) {
+			GridHeader header = new GridHeader(1 + random.nextInt(30), 1 + random.nextInt(30), random.nextInt(100) - 50.3, random.nextInt(60) - 30.7, cellSizes[random.nextInt(cellSizes.length)], -9999);
+			BoundingBox box = randomBox(random, header);
+
+			assertWindow(header, box);
+		}
+	}
+
+	@Test
+	public void keepsCellsOnTheEdges() {
+		// 0.1 can't be stored exactly, so the edges are only where the cells are to within rounding
+		GridHeader header = new GridHeader(20, 15, 10, 40, 0.1, -9999);
+		BoundingBox box = new BoundingBox(header.getLatitude(9), header.getLongitude(3), header.getLatitude(2), header.getLongitude(12));
+
+		assertEquals(2, box.firstRow(header));
+		assertEquals(9, box.lastRow(header));
+		assertEquals(3, box.firstColumn(header));
+		assertEquals(12, box.lastColumn(header));
+
+		box = new BoundingBox(40 + 5 * 0.1, 10 + 4 * 0.1, 40 + 5 * 0.1, 10 + 4 * 0.1);
+		assertEquals(header.getNrows() - 1 - 5, box.firstRow(header));
+		assertEquals(box.firstRow(header), box.lastRow(header));
+		assertEquals(4, box.firstColumn(header));
+		assertEquals(4, box.lastColumn(header));
+	}
+
+	@Test
+	public void boxOutsideTheGridIsEmpty() {
+		GridHeader header = new GridHeader(10, 10, 0, 0, 1, -9999);
+		BoundingBox[] boxes = { new BoundingBox(20, 0, 30, 9), new BoundingBox(-30, 0, -20, 9), new BoundingBox(0, 10.5, 9, 20), new BoundingBox(0, -20, 9, -0.5), new BoundingBox(3.2, 3.2, 3.8, 3.8) };
+		for (BoundingBox box : boxes) {
+			assertTrue(box.toString(), box.firstRow(header) > box.lastRow(header) || box.firstColumn(header) > box.lastColumn(header));
+			assertEquals(box.toString(), header.getCellCount(), box.nextCellInside(header, 0));
+		}
+	}
+
+	@Test
+	public void boxAroundTheGridHoldsEveryCell() {
+		GridHeader header = new GridHeader(10, 7, 0, 0, 1, -9999);
+		BoundingBox box = new BoundingBox(-90, -180, 90, 180);
+
+		assertEquals(0, box.firstRow(header));
+		assertEquals(6, box.lastRow(header));
+		assertEquals(0, box.firstColumn(header));
+		assertEquals(9, box.lastColumn(header));
+		for (long index = 0; index < header.getCellCount(); index++)
+			assertEquals(index, box.nextCellInside(header, index));
+	}
+
+	@Test
+	public void findsTheNextCellInside() {
+		Random random = new Random(2);
+		for (int test = 0; test < 300; test++) {
+			GridHeader header = new GridHeader(1 + random.nextInt(12), 1 + random.nextInt(12), 0, 0, 0.5, -9999);
+			BoundingBox box = randomBox(random, header);
+
+			long next = header.getCellCount();
+			for (long index = header.getCellCount() - 1; index >= 0; index--) {
+				if (inside(header, box, (int) (index / header.getNcols()), (int) (index % header.getNcols())))
+					next = index;
+				assertEquals(box + " from " + index, next, box.nextCellInside(header, index));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSouthAboveNorth() {
+		new BoundingBox(10, 0, 5, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsWestPastEast() {
+		new BoundingBox(0, 10, 1, 5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNaN() {
+		new BoundingBox(Double.NaN, 0, 1, 1);
+	}
+
+	@Test
+	public void clippedCsvHoldsTheCellsInsideTheBox() throws IOException {
+		Random random = new Random(3);
+		for (int test = 0; test < 20; test++) {
+			String grid = ParallelBodyParserTest.grid(random, 5 + random.nextInt(30), 5 + random.nextInt(30), 0.3, random.nextBoolean(), "\n");
+			AsciiToCsv full = new AsciiToCsv();
+			List<String> fullLines = lines(full.parseToCsv(buffer(grid), folder.newFile()));
+			GridHeader header = full.getHeader();
+			BoundingBox box = randomBox(random, header);
+
+			AsciiToCsv clipped = new AsciiToCsv();
+			clipped.setClip(box);
+			List<String> clippedLines = lines(clipped.parseToCsv(buffer(grid), folder.newFile()));
+
+			List<String> expected = new ArrayList<>();
+			for (String line : fullLines.subList(1, fullLines.size())) {
+				String[] fields = line.split(",");
+				double latitude = Double.parseDouble(fields[0]);
+				double longitude = Double.parseDouble(fields[1]);
+				if (latitude >= box.getSouth() && latitude <= box.getNorth() && longitude >= box.getWest() && longitude <= box.getEast())
+					expected.add(line);
+			}
+
+			assertEquals(fullLines.get(0), clippedLines.get(0));
+			assertEquals(expected.size(), clipped.getStatistics().getCount());
+			if (!expected.isEmpty()) {
+				assertEquals(clipped.getStatistics().getMin(), value(clippedLines.get(1)), 0);
+				assertEquals(clipped.getStatistics().getMax(), value(clippedLines.get(expected.size() > 1 ? 2 : 1)), 0);
+			}
+			List<String> body = new ArrayList<>(clippedLines.subList(1, clippedLines.size()));
+			Collections.sort(expected);
+			Collections.sort(body);
+			assertEquals(box.toString(), expected, body);
+		}
+	}
+
+	@Test
+	public void clippedRasterHoldsTheCellsInsideTheBox() throws IOException {
+		Random random = new Random(4);
+		for (int test = 0; test < 20; test++) {
+			String grid = ParallelBodyParserTest.grid(random, 5 + random.nextInt(30), 5 + random.nextInt(30), 0.3, false, "\n");
+			GridRaster full = new AsciiToCsv().parseToRaster(channel(grid));
+			GridHeader header = full.getHeader();
+			BoundingBox box = randomBox(random, header);
+
+			AsciiToCsv parser = new AsciiToCsv();
+			parser.setClip(box);
+			GridRaster clipped = parser.parseToRaster(channel(grid));
+
+			for (int row = 0; row < header.getNrows(); row++)
+				for (int column = 0; column < header.getNcols(); column++) {
+					double expected = inside(header, box, row, column) ? full.get(row, column) : header.getNODATA();
+					assertEquals(box + " at " + row + ", " + column, expected, clipped.get(row, column), 0);
+				}
+		}
+	}
+
+	/**
+	 * Checks the window of the box against every cell of the grid.
+	 */
+	private static void assertWindow(GridHeader header, BoundingBox box) {
+		int firstRow = header.getNrows();
+		int lastRow = -1;
+		int firstColumn = header.getNcols();
+		int lastColumn = -1;
+		for (int row = 0; row < header.getNrows(); row++)
+			if (header.getLatitude(row) >= box.getSouth() && header.getLatitude(row) <= box.getNorth()) {
+				firstRow = Math.min(firstRow, row);
+				lastRow = Math.max(lastRow, row);
+			}
+		for (int column = 0; column < header.getNcols(); column++)
+			if (header.getLongitude(column) >= box.getWest() && header.getLongitude(column) <= box.getEast()) {
+				firstColumn = Math.min(firstColumn, column);
+				lastColumn = Math.max(lastColumn, column);
+			}
+
+		String message = box + " in " + header.getNcols() + " x " + header.getNrows() + " at " + header.getLongitude() + ", " + header.getLatitude() + " by " + header.getCellSize();
+		if (lastRow >= 0) {
+			assertEquals(message, firstRow, box.firstRow(header));
+			assertEquals(message, lastRow, box.lastRow(header));
+		} else
+			assertTrue(message, box.firstRow(header) > box.lastRow(header));
+		if (lastColumn >= 0) {
+			assertEquals(message, firstColumn, box.firstColumn(header));
+			assertEquals(message, lastColumn, box.lastColumn(header));
+		} else
+			assertTrue(message, box.firstColumn(header) > box.lastColumn(header));
+	}
+
+	private static boolean inside(GridHeader header, BoundingBox box, int row, int column) {
+		return row >= box.firstRow(header) && row <= box.lastRow(header) && column >= box.firstColumn(header) && column <= box.lastColumn(header);
+	}
+
+	/**
+	 * Makes a box around part of the grid (sometimes reaching past it). Its edges are on the coordinates of cells half of the time, and anywhere the other half.
+	 */
+	private static BoundingBox randomBox(Random random, GridHeader header) {
+		double[] latitudes = { edge(random, header.getLatitude(random.nextInt(header.getNrows() + 4) - 2), header), edge(random, header.getLatitude(random.nextInt(header.getNrows() + 4) - 2), header) };
+		double[] longitudes = { edge(random, header.getLongitude(random.nextInt(header.getNcols() + 4) - 2), header), edge(random, header.getLongitude(random.nextInt(header.getNcols() + 4) - 2), header) };
+		return new BoundingBox(Math.min(latitudes[0], latitudes[1]), Math.min(longitudes[0], longitudes[1]), Math.max(latitudes[0], latitudes[1]), Math.max(longitudes[0], longitudes[1]));
+	}
+
+	private static double edge(Random random, double coordinate, GridHeader header) {
+		return random.nextBoolean() ? coordinate : coordinate + (random.nextDouble() - 0.5) * header.getCellSize();
+	}
+
+	private static ByteBuffer buffer(String grid) {
+		return ByteBuffer.wrap(grid.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static ReadableByteChannel channel(String grid) {
+		return Channels.newChannel(new ByteArrayInputStream(grid.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	private static List<String> lines(File csv) throws IOException {
+		return Files.readAllLines(csv.toPath(), StandardCharsets.US_ASCII);
+	}
+
+	private static double value(String line) {
+		return Double.parseDouble(line.substring(line.lastIndexOf(',') + 1));
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for CsvGridWriter: the min and max rows are moved to the top of the CSV, the first occurrence of each winning, and pieces of a table written by separate writers are merged into the same file one writer would have made.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvGridWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void movesTheMinAndMaxRowsToTheTop() throws IOException {
+		assertWritten(new double[] { 5, 3, 8, 1, 9, 4 }, 1);
+	}
+
+	@Test
+	public void keepsTheFirstOfTiedValues() throws IOException {
+		double[] values = { 4, 1, 7, 1, 7, 4, 1, 7 };
+		List<String> lines = write(values, 1);
+
+		// Rows are told apart by their longitude, which is the index of the value
+		assertEquals(row(1, 1), lines.get(1));
+		assertEquals(row(2, 7), lines.get(2));
+		assertWritten(values, 1);
+	}
+
+	@Test
+	public void writesTheRowOnceIfItIsBothMinAndMax() throws IOException {
+		double[] values = { 2.5, 2.5, 2.5 };
+		List<String> lines = write(values, 1);
+
+		assertEquals(4, lines.size());
+		assertEquals(row(0, 2.5), lines.get(1));
+		assertWritten(values, 1);
+		assertWritten(new double[] { 6 }, 1);
+	}
+
+	@Test
+	public void writesOnlyTheHeaderWithoutRows() throws IOException {
+		assertEquals(Collections.singletonList(CsvGridWriter.CSV_HEADER), write(new double[0], 1));
+		assertEquals(Collections.singletonList(CsvGridWriter.CSV_HEADER), write(new double[0], 4));
+	}
+
+	@Test
+	public void handlesTheMinAndMaxNextToEachOther() throws IOException {
+		assertWritten(new double[] { 5, 9, 1, 6 }, 1);
+		assertWritten(new double[] { 5, 1, 9, 6 }, 1);
+		assertWritten(new double[] { 1, 9 }, 1);
+		assertWritten(new double[] { 9, 1 }, 1);
+	}
+
+	@Test
+	public void mergesPiecesLikeOneWriter() throws IOException {
+		Random random = new Random(1);
+		for (int test = 0; test < 200; test++) {
+			double[] values = new double[random.nextInt(40)];
+			for (int i = 0; i < values.length; i++)
+				// Few distinct values, so ties across pieces are common; varying lengths so the rows in front take more or less space than those cut out
+				values[i] = random.nextInt(6) * Math.pow(10, random.nextInt(4) - 2);
+
+			assertWritten(values, 1 + random.nextInt(6));
+		}
+	}
+
+	@Test
+	public void mergesEmptyPieces() throws IOException {
+		double[] values = { 3, 0.001, 12345.678 };
+		List<CsvGridWriter> parts = new ArrayList<>();
+		File outFile = folder.newFile("empty.csv");
+		for (int i = 0; i < 5; i++)
+			parts.add(new CsvGridWriter(new File(outFile.getPath() + "." + i)));
+		parts.get(1).writeRow(0, 0, values[0]);
+		parts.get(3).writeRow(0, 1, values[1]);
+		parts.get(3).writeRow(0, 2, values[2]);
+
+		CsvGridWriter.merge(outFile, parts);
+
+		assertEquals(expected(values), Files.readAllLines(outFile.toPath(), StandardCharsets.US_ASCII));
+		assertNoPartFiles();
+	}
+
+	@Test
+	public void abortLeavesNoFiles() throws IOException {
+		File outFile = new File(folder.getRoot(), "aborted.csv");
+		CsvGridWriter writer = new CsvGridWriter(outFile);
+		writer.writeRow(0, 0, 1);
+		writer.abort();
+
+		assertFalse(outFile.exists());
+		assertNoPartFiles();
+	}
+
+	/**
+	 * Writes the values (one per row, with their index as longitude) split into pieces, and checks the merged CSV against the rows in table order.
+	 */
+	private void assertWritten(double[] values, int pieces) throws IOException {
+		assertEquals(Arrays.toString(values) + " in " + pieces + " pieces", expected(values), write(values, pieces));
+		assertNoPartFiles();
+	}
+
+	/**
+	 * @return The lines of the CSV made from the values, split as evenly as possible into the given number of pieces.
+	 */
+	private List<String> write(double[] values, int pieces) throws IOException {
+		File outFile = folder.newFile();
+		List<CsvGridWriter> parts = new ArrayList<>();
+		for (int part = 0; part < pieces; part++) {
+			CsvGridWriter writer = new CsvGridWriter(new File(outFile.getPath() + "." + part));
+			for (int i = part * values.length / pieces; i < (part + 1) * values.length / pieces; i++)
+				writer.writeRow(0, i, values[i]);
+			parts.add(writer);
+		}
+
+		if (pieces == 1)
+			assertEquals(parts.get(0).getOutFile(), parts.get(0).finish());
+		else
+			assertEquals(outFile, CsvGridWriter.merge(outFile, parts));
+		return Files.readAllLines((pieces == 1 ? parts.get(0).getOutFile() : outFile).toPath(), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return The CSV the values should give: the header, the first min row, the first max row (unless it is the same row) and then every other row in order.
+	 */
+	private static List<String> expected(double[] values) {
+		List<String> lines = new ArrayList<>();
+		lines.add(CsvGridWriter.CSV_HEADER);
+		if (values.length == 0)
+			return lines;
+
+		int min = 0;
+		int max = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] < values[min])
+				min = i;
+			if (values[i] > values[max])
+				max = i;
+		}
+
+		lines.add(row(min, values[min]));
+		if (max != min)
+			lines.add(row(max, values[max]));
+		for (int i = 0; i < values.length; i++)
+			if (i != min && i != max)
+				lines.add(row(i, values[i]));
+		return lines;
+	}
+
+	private static String row(int index, double value) {
+		return "0.0," + (double) index + "," + value;
+	}
+
+	private void assertNoPartFiles() {
+		for (File file : folder.getRoot().listFiles())
+			assertFalse(file.getName(), file.getName().endsWith(".part"));
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for CsvNumberFormat: shortest text that reads back as the same double or float, and rounding to a fixed number of digits.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CsvNumberFormatTest {
+
+	@Test
+	public void writesDoublesLikeDoubleToString() {
+		assertEquals("0.0", format(0.0));
+		assertEquals("-0.0", format(-0.0));
+		assertEquals("0.1", format(0.1));
+		assertEquals("-9999.0", format(-9999.0));
+		assertEquals("123.456", format(123.456));
+		assertEquals("0.001", format(0.001));
+		assertEquals("9999999.5", format(9999999.5));
+		assertEquals("1.0E7", format(1e7));
+		assertEquals("1.0E-4", format(1e-4));
+		assertEquals("NaN", format(Double.NaN));
+		assertEquals("-Infinity", format(Double.NEGATIVE_INFINITY));
+	}
+
+	@Test
+	public void writesRandomDoublesShortestAndExact() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 3);
+			if (i % 2 == 0)
+				value = Math.round(value * 1e4) / 1e4; // Model output usually has a few decimals
+			String text = format(value);
+
+			assertEquals(text, value, Double.parseDouble(text), 0);
+			assertTrue(text + " is longer than " + Double.toString(value), significantDigits(text) <= significantDigits(Double.toString(value)));
+		}
+	}
+
+	@Test
+	public void writesFloatsLikeFloatToString() {
+		assertEquals("0.1", format(0.1f));
+		assertEquals("-0.0", format(-0.0f));
+		assertEquals("3.4028235E38", format(Float.MAX_VALUE));
+		assertEquals("1.6777216E7", format(16777216f));
+		assertEquals("273.15", format(273.15f));
+	}
+
+	@Test
+	public void writesRandomFloatsShortestAndExact() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			float value = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 3));
+			String text = format(value);
+
+			assertEquals(text, value, Float.parseFloat(text), 0);
+			assertTrue(text + " is longer than " + Float.toString(value), significantDigits(text) <= significantDigits(Float.toString(value)));
+		}
+	}
+
+	@Test
+	public void roundsFixedDigitsHalfAwayFromZero() {
+		assertEquals("0.13", format(0.125, 2));
+		assertEquals("-0.13", format(-0.125, 2));
+		assertEquals("2.67", format(2.675, 2)); // 2.675 is really 2.67499999...
+		assertEquals("0.00", format(-0.004, 2));
+		assertEquals("2", format(1.5, 0));
+		assertEquals("-3", format(-2.5, 0));
+		assertEquals("10.000", format(9.9999, 3));
+		assertEquals("0.050", format(0.05, 3));
+	}
+
+	@Test
+	public void roundsRandomFixedDigitsLikeBigDecimal() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(10) - 2);
+			int digits = random.nextInt(7);
+			if (i % 2 == 0)
+				value = Math.round(value * 1000) / 1000.0 + 0.0005 / Math.pow(10, digits); // Near a half
+			String expected = new BigDecimal(value).setScale(digits, RoundingMode.HALF_UP).toPlainString();
+
+			assertEquals(Double.toString(value), expected, format(value, digits));
+		}
+	}
+
+	private static String format(double value) {
+		byte[] out = new byte[CsvNumberFormat.MAX_LENGTH];
+		return new String(out, 0, CsvNumberFormat.format(value, out, 0), StandardCharsets.US_ASCII);
+	}
+
+	private static String format(float value) {
+		byte[] out = new byte[CsvNumberFormat.MAX_LENGTH];
+		return new String(out, 0, CsvNumberFormat.format(value, out, 0), StandardCharsets.US_ASCII);
+	}
+
+	private static String format(double value, int fractionDigits) {
+		byte[] out = new byte[CsvNumberFormat.MAX_LENGTH];
+		return new String(out, 0, CsvNumberFormat.format(value, fractionDigits, out, 0), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return The number of significant digits in a number written by Double.toString() or Float.toString().
+	 */
+	private static int significantDigits(String text) {
+		int e = text.indexOf('E');
+		String digits = (e < 0 ? text : text.substring(0, e)).replace("-", "").replace(".", "");
+		digits = digits.replaceFirst("^0+", "").replaceFirst("0+$", "");
+		return Math.max(digits.length(), 1);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for CellOrder and CurveOrderHandler: the curves visit every cell of a tile once, and the handler sends tiles in table order with the cells of each along the curve.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CurveOrderHandlerTest {
+
+	@Test
+	public void everyOrderVisitsEachCellOnce() {
+		for (CellOrder order : CellOrder.values())
+			for (int tileSize = 1; tileSize <= CurveOrderHandler.TILE_SIZE; tileSize <<= 1) {
+				int[] cells = order.tileOrder(tileSize);
+				boolean[] seen = new boolean[tileSize * tileSize];
+				for (int cell : cells) {
+					assertTrue(order + " visits " + cell + " twice", !seen[cell]);
+					seen[cell] = true;
+				}
+				assertEquals(seen.length, cells.length);
+			}
+	}
+
+	@Test
+	public void rowOrderIsTheTableOrder() {
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 }, CellOrder.ROW.tileOrder(4));
+	}
+
+	@Test
+	public void zOrderVisitsQuadrantsInTurn() {
+		// Top left 2x2, top right, bottom left, bottom right
+		assertArrayEquals(new int[] { 0, 1, 4, 5, 2, 3, 6, 7, 8, 9, 12, 13, 10, 11, 14, 15 }, CellOrder.Z_ORDER.tileOrder(4));
+	}
+
+	@Test
+	public void hilbertOnlyStepsToNeighbours() {
+		int tileSize = CurveOrderHandler.TILE_SIZE;
+		int[] cells = CellOrder.HILBERT.tileOrder(tileSize);
+		assertEquals(0, cells[0]);
+		for (int d = 1; d < cells.length; d++) {
+			int rowStep = Math.abs(cells[d] / tileSize - cells[d - 1] / tileSize);
+			int columnStep = Math.abs(cells[d] % tileSize - cells[d - 1] % tileSize);
+			assertEquals("Step " + d, 1, rowStep + columnStep);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTilesThatArentAPowerOfTwo() {
+		CellOrder.HILBERT.tileOrder(48);
+	}
+
+	@Test
+	public void sendsTilesInTableOrderAlongTheCurve() throws IOException {
+		// Neither side is a whole number of tiles, so the last band and column of tiles are cut short
+		int ncols = 150;
+		int nrows = 100;
+		GridHeader header = new GridHeader(ncols, nrows, 0, 0, 1, -9999);
+		int tileSize = CurveOrderHandler.TILE_SIZE;
+		int[] position = new int[tileSize * tileSize];
+		int[] cells = CellOrder.HILBERT.tileOrder(tileSize);
+		for (int d = 0; d < cells.length; d++)
+			position[cells[d]] = d;
+
+		List<int[]> received = new ArrayList<int[]>();
+		int[] finished = new int[1];
+		CurveOrderHandler handler = new CurveOrderHandler(header, CellOrder.HILBERT, new GridCellHandler() {
+			@Override
+			public void handleCell(int row, int column, double value) {
+				assertEquals(row * ncols + column, value, 0);
+				received.add(new int[] { row, column });
+			}
+
+			@Override
+			public void finish() {
+				finished[0]++;
+			}
+		});
+
+		// Every third cell is NODATA, and the first half of row 70 is a NODATA run
+		int expected = 0;
+		for (int row = 0; row < nrows; row++)
+			for (int column = 0; column < ncols; column++) {
+				if (row == 70 && column < 75) {
+					if (column == 0)
+						handler.handleNoData(row, 0, 75, -9999);
+				} else if ((row * ncols + column) % 3 == 0)
+					handler.handleCell(row, column, -9999);
+				else {
+					handler.handleCell(row, column, row * ncols + column);
+					expected++;
+				}
+			}
+		handler.finish();
+
+		assertEquals(1, finished[0]);
+		assertEquals(expected, received.size());
+		for (int i = 1; i < received.size(); i++) {
+			int[] previous = received.get(i - 1);
+			int[] cell = received.get(i);
+			int previousTile = (previous[0] / tileSize) * ncols + previous[1] / tileSize;
+			int tile = (cell[0] / tileSize) * ncols + cell[1] / tileSize;
+
+			assertTrue("Tiles out of order at " + i, tile >= previousTile);
+			if (tile == previousTile)
+				assertTrue("Cells out of curve order at " + i, position[(cell[0] % tileSize) * tileSize + cell[1] % tileSize] > position[(previous[0] % tileSize) * tileSize + previous[1] % tileSize]);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for DbaseTableWriter: the layout of the table, the min and max records moved to the top wherever they start out, and numbers written to fit their fields.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DbaseTableWriterTest {
+
+	private static final double NODATA = -9999;
+	private static final int HEADER_SIZE = 32 + 3 * 32 + 1;
+	private static final int FIELD_LENGTH = DbaseTableWriter.FIELD_LENGTH;
+	private static final int RECORD_SIZE = 1 + 3 * FIELD_LENGTH;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesADbaseThreeTable() throws IOException {
+		GridHeader header = new GridHeader(3, 2, -10, 40, 0.5, NODATA);
+		File file = new File(folder.getRoot(), "layout" + DbaseTableWriter.EXTENSION);
+		DbaseTableWriter writer = new DbaseTableWriter(header, file, false, null);
+		writer.handleCell(0, 0, 2);
+		writer.handleNoData(0, 1, 2, NODATA);
+		writer.handleCell(1, 0, 1);
+		writer.handleCell(1, 1, NODATA);
+		writer.handleCell(1, 2, 3);
+		writer.finish();
+
+		assertEquals(3, writer.getRecordCount());
+		assertFalse(new File(file.getPath() + ".part").exists());
+		assertEquals("UTF-8", new String(Files.readAllBytes(DbaseTableWriter.getCodePageFile(file).toPath()), StandardCharsets.US_ASCII));
+
+		ByteBuffer table = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(HEADER_SIZE + 3 * RECORD_SIZE + 1, table.limit());
+		assertEquals(0x03, table.get(0));
+		assertEquals(3, table.getInt(4));
+		assertEquals(HEADER_SIZE, table.getShort(8));
+		assertEquals(RECORD_SIZE, table.getShort(10));
+
+		String[] names = { "latitude", "longitude", "value" };
+		for (int i = 0; i < names.length; i++) {
+			int descriptor = 32 + i * 32;
+			assertEquals(names[i], text(table, descriptor, 11).trim().replace("\0", ""));
+			assertEquals('N', table.get(descriptor + 11));
+			assertEquals(FIELD_LENGTH, table.get(descriptor + 16));
+			assertEquals(DbaseTableWriter.DECIMALS, table.get(descriptor + 17));
+		}
+		assertEquals(0x0D, table.get(HEADER_SIZE - 1));
+		assertEquals(0x1A, table.get(table.limit() - 1));
+
+		// Min, max, then the record the min swapped places with
+		double[][] expected = { { header.getLatitude(1), header.getLongitude(0), 1 }, { header.getLatitude(1), header.getLongitude(2), 3 }, { header.getLatitude(0), header.getLongitude(0), 2 } };
+		for (int record = 0; record < expected.length; record++) {
+			assertEquals(' ', table.get(HEADER_SIZE + record * RECORD_SIZE));
+			for (int field = 0; field < 3; field++)
+				assertEquals(expected[record][field], Double.parseDouble(field(table, record, field)), 0);
+		}
+	}
+
+	@Test
+	public void movesTheMinAndMaxToTheTopWhereverTheyStart() throws IOException {
+		int count = 5;
+		for (int min = 0; min < count; min++)
+			for (int max = 0; max < count; max++) {
+				if (min == max)
+					continue;
+
+				double[] values = new double[count];
+				for (int i = 0; i < count; i++)
+					values[i] = 10 + i;
+				values[min] = -5;
+				values[max] = 100;
+
+				List<Double> expected = new ArrayList<Double>();
+				for (double value : values)
+					expected.add(value);
+				swap(expected, 0, min);
+				swap(expected, 1, max == 0 ? min : max);
+
+				assertEquals("min at " + min + ", max at " + max, expected, write(values));
+			}
+	}
+
+	@Test
+	public void keepsTheFirstOfEqualExtremes() throws IOException {
+		List<Double> values = write(new double[] { 4, 4, 4 });
+		assertEquals(3, values.size());
+		assertTrue(values.stream().allMatch(v -> v == 4));
+
+		// The first 1 and the first 9 move up; the later ones stay where they were
+		List<Double> expected = new ArrayList<Double>();
+		for (double value : new double[] { 1, 9, 5, 5, 9, 1 })
+			expected.add(value);
+		assertEquals(expected, write(new double[] { 5, 9, 1, 5, 9, 1 }));
+	}
+
+	@Test
+	public void writesASingleRecordAndAnEmptyTable() throws IOException {
+		List<Double> single = write(new double[] { 7.25 });
+		assertEquals(1, single.size());
+		assertEquals(7.25, single.get(0), 0);
+
+		assertEquals(0, write(new double[] { NODATA, NODATA }).size());
+	}
+
+	@Test
+	public void writesNumbersWithoutExponentsOrOverflow() throws IOException {
+		GridHeader header = new GridHeader(4, 1, 0, 0, 1, NODATA);
+		File file = new File(folder.getRoot(), "numbers" + DbaseTableWriter.EXTENSION);
+		DbaseTableWriter writer = new DbaseTableWriter(header, file, false, null);
+		// Smallest and largest first, so no records are moved
+		writer.handleCell(0, 0, 1.5e-7);
+		writer.handleCell(0, 1, 1e20);
+		writer.handleCell(0, 2, 0.0012345678901234567);
+		writer.handleCell(0, 3, 12345.678);
+		writer.finish();
+
+		ByteBuffer table = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		assertEquals("         0.00000015", field(table, 0, 2)); // Right aligned
+		assertEquals("*******************", field(table, 1, 2));
+		assertEquals("0.00123456789", field(table, 2, 2).trim());
+		assertEquals("12345.678", field(table, 3, 2).trim());
+	}
+
+	/**
+	 * Writes the values as one row of a grid.
+	 * 
+	 * @return The values of the records, in the order they are in the table.
+	 */
+	private List<Double> write(double[] values) throws IOException {
+		GridHeader header = new GridHeader(values.length, 1, 0, 0, 1, NODATA);
+		File file = folder.newFile();
+		DbaseTableWriter writer = new DbaseTableWriter(header, file, false, null);
+		for (int column = 0; column < values.length; column++)
+			writer.handleCell(0, column, values[column]);
+		writer.finish();
+
+		ByteBuffer table = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		List<Double> records = new ArrayList<Double>();
+		for (int record = 0; record < table.getInt(4); record++)
+			records.add(Double.parseDouble(field(table, record, 2)));
+		return records;
+	}
+
+	private static void swap(List<Double> values, int a, int b) {
+		Double first = values.get(a);
+		values.set(a, values.get(b));
+		values.set(b, first);
+	}
+
+	private static String field(ByteBuffer table, int record, int field) {
+		return text(table, HEADER_SIZE + record * RECORD_SIZE + 1 + field * FIELD_LENGTH, FIELD_LENGTH);
+	}
+
+	private static String text(ByteBuffer table, int position, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = table.get(position + i);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+}
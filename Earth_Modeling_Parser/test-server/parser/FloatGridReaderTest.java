@@ -0,0 +1,211 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for FloatGridReader: values come back the same in either byte order, a row can be read from any column, malformed headers are rejected, and a float grid converts to the same CSV as the ASCII grid with the same values.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FloatGridReaderTest {
+
+	private static final int NCOLS = 13;
+	private static final int NROWS = 7;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsLittleEndianValues() throws IOException {
+		assertReadsValues(ByteOrder.LITTLE_ENDIAN, "LSBFIRST");
+		assertReadsValues(ByteOrder.LITTLE_ENDIAN, "I");
+	}
+
+	@Test
+	public void readsBigEndianValues() throws IOException {
+		assertReadsValues(ByteOrder.BIG_ENDIAN, "MSBFIRST");
+		assertReadsValues(ByteOrder.BIG_ENDIAN, "M");
+	}
+
+	@Test
+	public void readsPartOfARow() throws IOException {
+		float[] values = values(new Random(1));
+		File hdr = write(values, ByteOrder.BIG_ENDIAN, "byteorder MSBFIRST\n");
+
+		try (FloatGridReader reader = new FloatGridReader(hdr)) {
+			assertTrue(reader.readHeader());
+			float[] row = new float[5];
+			// Read the rows out of order, to check each read seeks for itself
+			for (int r = NROWS - 1; r >= 0; r--) {
+				reader.readRow(r, 4, row, 5);
+				for (int c = 0; c < 5; c++)
+					assertEquals(values[r * NCOLS + 4 + c], row[c], 0);
+			}
+			assertEquals(NROWS * 5 * Float.BYTES, reader.getBytesRead());
+		}
+	}
+
+	@Test
+	public void findsTheOtherFileOfTheGrid() {
+		File base = new File(folder.getRoot(), "grid.v2");
+		FloatGridReader reader = new FloatGridReader(new File(base.getPath() + ".hdr"));
+		assertEquals(new File(base.getPath() + ".flt"), reader.getFltFile());
+		reader = new FloatGridReader(new File(base.getPath() + ".flt"));
+		assertEquals(new File(base.getPath() + ".hdr"), reader.getHdrFile());
+	}
+
+	@Test
+	public void movesCentresToCorners() throws IOException {
+		File hdr = write(values(new Random(2)), ByteOrder.LITTLE_ENDIAN, "byteorder LSBFIRST\n");
+		Files.write(hdr.toPath(), header("xllcenter -10.25\nyllcenter 20.5\nbyteorder LSBFIRST\n").getBytes(StandardCharsets.US_ASCII));
+
+		try (FloatGridReader reader = new FloatGridReader(hdr)) {
+			assertTrue(reader.readHeader());
+			assertEquals(-10.5, reader.getHeader().getXllCorner(), 0);
+			assertEquals(20.25, reader.getHeader().getYllCorner(), 0);
+		}
+	}
+
+	@Test
+	public void rejectsAFileOfTheWrongSize() throws IOException {
+		File hdr = write(values(new Random(3)), ByteOrder.LITTLE_ENDIAN, "byteorder LSBFIRST\n");
+		File flt = new File(folder.getRoot(), "grid.flt");
+		byte[] bytes = Files.readAllBytes(flt.toPath());
+		Files.write(flt.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+
+		assertRejected(hdr);
+	}
+
+	@Test
+	public void rejectsBadHeaders() throws IOException {
+		File hdr = write(values(new Random(4)), ByteOrder.LITTLE_ENDIAN, "byteorder LSBFIRST\n");
+
+		for (String extra : new String[] { "byteorder VAX\n", "nbits 16\n", "byteorder LSBFIRST\ncellsize wide\n" }) {
+			Files.write(hdr.toPath(), header(extra).getBytes(StandardCharsets.US_ASCII));
+			assertRejected(hdr);
+		}
+
+		Files.write(hdr.toPath(), header("").replace("cellsize 0.5\n", "").getBytes(StandardCharsets.US_ASCII));
+		assertRejected(hdr);
+	}
+
+	@Test
+	public void convertsToTheSameCsvAsTheAsciiGrid() throws IOException {
+		float[] values = values(new Random(5));
+		File hdr = write(values, ByteOrder.BIG_ENDIAN, "byteorder M\n");
+
+		StringBuilder ascii = new StringBuilder(header(""));
+		for (int r = 0; r < NROWS; r++) {
+			for (int c = 0; c < NCOLS; c++)
+				ascii.append(c > 0 ? " " : "").append(values[r * NCOLS + c]);
+			ascii.append('\n');
+		}
+		File asc = new File(folder.getRoot(), "ascii.asc");
+		Files.write(asc.toPath(), ascii.toString().getBytes(StandardCharsets.US_ASCII));
+
+		File expected = parser().parseToCsv(asc);
+		File csv = parser().parseFloatGridToCsv(hdr);
+		assertNotNull(expected);
+		assertNotNull(csv);
+		assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(csv.toPath()));
+
+		GridRaster raster = new AsciiToCsv().parseFloatGridToRaster(hdr);
+		for (int r = 0; r < NROWS; r++)
+			for (int c = 0; c < NCOLS; c++)
+				assertEquals(values[r * NCOLS + c], raster.get(r, c), 0);
+	}
+
+	/**
+	 * Makes a parser that writes its CSV into the temporary folder.
+	 */
+	private AsciiToCsv parser() {
+		AsciiToCsv parser = new AsciiToCsv();
+		parser.setOutputDirectory(folder.getRoot());
+		return parser;
+	}
+
+	private void assertReadsValues(ByteOrder order, String name) throws IOException {
+		float[] values = values(new Random(name.hashCode()));
+		File hdr = write(values, order, "BYTEORDER " + name + "\nnbits 32\n");
+
+		try (FloatGridReader reader = new FloatGridReader(hdr)) {
+			assertTrue(reader.readHeader());
+			assertEquals(order, reader.getByteOrder());
+			assertEquals(NCOLS, reader.getHeader().getNcols());
+			assertEquals(NROWS, reader.getHeader().getNrows());
+
+			float[] row = new float[NCOLS];
+			for (int r = 0; r < NROWS; r++) {
+				reader.readRow(r, 0, row, NCOLS);
+				for (int c = 0; c < NCOLS; c++)
+					assertEquals(values[r * NCOLS + c], row[c], 0);
+			}
+		}
+	}
+
+	private void assertRejected(File hdr) throws IOException {
+		try (FloatGridReader reader = new FloatGridReader(hdr)) {
+			assertFalse(reader.readHeader());
+		}
+	}
+
+	/**
+	 * Values that print the same as a float and as a double, with some NODATA.
+	 */
+	private static float[] values(Random random) {
+		float[] values = new float[NCOLS * NROWS];
+		for (int i = 0; i < values.length; i++)
+			values[i] = random.nextInt(5) == 0 ? -9999 : (random.nextInt(8000) - 4000) / 8f;
+		return values;
+	}
+
+	private static String header(String extra) {
+		return "ncols " + NCOLS + "\nnrows " + NROWS + "\nxllcorner -10.5\nyllcorner 20.25\ncellsize 0.5\nNODATA_value -9999\n" + extra;
+	}
+
+	/**
+	 * Writes grid.flt and grid.hdr into the temporary folder.
+	 * 
+	 * @return The .hdr file.
+	 */
+	private File write(float[] values, ByteOrder order, String extra) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(values.length * Float.BYTES).order(order);
+		bytes.asFloatBuffer().put(values);
+		Files.write(new File(folder.getRoot(), "grid.flt").toPath(), bytes.array());
+
+		File hdr = new File(folder.getRoot(), "grid.hdr");
+		Files.write(hdr.toPath(), header(extra).getBytes(StandardCharsets.US_ASCII));
+		return hdr;
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for GeoTiffWriter: the file is read back with a small TIFF reader, checking the directory (IFD) of every image, the GeoKeys of the full resolution image, and the cells of the tiles and overviews.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GeoTiffWriterTest {
+
+	private static final double NODATA = -9999;
+	private static final int TILE_SIZE = GeoTiffWriter.TILE_SIZE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Two overviews (300 x 150 and 150 x 75) are needed before one fits in a tile, and the edge tiles are cut short.
+	 */
+	private final GridHeader header = new GridHeader(600, 300, -120.5, 20.25, 0.125, NODATA);
+
+	@Test
+	public void writesADirectoryForEachImage() throws IOException {
+		ByteBuffer tiff = write(new int[1]);
+		List<TreeMap<Integer, long[]>> directories = readDirectories(tiff);
+
+		assertEquals(3, directories.size());
+		for (int level = 0; level < directories.size(); level++) {
+			TreeMap<Integer, long[]> fields = directories.get(level);
+			GridHeader image = level == 0 ? header : header.downsample(1 << level);
+			int tiles = ((image.getNcols() + TILE_SIZE - 1) / TILE_SIZE) * ((image.getNrows() + TILE_SIZE - 1) / TILE_SIZE);
+
+			assertArrayEquals(new long[] { level == 0 ? 0 : 1 }, fields.get(254));
+			assertArrayEquals(new long[] { image.getNcols() }, fields.get(256));
+			assertArrayEquals(new long[] { image.getNrows() }, fields.get(257));
+			assertArrayEquals(new long[] { 32 }, fields.get(258));
+			assertArrayEquals(new long[] { 8 }, fields.get(259));
+			assertArrayEquals(new long[] { TILE_SIZE }, fields.get(322));
+			assertArrayEquals(new long[] { TILE_SIZE }, fields.get(323));
+			assertEquals(tiles, fields.get(324).length);
+			assertEquals(tiles, fields.get(325).length);
+			assertArrayEquals(new long[] { 3 }, fields.get(339));
+			assertEquals("-9999.0", ascii(fields.get(42113)));
+			assertEquals(level == 0, fields.containsKey(34735));
+		}
+	}
+
+	@Test
+	public void placesTheImageWithGeoKeys() throws IOException {
+		TreeMap<Integer, long[]> fields = readDirectories(write(new int[1])).get(0);
+
+		assertArrayEquals(doubles(0.125, 0.125, 0), fields.get(33550));
+		assertArrayEquals(doubles(0, 0, 0, -120.5, 20.25 + 300 * 0.125, 0), fields.get(33922));
+		// Version 1.1.0 with 4 keys: geographic model, pixels are areas, WGS 84, degrees
+		assertArrayEquals(new long[] { 1, 1, 0, 4, 1024, 0, 1, 2, 1025, 0, 1, 1, 2048, 0, 1, 4326, 2054, 0, 1, 9102 }, fields.get(34735));
+	}
+
+	@Test
+	public void writesTheCellsOfEveryImage() throws IOException, DataFormatException {
+		int[] finished = new int[1];
+		ByteBuffer tiff = write(finished);
+		assertEquals(1, finished[0]);
+
+		List<TreeMap<Integer, long[]>> directories = readDirectories(tiff);
+		for (int level = 0; level < directories.size(); level++) {
+			GridRaster expected = level == 0 ? raster() : overview(1 << level);
+			GridHeader image = expected.getHeader();
+			long[] offsets = directories.get(level).get(324);
+			long[] counts = directories.get(level).get(325);
+			int tilesAcross = (image.getNcols() + TILE_SIZE - 1) / TILE_SIZE;
+
+			for (int tile = 0; tile < offsets.length; tile++) {
+				ByteBuffer cells = inflate(tiff, offsets[tile], counts[tile]);
+				for (int row = 0; row < TILE_SIZE; row++)
+					for (int column = 0; column < TILE_SIZE; column++) {
+						int imageRow = (tile / tilesAcross) * TILE_SIZE + row;
+						int imageColumn = (tile % tilesAcross) * TILE_SIZE + column;
+						float value = (float) NODATA;
+						if (imageRow < image.getNrows() && imageColumn < image.getNcols())
+							value = (float) expected.get(imageRow, imageColumn);
+						assertEquals("Level " + level + " cell " + imageRow + ", " + imageColumn, value, cells.getFloat(), 0);
+					}
+			}
+		}
+	}
+
+	@Test
+	public void abortLeavesNothingBehind() throws IOException {
+		File file = new File(folder.getRoot(), "aborted" + GeoTiffWriter.EXTENSION);
+		GeoTiffWriter writer = new GeoTiffWriter(header, file, null);
+		writer.handleCell(0, 0, 1);
+		writer.abort();
+
+		assertFalse(file.exists());
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void namesTheFileForPublishing() {
+		assertEquals(new File("out", "North_America_CO2_2015" + GeoTiffWriter.EXTENSION), GeoTiffWriter.getOutputFile(new File("out", "North-America_CO2_2015.csv")));
+	}
+
+	/**
+	 * Writes the grid, passing every cell through to a handler that checks it arrives unchanged.
+	 * 
+	 * @param finished
+	 *           Counts the calls to the handler's finish().
+	 * @return The whole file.
+	 */
+	private ByteBuffer write(int[] finished) throws IOException {
+		File file = new File(folder.getRoot(), "grid" + GeoTiffWriter.EXTENSION);
+		GridRaster raster = raster();
+		GeoTiffWriter writer = new GeoTiffWriter(header, file, new GridCellHandler() {
+			@Override
+			public void handleCell(int row, int column, double value) {
+				assertEquals(raster.get(row, column), value, 0);
+			}
+
+			@Override
+			public void finish() {
+				finished[0]++;
+			}
+		});
+		assertEquals(2, writer.getOverviewCount());
+
+		for (int row = 0; row < header.getNrows(); row++) {
+			if (row == 150) {
+				writer.handleNoData(row, 0, header.getNcols(), NODATA);
+				continue;
+			}
+			for (int column = 0; column < header.getNcols(); column++)
+				writer.handleCell(row, column, raster.get(row, column));
+		}
+		writer.finish();
+
+		assertFalse(new File(file.getPath() + ".part").exists());
+		return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Reads every directory of a little endian TIFF, checking that its entries are sorted by tag and its offsets are word aligned.
+	 * 
+	 * @return The fields of each directory, by tag.
+	 */
+	private static List<TreeMap<Integer, long[]>> readDirectories(ByteBuffer tiff) {
+		assertEquals('I', tiff.get(0));
+		assertEquals('I', tiff.get(1));
+		assertEquals(42, tiff.getShort(2));
+
+		List<TreeMap<Integer, long[]>> directories = new ArrayList<TreeMap<Integer, long[]>>();
+		long next = tiff.getInt(4) & 0xFFFFFFFFL;
+		while (next != 0) {
+			assertEquals(0, next % 2);
+			int position = (int) next;
+			int entries = tiff.getShort(position) & 0xFFFF;
+			TreeMap<Integer, long[]> fields = new TreeMap<Integer, long[]>();
+			int previousTag = -1;
+
+			for (int i = 0; i < entries; i++) {
+				int entry = position + 2 + i * 12;
+				int tag = tiff.getShort(entry) & 0xFFFF;
+				int type = tiff.getShort(entry + 2);
+				int count = tiff.getInt(entry + 4);
+				assertTrue("Tag " + tag + " is out of order", tag > previousTag);
+				previousTag = tag;
+
+				int size = count * (type == 2 ? 1 : type == 3 ? 2 : type == 4 ? 4 : 8);
+				int at = size <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+				if (size > 4)
+					assertEquals(0, at % 2);
+
+				long[] values = new long[count];
+				for (int v = 0; v < count; v++) {
+					if (type == 2)
+						values[v] = tiff.get(at + v);
+					else if (type == 3)
+						values[v] = tiff.getShort(at + v * 2) & 0xFFFF;
+					else if (type == 4)
+						values[v] = tiff.getInt(at + v * 4) & 0xFFFFFFFFL;
+					else
+						values[v] = tiff.getLong(at + v * 8);
+				}
+				fields.put(tag, values);
+			}
+
+			directories.add(fields);
+			next = tiff.getInt(position + 2 + entries * 12) & 0xFFFFFFFFL;
+		}
+		return directories;
+	}
+
+	private static ByteBuffer inflate(ByteBuffer tiff, long offset, long count) throws DataFormatException {
+		Inflater inflater = new Inflater();
+		inflater.setInput(tiff.array(), (int) offset, (int) count);
+		byte[] cells = new byte[TILE_SIZE * TILE_SIZE * Float.BYTES];
+		int length = inflater.inflate(cells);
+		assertTrue(inflater.finished());
+		inflater.end();
+
+		assertEquals(cells.length, length);
+		return ByteBuffer.wrap(cells).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return The grid: mostly row * 1000 + column, with NODATA in every seventh column and all of row 150.
+	 */
+	private GridRaster raster() {
+		GridRaster raster = new GridRaster(header);
+		for (int row = 0; row < header.getNrows(); row++)
+			for (int column = 0; column < header.getNcols(); column++)
+				if (row != 150 && column % 7 != 0)
+					raster.set(row, column, row * 1000 + column);
+		return raster;
+	}
+
+	/**
+	 * @return The grid averaged over blocks of factor x factor cells, as the overviews are.
+	 */
+	private GridRaster overview(int factor) throws IOException {
+		GridRaster overview = new GridRaster(header.downsample(factor));
+		BlockAggregator aggregator = new BlockAggregator(header, factor, BlockAggregator.Method.MEAN, overview);
+		raster().forEachCell(aggregator);
+		aggregator.finish();
+		return overview;
+	}
+
+	private static String ascii(long[] values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+			bytes[i] = (byte) values[i];
+		assertEquals(0, bytes[bytes.length - 1]);
+		return new String(bytes, 0, bytes.length - 1, StandardCharsets.US_ASCII);
+	}
+
+	private static long[] doubles(double... values) {
+		long[] bits = new long[values.length];
+		for (int i = 0; i < values.length; i++)
+			bits[i] = Double.doubleToLongBits(values[i]);
+		return bits;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for the precisions of GridRaster: FLOAT stays within half a float step of each value, SCALED_SHORT within half of its 16 bit step, NODATA is always exact, and getMaxError() reports the largest error actually made.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GridRasterTest {
+
+	private static final GridHeader HEADER = new GridHeader(40, 25, -10.5, 20.25, 0.5, -9999);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void storesDoublesExactly() {
+		GridRaster raster = new GridRaster(HEADER);
+		double[] values = fill(raster, new Random(1), -1e6, 1e6);
+
+		assertEquals(GridPrecision.DOUBLE, raster.getPrecision());
+		assertEquals(HEADER.getCellCount() * 8, raster.getSizeInBytes());
+		for (int i = 0; i < values.length; i++)
+			assertEquals(values[i], raster.get(i), 0);
+		assertEquals(0, raster.getMaxError(), 0);
+	}
+
+	@Test
+	public void storesFloatsWithinHalfAFloatStep() {
+		GridRaster raster = new GridRaster(HEADER, GridPrecision.FLOAT);
+		double[] values = fill(raster, new Random(2), -1e6, 1e6);
+
+		assertEquals(HEADER.getCellCount() * 4, raster.getSizeInBytes());
+		double largest = 0;
+		for (int i = 0; i < values.length; i++) {
+			double error = Math.abs(raster.get(i) - values[i]);
+			assertTrue(i + ": " + error, error <= Math.ulp((float) values[i]) / 2);
+			largest = Math.max(largest, error);
+		}
+		assertTrue(largest > 0);
+		assertEquals(largest, raster.getMaxError(), 0);
+	}
+
+	@Test
+	public void storesScaledShortsWithinHalfAStep() {
+		double min = -250;
+		double max = 1750;
+		double halfStep = (max - min) / (2.0 * Short.MAX_VALUE) / 2;
+
+		GridRaster raster = new GridRaster(HEADER, min, max);
+		double[] values = fill(raster, new Random(3), min, max);
+
+		assertEquals(GridPrecision.SCALED_SHORT, raster.getPrecision());
+		assertEquals(HEADER.getCellCount() * 2, raster.getSizeInBytes());
+		double largest = 0;
+		for (int i = 0; i < values.length; i++) {
+			double error = Math.abs(raster.get(i) - values[i]);
+			assertTrue(i + ": " + error, error <= halfStep * (1 + 1e-9));
+			largest = Math.max(largest, error);
+		}
+		assertEquals(largest, raster.getMaxError(), 0);
+
+		// Both ends of the range are stored exactly enough, and values outside it go to the nearest end
+		raster.set(0, 0, min);
+		raster.set(0, 1, max);
+		raster.set(0, 2, max + 100);
+		raster.set(0, 3, min - 100);
+		assertEquals(min, raster.get(0, 0), halfStep);
+		assertEquals(max, raster.get(0, 1), halfStep);
+		assertEquals(max, raster.get(0, 2), halfStep);
+		assertEquals(min, raster.get(0, 3), halfStep);
+		assertEquals(100, raster.getMaxError(), halfStep);
+	}
+
+	@Test
+	public void scalesAParsedRasterToItsRange() {
+		GridRaster floats = new GridRaster(HEADER, GridPrecision.FLOAT);
+		double[] values = fill(floats, new Random(4), 3, 9);
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double value : values)
+			if (value != HEADER.getNODATA()) {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+		double halfStep = (max - min) / (2.0 * Short.MAX_VALUE) / 2;
+
+		GridRaster scaled = floats.toScaledShort();
+		assertEquals(GridPrecision.SCALED_SHORT, scaled.getPrecision());
+		double largest = 0;
+		for (int i = 0; i < values.length; i++) {
+			double error = Math.abs(scaled.get(i) - values[i]);
+			assertTrue(i + ": " + error, error <= floats.getMaxError() + halfStep * (1 + 1e-6));
+			largest = Math.max(largest, error);
+		}
+		// The reported error covers both steps
+		assertTrue(scaled.getMaxError() >= largest);
+		assertTrue(scaled.getMaxError() <= floats.getMaxError() + halfStep * (1 + 1e-6));
+	}
+
+	@Test
+	public void scalesAGridOfOneValue() {
+		GridRaster raster = new GridRaster(HEADER);
+		raster.set(3, 4, 12.5);
+		raster.set(7, 8, 12.5);
+
+		GridRaster scaled = raster.toScaledShort();
+		assertEquals(12.5, scaled.get(3, 4), 0);
+		assertEquals(12.5, scaled.get(7, 8), 0);
+		assertEquals(HEADER.getNODATA(), scaled.get(0, 0), 0);
+		assertEquals(0, scaled.getMaxError(), 0);
+	}
+
+	@Test
+	public void storesNoDataExactly() {
+		GridRaster[] rasters = { new GridRaster(HEADER), new GridRaster(HEADER, GridPrecision.FLOAT), new GridRaster(HEADER, -1, 1) };
+		for (GridRaster raster : rasters) {
+			assertTrue(raster.isNoData(5, 5));
+			raster.set(5, 5, 0.5);
+			raster.set(5, 5, HEADER.getNODATA());
+			assertEquals(raster.getPrecision().toString(), HEADER.getNODATA(), raster.get(5, 5), 0);
+			assertTrue(raster.isNoData(5, 5));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void needsARangeForScaledShorts() {
+		new GridRaster(HEADER, GridPrecision.SCALED_SHORT);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnInfiniteRange() {
+		new GridRaster(HEADER, 0, Double.POSITIVE_INFINITY);
+	}
+
+	@Test
+	public void parsesWithinTheReportedError() throws IOException {
+		File grid = new File(folder.getRoot(), "grid.asc");
+		Files.write(grid.toPath(), ParallelBodyParserTest.grid(new Random(5), 37, 23, 0.3, true, "\n").getBytes(StandardCharsets.US_ASCII));
+		GridRaster exact = new AsciiToCsv().parseToRaster(grid);
+		assertNotNull(exact);
+
+		for (GridPrecision precision : GridPrecision.values()) {
+			AsciiToCsv parser = new AsciiToCsv();
+			parser.setPrecision(precision);
+			GridRaster raster = parser.parseToRaster(grid);
+			assertEquals(precision, raster.getPrecision());
+			for (int i = 0; i < 37 * 23; i++) {
+				assertEquals(exact.isNoData(i / 37, i % 37), raster.isNoData(i / 37, i % 37));
+				assertEquals(precision + " " + i, exact.get(i), raster.get(i), raster.getMaxError());
+			}
+		}
+	}
+
+	/**
+	 * Sets every cell to a random value in a range, or to NODATA about a tenth of the time.
+	 * 
+	 * @return The values that were set.
+	 */
+	private static double[] fill(GridRaster raster, Random random, double min, double max) {
+		double[] values = new double[(int) HEADER.getCellCount()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(10) == 0 ? HEADER.getNODATA() : min + random.nextDouble() * (max - min);
+			raster.set(i / HEADER.getNcols(), i % HEADER.getNcols(), values[i]);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for GridRowIndex: an index survives being saved and loaded, one that no longer matches its grid is ignored, and parses that seek through an index read the same cells as parses from the top, for plain and gzip compressed grids.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GridRowIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void savesAndLoadsTheOffsets() throws IOException {
+		File grid = write("grid.asc", bytes(ParallelBodyParserTest.grid(new Random(1), 5, 4, 0.2, false, "\n")));
+
+		GridRowIndex index = new GridRowIndex(grid, 4);
+		for (int row = 0; row < 4; row++)
+			index.setRow(row, 100L * row + 7, row + 6);
+		assertTrue(index.save(grid));
+		assertTrue(GridRowIndex.getIndexFile(grid).isFile());
+
+		GridRowIndex loaded = GridRowIndex.load(grid, 4);
+		assertNotNull(loaded);
+		assertEquals(4, loaded.getRowCount());
+		for (int row = 0; row < 4; row++) {
+			assertEquals(100L * row + 7, loaded.getOffset(row));
+			assertEquals(row + 6, loaded.getLine(row));
+		}
+	}
+
+	@Test
+	public void ignoresAnIndexThatDoesNotMatchItsGrid() throws IOException {
+		File grid = write("grid.asc", bytes(ParallelBodyParserTest.grid(new Random(2), 5, 4, 0.2, false, "\n")));
+		assertTrue(new GridRowIndex(grid, 4).save(grid));
+
+		// Another number of rows, a newer grid, and a grid of another size
+		assertNull(GridRowIndex.load(grid, 5));
+		assertTrue(grid.setLastModified(grid.lastModified() + 10000));
+		assertNull(GridRowIndex.load(grid, 4));
+
+		assertTrue(new GridRowIndex(grid, 4).save(grid));
+		Files.write(grid.toPath(), "1".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+		assertNull(GridRowIndex.load(grid, 4));
+
+		// Not an index at all
+		Files.write(GridRowIndex.getIndexFile(grid).toPath(), bytes("ncols 5\n"));
+		assertNull(GridRowIndex.load(grid, 4));
+	}
+
+	@Test
+	public void indexesEveryRowOnTheFirstParse() throws IOException {
+		String text = ParallelBodyParserTest.grid(new Random(3), 23, 17, 0.3, true, "\r\n");
+		File grid = write("grid.asc", bytes(text));
+
+		AsciiToCsv parser = parser();
+		GridRaster raster = parser.parseToRaster(grid);
+		assertNotNull(raster);
+		GridRowIndex index = parser.getRowIndex();
+		assertNotNull(index);
+		assertTrue(GridRowIndex.getIndexFile(grid).isFile());
+
+		// Reading from each offset gives the first value of its row, on the right line
+		for (int row = 0; row < 17; row++) {
+			try (ReadableByteChannel channel = GridInput.open(grid, index.getOffset(row))) {
+				AsciiGridTokenizer tokenizer = new AsciiGridTokenizer(channel);
+				tokenizer.setLineNumber(index.getLine(row));
+				assertEquals(raster.get(row, 0), tokenizer.nextDouble(), 0);
+				assertEquals(index.getLine(row), lineOf(text, index.getOffset(row)));
+			}
+		}
+	}
+
+	@Test
+	public void seeksToTheSameRowsAsAFullParse() throws IOException {
+		String text = ParallelBodyParserTest.grid(new Random(4), 31, 29, 0.3, true, "\n");
+		assertSeeksToTheSameRows(write("grid.asc", bytes(text)));
+		assertSeeksToTheSameRows(write("grid.asc.gz", gzip(bytes(text))));
+	}
+
+	@Test
+	public void clipsToTheSameCsvThroughTheIndex() throws IOException {
+		File grid = write("grid.asc", bytes(ParallelBodyParserTest.grid(new Random(5), 40, 30, 0.2, true, "\n")));
+		GridHeader header = new GridHeader(40, 30, -10.5, 20.25, 0.5, -9999);
+		BoundingBox clip = new BoundingBox(header.getLatitude(25), header.getLongitude(5), header.getLatitude(4), header.getLongitude(33));
+
+		AsciiToCsv parser = new AsciiToCsv();
+		parser.setOutputDirectory(folder.newFolder());
+		parser.setClip(clip);
+		byte[] expected = Files.readAllBytes(parser.parseToCsv(grid).toPath());
+
+		// The first parse builds the index, and the second seeks through it
+		for (int i = 0; i < 2; i++) {
+			parser = parser();
+			parser.setClip(clip);
+			File csv = parser.parseToCsv(grid);
+			assertNotNull(csv);
+			assertArrayEquals(expected, Files.readAllBytes(csv.toPath()));
+		}
+	}
+
+	private void assertSeeksToTheSameRows(File grid) throws IOException {
+		GridRaster full = new AsciiToCsv().parseToRaster(grid);
+		assertNotNull(full);
+		GridHeader header = full.getHeader();
+
+		// The first range builds the index, and the rest seek through it
+		int[][] ranges = { { 0, Integer.MAX_VALUE }, { 0, 0 }, { 7, 12 }, { 28, 28 }, { 20, 100 }, { 15, 14 } };
+		for (int[] range : ranges) {
+			GridRaster part = parser().parseRowsToRaster(grid, range[0], range[1]);
+			assertNotNull(part);
+			for (int row = 0; row < header.getNrows(); row++)
+				for (int column = 0; column < header.getNcols(); column++) {
+					double expected = row >= range[0] && row <= range[1] ? full.get(row, column) : header.getNODATA();
+					assertEquals(row + "," + column, expected, part.get(row, column), 0);
+				}
+		}
+		assertNotNull(GridRowIndex.load(grid, header.getNrows()));
+	}
+
+	/**
+	 * Makes a parser that reads through row indexes and writes its CSV into the temporary folder.
+	 */
+	private AsciiToCsv parser() {
+		AsciiToCsv parser = new AsciiToCsv();
+		parser.setOutputDirectory(folder.getRoot());
+		parser.setUseRowIndex(true);
+		return parser;
+	}
+
+	private static int lineOf(String text, long offset) {
+		int line = 0;
+		for (int i = 0; i < offset; i++)
+			if (text.charAt(i) == '\n')
+				line++;
+		return line;
+	}
+
+	private File write(String name, byte[] bytes) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), bytes);
+		return file;
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(bytes);
+		}
+		return out.toByteArray();
+	}
+}
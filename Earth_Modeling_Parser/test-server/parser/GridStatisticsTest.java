@@ -0,0 +1,195 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for GridStatistics: the running moments, the histogram as it widens in either direction, and merging the statistics of several chunks.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GridStatisticsTest {
+
+	@Test
+	public void emptyStatisticsHaveNoValues() {
+		GridStatistics statistics = new GridStatistics();
+		statistics.addNoData(5);
+
+		assertEquals(0, statistics.getCount());
+		assertEquals(5, statistics.getNoDataCount());
+		assertTrue(Double.isNaN(statistics.getMin()));
+		assertTrue(Double.isNaN(statistics.getMean()));
+		assertTrue(Double.isNaN(statistics.getMedian()));
+		assertEquals(0, statistics.getBinWidth(), 0);
+	}
+
+	@Test
+	public void keepsTheMomentsOfTheValues() {
+		double[] values = randomValues(new Random(1), 10000, 250, 40);
+		GridStatistics statistics = add(values, 0, values.length);
+
+		double sum = 0;
+		for (double value : values)
+			sum += value;
+		double mean = sum / values.length;
+		double squares = 0;
+		for (double value : values)
+			squares += (value - mean) * (value - mean);
+
+		assertEquals(values.length, statistics.getCount());
+		assertEquals(sum, statistics.getSum(), 1e-9 * Math.abs(sum));
+		assertEquals(mean, statistics.getMean(), 1e-9);
+		assertEquals(squares / values.length, statistics.getVariance(), 1e-6);
+		assertEquals(min(values), statistics.getMin(), 0);
+		assertEquals(max(values), statistics.getMax(), 0);
+	}
+
+	@Test
+	public void widensTheHistogramBothWays() {
+		// The first value is in the middle, so the bins have to grow below it and above it.
+		double[] values = randomValues(new Random(2), 20000, 0, 1000);
+		values[0] = 0.5;
+
+		GridStatistics statistics = add(values, 0, values.length);
+
+		assertBinned(values, statistics);
+		assertTrue(statistics.getHistogramStart() <= min(values));
+		assertTrue(statistics.getHistogramStart() + GridStatistics.HISTOGRAM_BINS * statistics.getBinWidth() > max(values));
+		// Doubling only ever has to go one step past the range of the values.
+		assertTrue(GridStatistics.HISTOGRAM_BINS * statistics.getBinWidth() < 4 * (max(values) - min(values)));
+	}
+
+	@Test
+	public void leavesNonFiniteValuesOutOfTheHistogram() {
+		GridStatistics statistics = new GridStatistics();
+		statistics.add(1);
+		statistics.add(Double.POSITIVE_INFINITY);
+		statistics.add(2);
+
+		assertEquals(3, statistics.getCount());
+		assertEquals(Double.POSITIVE_INFINITY, statistics.getMax(), 0);
+		assertEquals(2, sum(statistics.getHistogram()));
+	}
+
+	@Test
+	public void estimatesPercentilesWithinABin() {
+		double[] values = new double[100001];
+		for (int i = 0; i < values.length; i++)
+			values[i] = i / 100.0;
+		GridStatistics statistics = add(values, 0, values.length);
+
+		assertEquals(500, statistics.getMedian(), statistics.getBinWidth());
+		assertEquals(50, statistics.getPercentile(5), statistics.getBinWidth());
+		assertEquals(950, statistics.getPercentile(95), statistics.getBinWidth());
+		assertEquals(0, statistics.getPercentile(0), 0);
+		assertEquals(1000, statistics.getPercentile(100), 0);
+	}
+
+	@Test
+	public void mergesChunksAsIfTheyWereOne() {
+		Random random = new Random(3);
+		// Chunks with very different ranges, so their bins have different widths and offsets.
+		double[] values = new double[40000];
+		System.arraycopy(randomValues(random, 10000, 0.25, 0.01), 0, values, 0, 10000);
+		System.arraycopy(randomValues(random, 10000, -500, 10), 0, values, 10000, 10000);
+		System.arraycopy(randomValues(random, 10000, 3000, 1000), 0, values, 20000, 10000);
+		System.arraycopy(randomValues(random, 10000, 7, 3), 0, values, 30000, 10000);
+
+		GridStatistics whole = add(values, 0, values.length);
+		GridStatistics merged = new GridStatistics();
+		for (int start = 0; start < values.length; start += 10000) {
+			GridStatistics chunk = add(values, start, start + 10000);
+			chunk.addNoData(3);
+			merged.merge(chunk);
+		}
+
+		assertEquals(whole.getCount(), merged.getCount());
+		assertEquals(12, merged.getNoDataCount());
+		assertEquals(whole.getMin(), merged.getMin(), 0);
+		assertEquals(whole.getMax(), merged.getMax(), 0);
+		assertEquals(whole.getMean(), merged.getMean(), 1e-9 * Math.abs(whole.getMean()));
+		assertEquals(whole.getVariance(), merged.getVariance(), 1e-9 * whole.getVariance());
+		assertBinned(values, merged);
+		assertEquals(whole.getMedian(), merged.getMedian(), Math.max(whole.getBinWidth(), merged.getBinWidth()));
+	}
+
+	@Test
+	public void mergesIntoAndFromEmptyStatistics() {
+		double[] values = randomValues(new Random(4), 1000, 10, 2);
+		GridStatistics statistics = add(values, 0, values.length);
+
+		GridStatistics merged = new GridStatistics();
+		merged.merge(statistics);
+		merged.merge(new GridStatistics());
+
+		assertEquals(statistics.toString(), merged.toString());
+		assertArrayEquals(statistics.getHistogram(), merged.getHistogram());
+		assertEquals(statistics.getHistogramStart(), merged.getHistogramStart(), 0);
+	}
+
+	/**
+	 * Checks that every bin of the histogram holds exactly the values between its edges.
+	 */
+	private static void assertBinned(double[] values, GridStatistics statistics) {
+		long[] expected = new long[GridStatistics.HISTOGRAM_BINS];
+		for (double value : values) {
+			int bin = (int) Math.floor((value - statistics.getHistogramStart()) / statistics.getBinWidth());
+			expected[bin]++;
+		}
+		assertArrayEquals(expected, statistics.getHistogram());
+	}
+
+	private static GridStatistics add(double[] values, int start, int end) {
+		GridStatistics statistics = new GridStatistics();
+		for (int i = start; i < end; i++)
+			statistics.add(values[i]);
+		return statistics;
+	}
+
+	private static double[] randomValues(Random random, int count, double mean, double spread) {
+		double[] values = new double[count];
+		for (int i = 0; i < count; i++)
+			values[i] = mean + random.nextGaussian() * spread;
+		return values;
+	}
+
+	private static double min(double[] values) {
+		double min = Double.POSITIVE_INFINITY;
+		for (double value : values)
+			min = Math.min(min, value);
+		return min;
+	}
+
+	private static double max(double[] values) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (double value : values)
+			max = Math.max(max, value);
+		return max;
+	}
+
+	private static long sum(long[] counts) {
+		long sum = 0;
+		for (long count : counts)
+			sum += count;
+		return sum;
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for ParallelBodyParser: however the table is split into chunks, the parallel parse writes the same CSV (and the same pyramid, GeoTIFF and table, if they are wanted) as the parse on one core, clipped or not, whether the grid is read from a file or from memory, and rejects the same tables.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelBodyParserTest {
+
+	private static final int MAX_CHUNKS = 9;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The box every conversion is clipped to, or null.
+	 */
+	private BoundingBox clip;
+
+	/**
+	 * What every conversion makes besides the CSV, or null for nothing.
+	 */
+	private OutputOptions outputOptions;
+
+	@Test
+	public void writesTheSameCsvInAnyNumberOfChunks() throws IOException {
+		assertSameCsv(grid(new Random(1), 37, 23, 0.2, false, "\n"));
+	}
+
+	@Test
+	public void splitsRowsWrappedAcrossLines() throws IOException {
+		assertSameCsv(grid(new Random(2), 41, 17, 0.3, true, "\n"));
+	}
+
+	@Test
+	public void handlesWindowsLineBreaks() throws IOException {
+		assertSameCsv(grid(new Random(3), 29, 19, 0.1, true, "\r\n"));
+	}
+
+	@Test
+	public void handlesLongRunsOfNoData() throws IOException {
+		assertSameCsv(grid(new Random(4), 50, 30, 0.95, false, "\n"));
+	}
+
+	@Test
+	public void handlesATableWithoutData() throws IOException {
+		assertSameCsv(grid(new Random(5), 12, 10, 1, false, "\n"));
+	}
+
+	@Test
+	public void clipsToTheSameCells() throws IOException {
+		String grid = grid(new Random(7), 40, 30, 0.2, true, "\n");
+		GridHeader header = new GridHeader(40, 30, -10.5, 20.25, 0.5, -9999);
+
+		// Across the middle, inside a few rows, on the edges of cells, and outside the grid
+		clip = new BoundingBox(header.getLatitude(25), header.getLongitude(5), header.getLatitude(4), header.getLongitude(33));
+		assertSameCsv(grid);
+		clip = new BoundingBox(header.getLatitude(13) - 0.1, header.getLongitude(0), header.getLatitude(12), header.getLongitude(39) + 5);
+		assertSameCsv(grid);
+		clip = new BoundingBox(header.getLatitude(29), header.getLongitude(39), header.getLatitude(29), header.getLongitude(39));
+		assertSameCsv(grid);
+		clip = new BoundingBox(-80, 100, -70, 110);
+		assertSameCsv(grid);
+	}
+
+	@Test
+	public void rejectsTheSameTables() throws IOException {
+		String grid = grid(new Random(6), 20, 10, 0.2, false, "\n");
+		// One value short, and one value too many
+		assertRejected(grid.substring(0, grid.lastIndexOf(' ')) + "\n");
+		assertRejected(grid + "1\n");
+	}
+
+	@Test
+	public void writesTheSamePyramidGeoTiffAndTable() throws IOException {
+		String grid = grid(new Random(8), 45, 27, 0.4, true, "\n");
+		GridHeader header = new GridHeader(45, 27, -10.5, 20.25, 0.5, -9999);
+
+		assertSameOutputs(grid);
+		clip = new BoundingBox(header.getLatitude(20), header.getLongitude(3), header.getLatitude(6), header.getLongitude(30));
+		assertSameOutputs(grid);
+	}
+
+	/**
+	 * Converts the grid with a pyramid, GeoTIFF and table on one core, and then in chunks, from a file and from memory. More chunks than are parsed ahead at once are tried too, so chunks are sent on while others are still being parsed. Checks that every file is the same each time.
+	 */
+	private void assertSameOutputs(String grid) throws IOException {
+		File tables = new File(folder.getRoot(), "tables");
+		tables.mkdir();
+		outputOptions = new OutputOptions().withPyramid(2, BlockAggregator.Method.MEAN).withGeoTiff(true).withTableDirectory(tables);
+
+		File input = write(grid);
+		Map<String, byte[]> expected = outputs(convert(input, -1), tables);
+		assertSameFiles("in memory", expected, outputs(convertInMemory(grid, -1), tables));
+
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		for (int chunks : new int[] { 1, 2, 3, MAX_CHUNKS, 4 * parallelism + 1 }) {
+			assertSameFiles(chunks + " chunks", expected, outputs(convert(input, chunks), tables));
+			assertSameFiles(chunks + " chunks in memory", expected, outputs(convertInMemory(grid, chunks), tables));
+		}
+		assertNoPartFiles();
+		outputOptions = null;
+	}
+
+	/**
+	 * Reads every file a conversion made, by name.
+	 */
+	private Map<String, byte[]> outputs(File csv, File tables) throws IOException {
+		assertNotNull(csv);
+		File table = DbaseTableWriter.getOutputFile(tables, csv);
+		Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+		for (File file : new File[] { csv, PyramidBuilder.getLevelFile(csv, 1), PyramidBuilder.getLevelFile(csv, 2), GeoTiffWriter.getOutputFile(csv), table, DbaseTableWriter.getCodePageFile(table) })
+			files.put(file.getName(), Files.readAllBytes(file.toPath()));
+		return files;
+	}
+
+	private static void assertSameFiles(String message, Map<String, byte[]> expected, Map<String, byte[]> actual) {
+		for (Map.Entry<String, byte[]> file : expected.entrySet())
+			assertArrayEquals(message + ": " + file.getKey(), file.getValue(), actual.get(file.getKey()));
+	}
+
+	/**
+	 * Converts the grid on one core and then in every number of chunks up to MAX_CHUNKS, and checks that every CSV is the same.
+	 */
+	private void assertSameCsv(String grid) throws IOException {
+		File input = write(grid);
+		byte[] expected = Files.readAllBytes(convert(input, -1).toPath());
+
+		assertArrayEquals("in memory", expected, Files.readAllBytes(convertInMemory(grid, -1).toPath()));
+
+		for (int chunks = 1; chunks <= MAX_CHUNKS; chunks++) {
+			File csv = convert(input, chunks);
+			assertNotNull(csv);
+			assertArrayEquals(chunks + " chunks", expected, Files.readAllBytes(csv.toPath()));
+
+			csv = convertInMemory(grid, chunks);
+			assertNotNull(csv);
+			assertArrayEquals(chunks + " chunks in memory", expected, Files.readAllBytes(csv.toPath()));
+		}
+		assertNoPartFiles();
+	}
+
+	private void assertRejected(String grid) throws IOException {
+		File input = write(grid);
+		assertNull(convert(input, -1));
+		assertNull(convertInMemory(grid, -1));
+		for (int chunks = 1; chunks <= MAX_CHUNKS; chunks++) {
+			assertNull(convert(input, chunks));
+			assertNull(convertInMemory(grid, chunks));
+		}
+		assertFalse(new File(folder.getRoot(), "grid.csv").exists());
+		assertNoPartFiles();
+	}
+
+	/**
+	 * Converts a grid to CSV.
+	 * 
+	 * @param chunks
+	 *           The number of chunks to parse the table in; -1 to parse it on one core.
+	 * @return The CSV, or null if the grid was rejected.
+	 */
+	private File convert(File input, int chunks) throws IOException {
+		AsciiToCsv parser = new TestParser(chunks);
+		return chunks < 0 ? parser.parseToCsv(input) : parser.parseToCsvParallel(input);
+	}
+
+	/**
+	 * Converts a grid held in memory to CSV, like an upload.
+	 * 
+	 * @param chunks
+	 *           The number of chunks to parse the table in; -1 to parse it on one core.
+	 * @return The CSV, or null if the grid was rejected.
+	 */
+	private File convertInMemory(String grid, int chunks) throws IOException {
+		AsciiToCsv parser = new TestParser(chunks);
+		// Part of a larger buffer, as an upload would be
+		byte[] bytes = ("xx" + grid).getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer input = ByteBuffer.wrap(bytes, 2, bytes.length - 2);
+		File outFile = new File(folder.getRoot(), "grid.csv");
+		return chunks < 0 ? parser.parseToCsv(input, outFile) : parser.parseToCsvParallel(input, outFile);
+	}
+
+	private File write(String grid) throws IOException {
+		File input = new File(folder.getRoot(), "grid.asc");
+		Files.write(input.toPath(), grid.getBytes(StandardCharsets.US_ASCII));
+		return input;
+	}
+
+	/**
+	 * Makes the text of a grid with random values, in a mix of formats.
+	 * 
+	 * @param noData
+	 *           The share of cells that are NODATA. They come in runs, like the ocean of a global map.
+	 * @param wrap
+	 *           true to break rows across lines at random.
+	 * @param newLine
+	 *           The line break to use.
+	 */
+	static String grid(Random random, int ncols, int nrows, double noData, boolean wrap, String newLine) {
+		StringBuilder text = new StringBuilder();
+		text.append("ncols ").append(ncols).append(newLine);
+		text.append("nrows ").append(nrows).append(newLine);
+		text.append("xllcorner -10.5").append(newLine);
+		text.append("yllcorner 20.25").append(newLine);
+		text.append("cellsize 0.5").append(newLine);
+		text.append("NODATA_value -9999").append(newLine);
+
+		boolean inRun = false;
+		for (int row = 0; row < nrows; row++) {
+			for (int column = 0; column < ncols; column++) {
+				// Runs carry on most of the time, so the share of NODATA stays about the same
+				if (random.nextDouble() < 0.2)
+					inRun = random.nextDouble() < noData;
+				if (noData >= 1)
+					inRun = true;
+
+				if (column > 0)
+					text.append(wrap && random.nextInt(10) == 0 ? newLine : " ");
+				if (inRun)
+					text.append("-9999");
+				else
+					text.append(value(random));
+			}
+			text.append(newLine);
+		}
+		return text.toString();
+	}
+
+	private static String value(Random random) {
+		switch (random.nextInt(4)) {
+			case 0:
+				return Integer.toString(random.nextInt(2000) - 1000);
+			case 1:
+				return String.format(Locale.ROOT, "%.3f", random.nextDouble() * 100 - 50);
+			case 2:
+				return String.format(Locale.ROOT, "%.2e", random.nextGaussian() * 1e5);
+			default:
+				return Double.toString(random.nextDouble());
+		}
+	}
+
+	private void assertNoPartFiles() {
+		for (File file : folder.getRoot().listFiles())
+			assertFalse(file.getName(), file.getName().endsWith(".part"));
+		File tables = new File(folder.getRoot(), "tables");
+		if (tables.exists())
+			for (File file : tables.listFiles())
+				assertFalse(file.getName(), file.getName().endsWith(".part"));
+	}
+
+	/**
+	 * Writes its CSV into the temporary folder, and parses in a given number of chunks.
+	 */
+	private class TestParser extends AsciiToCsv {
+
+		private final int chunks;
+
+		TestParser(int chunks) {
+			this.chunks = chunks;
+			setClip(clip);
+			if (outputOptions != null)
+				setOutputOptions(outputOptions);
+		}
+
+		@Override
+		protected File getOutputFile(File ftp) {
+			return new File(folder.getRoot(), "grid.csv");
+		}
+
+		@Override
+		protected ParallelBodyParser createParallelParser() {
+			return new ParallelBodyParser(this, chunks);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for PyramidBuilder: where the levels are saved, and that a conversion failing after its levels were written leaves none of them (or the GeoTIFF and table written alongside them) behind.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PyramidBuilderTest {
+
+	private static final double NODATA = -9999;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final GridHeader header = new GridHeader(10, 6, -10, 40, 0.5, NODATA);
+
+	@Test
+	public void savesTheLevelsNextToTheCsv() throws IOException {
+		File outFile = new File(folder.getRoot(), "map.csv");
+		PyramidBuilder pyramid = new PyramidBuilder(header, 5, BlockAggregator.Method.MEAN, outFile, (row, column, value) -> {
+		});
+		fill(pyramid);
+		pyramid.finish();
+
+		// 10 x 6 halves to 5 x 3, 3 x 2, 2 x 1 and 1 x 1, where it stops
+		assertEquals(4, pyramid.getLevelCount());
+		String[] names = folder.getRoot().list();
+		Arrays.sort(names);
+		assertArrayEquals(new String[] { "map_L1.asc", "map_L2.asc", "map_L3.asc", "map_L4.asc" }, names);
+		for (String name : names)
+			assertTrue(PyramidBuilder.isLevelFile(new File(name)));
+		assertEquals(new File(folder.getRoot(), "map_L2.asc"), PyramidBuilder.getLevelFile(outFile, 2));
+	}
+
+	@Test
+	public void savesNoLevelsIfTheOutputFailsToFinish() throws IOException {
+		File outFile = new File(folder.getRoot(), "map.csv");
+		PyramidBuilder pyramid = new PyramidBuilder(header, 2, BlockAggregator.Method.MEAN, outFile, new GridCellHandler() {
+			@Override
+			public void handleCell(int row, int column, double value) {
+			}
+
+			@Override
+			public void finish() throws IOException {
+				throw new IOException("disk full");
+			}
+		});
+		fill(pyramid);
+		try {
+			pyramid.finish();
+			fail("The output's failure should be passed on");
+		} catch (IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void abortAfterFinishRemovesEverySavedFile() throws IOException {
+		File outFile = new File(folder.getRoot(), "map.csv");
+		File tables = folder.newFolder("tables");
+		OutputOptions options = new OutputOptions().withPyramid(2, BlockAggregator.Method.MEAN).withGeoTiff(true).withTableDirectory(tables);
+		OutputChain chain = OutputChain.create(options, header, outFile, null, true, false, -1);
+		fill(chain.getHandler());
+		chain.getHandler().finish();
+
+		assertTrue(PyramidBuilder.getLevelFile(outFile, 1).exists());
+		assertTrue(PyramidBuilder.getLevelFile(outFile, 2).exists());
+		assertTrue(GeoTiffWriter.getOutputFile(outFile).exists());
+		File table = DbaseTableWriter.getOutputFile(tables, outFile);
+		assertTrue(table.exists());
+		assertTrue(DbaseTableWriter.getCodePageFile(table).exists());
+
+		// Such as when the CSV then can't be moved into place
+		chain.abort();
+
+		assertArrayEquals(new String[] { "tables" }, folder.getRoot().list());
+		assertEquals(0, tables.list().length);
+		assertFalse(outFile.exists());
+	}
+
+	private void fill(GridCellHandler handler) throws IOException {
+		for (int row = 0; row < header.getNrows(); row++)
+			for (int column = 0; column < header.getNcols(); column++)
+				if (column == 3)
+					handler.handleNoData(row, column, 1, NODATA);
+				else
+					handler.handleCell(row, column, row * 10 + column);
+	}
+}
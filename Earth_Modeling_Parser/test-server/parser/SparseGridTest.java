@@ -0,0 +1,150 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for SparseGrid: a grid parsed into runs holds the same cells as a raster of the same table, gives the same statistics and CSV, and rejects cells that arrive out of table order.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SparseGridTest {
+
+	private static final GridHeader HEADER = new GridHeader(6, 3, -10.5, 20.25, 0.5, -9999);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void holdsTheSameCellsAsARaster() throws IOException {
+		File ascii = write(ParallelBodyParserTest.grid(new Random(1), 97, 41, 0.85, true, "\n"));
+
+		for (GridPrecision precision : new GridPrecision[] { GridPrecision.DOUBLE, GridPrecision.FLOAT }) {
+			GridRaster raster = parser(precision).parseToRaster(ascii);
+			SparseGrid grid = parser(precision).parseToSparse(ascii);
+			assertNotNull(grid);
+			assertEquals(precision, grid.getPrecision());
+
+			int valid = 0;
+			for (int row = 0; row < 41; row++)
+				for (int column = 0; column < 97; column++) {
+					assertEquals(row + "," + column, raster.get(row, column), grid.get(row, column), 0);
+					if (!raster.isNoData(row, column))
+						valid++;
+				}
+			assertEquals(valid, grid.getValidCount());
+			assertTrue(grid.getSizeInBytes() < raster.getSizeInBytes());
+		}
+	}
+
+	@Test
+	public void givesTheSameStatisticsAsTheParser() throws IOException {
+		File ascii = write(ParallelBodyParserTest.grid(new Random(2), 120, 60, 0.7, false, "\r\n"));
+
+		AsciiToCsv parser = parser(GridPrecision.DOUBLE);
+		SparseGrid grid = parser.parseToSparse(ascii);
+		GridStatistics expected = parser.getStatistics();
+		GridStatistics actual = grid.getStatistics();
+
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getNoDataCount(), actual.getNoDataCount());
+		assertEquals(expected.getMin(), actual.getMin(), 0);
+		assertEquals(expected.getMax(), actual.getMax(), 0);
+		assertEquals(expected.getSum(), actual.getSum(), Math.abs(expected.getSum()) * 1e-12);
+		assertArrayEquals(expected.getHistogram(), actual.getHistogram());
+	}
+
+	@Test
+	public void writesTheSameCsvAsTheParser() throws IOException {
+		File ascii = write(ParallelBodyParserTest.grid(new Random(3), 75, 33, 0.6, true, "\n"));
+
+		File expected = parser(GridPrecision.DOUBLE).parseToCsv(ascii);
+		byte[] csv = Files.readAllBytes(expected.toPath());
+		SparseGrid grid = parser(GridPrecision.DOUBLE).parseToSparse(ascii);
+		File actual = CsvGridWriter.write(grid, folder.newFile("sparse.csv"));
+
+		assertArrayEquals(csv, Files.readAllBytes(actual.toPath()));
+	}
+
+	@Test
+	public void visitsEveryCellInTableOrder() throws IOException {
+		SparseGrid grid = new SparseGrid(HEADER);
+		grid.handleNoData(0, 0, 2, -9999);
+		grid.handleCell(0, 2, 1.5);
+		grid.handleCell(0, 3, 2.5);
+		grid.handleCell(0, 5, 3.5);
+		grid.handleCell(2, 0, 4.5);
+		grid.finish();
+
+		assertEquals(4, grid.getValidCount());
+		assertEquals(3, grid.getRunCount());
+		assertEquals(-9999, grid.get(1, 3), 0);
+		assertEquals(2.5, grid.get(0, 3), 0);
+
+		GridRaster raster = new GridRaster(HEADER);
+		int[] cells = new int[1];
+		grid.forEachCell((row, column, value) -> {
+			raster.set(row, column, value);
+			cells[0]++;
+		});
+		assertEquals(HEADER.getCellCount(), cells[0]);
+		for (int row = 0; row < 3; row++)
+			for (int column = 0; column < 6; column++)
+				assertEquals(grid.get(row, column), raster.get(row, column), 0);
+
+		StringBuilder visited = new StringBuilder();
+		grid.forEachValidCell((row, column, value) -> visited.append(row).append(',').append(column).append(' '));
+		assertEquals("0,2 0,3 0,5 2,0 ", visited.toString());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsCellsOutOfOrder() {
+		SparseGrid grid = new SparseGrid(HEADER);
+		grid.handleCell(1, 2, 1.5);
+		grid.handleCell(1, 1, 2.5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsScaledShorts() {
+		new SparseGrid(HEADER, GridPrecision.SCALED_SHORT);
+	}
+
+	private AsciiToCsv parser(GridPrecision precision) {
+		AsciiToCsv parser = new AsciiToCsv();
+		parser.setOutputDirectory(folder.getRoot());
+		parser.setPrecision(precision);
+		return parser;
+	}
+
+	private File write(String text) throws IOException {
+		File ascii = folder.newFile();
+		Files.write(ascii.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+		return ascii;
+	}
+}
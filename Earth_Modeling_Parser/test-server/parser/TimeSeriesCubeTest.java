@@ -0,0 +1,222 @@
+/*
+ * 
+ * Copyright (C) 2026 agent
+ * 
+ * This file is part the Visual Earth Modeling System (VEMS).
+ * 
+ * VEMS is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * VEMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with VEMS. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * @author agent
+ * 
+ *         Tests for TimeSeriesCube: where the values of each step land in the file, steps written in any order and cleared, and the raster an uploaded grid is read into for its cube.
+ */
+
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TimeSeriesCubeTest {
+
+	private static final int HEADER_SIZE = 64;
+	private static final double NODATA = -9999;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Neither side is a whole number of chunks, so the chunks at the right and bottom edges are padded.
+	 */
+	private final GridHeader header = new GridHeader(130, 70, -180, -90, 0.5, NODATA);
+
+	@Test
+	public void storesEachCellsSeriesTogetherInItsChunk() throws IOException {
+		File file = folder.newFile("layout" + TimeSeriesCube.EXTENSION);
+		int steps = 3;
+		try (TimeSeriesCube cube = TimeSeriesCube.create(file, header, steps)) {
+			assertTrue(cube.writeStep(1, raster(1)));
+		}
+
+		int chunkSize = TimeSeriesCube.CHUNK_SIZE;
+		int chunkColumns = 3;
+		int chunkBytes = chunkSize * chunkSize * steps * Float.BYTES;
+		assertEquals(HEADER_SIZE + 6L * chunkBytes, file.length());
+
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			int[][] cells = { { 0, 0 }, { 0, 129 }, { 63, 64 }, { 64, 0 }, { 69, 129 } };
+			for (int[] cell : cells) {
+				int row = cell[0];
+				int column = cell[1];
+				long chunk = (row / chunkSize) * chunkColumns + column / chunkSize;
+				long offset = HEADER_SIZE + chunk * chunkBytes + ((row % chunkSize) * chunkSize + column % chunkSize) * steps * Float.BYTES;
+
+				in.seek(offset);
+				assertEquals((float) NODATA, in.readFloat(), 0);
+				assertEquals((float) value(1, row, column), in.readFloat(), 0);
+				assertEquals((float) NODATA, in.readFloat(), 0);
+			}
+
+			// Padding past the right edge of the grid
+			in.seek(HEADER_SIZE + 2L * chunkBytes + 2 * steps * Float.BYTES + Float.BYTES);
+			assertEquals((float) NODATA, in.readFloat(), 0);
+		}
+	}
+
+	@Test
+	public void writesStepsInAnyOrderAndKeepsThemWhenReopened() throws IOException {
+		File file = folder.newFile("steps" + TimeSeriesCube.EXTENSION);
+		try (TimeSeriesCube cube = TimeSeriesCube.create(file, header, 12)) {
+			assertTrue(cube.writeStep(11, raster(11)));
+			assertTrue(cube.writeStep(0, raster(0)));
+			assertTrue(cube.writeStep(5, raster(5)));
+			cube.clearStep(5);
+		}
+
+		try (TimeSeriesCube cube = TimeSeriesCube.open(file)) {
+			assertNotNull(cube);
+			assertEquals(12, cube.getStepCount());
+			assertEquals(2, cube.getStepsWritten());
+			assertTrue(cube.hasStep(0));
+			assertFalse(cube.hasStep(5));
+			assertTrue(cube.hasStep(11));
+			assertFalse(cube.isComplete());
+			assertTrue(cube.getHeader().sameGeometry(header));
+
+			for (int row = 0; row < header.getNrows(); row += 7)
+				for (int column = 0; column < header.getNcols(); column += 3) {
+					double[] series = cube.readSeries(row, column);
+					for (int step = 0; step < 12; step++) {
+						double expected = step == 0 || step == 11 ? value(step, row, column) : NODATA;
+						if (expected != NODATA)
+							expected = (float) expected;
+						assertEquals("Step " + step + " of " + row + ", " + column, expected, series[step], 0);
+					}
+				}
+		}
+	}
+
+	@Test
+	public void rejectsARasterThatDoesntLineUp() throws IOException {
+		File file = folder.newFile("geometry" + TimeSeriesCube.EXTENSION);
+		try (TimeSeriesCube cube = TimeSeriesCube.create(file, header, 2)) {
+			assertFalse(cube.writeStep(0, new GridRaster(new GridHeader(130, 70, -180, -90, 0.25, NODATA))));
+			assertEquals(0, cube.getStepsWritten());
+		}
+	}
+
+	@Test
+	public void refusesFilesThatArentWholeCubes() throws IOException {
+		File file = folder.newFile("short" + TimeSeriesCube.EXTENSION);
+		TimeSeriesCube.create(file, header, 2).close();
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			out.setLength(out.length() - 1);
+		}
+		assertNull(TimeSeriesCube.open(file));
+
+		File text = folder.newFile("text" + TimeSeriesCube.EXTENSION);
+		try (RandomAccessFile out = new RandomAccessFile(text, "rw")) {
+			out.write(new byte[HEADER_SIZE]);
+		}
+		assertNull(TimeSeriesCube.open(text));
+	}
+
+	@Test
+	public void conversionFillsTheCubesRasterInTheSamePass() throws IOException {
+		StringBuilder ascii = new StringBuilder("ncols 130\nnrows 70\nxllcorner -180\nyllcorner -90\ncellsize 0.5\nNODATA_value -9999\n");
+		for (int row = 0; row < header.getNrows(); row++) {
+			for (int column = 0; column < header.getNcols(); column++)
+				ascii.append(column % 5 == 0 ? "-9999" : Double.toString(value(3, row, column))).append(' ');
+			ascii.append('\n');
+		}
+		ByteBuffer input = ByteBuffer.wrap(ascii.toString().getBytes(StandardCharsets.US_ASCII));
+
+		GridConverter converter = new GridConverter().withOutputDirectory(folder.getRoot());
+		GridRaster expected = converter.withPrecision(GridPrecision.FLOAT).toRaster(input, null).getRaster();
+
+		for (long parallelMinSize : new long[] { Long.MAX_VALUE, 0 }) {
+			GridConverter cubeConverter = converter.withParallelMinSize(parallelMinSize).withRaster(GridPrecision.FLOAT);
+			ConversionResult result = cubeConverter.toCsv(input, new File(folder.getRoot(), "map" + parallelMinSize + ".csv"), null);
+
+			assertTrue(result.isSuccess());
+			assertTrue(result.getOutput().exists());
+			GridRaster raster = result.getRaster();
+			assertNotNull(raster);
+			assertEquals(GridPrecision.FLOAT, raster.getPrecision());
+			assertArrayEquals(values(expected), values(raster), 0);
+		}
+
+		assertNull(converter.toCsv(input, new File(folder.getRoot(), "plain.csv"), null).getRaster());
+	}
+
+	@Test
+	public void uploadsAreReadLikeFiles() throws IOException {
+		StringBuilder ascii = new StringBuilder("ncols 130\nnrows 70\nxllcorner -180\nyllcorner -90\ncellsize 0.5\nNODATA_value -9999\n");
+		for (int row = 0; row < header.getNrows(); row++) {
+			for (int column = 0; column < header.getNcols(); column++)
+				ascii.append(column % 5 == 0 ? "-9999" : Double.toString(value(3, row, column))).append(' ');
+			ascii.append('\n');
+		}
+		byte[] text = ascii.toString().getBytes(StandardCharsets.US_ASCII);
+		File file = folder.newFile("map.asc");
+		Files.write(file.toPath(), text);
+
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+			out.write(text);
+		}
+
+		GridConverter converter = new GridConverter().withOutputDirectory(folder.getRoot()).withPrecision(GridPrecision.FLOAT);
+		GridRaster expected = converter.toRaster(file, null).getRaster();
+		for (byte[] upload : new byte[][] { text, gzip.toByteArray() }) {
+			ByteBuffer input = ByteBuffer.wrap(upload);
+			GridRaster raster = converter.toRaster(input, null).getRaster();
+
+			assertNotNull(raster);
+			assertEquals(GridPrecision.FLOAT, raster.getPrecision());
+			assertArrayEquals(values(expected), values(raster), 0);
+			assertEquals(0, input.position());
+		}
+	}
+
+	private GridRaster raster(int step) {
+		GridRaster raster = new GridRaster(header);
+		for (int row = 0; row < header.getNrows(); row++)
+			for (int column = 0; column < header.getNcols(); column++)
+				raster.set(row, column, value(step, row, column));
+		return raster;
+	}
+
+	private static double value(int step, int row, int column) {
+		return step * 1000 + row + column / 1000.0;
+	}
+
+	private double[] values(GridRaster raster) {
+		double[] values = new double[(int) header.getCellCount()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = raster.get(i);
+		return values;
+	}
+}